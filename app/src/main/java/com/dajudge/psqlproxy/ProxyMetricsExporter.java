@@ -0,0 +1,314 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy;
+
+import com.dajudge.psqlproxy.cache.ResultCache;
+import com.dajudge.psqlproxy.metrics.DurationStats;
+import com.dajudge.psqlproxy.metrics.EndpointMetrics;
+import com.dajudge.psqlproxy.metrics.FrameCounts;
+import com.dajudge.psqlproxy.metrics.LatencyHistogram;
+import com.dajudge.psqlproxy.metrics.PeerMetrics;
+import com.dajudge.psqlproxy.metrics.ProxyMetrics;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.SimpleTimer;
+import org.eclipse.microprofile.metrics.Tag;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.function.LongSupplier;
+
+// Views, the values are only read from the proxy's counters when scraped
+final class ProxyMetricsExporter {
+    private static final String PREFIX = "psqlproxy.";
+    // https://www.postgresql.org/docs/current/protocol-message-formats.html
+    private static final String CLIENT_FRAME_TYPES = "BCcdDEfFHpPQSX";
+    private static final String SERVER_FRAME_TYPES = "123ACcdDEGHIKnNRsStTVWZv";
+    private static final double NANOS_PER_SECOND = 1_000_000_000d;
+    private static final double MICROS_PER_SECOND = 1_000_000d;
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    private ProxyMetricsExporter() {
+    }
+
+    static void register(final MetricRegistry registry, final ProxyMetrics metrics) {
+        register(registry, "client", metrics.getClient(), CLIENT_FRAME_TYPES);
+        register(registry, "server", metrics.getServer(), SERVER_FRAME_TYPES);
+        counter(registry, "ssl.accepted", "Server connections upgraded to SSL", metrics::getSslAccepted);
+        counter(registry, "ssl.denied", "Server connections on which the server denied SSL", metrics::getSslDenied);
+        counter(registry, "auth.failures", "Failed authentications with the server", metrics::getAuthFailures);
+        timer(registry, "ssl.handshake", "SSL handshakes with the server", metrics.getSslHandshakes());
+        timer(registry, "auth", "Authentications with the server", metrics.getAuthentications());
+        latencies(registry, "simple", metrics.getSimpleQueries());
+        latencies(registry, "extended", metrics.getExtendedQueries());
+        metrics.getEndpoints().forEach(endpoint -> register(registry, endpoint));
+    }
+
+    private static void register(final MetricRegistry registry, final EndpointMetrics metrics) {
+        final Tag[] tags = {
+                new Tag("endpoint", metrics.getEndpoint().getHost() + ":" + metrics.getEndpoint().getPort()),
+                new Tag("role", metrics.getRole()),
+                new Tag("route", metrics.getRoute())
+        };
+        registry.register(
+                metadata("endpoint.connections", "Connections opened to the server", MetricType.COUNTER,
+                        MetricUnits.NONE),
+                new CounterView(metrics::getConnections),
+                tags
+        );
+        registry.register(
+                metadata("endpoint.connections.active", "Open connections to the server", MetricType.GAUGE,
+                        MetricUnits.NONE),
+                (Gauge<Long>) metrics::getActiveConnections,
+                tags
+        );
+        registry.register(
+                metadata("endpoint.connect.failures", "Failed attempts to connect to the server", MetricType.COUNTER,
+                        MetricUnits.NONE),
+                new CounterView(metrics::getConnectFailures),
+                tags
+        );
+        registry.register(
+                metadata("endpoint.transactions", "Transactions routed to the server in transaction pooling mode",
+                        MetricType.COUNTER, MetricUnits.NONE),
+                new CounterView(metrics::getTransactions),
+                tags
+        );
+        registry.register(
+                metadata("endpoint.transactions.active", "Transactions in progress on the server", MetricType.GAUGE,
+                        MetricUnits.NONE),
+                (Gauge<Integer>) metrics::getActiveTransactions,
+                tags
+        );
+        registry.register(
+                metadata("endpoint.latency", "Moving average of the server's latency, used for load balancing",
+                        MetricType.GAUGE, MetricUnits.NANOSECONDS),
+                (Gauge<Long>) () -> metrics.getLatencyNanos(System.nanoTime()),
+                tags
+        );
+        registry.register(
+                metadata("endpoint.healthy", "1 unless connecting to the server failed repeatedly", MetricType.GAUGE,
+                        MetricUnits.NONE),
+                (Gauge<Integer>) () -> metrics.isHealthy(System.nanoTime()) ? 1 : 0,
+                tags
+        );
+    }
+
+    static void register(final MetricRegistry registry, final String route, final ResultCache cache) {
+        final Tag routeTag = new Tag("route", route);
+        counter(registry, "result.cache.hits", "Queries answered from the result cache", cache::getHits, routeTag);
+        counter(registry, "result.cache.misses", "Cacheable queries sent to the server", cache::getMisses, routeTag);
+        counter(registry, "result.cache.evictions", "Results evicted to stay within the size limit",
+                cache::getEvictions, routeTag);
+        counter(registry, "result.cache.expirations", "Results dropped after their TTL", cache::getExpirations,
+                routeTag);
+        registry.register(
+                metadata("result.cache.size", "Size of the cached results", MetricType.GAUGE, MetricUnits.BYTES),
+                (Gauge<Long>) cache::getBytes,
+                routeTag
+        );
+        registry.register(
+                metadata("result.cache.entries", "Number of cached results", MetricType.GAUGE, MetricUnits.NONE),
+                (Gauge<Integer>) cache::getEntries,
+                routeTag
+        );
+    }
+
+    private static void latencies(
+            final MetricRegistry registry,
+            final String protocol,
+            final LatencyHistogram histogram
+    ) {
+        final Tag protocolTag = new Tag("protocol", protocol);
+        registry.register(
+                metadata("queries", "Requests answered with ReadyForQuery", MetricType.COUNTER, MetricUnits.NONE),
+                new CounterView(histogram::getCount),
+                protocolTag
+        );
+        final Metadata latency = metadata("query.latency", "Latency from Query or Sync to ReadyForQuery",
+                MetricType.GAUGE, MetricUnits.SECONDS);
+        for (final double quantile : QUANTILES) {
+            registry.register(
+                    latency,
+                    (Gauge<Double>) () -> histogram.getMicrosAtPercentile(quantile * 100) / MICROS_PER_SECOND,
+                    protocolTag,
+                    new Tag("quantile", String.valueOf(quantile))
+            );
+        }
+        registry.register(
+                metadata("query.latency.max", "Highest latency from Query or Sync to ReadyForQuery",
+                        MetricType.GAUGE, MetricUnits.SECONDS),
+                (Gauge<Double>) () -> histogram.getMaxMicros() / MICROS_PER_SECOND,
+                protocolTag
+        );
+    }
+
+    private static void register(
+            final MetricRegistry registry,
+            final String side,
+            final PeerMetrics metrics,
+            final String frameTypes
+    ) {
+        final String prefix = side + ".";
+        counter(registry, prefix + "connections", "Connections opened by or to the " + side,
+                metrics::getConnections);
+        registry.register(
+                metadata(prefix + "connections.active", "Open connections of the " + side, MetricType.GAUGE,
+                        MetricUnits.NONE),
+                (Gauge<Long>) metrics::getActiveConnections
+        );
+        counter(registry, prefix + "bytes.received", "Bytes received from the " + side, MetricUnits.BYTES,
+                metrics::getBytesReceived);
+        counter(registry, prefix + "bytes.sent", "Bytes sent to the " + side, MetricUnits.BYTES,
+                metrics::getBytesSent);
+        final FrameCounts frames = metrics.getFrames();
+        final Metadata framesMetadata = metadata(prefix + "frames", "Frames received from the " + side + " by type",
+                MetricType.COUNTER, MetricUnits.NONE);
+        for (final char type : frameTypes.toCharArray()) {
+            registry.register(framesMetadata, new CounterView(() -> frames.get(type)),
+                    new Tag("type", String.valueOf(type)));
+        }
+    }
+
+    private static void counter(
+            final MetricRegistry registry,
+            final String name,
+            final String description,
+            final LongSupplier value
+    ) {
+        counter(registry, name, description, MetricUnits.NONE, value);
+    }
+
+    private static void counter(
+            final MetricRegistry registry,
+            final String name,
+            final String description,
+            final LongSupplier value,
+            final Tag tag
+    ) {
+        registry.register(
+                metadata(name, description, MetricType.COUNTER, MetricUnits.NONE),
+                new CounterView(value),
+                tag
+        );
+    }
+
+    private static void counter(
+            final MetricRegistry registry,
+            final String name,
+            final String description,
+            final String unit,
+            final LongSupplier value
+    ) {
+        registry.register(metadata(name, description, MetricType.COUNTER, unit), new CounterView(value));
+    }
+
+    private static void timer(
+            final MetricRegistry registry,
+            final String name,
+            final String description,
+            final DurationStats stats
+    ) {
+        registry.register(metadata(name, description, MetricType.SIMPLE_TIMER, MetricUnits.NANOSECONDS),
+                new SimpleTimerView(stats));
+        registry.register(
+                metadata(name + ".max", "Longest of the " + description, MetricType.GAUGE, MetricUnits.SECONDS),
+                (Gauge<Double>) () -> stats.getMaxNanos() / NANOS_PER_SECOND
+        );
+    }
+
+    private static Metadata metadata(
+            final String name,
+            final String description,
+            final MetricType type,
+            final String unit
+    ) {
+        return Metadata.builder()
+                .withName(PREFIX + name)
+                .withDescription(description)
+                .withType(type)
+                .withUnit(unit)
+                .reusable()
+                .build();
+    }
+
+    private static final class CounterView implements Counter {
+        private final LongSupplier value;
+
+        private CounterView(final LongSupplier value) {
+            this.value = value;
+        }
+
+        @Override
+        public void inc() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void inc(final long n) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long getCount() {
+            return value.getAsLong();
+        }
+    }
+
+    private static final class SimpleTimerView implements SimpleTimer {
+        private final DurationStats stats;
+
+        private SimpleTimerView(final DurationStats stats) {
+            this.stats = stats;
+        }
+
+        @Override
+        public void update(final Duration duration) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T> T time(final Callable<T> event) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void time(final Runnable event) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Context time() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Duration getElapsedTime() {
+            return Duration.ofNanos(stats.getTotalNanos());
+        }
+
+        @Override
+        public long getCount() {
+            return stats.getCount();
+        }
+    }
+}
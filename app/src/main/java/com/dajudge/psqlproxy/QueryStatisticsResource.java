@@ -0,0 +1,108 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy;
+
+import com.dajudge.psqlproxy.metrics.QueryStatistic;
+
+import javax.inject.Inject;
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+import static java.util.Comparator.comparingDouble;
+import static java.util.Comparator.comparingLong;
+import static java.util.stream.Collectors.toList;
+
+@Path("/queries")
+public class QueryStatisticsResource {
+    private static final double NANOS_PER_MILLI = 1_000_000d;
+
+    @Inject
+    Startup startup;
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<Statement> top(
+            @QueryParam("limit") @DefaultValue("10") final int limit,
+            @QueryParam("order") @DefaultValue("time") final String order
+    ) {
+        return startup.getQueryStatistics().top(limit, comparator(order).reversed()).stream()
+                .map(Statement::new)
+                .collect(toList());
+    }
+
+    private static Comparator<QueryStatistic> comparator(final String order) {
+        switch (order.toLowerCase(Locale.US)) {
+            case "time":
+                return comparingLong(QueryStatistic::getTotalNanos);
+            case "mean":
+                return comparingDouble(statistic -> (double) statistic.getTotalNanos() / statistic.getCalls());
+            case "calls":
+                return comparingLong(QueryStatistic::getCalls);
+            case "rows":
+                return comparingLong(QueryStatistic::getRows);
+            case "bytes":
+                return comparingLong(QueryStatistic::getBytes);
+            default:
+                throw new BadRequestException("Unknown order, use time, mean, calls, rows or bytes: " + order);
+        }
+    }
+
+    public static class Statement {
+        private final QueryStatistic statistic;
+
+        Statement(final QueryStatistic statistic) {
+            this.statistic = statistic;
+        }
+
+        public String getFingerprint() {
+            return statistic.getFingerprint();
+        }
+
+        public long getCalls() {
+            return statistic.getCalls();
+        }
+
+        public double getTotalTimeMillis() {
+            return statistic.getTotalNanos() / NANOS_PER_MILLI;
+        }
+
+        public double getTotalTimeErrorMillis() {
+            return statistic.getTotalNanosError() / NANOS_PER_MILLI;
+        }
+
+        public double getMeanTimeMillis() {
+            return getTotalTimeMillis() / statistic.getCalls();
+        }
+
+        public long getRows() {
+            return statistic.getRows();
+        }
+
+        public long getBytes() {
+            return statistic.getBytes();
+        }
+    }
+}
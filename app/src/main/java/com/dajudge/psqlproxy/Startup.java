@@ -17,21 +17,40 @@
 
 package com.dajudge.psqlproxy;
 
-import com.dajudge.proxybase.certs.KeyStoreConfig;
-import com.dajudge.proxybase.config.DownstreamSslConfig;
 import com.dajudge.proxybase.config.Endpoint;
+import com.dajudge.psqlproxy.cache.ResultCacheConfig;
+import com.dajudge.psqlproxy.metrics.MetricsConfig;
+import com.dajudge.psqlproxy.metrics.QueryStatistics;
+import com.dajudge.psqlproxy.pool.PoolConfig;
+import com.dajudge.psqlproxy.pool.PoolingMode;
 import com.dajudge.psqlproxy.protocol.PostgresSslConfig;
+import com.dajudge.psqlproxy.protocol.TrustStoreConfig;
+import com.dajudge.psqlproxy.routing.BalancingPolicy;
+import com.dajudge.psqlproxy.routing.ReplicaConfig;
+import com.dajudge.psqlproxy.transport.TransportConfig;
+import com.dajudge.psqlproxy.transport.TransportType;
+import io.netty.handler.ssl.SslProvider;
 import io.quarkus.runtime.ShutdownEvent;
 import io.quarkus.runtime.StartupEvent;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.annotation.RegistryType;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.regex.Pattern;
 
-import static com.dajudge.proxybase.certs.Filesystem.DEFAULT_FILESYSTEM;
 import static java.lang.Boolean.parseBoolean;
 import static java.lang.Integer.parseInt;
 import static java.lang.Integer.parseUnsignedInt;
-import static java.util.Optional.empty;
 
 @ApplicationScoped
 public class Startup {
@@ -47,65 +66,242 @@ public class Startup {
     private static final String ENV_TRUSTSTORE_LOCATION = PREFIX + "TRUSTSTORE_LOCATION";
     private static final String ENV_TRUSTSTORE_PASSWORD_LOCATION = PREFIX + "TRUSTSTORE_PASSWORD_LOCATION";
     private static final String ENV_TRUSTSTORE_UPDATE_INTERVAL_SECS = PREFIX + "TRUSTSTURE_UPDATE_INTERVAL_SECS";
+    private static final String ENV_SSL_PROVIDER = PREFIX + "SSL_PROVIDER";
+    private static final String ENV_POOL_MODE = PREFIX + "POOL_MODE";
+    private static final String ENV_POOL_MIN_IDLE = PREFIX + "POOL_MIN_IDLE";
+    private static final String ENV_POOL_SIZE = PREFIX + "POOL_SIZE";
+    private static final String ENV_POOL_ACQUIRE_TIMEOUT_SECS = PREFIX + "POOL_ACQUIRE_TIMEOUT_SECS";
+    private static final String ENV_POOL_MAX_WAITING_CLIENTS = PREFIX + "POOL_MAX_WAITING_CLIENTS";
+    private static final String ENV_POOL_MAX_PREPARED_STATEMENTS = PREFIX + "POOL_MAX_PREPARED_STATEMENTS";
+    private static final String ENV_POOL_IDLE_TIMEOUT_SECS = PREFIX + "POOL_IDLE_TIMEOUT_SECS";
+    private static final String ENV_POOL_MAX_SERVER_CONNECTIONS = PREFIX + "POOL_MAX_SERVER_CONNECTIONS";
+    private static final String ENV_RAW_RELAY = PREFIX + "RAW_RELAY";
+    private static final String ENV_SPLICE_RELAY = PREFIX + "SPLICE_RELAY";
+    private static final String ENV_STREAMING_THRESHOLD = PREFIX + "STREAMING_THRESHOLD";
+    private static final String ENV_TRANSPORT = PREFIX + "TRANSPORT";
+    private static final String ENV_WORKER_THREADS = PREFIX + "WORKER_THREADS";
+    private static final String ENV_REUSE_PORT = PREFIX + "REUSE_PORT";
+    private static final String ENV_WRITE_BUFFER_LOW_WATER_MARK = PREFIX + "WRITE_BUFFER_LOW_WATER_MARK";
+    private static final String ENV_WRITE_BUFFER_HIGH_WATER_MARK = PREFIX + "WRITE_BUFFER_HIGH_WATER_MARK";
+    private static final String ENV_QUERY_STATISTICS_SIZE = PREFIX + "QUERY_STATISTICS_SIZE";
+    private static final String ENV_QUERY_STATISTICS_SAMPLE_EVERY = PREFIX + "QUERY_STATISTICS_SAMPLE_EVERY";
+    private static final String ENV_RESULT_CACHE_PATTERN = PREFIX + "RESULT_CACHE_PATTERN";
+    private static final String ENV_RESULT_CACHE_TTL_SECS = PREFIX + "RESULT_CACHE_TTL_SECS";
+    private static final String ENV_RESULT_CACHE_MAX_BYTES = PREFIX + "RESULT_CACHE_MAX_BYTES";
+    private static final String ENV_REPLICAS = PREFIX + "REPLICAS";
+    private static final String ENV_REPLICA_READ_PATTERN = PREFIX + "REPLICA_READ_PATTERN";
+    private static final String ENV_REPLICA_BALANCING = PREFIX + "REPLICA_BALANCING";
+    private static final String ENV_ROUTES = PREFIX + "ROUTES";
+    private static final String ENV_ROUTE_PREFIX = PREFIX + "ROUTE_";
+    private static final String ENV_ROUTE_DATABASE = PREFIX + "MATCH_DATABASE";
+    private static final String ENV_ROUTE_USER = PREFIX + "MATCH_USER";
     private static final int MSECS_PER_SEC = 1000;
     private PostgresProxy app;
 
+    @Inject
+    @RegistryType(type = MetricRegistry.Type.APPLICATION)
+    MetricRegistry metricRegistry;
+
     void onStart(@Observes StartupEvent ev) {
-        final String postgresHost = requireEnv(ENV_POSTGRES_HOSTNAME);
-        final int postgresPort = parseUnsignedInt(requireEnv(ENV_POSTGRES_PORT));
-        final String proxyHost = requireEnv(ENV_BIND_ADDRESS);
-        final int proxyPort = parseUnsignedInt(requireEnv(ENV_BIND_PORT));
-        final String username = requireEnv(ENV_USERNAME);
-        final String password = requireEnv(ENV_PASSWORD);
-        final boolean requireSsl = parseBoolean(requireEnv(ENV_REQUIRE_SSL));
-        final boolean verifyHostname = parseBoolean(optionalEnv(ENV_VERIFY_HOSTNAME, "true"));
-        final String trustStoreLocation = requireEnv(ENV_TRUSTSTORE_LOCATION);
-        final String trustStorePasswordLocation = requireEnv(ENV_TRUSTSTORE_PASSWORD_LOCATION);
-        final int updateIntervalSecs = parseInt(optionalEnv(ENV_TRUSTSTORE_UPDATE_INTERVAL_SECS, "30"));
-        final KeyStoreConfig keystoreConfig = new KeyStoreConfig(
+        final List<RouteConfig> routes = new ArrayList<>();
+        final List<String> routeNames = names(optionalEnv(ENV_ROUTES, ""));
+        if (routeNames.isEmpty()) {
+            routes.add(new RouteConfig(RouteConfig.DEFAULT_NAME, proxyConfig(Optional.empty())));
+        }
+        for (final String name : routeNames) {
+            final String route = name.toUpperCase(Locale.US);
+            routes.add(new RouteConfig(
+                    name,
+                    env(routeVar(route, ENV_ROUTE_DATABASE)),
+                    env(routeVar(route, ENV_ROUTE_USER)),
+                    proxyConfig(Optional.of(route))
+            ));
+        }
+        app = new PostgresProxy(transportConfig(), metricsConfig(), routes);
+        ProxyMetricsExporter.register(metricRegistry, app.getMetrics());
+        app.getResultCaches().forEach((route, cache) -> ProxyMetricsExporter.register(metricRegistry, route, cache));
+    }
+
+    // Transport and metrics are shared by all routes, see transportConfig() and metricsConfig()
+    private PostgresProxyConfig proxyConfig(final Optional<String> route) {
+        final String postgresHost = requireEnv(route, ENV_POSTGRES_HOSTNAME);
+        final int postgresPort = parseUnsignedInt(requireEnv(route, ENV_POSTGRES_PORT));
+        final String proxyHost = requireEnv(route, ENV_BIND_ADDRESS);
+        final int proxyPort = parseUnsignedInt(requireEnv(route, ENV_BIND_PORT));
+        final String username = requireEnv(route, ENV_USERNAME);
+        final String password = requireEnv(route, ENV_PASSWORD);
+        final boolean requireSsl = parseBoolean(requireEnv(route, ENV_REQUIRE_SSL));
+        final boolean verifyHostname = parseBoolean(optionalEnv(route, ENV_VERIFY_HOSTNAME, "true"));
+        final String trustStoreLocation = requireEnv(route, ENV_TRUSTSTORE_LOCATION);
+        final String trustStorePasswordLocation = requireEnv(route, ENV_TRUSTSTORE_PASSWORD_LOCATION);
+        final int updateIntervalSecs = parseInt(optionalEnv(route, ENV_TRUSTSTORE_UPDATE_INTERVAL_SECS, "30"));
+        final TrustStoreConfig trustStoreConfig = new TrustStoreConfig(
                 trustStoreLocation,
-                "".toCharArray(),
                 trustStorePasswordLocation,
-                "".toCharArray(),
-                null,
                 "pkcs12",
                 updateIntervalSecs * MSECS_PER_SEC
         );
-        final DownstreamSslConfig downstreamSslConfig = new DownstreamSslConfig(
-                keystoreConfig,
-                empty(),
-                verifyHostname
-        );
         final PostgresSslConfig postgresSslConfig = new PostgresSslConfig(
                 requireSsl,
-                downstreamSslConfig,
+                trustStoreConfig,
+                verifyHostname,
                 postgresHost,
-                System::currentTimeMillis,
-                DEFAULT_FILESYSTEM
+                Startup::readFile,
+                SslProvider.valueOf(optionalEnv(route, ENV_SSL_PROVIDER, "jdk").toUpperCase(Locale.US))
+        );
+        final PoolConfig poolConfig = new PoolConfig(
+                PoolingMode.valueOf(optionalEnv(route, ENV_POOL_MODE, "none").toUpperCase(Locale.US)),
+                parseUnsignedInt(optionalEnv(route, ENV_POOL_MIN_IDLE, "0")),
+                parseUnsignedInt(optionalEnv(route, ENV_POOL_SIZE, "20")),
+                parseUnsignedInt(optionalEnv(route, ENV_POOL_ACQUIRE_TIMEOUT_SECS, "30")) * (long) MSECS_PER_SEC,
+                parseUnsignedInt(optionalEnv(route, ENV_POOL_MAX_WAITING_CLIENTS, "1000")),
+                parseUnsignedInt(optionalEnv(
+                        route,
+                        ENV_POOL_MAX_PREPARED_STATEMENTS,
+                        String.valueOf(PoolConfig.DEFAULT_MAX_PREPARED_STATEMENTS)
+                )),
+                parseUnsignedInt(optionalEnv(route, ENV_POOL_IDLE_TIMEOUT_SECS, "600")) * (long) MSECS_PER_SEC,
+                parseUnsignedInt(optionalEnv(
+                        route,
+                        ENV_POOL_MAX_SERVER_CONNECTIONS,
+                        String.valueOf(PoolConfig.DEFAULT_MAX_SERVER_CONNECTIONS)
+                ))
+        );
+        final RelayConfig relayConfig = new RelayConfig(
+                parseBoolean(optionalEnv(route, ENV_RAW_RELAY, "false")),
+                parseBoolean(optionalEnv(route, ENV_SPLICE_RELAY, "false")),
+                parseUnsignedInt(optionalEnv(route, ENV_STREAMING_THRESHOLD, "0"))
+        );
+        final String resultCachePattern = optionalEnv(route, ENV_RESULT_CACHE_PATTERN, "");
+        final ResultCacheConfig resultCacheConfig = new ResultCacheConfig(
+                resultCachePattern.isEmpty()
+                        ? Optional.empty()
+                        : Optional.of(Pattern.compile(resultCachePattern, Pattern.CASE_INSENSITIVE)),
+                parseUnsignedInt(optionalEnv(route, ENV_RESULT_CACHE_TTL_SECS, "10")) * (long) MSECS_PER_SEC,
+                Long.parseUnsignedLong(optionalEnv(route, ENV_RESULT_CACHE_MAX_BYTES, "67108864"))
+        );
+        final String replicaReadPattern = optionalEnv(route, ENV_REPLICA_READ_PATTERN, "");
+        final ReplicaConfig replicaConfig = new ReplicaConfig(
+                endpoints(optionalEnv(route, ENV_REPLICAS, ""), postgresPort),
+                replicaReadPattern.isEmpty()
+                        ? Optional.empty()
+                        : Optional.of(Pattern.compile(replicaReadPattern, Pattern.CASE_INSENSITIVE)),
+                BalancingPolicy.valueOf(optionalEnv(route, ENV_REPLICA_BALANCING, "ewma").toUpperCase(Locale.US))
         );
-        app = new PostgresProxy(new PostgresProxyConfig(
+        return new PostgresProxyConfig(
                 new Endpoint(postgresHost, postgresPort),
                 new Endpoint(proxyHost, proxyPort),
                 username,
                 password,
                 postgresSslConfig
-        ));
+        )
+                .withPoolConfig(poolConfig)
+                .withRelayConfig(relayConfig)
+                .withResultCacheConfig(resultCacheConfig)
+                .withReplicaConfig(replicaConfig);
     }
 
-    private String optionalEnv(final String var, final String def) {
-        final String value = System.getenv(var);
-        if (value == null || value.trim().isEmpty()) {
-            return def;
+    private TransportConfig transportConfig() {
+        return new TransportConfig(
+                TransportType.valueOf(optionalEnv(ENV_TRANSPORT, "auto").toUpperCase(Locale.US)),
+                parseUnsignedInt(optionalEnv(ENV_WORKER_THREADS, "0")),
+                parseBoolean(optionalEnv(ENV_REUSE_PORT, "false")),
+                parseUnsignedInt(optionalEnv(
+                        ENV_WRITE_BUFFER_LOW_WATER_MARK,
+                        String.valueOf(TransportConfig.DEFAULT_LOW_WATER_MARK)
+                )),
+                parseUnsignedInt(optionalEnv(
+                        ENV_WRITE_BUFFER_HIGH_WATER_MARK,
+                        String.valueOf(TransportConfig.DEFAULT_HIGH_WATER_MARK)
+                ))
+        );
+    }
+
+    private MetricsConfig metricsConfig() {
+        return new MetricsConfig(
+                parseUnsignedInt(optionalEnv(
+                        ENV_QUERY_STATISTICS_SIZE,
+                        String.valueOf(MetricsConfig.DEFAULT_QUERY_STATISTICS_SIZE)
+                )),
+                parseUnsignedInt(optionalEnv(
+                        ENV_QUERY_STATISTICS_SAMPLE_EVERY,
+                        String.valueOf(MetricsConfig.DEFAULT_QUERY_SAMPLE_EVERY)
+                ))
+        );
+    }
+
+    QueryStatistics getQueryStatistics() {
+        return app.getMetrics().getQueryStatistics();
+    }
+
+    // Comma separated host[:port] pairs
+    private static List<Endpoint> endpoints(final String list, final int defaultPort) {
+        final List<Endpoint> endpoints = new ArrayList<>();
+        for (final String entry : list.split(",")) {
+            final String trimmed = entry.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            final int colon = trimmed.lastIndexOf(':');
+            endpoints.add(colon < 0
+                    ? new Endpoint(trimmed, defaultPort)
+                    : new Endpoint(trimmed.substring(0, colon), parseUnsignedInt(trimmed.substring(colon + 1))));
+        }
+        return endpoints;
+    }
+
+    // Comma separated route names
+    private static List<String> names(final String list) {
+        final List<String> names = new ArrayList<>();
+        for (final String entry : list.split(",")) {
+            if (!entry.trim().isEmpty()) {
+                names.add(entry.trim());
+            }
         }
-        return value;
+        return names;
     }
 
-    private String requireEnv(final String var) {
+    // E.g. PSQLPROXY_ROUTE_ORDERS_BIND_PORT for PSQLPROXY_BIND_PORT
+    private static String routeVar(final String route, final String var) {
+        return ENV_ROUTE_PREFIX + route + "_" + var.substring(PREFIX.length());
+    }
+
+    private static Optional<String> env(final String var) {
         final String value = System.getenv(var);
         if (value == null || value.trim().isEmpty()) {
-            throw new IllegalArgumentException("Missing required environment variable: " + var);
+            return Optional.empty();
+        }
+        return Optional.of(value);
+    }
+
+    // The route's own variable takes precedence over the global one
+    private static Optional<String> env(final Optional<String> route, final String var) {
+        final Optional<String> routeValue = route.flatMap(name -> env(routeVar(name, var)));
+        return routeValue.isPresent() ? routeValue : env(var);
+    }
+
+    private String optionalEnv(final String var, final String def) {
+        return optionalEnv(Optional.empty(), var, def);
+    }
+
+    private String optionalEnv(final Optional<String> route, final String var, final String def) {
+        return env(route, var).orElse(def);
+    }
+
+    private String requireEnv(final Optional<String> route, final String var) {
+        return env(route, var).orElseThrow(() -> new IllegalArgumentException(
+                "Missing required environment variable: "
+                        + route.map(name -> routeVar(name, var) + " or ").orElse("")
+                        + var
+        ));
+    }
+
+    private static byte[] readFile(final String location) {
+        try {
+            return Files.readAllBytes(Paths.get(location));
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Failed to read " + location, e);
         }
-        return value;
     }
 
     void onStop(@Observes ShutdownEvent ev) {
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.benchmarks;
+
+import com.dajudge.proxybase.config.Endpoint;
+import com.dajudge.psqlproxy.protocol.PostgresSslConfig;
+import com.dajudge.psqlproxy.protocol.TrustStoreConfig;
+import com.dajudge.psqlproxy.testutil.PostgresContainerFactory;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.UUID;
+
+import static com.dajudge.psqlproxy.testutil.PostgresContainerFactory.DB_DATABASE;
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.sql.DriverManager.getConnection;
+
+/**
+ * Shared setup for benchmarks running against a PostgreSQL container or a
+ * {@link com.dajudge.psqlproxy.testutil.fake.FakePostgres}.
+ */
+public final class BenchmarkEnvironment {
+    public static final Endpoint PROXY_ENDPOINT = new Endpoint("localhost", 55433);
+    private static final PostgresContainerFactory CONTAINER_FACTORY = new PostgresContainerFactory("localhost");
+
+    private BenchmarkEnvironment() {
+    }
+
+    public static PostgreSQLContainer<?> startPostgres(final boolean sslEnabled, final String... command) {
+        final PostgreSQLContainer<?> container = CONTAINER_FACTORY.createDatabaseContainer(sslEnabled);
+        if (command.length > 0) {
+            container.withCommand(command);
+        }
+        container.start();
+        return container;
+    }
+
+    public static Endpoint endpoint(final PostgreSQLContainer<?> container) {
+        return new Endpoint("localhost", container.getMappedPort(5432));
+    }
+
+    public static PostgresSslConfig plaintextSslConfig(final Endpoint serverEndpoint) {
+        return new PostgresSslConfig(
+                false,
+                new TrustStoreConfig("unused", "unused", "pkcs12", 30000),
+                false,
+                serverEndpoint.getHost(),
+                new HashMap<String, byte[]>()::get
+        );
+    }
+
+    public static PostgresSslConfig sslConfig(final Endpoint serverEndpoint) {
+        final String truststorePassword = UUID.randomUUID().toString();
+        return sslConfig(serverEndpoint, CONTAINER_FACTORY.getTrustStore(truststorePassword), truststorePassword);
+    }
+
+    public static PostgresSslConfig sslConfig(
+            final Endpoint serverEndpoint,
+            final byte[] truststore,
+            final String truststorePassword
+    ) {
+        final TrustStoreConfig trustStore = new TrustStoreConfig(
+                "truststore",
+                "truststore-password",
+                "pkcs12",
+                30000
+        );
+        final HashMap<String, byte[]> files = new HashMap<>();
+        files.put("truststore", truststore);
+        files.put("truststore-password", truststorePassword.getBytes(UTF_8));
+        return new PostgresSslConfig(
+                true,
+                trustStore,
+                true,
+                serverEndpoint.getHost(),
+                files::get
+        );
+    }
+
+    public static Connection connect(final Endpoint endpoint, final String options) throws SQLException {
+        return getConnection(format(
+                "jdbc:postgresql://%s:%s/%s?%s",
+                endpoint.getHost(),
+                endpoint.getPort(),
+                DB_DATABASE,
+                options
+        ));
+    }
+}
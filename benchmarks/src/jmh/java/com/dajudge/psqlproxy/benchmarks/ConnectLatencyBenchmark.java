@@ -0,0 +1,80 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.benchmarks;
+
+import com.dajudge.proxybase.config.Endpoint;
+import com.dajudge.psqlproxy.PostgresProxy;
+import com.dajudge.psqlproxy.PostgresProxyConfig;
+import com.dajudge.psqlproxy.pool.PoolConfig;
+import com.dajudge.psqlproxy.pool.PoolingMode;
+import org.openjdk.jmh.annotations.*;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static com.dajudge.psqlproxy.benchmarks.BenchmarkEnvironment.*;
+import static com.dajudge.psqlproxy.testutil.PostgresContainerFactory.DB_PASSWORD;
+import static com.dajudge.psqlproxy.testutil.PostgresContainerFactory.DB_USERNAME;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Time for a client to connect through the proxy to an SSL enabled server, with and without a pool of already
+ * authenticated server connections. Sample mode reports p50 and p99 among other percentiles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(MILLISECONDS)
+@Threads(4)
+@Fork(1)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+public class ConnectLatencyBenchmark {
+    @Param({"NONE", "SESSION"})
+    public PoolingMode poolingMode;
+
+    private PostgreSQLContainer<?> postgres;
+    private PostgresProxy proxy;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        postgres = startPostgres(true);
+        final Endpoint serverEndpoint = endpoint(postgres);
+        proxy = new PostgresProxy(new PostgresProxyConfig(
+                serverEndpoint,
+                PROXY_ENDPOINT,
+                DB_USERNAME,
+                DB_PASSWORD,
+                sslConfig(serverEndpoint)
+        )
+                .withPoolConfig(new PoolConfig(poolingMode, 8, 16, 60000, 1000)));
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        proxy.close();
+        postgres.stop();
+    }
+
+    @Benchmark
+    public boolean connect() throws SQLException {
+        try (Connection connection = BenchmarkEnvironment.connect(PROXY_ENDPOINT, "")) {
+            return connection.getAutoCommit();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.benchmarks;
+
+import com.dajudge.proxybase.RelayingChannelInboundHandler;
+import com.dajudge.proxybase.config.Endpoint;
+import com.dajudge.psqlproxy.DirectServerConnector;
+import com.dajudge.psqlproxy.transport.ProxyServer;
+import com.dajudge.psqlproxy.transport.TransportConfig;
+import com.dajudge.psqlproxy.transport.TransportType;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.*;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+import static com.dajudge.psqlproxy.benchmarks.BenchmarkEnvironment.PROXY_ENDPOINT;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * Round trip latency of small messages relayed through the proxy to an echo server, with the server connection
+ * registered on the client connection's event loop or on the next event loop of the worker group. Every benchmark
+ * thread is one client connection; use <code>-t</code> to vary the number of concurrently active connections.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(MICROSECONDS)
+@Threads(64)
+@Fork(1)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+public class EventLoopAffinityBenchmark {
+    private static final int MESSAGE_SIZE = 64;
+    private static final int WORKER_THREADS = 4;
+
+    @Param({"true", "false"})
+    public boolean colocated;
+
+    private EventLoopGroup echoGroup;
+    private Channel echoServer;
+    private ProxyServer proxy;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        echoGroup = new NioEventLoopGroup(1);
+        echoServer = new ServerBootstrap()
+                .group(echoGroup)
+                .channel(NioServerSocketChannel.class)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childHandler(new EchoHandler())
+                .bind("localhost", 0)
+                .syncUninterruptibly()
+                .channel();
+        final int echoPort = ((InetSocketAddress) echoServer.localAddress()).getPort();
+        final Endpoint echoEndpoint = new Endpoint("localhost", echoPort);
+        proxy = new ProxyServer(new TransportConfig(TransportType.NIO, WORKER_THREADS, false));
+        final Bootstrap bootstrap = proxy.newClientBootstrap();
+        final DirectServerConnector connector = new DirectServerConnector(bootstrap, echoEndpoint);
+        proxy.bind(PROXY_ENDPOINT, new ChannelInitializer<Channel>() {
+            @Override
+            protected void initChannel(final Channel upstream) {
+                upstream.config().setAutoRead(false);
+                final ChannelHandler handler = new RelayingChannelInboundHandler("upstream", upstream);
+                final ChannelFuture connect = colocated
+                        ? connector.connect(upstream, handler)
+                        : bootstrap.clone().handler(handler).connect(echoEndpoint.getHost(), echoEndpoint.getPort());
+                connect.addListener((ChannelFuture future) -> {
+                    upstream.pipeline().addLast(new RelayingChannelInboundHandler("downstream", future.channel()));
+                    upstream.config().setAutoRead(true);
+                });
+            }
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        proxy.close();
+        echoServer.close().syncUninterruptibly();
+        echoGroup.shutdownGracefully().syncUninterruptibly();
+    }
+
+    @ChannelHandler.Sharable
+    private static class EchoHandler extends ChannelInboundHandlerAdapter {
+        @Override
+        public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+            ctx.writeAndFlush(msg);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        private final byte[] message = new byte[MESSAGE_SIZE];
+        private Socket socket;
+        private OutputStream out;
+        private InputStream in;
+
+        @Setup(Level.Trial)
+        public void connect() throws IOException {
+            socket = new Socket(PROXY_ENDPOINT.getHost(), PROXY_ENDPOINT.getPort());
+            socket.setTcpNoDelay(true);
+            out = socket.getOutputStream();
+            in = socket.getInputStream();
+        }
+
+        @TearDown(Level.Trial)
+        public void disconnect() throws IOException {
+            socket.close();
+        }
+    }
+
+    @Benchmark
+    public int roundTrip(final Client client) throws IOException {
+        client.out.write(client.message);
+        int read = 0;
+        while (read < MESSAGE_SIZE) {
+            final int count = client.in.read(client.message, read, MESSAGE_SIZE - read);
+            if (count < 0) {
+                throw new IOException("Connection closed by proxy");
+            }
+            read += count;
+        }
+        return read;
+    }
+}
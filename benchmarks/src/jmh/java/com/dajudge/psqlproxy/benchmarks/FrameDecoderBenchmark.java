@@ -0,0 +1,99 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.benchmarks;
+
+import com.dajudge.psqlproxy.benchmarks.chunked.ChunkedTypedFrameHandler;
+import com.dajudge.psqlproxy.protocol.frames.TypedFrameDecoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Decodes a stream of DataRow frames arriving in socket sized reads, comparing the chunked message accumulation
+ * used before with the slice based {@link TypedFrameDecoder}. The score is in frames per second; run with
+ * {@code -prof gc} to get the bytes allocated per frame ({@code gc.alloc.rate.norm}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class FrameDecoderBenchmark {
+    private static final int FRAMES = 1024;
+
+    @Param({"chunked", "slice"})
+    public String codec;
+
+    @Param({"32", "1024"})
+    public int frameSize;
+
+    @Param({"16384"})
+    public int readSize;
+
+    private EmbeddedChannel channel;
+    private ByteBuf stream;
+    private final List<ByteBuf> reads = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        stream = Unpooled.directBuffer(FRAMES * (frameSize + 5));
+        for (int i = 0; i < FRAMES; i++) {
+            stream.writeByte('D');
+            stream.writeInt(frameSize + 4);
+            stream.writeZero(frameSize);
+        }
+        for (int offset = 0; offset < stream.writerIndex(); offset += readSize) {
+            reads.add(stream.slice(offset, Math.min(readSize, stream.writerIndex() - offset)));
+        }
+        channel = new EmbeddedChannel(decoder(), new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+                ReferenceCountUtil.release(msg);
+            }
+        });
+    }
+
+    private ChannelHandler decoder() {
+        return "chunked".equals(codec) ? new ChunkedTypedFrameHandler() : new TypedFrameDecoder();
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        channel.finishAndReleaseAll();
+        stream.release();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public void decode() {
+        for (final ByteBuf read : reads) {
+            channel.writeInbound(read.retainedDuplicate());
+        }
+    }
+}
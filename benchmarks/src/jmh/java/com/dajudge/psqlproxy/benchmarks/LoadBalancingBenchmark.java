@@ -0,0 +1,130 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.benchmarks;
+
+import com.dajudge.proxybase.config.Endpoint;
+import com.dajudge.psqlproxy.PostgresProxy;
+import com.dajudge.psqlproxy.PostgresProxyConfig;
+import com.dajudge.psqlproxy.pool.PoolConfig;
+import com.dajudge.psqlproxy.pool.PoolingMode;
+import com.dajudge.psqlproxy.routing.BalancingPolicy;
+import com.dajudge.psqlproxy.routing.ReplicaConfig;
+import com.dajudge.psqlproxy.testutil.fake.FakePostgres;
+import com.dajudge.psqlproxy.testutil.fake.FakePostgresConfig;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+import static com.dajudge.psqlproxy.benchmarks.BenchmarkEnvironment.PROXY_ENDPOINT;
+import static com.dajudge.psqlproxy.benchmarks.BenchmarkEnvironment.plaintextSslConfig;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Autocommit <code>SELECT</code> statements spread across three fake replicas, one of them answering
+ * <code>slowMillis</code> later than the others. Sample time mode reports the latency percentiles, where
+ * round-robin sends every third statement to the slow replica while the latency-aware policies avoid it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(MICROSECONDS)
+@Threads(16)
+@Fork(1)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+public class LoadBalancingBenchmark {
+    @Param({"ROUND_ROBIN", "LEAST_CONNECTIONS", "EWMA"})
+    public BalancingPolicy policy;
+
+    @Param({"1"})
+    public int fastMillis;
+
+    @Param({"10"})
+    public int slowMillis;
+
+    private FakePostgres primary;
+    private FakePostgres[] replicas;
+    private PostgresProxy proxy;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        primary = new FakePostgres(FakePostgresConfig.DEFAULT);
+        replicas = new FakePostgres[]{
+                new FakePostgres(FakePostgresConfig.DEFAULT.withDelayMillis(fastMillis)),
+                new FakePostgres(FakePostgresConfig.DEFAULT.withDelayMillis(fastMillis)),
+                new FakePostgres(FakePostgresConfig.DEFAULT.withDelayMillis(slowMillis))
+        };
+        final Endpoint primaryEndpoint = endpoint(primary);
+        proxy = new PostgresProxy(new PostgresProxyConfig(
+                primaryEndpoint,
+                PROXY_ENDPOINT,
+                FakePostgresConfig.DEFAULT.getUsername(),
+                FakePostgresConfig.DEFAULT.getPassword(),
+                plaintextSslConfig(primaryEndpoint)
+        )
+                .withPoolConfig(new PoolConfig(PoolingMode.TRANSACTION, 0, 16, 60000, 10000))
+                .withReplicaConfig(new ReplicaConfig(
+                        Arrays.stream(replicas).map(LoadBalancingBenchmark::endpoint).collect(toList()),
+                        Optional.of(Pattern.compile("^\\s*SELECT\\b", Pattern.CASE_INSENSITIVE)),
+                        policy
+                )));
+    }
+
+    private static Endpoint endpoint(final FakePostgres server) {
+        return new Endpoint(server.getHost(), server.getPort());
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        proxy.close();
+        primary.close();
+        for (final FakePostgres replica : replicas) {
+            replica.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        private Connection connection;
+
+        @Setup(Level.Trial)
+        public void connect() throws SQLException {
+            connection = BenchmarkEnvironment.connect(PROXY_ENDPOINT, "preferQueryMode=simple");
+        }
+
+        @TearDown(Level.Trial)
+        public void disconnect() throws SQLException {
+            connection.close();
+        }
+    }
+
+    @Benchmark
+    public String select(final Client client) throws SQLException {
+        try (Statement statement = client.connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT 1")) {
+            resultSet.next();
+            return resultSet.getString(1);
+        }
+    }
+}
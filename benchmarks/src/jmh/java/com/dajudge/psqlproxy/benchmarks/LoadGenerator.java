@@ -0,0 +1,208 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.benchmarks;
+
+import com.dajudge.proxybase.config.Endpoint;
+import com.dajudge.psqlproxy.PostgresProxy;
+import com.dajudge.psqlproxy.PostgresProxyConfig;
+import com.dajudge.psqlproxy.pool.PoolConfig;
+import com.dajudge.psqlproxy.pool.PoolingMode;
+import com.dajudge.psqlproxy.protocol.PostgresSslConfig;
+import com.dajudge.psqlproxy.testutil.fake.FakeAuthMethod;
+import com.dajudge.psqlproxy.testutil.fake.FakePostgres;
+import com.dajudge.psqlproxy.testutil.fake.FakePostgresConfig;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.dajudge.psqlproxy.benchmarks.BenchmarkEnvironment.PROXY_ENDPOINT;
+import static com.dajudge.psqlproxy.benchmarks.BenchmarkEnvironment.plaintextSslConfig;
+import static com.dajudge.psqlproxy.benchmarks.BenchmarkEnvironment.sslConfig;
+import static java.lang.Boolean.parseBoolean;
+import static java.lang.Integer.getInteger;
+
+/**
+ * Drives concurrent JDBC clients through a {@link PostgresProxy} against a {@link FakePostgres} server, all in one
+ * process and without Docker, and reports connects and queries per second, the throughput and latency percentiles.
+ * Configured with system properties:
+ * <pre>
+ * java -Dclients=200 -Dmode=transaction -Dreconnect=100 -cp benchmarks-jmh.jar \
+ *     com.dajudge.psqlproxy.benchmarks.LoadGenerator
+ * </pre>
+ * <ul>
+ *     <li><code>clients</code>: concurrent clients, each on its own thread, default 50.</li>
+ *     <li><code>seconds</code>: duration of the measurement after <code>warmup</code> seconds, default 30 and 5.</li>
+ *     <li><code>reconnect</code>: queries after which a client reconnects, 0 to never reconnect.</li>
+ *     <li><code>mode</code>: the pooling mode, <code>none</code>, <code>session</code> or <code>transaction</code>,
+ *     with <code>serverConnections</code> connections per pool, default 20.</li>
+ *     <li><code>auth</code>: <code>trust</code>, <code>md5</code> or <code>scram_sha_256</code>, and <code>ssl</code>
+ *     to connect to the server with SSL.</li>
+ *     <li><code>rows</code>, <code>rowSize</code> and <code>delayMillis</code>: the server's answer to each query,
+ *     default one row of 32 bytes without delay.</li>
+ *     <li><code>query</code> and <code>queryMode</code>: the statement and the JDBC driver's
+ *     <code>preferQueryMode</code>, default <code>SELECT 1</code> with the extended protocol.</li>
+ * </ul>
+ */
+public final class LoadGenerator {
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final double BYTES_PER_MB = 1024 * 1024;
+    private static final String TRUSTSTORE_PASSWORD = "changeit";
+    private final int clients = getInteger("clients", 50);
+    private final int seconds = getInteger("seconds", 30);
+    private final int warmup = getInteger("warmup", 5);
+    private final int reconnect = getInteger("reconnect", 0);
+    private final String sql = System.getProperty("query", "SELECT 1");
+    private final String queryMode = System.getProperty("queryMode", "extended");
+    private final LongAdder connects = new LongAdder();
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final Recorder connectLatency = new Recorder(3);
+    private final Recorder queryLatency = new Recorder(3);
+    private volatile boolean running = true;
+
+    private LoadGenerator() {
+    }
+
+    public static void main(final String[] args) throws InterruptedException {
+        new LoadGenerator().run();
+    }
+
+    private void run() throws InterruptedException {
+        final FakePostgresConfig serverConfig = FakePostgresConfig.DEFAULT
+                .withAuthMethod(FakeAuthMethod.valueOf(property("auth", "md5")))
+                .withSsl(parseBoolean(System.getProperty("ssl", "false")))
+                .withRows(getInteger("rows", 1), getInteger("rowSize", 32))
+                .withDelayMillis(getInteger("delayMillis", 0));
+        final PoolingMode mode = PoolingMode.valueOf(property("mode", "none"));
+        try (final FakePostgres server = new FakePostgres(serverConfig);
+             final PostgresProxy proxy = new PostgresProxy(config(server, mode))) {
+            final List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                final Thread thread = new Thread(this::client, "client-" + i);
+                thread.start();
+                threads.add(thread);
+            }
+            Thread.sleep(TimeUnit.SECONDS.toMillis(warmup));
+            connects.reset();
+            queries.reset();
+            bytes.reset();
+            errors.reset();
+            connectLatency.reset();
+            queryLatency.reset();
+            final long start = System.nanoTime();
+            Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+            final double elapsed = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+            final Histogram connectHistogram = connectLatency.getIntervalHistogram();
+            final Histogram queryHistogram = queryLatency.getIntervalHistogram();
+            running = false;
+            for (final Thread thread : threads) {
+                thread.join();
+            }
+            System.out.printf(
+                    "%nclients=%d mode=%s auth=%s ssl=%s rows=%d rowSize=%d delayMillis=%d reconnect=%d%n",
+                    clients,
+                    mode,
+                    serverConfig.getAuthMethod(),
+                    serverConfig.isSslEnabled(),
+                    serverConfig.getRows(),
+                    serverConfig.getRowSize(),
+                    serverConfig.getDelayMillis(),
+                    reconnect
+            );
+            System.out.printf("connects/s:  %.1f%n", connects.sum() / elapsed);
+            System.out.printf("queries/s:   %.1f%n", queries.sum() / elapsed);
+            System.out.printf("throughput:  %.2f MB/s%n", bytes.sum() / BYTES_PER_MB / elapsed);
+            System.out.printf("errors:      %d%n", errors.sum());
+            print("connect", connectHistogram);
+            print("query", queryHistogram);
+        }
+    }
+
+    private static String property(final String name, final String defaultValue) {
+        return System.getProperty(name, defaultValue).toUpperCase(Locale.US);
+    }
+
+    private static void print(final String name, final Histogram histogram) {
+        System.out.printf(
+                "%-8s latency ms: p50=%.3f p90=%.3f p99=%.3f p99.9=%.3f max=%.3f%n",
+                name,
+                histogram.getValueAtPercentile(50) / NANOS_PER_MILLI,
+                histogram.getValueAtPercentile(90) / NANOS_PER_MILLI,
+                histogram.getValueAtPercentile(99) / NANOS_PER_MILLI,
+                histogram.getValueAtPercentile(99.9) / NANOS_PER_MILLI,
+                histogram.getMaxValue() / NANOS_PER_MILLI
+        );
+    }
+
+    private void client() {
+        while (running) {
+            final long connectStart = System.nanoTime();
+            try (final Connection connection = BenchmarkEnvironment.connect(
+                    PROXY_ENDPOINT,
+                    "user=postgres&preferQueryMode=" + queryMode
+            )) {
+                connectLatency.recordValue(System.nanoTime() - connectStart);
+                connects.increment();
+                for (int i = 0; running && (reconnect == 0 || i < reconnect); i++) {
+                    query(connection);
+                }
+            } catch (final SQLException e) {
+                errors.increment();
+            }
+        }
+    }
+
+    private void query(final Connection connection) throws SQLException {
+        final long start = System.nanoTime();
+        long received = 0;
+        try (final Statement statement = connection.createStatement();
+             final ResultSet resultSet = statement.executeQuery(sql)) {
+            while (resultSet.next()) {
+                received += resultSet.getString(1).length();
+            }
+        }
+        queryLatency.recordValue(System.nanoTime() - start);
+        queries.increment();
+        bytes.add(received);
+    }
+
+    private static PostgresProxyConfig config(final FakePostgres server, final PoolingMode mode) {
+        final Endpoint serverEndpoint = new Endpoint(server.getHost(), server.getPort());
+        final PostgresSslConfig sslConfig = server.getConfig().isSslEnabled()
+                ? sslConfig(serverEndpoint, server.getTrustStore(TRUSTSTORE_PASSWORD), TRUSTSTORE_PASSWORD)
+                : plaintextSslConfig(serverEndpoint);
+        return new PostgresProxyConfig(
+                serverEndpoint,
+                PROXY_ENDPOINT,
+                server.getConfig().getUsername(),
+                server.getConfig().getPassword(),
+                sslConfig
+        )
+                .withPoolConfig(new PoolConfig(mode, 0, getInteger("serverConnections", 20), 60000, 10000));
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.benchmarks;
+
+import com.dajudge.psqlproxy.metrics.FrameCounts;
+import com.dajudge.psqlproxy.metrics.ProxyMetrics;
+import com.dajudge.psqlproxy.protocol.TypedFrameHandler;
+import com.dajudge.psqlproxy.protocol.TypedFrameHandler.ContinueFrameProcessor;
+import com.dajudge.psqlproxy.protocol.frames.TypedFrameDecoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Decodes and forwards a stream of small DataRow frames with and without the connection and frame metrics, on
+ * several threads recording into the same {@link ProxyMetrics} like the event loops of a proxy do. The score is
+ * the time per frame, so the difference between both modes is the instrumentation overhead per frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Threads(4)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class MetricsOverheadBenchmark {
+    private static final int FRAMES = 1024;
+    private static final int FRAME_SIZE = 32;
+    private static final int READ_SIZE = 16384;
+
+    @Param({"true", "false"})
+    public boolean instrumented;
+
+    private EmbeddedChannel channel;
+    private ByteBuf stream;
+    private final List<ByteBuf> reads = new ArrayList<>();
+
+    @State(Scope.Benchmark)
+    public static class SharedMetrics {
+        private final ProxyMetrics metrics = new ProxyMetrics();
+    }
+
+    @Setup(Level.Trial)
+    public void setup(final SharedMetrics shared) {
+        stream = Unpooled.directBuffer(FRAMES * (FRAME_SIZE + 5));
+        for (int i = 0; i < FRAMES; i++) {
+            stream.writeByte('D');
+            stream.writeInt(FRAME_SIZE + 4);
+            stream.writeZero(FRAME_SIZE);
+        }
+        for (int offset = 0; offset < stream.writerIndex(); offset += READ_SIZE) {
+            reads.add(stream.slice(offset, Math.min(READ_SIZE, stream.writerIndex() - offset)));
+        }
+        final FrameCounts frameCounts = instrumented ? shared.metrics.getServer().getFrames() : FrameCounts.NONE;
+        channel = new EmbeddedChannel(
+                new TypedFrameDecoder(),
+                new TypedFrameHandler(new ContinueFrameProcessor(), frameCounts),
+                new ChannelInboundHandlerAdapter() {
+                    @Override
+                    public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+                        ReferenceCountUtil.release(msg);
+                    }
+                }
+        );
+        if (instrumented) {
+            channel.pipeline().addFirst(shared.metrics.getServer().newHandler());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        channel.finishAndReleaseAll();
+        stream.release();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public void relay() {
+        for (final ByteBuf read : reads) {
+            channel.writeInbound(read.retainedDuplicate());
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.benchmarks;
+
+import com.dajudge.proxybase.config.Endpoint;
+import com.dajudge.psqlproxy.PostgresProxy;
+import com.dajudge.psqlproxy.PostgresProxyConfig;
+import com.dajudge.psqlproxy.pool.PoolConfig;
+import com.dajudge.psqlproxy.pool.PoolingMode;
+import org.openjdk.jmh.annotations.*;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.dajudge.psqlproxy.benchmarks.BenchmarkEnvironment.*;
+import static com.dajudge.psqlproxy.testutil.PostgresContainerFactory.DB_PASSWORD;
+import static com.dajudge.psqlproxy.testutil.PostgresContainerFactory.DB_USERNAME;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Executes a prepared statement through the proxy in transaction pooling mode, with more clients than server
+ * connections. With <code>prepareThreshold=0</code> the JDBC driver parses the statement for every execution, with
+ * <code>prepareThreshold=1</code> it's parsed once per server connection and the plan is reused.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(SECONDS)
+@Threads(8)
+@Fork(1)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+public class PreparedStatementBenchmark {
+    private static final int ROWS = 10000;
+    private static final int SERVER_CONNECTIONS = 2;
+    private static final String QUERY = "SELECT a.id, a.name, b.value FROM items a JOIN items b ON b.id = a.id + 1 "
+            + "WHERE a.id = ? AND a.name LIKE 'item%'";
+
+    @Param({"0", "1"})
+    public int prepareThreshold;
+
+    private PostgreSQLContainer<?> postgres;
+    private PostgresProxy proxy;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        postgres = startPostgres(false);
+        final Endpoint serverEndpoint = endpoint(postgres);
+        try (Connection connection = BenchmarkEnvironment.connect(serverEndpoint, "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE items (id INT PRIMARY KEY, name TEXT, value TEXT)");
+            statement.execute("INSERT INTO items SELECT i, 'item' || i, md5(i::text) "
+                    + "FROM generate_series(1, " + ROWS + ") i");
+        }
+        proxy = new PostgresProxy(new PostgresProxyConfig(
+                serverEndpoint,
+                PROXY_ENDPOINT,
+                DB_USERNAME,
+                DB_PASSWORD,
+                plaintextSslConfig(serverEndpoint)
+        )
+                .withPoolConfig(new PoolConfig(
+                        PoolingMode.TRANSACTION,
+                        SERVER_CONNECTIONS,
+                        SERVER_CONNECTIONS,
+                        60000,
+                        1000,
+                        PoolConfig.DEFAULT_MAX_PREPARED_STATEMENTS
+                )));
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        proxy.close();
+        postgres.stop();
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        private Connection connection;
+        private PreparedStatement statement;
+
+        @Setup(Level.Trial)
+        public void connect(final PreparedStatementBenchmark benchmark) throws SQLException {
+            connection = BenchmarkEnvironment.connect(
+                    PROXY_ENDPOINT,
+                    "prepareThreshold=" + benchmark.prepareThreshold
+            );
+            statement = connection.prepareStatement(QUERY);
+        }
+
+        @TearDown(Level.Trial)
+        public void disconnect() throws SQLException {
+            statement.close();
+            connection.close();
+        }
+    }
+
+    @Benchmark
+    public String execute(final Client client) throws SQLException {
+        client.statement.setInt(1, ThreadLocalRandom.current().nextInt(1, ROWS));
+        try (ResultSet resultSet = client.statement.executeQuery()) {
+            return resultSet.next() ? resultSet.getString(3) : null;
+        }
+    }
+}
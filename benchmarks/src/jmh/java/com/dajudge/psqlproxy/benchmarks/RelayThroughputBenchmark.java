@@ -0,0 +1,89 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.benchmarks;
+
+import com.dajudge.psqlproxy.protocol.TypedFrameHandler;
+import com.dajudge.psqlproxy.protocol.TypedFrameHandler.ContinueFrameProcessor;
+import com.dajudge.psqlproxy.protocol.TypedFrameHandler.RawRelayFrameProcessor;
+import com.dajudge.psqlproxy.protocol.frames.TypedFrameDecoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import org.openjdk.jmh.annotations.*;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Relays reads of DataRow frames from the server after startup, comparing per-frame processing with raw relay.
+ * The score is in rows per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class RelayThroughputBenchmark {
+    private static final int ROWS_PER_READ = 512;
+
+    @Param({"false", "true"})
+    public boolean rawRelay;
+
+    @Param({"32", "1024"})
+    public int rowSize;
+
+    private EmbeddedChannel channel;
+    private ByteBuf read;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        read = Unpooled.directBuffer(ROWS_PER_READ * (rowSize + 5));
+        for (int i = 0; i < ROWS_PER_READ; i++) {
+            read.writeByte('D');
+            read.writeInt(rowSize + 4);
+            read.writeZero(rowSize);
+        }
+        channel = new EmbeddedChannel(
+                new TypedFrameDecoder(),
+                new TypedFrameHandler(rawRelay ? new RawRelayFrameProcessor() : new ContinueFrameProcessor()),
+                new ChannelInboundHandlerAdapter() {
+                    @Override
+                    public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+                        ReferenceCountUtil.release(msg);
+                    }
+                }
+        );
+        // The first read completes startup, so raw relay is active from here
+        relay();
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        channel.finishAndReleaseAll();
+        read.release();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS_PER_READ)
+    public void relay() {
+        channel.writeInbound(read.retainedDuplicate());
+    }
+}
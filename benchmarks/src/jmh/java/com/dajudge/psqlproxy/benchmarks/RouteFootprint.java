@@ -0,0 +1,182 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.benchmarks;
+
+import com.dajudge.proxybase.config.Endpoint;
+import com.dajudge.psqlproxy.PostgresProxy;
+import com.dajudge.psqlproxy.PostgresProxyConfig;
+import com.dajudge.psqlproxy.RouteConfig;
+import com.dajudge.psqlproxy.metrics.MetricsConfig;
+import com.dajudge.psqlproxy.pool.PoolConfig;
+import com.dajudge.psqlproxy.pool.PoolingMode;
+import com.dajudge.psqlproxy.testutil.fake.FakePostgres;
+import com.dajudge.psqlproxy.testutil.fake.FakePostgresConfig;
+import com.dajudge.psqlproxy.transport.TransportConfig;
+import io.netty.buffer.PooledByteBufAllocator;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static com.dajudge.psqlproxy.benchmarks.BenchmarkEnvironment.PROXY_ENDPOINT;
+import static com.dajudge.psqlproxy.benchmarks.BenchmarkEnvironment.plaintextSslConfig;
+import static java.lang.Integer.getInteger;
+import static java.lang.String.format;
+import static java.sql.DriverManager.getConnection;
+
+/**
+ * Compares the footprint of N sidecars, each a {@link PostgresProxy} with its own event loops, with one
+ * {@link PostgresProxy} serving N routes chosen by the database. Every route gets <code>clients</code> open
+ * connections to a shared {@link FakePostgres}, then the growth of threads, heap, RSS and pooled direct memory over
+ * the process before starting the proxies is reported. Run each mode in its own JVM:
+ * <pre>
+ * java -Dmode=sidecars -Droutes=8 -cp benchmarks-jmh.jar com.dajudge.psqlproxy.benchmarks.RouteFootprint
+ * java -Dmode=routes -Droutes=8 -cp benchmarks-jmh.jar com.dajudge.psqlproxy.benchmarks.RouteFootprint
+ * </pre>
+ * The sidecars share this JVM and its allocator, so real sidecars additionally pay the baseline RSS of one JVM each,
+ * which is reported as well.
+ */
+public final class RouteFootprint {
+    private static final long KB = 1024;
+    private static final String SIDECARS = "sidecars";
+    private final String mode = System.getProperty("mode", "routes");
+    private final int routes = getInteger("routes", 8);
+    private final int clients = getInteger("clients", 10);
+
+    private RouteFootprint() {
+    }
+
+    public static void main(final String[] args) throws SQLException, IOException {
+        new RouteFootprint().run();
+    }
+
+    @SuppressWarnings(value = "PMD.CloseResource") // The connections stay open until measured, closed in finally
+    private void run() throws SQLException, IOException {
+        final long jvmRss = rssKb();
+        final List<PostgresProxy> proxies = new ArrayList<>();
+        final List<Connection> connections = new ArrayList<>();
+        try (final FakePostgres server = new FakePostgres(FakePostgresConfig.DEFAULT)) {
+            final Snapshot before = new Snapshot();
+            if (SIDECARS.equals(mode)) {
+                for (int i = 0; i < routes; i++) {
+                    proxies.add(new PostgresProxy(config(server, endpoint(i))));
+                }
+            } else {
+                final List<RouteConfig> routeConfigs = new ArrayList<>();
+                for (int i = 0; i < routes; i++) {
+                    routeConfigs.add(new RouteConfig(
+                            "route" + i,
+                            Optional.of(database(i)),
+                            Optional.empty(),
+                            config(server, PROXY_ENDPOINT)
+                    ));
+                }
+                proxies.add(new PostgresProxy(TransportConfig.DEFAULT, MetricsConfig.DEFAULT, routeConfigs));
+            }
+            for (int i = 0; i < routes; i++) {
+                final Endpoint endpoint = SIDECARS.equals(mode) ? endpoint(i) : PROXY_ENDPOINT;
+                for (int j = 0; j < clients; j++) {
+                    connections.add(connect(endpoint, database(i)));
+                }
+            }
+            final Snapshot after = new Snapshot();
+            System.out.printf("%nmode=%s routes=%d clients=%d%n", mode, routes, clients);
+            System.out.printf("threads:        +%d%n", after.threads - before.threads);
+            System.out.printf("heap after gc:  +%d KB%n", (after.heap - before.heap) / KB);
+            System.out.printf("rss:            +%d KB%n", after.rss - before.rss);
+            System.out.printf("direct pooled:  %d KB%n", after.direct / KB);
+            System.out.printf("jvm rss:        %d KB%n", jvmRss);
+        } finally {
+            for (final Connection connection : connections) {
+                connection.close();
+            }
+            proxies.forEach(PostgresProxy::close);
+        }
+    }
+
+    private static Endpoint endpoint(final int route) {
+        return new Endpoint(PROXY_ENDPOINT.getHost(), PROXY_ENDPOINT.getPort() + route);
+    }
+
+    private static String database(final int route) {
+        return "db" + route;
+    }
+
+    private static Connection connect(final Endpoint endpoint, final String database) throws SQLException {
+        final Connection connection = getConnection(format(
+                "jdbc:postgresql://%s:%d/%s?user=postgres",
+                endpoint.getHost(),
+                endpoint.getPort(),
+                database
+        ));
+        try (final Statement statement = connection.createStatement();
+             final ResultSet resultSet = statement.executeQuery("SELECT 1")) {
+            while (resultSet.next()) {
+                resultSet.getString(1);
+            }
+        }
+        return connection;
+    }
+
+    private static long rssKb() throws IOException {
+        for (final String line : Files.readAllLines(Paths.get("/proc/self/status"), StandardCharsets.US_ASCII)) {
+            if (line.startsWith("VmRSS:")) {
+                return Long.parseLong(line.replaceAll("[^0-9]", ""));
+            }
+        }
+        return 0;
+    }
+
+    private static PostgresProxyConfig config(final FakePostgres server, final Endpoint proxyEndpoint) {
+        final Endpoint serverEndpoint = new Endpoint(server.getHost(), server.getPort());
+        return new PostgresProxyConfig(
+                serverEndpoint,
+                proxyEndpoint,
+                server.getConfig().getUsername(),
+                server.getConfig().getPassword(),
+                plaintextSslConfig(serverEndpoint)
+        )
+                .withPoolConfig(new PoolConfig(PoolingMode.NONE, 0, 1, 60000, 10000));
+    }
+
+    private static final class Snapshot {
+        private final int threads;
+        private final long heap;
+        private final long rss;
+        private final long direct;
+
+        @SuppressWarnings(value = "PMD.DoNotCallGarbageCollectionExplicitly") // Only live objects are of interest
+        private Snapshot() throws IOException {
+            System.gc();
+            System.gc();
+            threads = ManagementFactory.getThreadMXBean().getThreadCount();
+            heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+            rss = rssKb();
+            direct = PooledByteBufAllocator.DEFAULT.metric().usedDirectMemory();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.benchmarks;
+
+import com.dajudge.proxybase.config.Endpoint;
+import com.dajudge.psqlproxy.RouteConfig;
+import com.dajudge.psqlproxy.metrics.ProxyMetrics;
+import com.dajudge.psqlproxy.pool.ServerConnection;
+import com.dajudge.psqlproxy.pool.ServerConnector;
+import com.dajudge.psqlproxy.protocol.DownstreamSslContext;
+import com.dajudge.psqlproxy.protocol.scram.ScramKeyCache;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import org.openjdk.jmh.annotations.*;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static com.dajudge.psqlproxy.benchmarks.BenchmarkEnvironment.endpoint;
+import static com.dajudge.psqlproxy.benchmarks.BenchmarkEnvironment.plaintextSslConfig;
+import static com.dajudge.psqlproxy.testutil.PostgresContainerFactory.DB_DATABASE;
+import static com.dajudge.psqlproxy.testutil.PostgresContainerFactory.DB_PASSWORD;
+import static com.dajudge.psqlproxy.testutil.PostgresContainerFactory.DB_USERNAME;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Connect throughput of authenticated server connections against a server requiring SCRAM-SHA-256, deriving the
+ * keys for every connection (<code>cacheSize=0</code>) or once per salt and iteration count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(SECONDS)
+@Threads(8)
+@Fork(1)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+public class ScramConnectBenchmark {
+    // The default image of the test containers doesn't support SCRAM-SHA-256 yet
+    private static final String SCRAM_IMAGE = "postgres:13";
+    private static final String SCRAM = "scram-sha-256";
+
+    @Param({"0", "64"})
+    public int cacheSize;
+
+    private PostgreSQLContainer<?> postgres;
+    private EventLoopGroup eventLoopGroup;
+    private DownstreamSslContext sslContext;
+    private ScramKeyCache scramKeyCache;
+    private ServerConnector connector;
+    private final Map<String, String> startupParameters = Collections.singletonMap("database", DB_DATABASE);
+
+    @Setup(Level.Trial)
+    public void setup() {
+        postgres = new PostgreSQLContainer<>(SCRAM_IMAGE)
+                .withDatabaseName(DB_DATABASE)
+                .withUsername(DB_USERNAME)
+                .withPassword(DB_PASSWORD)
+                .withEnv("POSTGRES_HOST_AUTH_METHOD", SCRAM)
+                .withEnv("POSTGRES_INITDB_ARGS", "--auth-host=" + SCRAM);
+        postgres.withCommand("postgres", "-c", "password_encryption=" + SCRAM);
+        postgres.start();
+        final Endpoint serverEndpoint = endpoint(postgres);
+        eventLoopGroup = new NioEventLoopGroup(4);
+        sslContext = new DownstreamSslContext(plaintextSslConfig(serverEndpoint), serverEndpoint.getPort());
+        scramKeyCache = new ScramKeyCache(cacheSize);
+        final ProxyMetrics metrics = new ProxyMetrics();
+        connector = new ServerConnector(
+                new Bootstrap().group(eventLoopGroup).channel(NioSocketChannel.class),
+                serverEndpoint,
+                DB_USERNAME,
+                DB_PASSWORD,
+                sslContext,
+                scramKeyCache,
+                metrics,
+                metrics.newEndpoint(RouteConfig.DEFAULT_NAME, "primary", serverEndpoint)
+        );
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        eventLoopGroup.shutdownGracefully().syncUninterruptibly();
+        scramKeyCache.close();
+        sslContext.close();
+        postgres.stop();
+    }
+
+    @Benchmark
+    public boolean connect() {
+        final ServerConnection connection = connector.connect(
+                eventLoopGroup,
+                startupParameters,
+                eventLoopGroup.next().newPromise()
+        ).syncUninterruptibly().getNow();
+        try {
+            return connection.isActive();
+        } finally {
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.benchmarks;
+
+import com.dajudge.proxybase.config.Endpoint;
+import com.dajudge.psqlproxy.PostgresProxy;
+import com.dajudge.psqlproxy.PostgresProxyConfig;
+import com.dajudge.psqlproxy.pool.PoolConfig;
+import com.dajudge.psqlproxy.pool.PoolingMode;
+import org.openjdk.jmh.annotations.*;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.dajudge.psqlproxy.benchmarks.BenchmarkEnvironment.*;
+import static com.dajudge.psqlproxy.testutil.PostgresContainerFactory.DB_PASSWORD;
+import static com.dajudge.psqlproxy.testutil.PostgresContainerFactory.DB_USERNAME;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Queries returning many small DataRow frames through the proxy. The score is in rows per second. After each
+ * iteration the number of write syscalls per query of the whole JVM (proxy and JDBC client) is printed, taken
+ * from <code>/proc/self/io</code>, so it's only available on Linux.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(SECONDS)
+@Threads(4)
+@Fork(1)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+public class SmallRowsBenchmark {
+    private static final int ROWS = 1000;
+    private static final Path PROC_SELF_IO = Paths.get("/proc/self/io");
+    private static final String WRITE_SYSCALLS = "syscw:";
+
+    @Param({"NONE", "TRANSACTION"})
+    public PoolingMode poolingMode;
+
+    private final LongAdder queries = new LongAdder();
+    private PostgreSQLContainer<?> postgres;
+    private PostgresProxy proxy;
+    private long iterationStartSyscalls;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        postgres = startPostgres(false);
+        final Endpoint serverEndpoint = endpoint(postgres);
+        proxy = new PostgresProxy(new PostgresProxyConfig(
+                serverEndpoint,
+                PROXY_ENDPOINT,
+                DB_USERNAME,
+                DB_PASSWORD,
+                plaintextSslConfig(serverEndpoint)
+        )
+                .withPoolConfig(new PoolConfig(poolingMode, 0, 4, 60000, 1000)));
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        proxy.close();
+        postgres.stop();
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() throws IOException {
+        queries.reset();
+        iterationStartSyscalls = writeSyscalls();
+    }
+
+    @TearDown(Level.Iteration)
+    public void endIteration() throws IOException {
+        final double syscalls = writeSyscalls() - iterationStartSyscalls;
+        System.out.printf("%n%s: %.1f write syscalls per query%n", poolingMode, syscalls / queries.sum());
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        private Connection connection;
+
+        @Setup(Level.Trial)
+        public void connect() throws SQLException {
+            connection = BenchmarkEnvironment.connect(PROXY_ENDPOINT, "prepareThreshold=0");
+        }
+
+        @TearDown(Level.Trial)
+        public void disconnect() throws SQLException {
+            connection.close();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int query(final Client client) throws SQLException {
+        try (Statement statement = client.connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT generate_series(1, " + ROWS + ")")) {
+            int rows = 0;
+            while (resultSet.next()) {
+                rows++;
+            }
+            queries.increment();
+            return rows;
+        }
+    }
+
+    private static long writeSyscalls() throws IOException {
+        if (!Files.exists(PROC_SELF_IO)) {
+            return 0;
+        }
+        for (final String line : Files.readAllLines(PROC_SELF_IO)) {
+            if (line.startsWith(WRITE_SYSCALLS)) {
+                return Long.parseLong(line.substring(WRITE_SYSCALLS.length()).trim());
+            }
+        }
+        return 0;
+    }
+}
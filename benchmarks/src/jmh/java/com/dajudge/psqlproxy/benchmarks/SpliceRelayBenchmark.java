@@ -0,0 +1,155 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.benchmarks;
+
+import com.dajudge.proxybase.config.Endpoint;
+import com.dajudge.psqlproxy.PostgresProxy;
+import com.dajudge.psqlproxy.PostgresProxyConfig;
+import com.dajudge.psqlproxy.RelayConfig;
+import com.dajudge.psqlproxy.transport.TransportConfig;
+import com.dajudge.psqlproxy.transport.TransportType;
+import org.openjdk.jmh.annotations.*;
+import org.postgresql.PGConnection;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.dajudge.psqlproxy.benchmarks.BenchmarkEnvironment.*;
+import static com.dajudge.psqlproxy.testutil.PostgresContainerFactory.DB_PASSWORD;
+import static com.dajudge.psqlproxy.testutil.PostgresContainerFactory.DB_USERNAME;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Compares relaying frame by frame, as raw bytes and with splice(2) for bulk transfers from the server. Each
+ * operation is a <code>COPY ... TO STDOUT</code> of {@value #COPY_ROWS} rows of {@value #COPY_ROW_SIZE} bytes. After
+ * each iteration the CPU time spent by the proxy's event loops per GB relayed is printed. Requires the epoll
+ * transport, otherwise splice falls back to raw relay.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(SECONDS)
+@Threads(4)
+@Fork(1)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+public class SpliceRelayBenchmark {
+    private static final int COPY_ROWS = 10_000;
+    private static final int COPY_ROW_SIZE = 1024;
+    private static final String COPY_QUERY = "COPY (SELECT repeat('x', " + COPY_ROW_SIZE + ") "
+            + "FROM generate_series(1, " + COPY_ROWS + ")) TO STDOUT";
+    private static final String WORKER_THREAD_PREFIX = "psqlproxy-worker";
+    private static final double NANOS_PER_MILLI = 1_000_000d;
+    private static final double BYTES_PER_GB = 1024d * 1024 * 1024;
+
+    @Param({"frames", "raw", "splice"})
+    public String relay;
+
+    private final LongAdder bytesRelayed = new LongAdder();
+    private PostgreSQLContainer<?> postgres;
+    private PostgresProxy proxy;
+    private long iterationStartCpuNanos;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        postgres = startPostgres(false);
+        final Endpoint serverEndpoint = endpoint(postgres);
+        proxy = new PostgresProxy(new PostgresProxyConfig(
+                serverEndpoint,
+                PROXY_ENDPOINT,
+                DB_USERNAME,
+                DB_PASSWORD,
+                plaintextSslConfig(serverEndpoint)
+        )
+                .withRelayConfig(new RelayConfig(!"frames".equals(relay), "splice".equals(relay)))
+                .withTransportConfig(new TransportConfig(TransportType.EPOLL, 0, false)));
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        proxy.close();
+        postgres.stop();
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        bytesRelayed.reset();
+        iterationStartCpuNanos = workerCpuNanos();
+    }
+
+    @TearDown(Level.Iteration)
+    public void endIteration() {
+        final double cpuMillis = (workerCpuNanos() - iterationStartCpuNanos) / NANOS_PER_MILLI;
+        final double gigabytes = bytesRelayed.sum() / BYTES_PER_GB;
+        System.out.printf("%n%s: %.0f ms proxy CPU per GB relayed%n", relay, cpuMillis / gigabytes);
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        private Connection connection;
+
+        @Setup(Level.Trial)
+        public void connect() throws SQLException {
+            connection = BenchmarkEnvironment.connect(PROXY_ENDPOINT, "");
+        }
+
+        @TearDown(Level.Trial)
+        public void disconnect() throws SQLException {
+            connection.close();
+        }
+    }
+
+    @Benchmark
+    public long copy(final Client client) throws SQLException, IOException {
+        final CountingOutputStream out = new CountingOutputStream();
+        client.connection.unwrap(PGConnection.class).getCopyAPI().copyOut(COPY_QUERY, out);
+        bytesRelayed.add(out.count);
+        return out.count;
+    }
+
+    private static long workerCpuNanos() {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long nanos = 0;
+        for (final ThreadInfo thread : threads.getThreadInfo(threads.getAllThreadIds())) {
+            if (thread != null && thread.getThreadName().startsWith(WORKER_THREAD_PREFIX)) {
+                nanos += threads.getThreadCpuTime(thread.getThreadId());
+            }
+        }
+        return nanos;
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(final int b) {
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.benchmarks;
+
+import com.dajudge.proxybase.certs.KeyStoreConfig;
+import com.dajudge.proxybase.config.DownstreamSslConfig;
+import com.dajudge.psqlproxy.protocol.DownstreamSslContext;
+import com.dajudge.psqlproxy.protocol.PostgresSslConfig;
+import com.dajudge.psqlproxy.protocol.TrustStoreConfig;
+import com.dajudge.psqlproxy.testutil.TestCertificateAuthority;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelHandler;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.dajudge.proxybase.DownstreamSslHandlerFactory.createDownstreamSslHandler;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Optional.empty;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * Measures the time it takes to set up the SSL handler for a new server connection, comparing a handler built from
+ * the truststore on every connection with one created from the cached {@link DownstreamSslContext}. Doesn't need a
+ * PostgreSQL container.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class SslHandlerSetupBenchmark {
+    private static final String HOSTNAME = "localhost";
+    private static final String TRUSTSTORE = "truststore";
+    private static final String TRUSTSTORE_PASSWORD = "truststore-password";
+    private static final String PASSWORD = "changeit";
+
+    private final Map<String, byte[]> files = new HashMap<>();
+    private DownstreamSslConfig downstreamSslConfig;
+    private DownstreamSslContext sslContext;
+
+    @Setup(Level.Trial)
+    public void setup() throws GeneralSecurityException, IOException {
+        final ByteArrayOutputStream trustStore = new ByteArrayOutputStream();
+        new TestCertificateAuthority("CN=test-ca", "pkcs12").getTrustStore().store(trustStore, PASSWORD.toCharArray());
+        files.put(TRUSTSTORE, trustStore.toByteArray());
+        files.put(TRUSTSTORE_PASSWORD, PASSWORD.getBytes(UTF_8));
+        downstreamSslConfig = new DownstreamSslConfig(new KeyStoreConfig(
+                TRUSTSTORE,
+                "".toCharArray(),
+                TRUSTSTORE_PASSWORD,
+                "".toCharArray(),
+                null,
+                "pkcs12",
+                30000
+        ), empty(), true);
+        sslContext = new DownstreamSslContext(new PostgresSslConfig(
+                true,
+                new TrustStoreConfig(TRUSTSTORE, TRUSTSTORE_PASSWORD, "pkcs12", 30000),
+                true,
+                HOSTNAME,
+                files::get
+        ), 5432);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        sslContext.close();
+    }
+
+    @Benchmark
+    public ChannelHandler perConnection() {
+        return createDownstreamSslHandler(downstreamSslConfig, HOSTNAME, System::currentTimeMillis, files::get);
+    }
+
+    @Benchmark
+    public ChannelHandler cached() {
+        return sslContext.newHandler(ByteBufAllocator.DEFAULT);
+    }
+}
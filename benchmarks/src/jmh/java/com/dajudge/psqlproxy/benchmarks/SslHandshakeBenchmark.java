@@ -0,0 +1,192 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.benchmarks;
+
+import com.dajudge.psqlproxy.protocol.DownstreamSslContext;
+import com.dajudge.psqlproxy.protocol.PostgresSslConfig;
+import com.dajudge.psqlproxy.protocol.TrustStoreConfig;
+import com.dajudge.psqlproxy.testutil.TestCertificateAuthority;
+import com.dajudge.psqlproxy.testutil.TestCertificateAuthority.ServerKeyPair;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.openjdk.jmh.annotations.*;
+
+import javax.net.ssl.SSLSessionContext;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.security.GeneralSecurityException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * Measures connect latency including the SSL handshake towards a local SSL server for the JDK and the OpenSSL
+ * provider, with and without resuming cached sessions. After each iteration the CPU time the client event loop
+ * spent per handshake is printed. Doesn't need a PostgreSQL container.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class SslHandshakeBenchmark {
+    private static final String HOSTNAME = "localhost";
+    private static final String TRUSTSTORE = "truststore";
+    private static final String TRUSTSTORE_PASSWORD = "truststore-password";
+    private static final String PASSWORD = "changeit";
+    private static final String CLIENT_THREAD_PREFIX = "ssl-client";
+    private static final double NANOS_PER_MICRO = 1000d;
+
+    @Param({"JDK", "OPENSSL"})
+    public SslProvider provider;
+
+    @Param({"true", "false"})
+    public boolean resumption;
+
+    private final LongAdder handshakes = new LongAdder();
+    private EventLoopGroup serverGroup;
+    private EventLoopGroup clientGroup;
+    private Channel server;
+    private DownstreamSslContext sslContext;
+    private Bootstrap bootstrap;
+    private long iterationStartCpuNanos;
+
+    @Setup(Level.Trial)
+    public void setup() throws GeneralSecurityException, IOException {
+        final TestCertificateAuthority ca = new TestCertificateAuthority("CN=test-ca", "pkcs12");
+        final ServerKeyPair keyPair = ca.newServerKeyPair("CN=" + HOSTNAME);
+        final SslContext serverSslContext = SslContextBuilder.forServer(
+                new ByteArrayInputStream(keyPair.getCertificate()),
+                new ByteArrayInputStream(keyPair.getPrivateKey())
+        ).sslProvider(provider).build();
+        serverGroup = new NioEventLoopGroup(1);
+        server = new ServerBootstrap()
+                .group(serverGroup)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(final Channel ch) {
+                        ch.pipeline().addLast(serverSslContext.newHandler(ch.alloc()));
+                    }
+                })
+                .bind(HOSTNAME, 0)
+                .syncUninterruptibly()
+                .channel();
+        final ByteArrayOutputStream trustStore = new ByteArrayOutputStream();
+        ca.getTrustStore().store(trustStore, PASSWORD.toCharArray());
+        final Map<String, byte[]> files = new HashMap<>();
+        files.put(TRUSTSTORE, trustStore.toByteArray());
+        files.put(TRUSTSTORE_PASSWORD, PASSWORD.getBytes(UTF_8));
+        sslContext = new DownstreamSslContext(new PostgresSslConfig(
+                true,
+                new TrustStoreConfig(TRUSTSTORE, TRUSTSTORE_PASSWORD, "pkcs12", 30000),
+                false,
+                HOSTNAME,
+                files::get,
+                provider
+        ), ((InetSocketAddress) server.localAddress()).getPort());
+        clientGroup = new NioEventLoopGroup(1, new DefaultThreadFactory(CLIENT_THREAD_PREFIX));
+        bootstrap = new Bootstrap()
+                .group(clientGroup)
+                .channel(NioSocketChannel.class)
+                .remoteAddress(server.localAddress())
+                .handler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(final Channel ch) {
+                        // The SSL handler is added after connecting, like after the server's SSL response
+                    }
+                });
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        server.close().syncUninterruptibly();
+        sslContext.close();
+        clientGroup.shutdownGracefully().syncUninterruptibly();
+        serverGroup.shutdownGracefully().syncUninterruptibly();
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        handshakes.reset();
+        iterationStartCpuNanos = clientCpuNanos();
+    }
+
+    @TearDown(Level.Iteration)
+    public void endIteration() {
+        final double cpuMicros = (clientCpuNanos() - iterationStartCpuNanos) / NANOS_PER_MICRO;
+        System.out.printf("%n%s, resumption=%s: %.0f us client CPU per handshake%n",
+                provider, resumption, cpuMicros / handshakes.sum());
+    }
+
+    @Setup(Level.Invocation)
+    public void forgetSessions() {
+        if (!resumption) {
+            final SSLSessionContext sessions = sslContext.getSslContext().sessionContext();
+            for (final byte[] id : Collections.list(sessions.getIds())) {
+                sessions.getSession(id).invalidate();
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean connect() {
+        final Channel channel = bootstrap.connect().syncUninterruptibly().channel();
+        try {
+            final SslHandler sslHandler = sslContext.newHandler(channel.alloc());
+            channel.eventLoop().submit(() -> channel.pipeline().addFirst(sslHandler)).syncUninterruptibly();
+            final boolean success = sslHandler.handshakeFuture().syncUninterruptibly().isSuccess();
+            handshakes.increment();
+            return success;
+        } finally {
+            channel.close().syncUninterruptibly();
+        }
+    }
+
+    private static long clientCpuNanos() {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long nanos = 0;
+        for (final ThreadInfo thread : threads.getThreadInfo(threads.getAllThreadIds())) {
+            if (thread != null && thread.getThreadName().startsWith(CLIENT_THREAD_PREFIX)) {
+                nanos += threads.getThreadCpuTime(thread.getThreadId());
+            }
+        }
+        return nanos;
+    }
+}
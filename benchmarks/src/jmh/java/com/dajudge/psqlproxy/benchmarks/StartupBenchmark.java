@@ -0,0 +1,163 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.benchmarks;
+
+import com.dajudge.psqlproxy.metrics.ProxyMetrics;
+import com.dajudge.psqlproxy.protocol.DownstreamStartupProcessor;
+import com.dajudge.psqlproxy.protocol.TypedFrameHandler;
+import com.dajudge.psqlproxy.protocol.TypedFrameHandler.ContinueFrameProcessor;
+import com.dajudge.psqlproxy.protocol.UpstreamStartupHandler;
+import com.dajudge.psqlproxy.protocol.frames.TypedFrameDecoder;
+import com.dajudge.psqlproxy.protocol.frames.UntypedFrameDecoder;
+import com.dajudge.psqlproxy.protocol.messages.StartupMessage;
+import com.dajudge.psqlproxy.protocol.scram.ScramKeyCache;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * The steps of a connection's startup that don't involve the network: decoding the client's StartupMessage,
+ * parsing and serializing it, replacing the user in {@link UpstreamStartupHandler} and answering the server's MD5
+ * challenge in {@link DownstreamStartupProcessor}. The handler replaces itself after the first message, so
+ * <code>rewriteUser</code> sets up a fresh {@link EmbeddedChannel} each time; subtract <code>newChannel</code> for
+ * the cost of the handler, or see <code>replaceUser</code> for the rewrite alone. Run with {@code -prof gc} to get the bytes allocated per operation
+ * ({@code gc.alloc.rate.norm}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class StartupBenchmark {
+    private static final int AUTH_REQ_MD5 = 5;
+    // What the JDBC driver sends
+    private static final List<String> PARAMS = Arrays.asList(
+            "user", "postgres",
+            "database", "postgres",
+            "client_encoding", "UTF8",
+            "DateStyle", "ISO",
+            "TimeZone", "Europe/Berlin",
+            "extra_float_digits", "3",
+            "application_name", "PostgreSQL JDBC Driver"
+    );
+
+    private static final ByteBuf USERNAME = UpstreamStartupHandler.encodeUsername("proxyuser");
+
+    private final ByteBufAllocator alloc = PooledByteBufAllocator.DEFAULT;
+    private ByteBuf startupFrame;
+    private ByteBuf startupPayload;
+    private StartupMessage startupMessage;
+    private ByteBuf md5Request;
+    private EmbeddedChannel untypedChannel;
+    private EmbeddedChannel md5Channel;
+    private ScramKeyCache scramKeyCache;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        startupMessage = new StartupMessage((short) 3, (short) 0, PARAMS);
+        startupPayload = startupMessage.serialize(alloc);
+        startupFrame = Unpooled.directBuffer(startupPayload.readableBytes() + 4)
+                .writeInt(startupPayload.readableBytes() + 4)
+                .writeBytes(startupPayload, startupPayload.readerIndex(), startupPayload.readableBytes());
+        md5Request = Unpooled.directBuffer(13)
+                .writeByte('R')
+                .writeInt(12)
+                .writeInt(AUTH_REQ_MD5)
+                .writeBytes("salt".getBytes(UTF_8));
+        untypedChannel = new EmbeddedChannel(new UntypedFrameDecoder());
+        scramKeyCache = new ScramKeyCache(0);
+        md5Channel = new EmbeddedChannel(new TypedFrameDecoder(), new TypedFrameHandler(new DownstreamStartupProcessor(
+                "postgres",
+                "secret",
+                scramKeyCache,
+                new ProxyMetrics(),
+                new ContinueFrameProcessor()
+        )));
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        untypedChannel.finishAndReleaseAll();
+        md5Channel.finishAndReleaseAll();
+        scramKeyCache.close();
+        startupFrame.release();
+        startupPayload.release();
+        md5Request.release();
+    }
+
+    @Benchmark
+    public void decode() {
+        untypedChannel.writeInbound(startupFrame.retainedDuplicate());
+        ReferenceCountUtil.release(untypedChannel.readInbound());
+    }
+
+    @Benchmark
+    public StartupMessage parse() {
+        return new StartupMessage(startupPayload.duplicate());
+    }
+
+    @Benchmark
+    public void serialize() {
+        startupMessage.serialize(alloc).release();
+    }
+
+    @Benchmark
+    public void newChannel() {
+        final EmbeddedChannel channel = new EmbeddedChannel(
+                new UntypedFrameDecoder(),
+                new ChannelInboundHandlerAdapter()
+        );
+        channel.writeInbound(startupFrame.retainedDuplicate());
+        ReferenceCountUtil.release(channel.readInbound());
+        channel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public void rewriteUser() {
+        final EmbeddedChannel channel = new EmbeddedChannel(
+                new UntypedFrameDecoder(),
+                new UpstreamStartupHandler(USERNAME, new ChannelInboundHandlerAdapter())
+        );
+        channel.writeInbound(startupFrame.retainedDuplicate());
+        ReferenceCountUtil.release(channel.readInbound());
+        channel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public void replaceUser() {
+        UpstreamStartupHandler.replaceUser(alloc, startupFrame.retainedDuplicate(), USERNAME).release();
+    }
+
+    @Benchmark
+    public void md5() {
+        md5Channel.writeInbound(md5Request.retainedDuplicate());
+        ReferenceCountUtil.release(md5Channel.readOutbound());
+    }
+}
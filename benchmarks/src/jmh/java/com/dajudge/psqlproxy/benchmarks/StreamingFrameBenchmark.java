@@ -0,0 +1,143 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.benchmarks;
+
+import com.dajudge.psqlproxy.protocol.frames.TypedFrameDecoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * Forwards a single large DataRow frame arriving in socket sized reads, with and without streaming. Reports the
+ * time until the first byte is forwarded and until the whole frame is forwarded. After each iteration the maximum
+ * number of bytes held back by the decoder is printed, which is the frame size without streaming and about one
+ * read with streaming.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class StreamingFrameBenchmark {
+    @Param({"0", "65536"})
+    public int streamingThreshold;
+
+    @Param({"1048576", "16777216"})
+    public int frameSize;
+
+    @Param({"65536"})
+    public int readSize;
+
+    private final Sink sink = new Sink();
+    private final List<ByteBuf> reads = new ArrayList<>();
+    private ByteBuf stream;
+    private EmbeddedChannel channel;
+    private long fedBytes;
+    private long maxHeldBytes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        stream = Unpooled.directBuffer(frameSize + 5);
+        stream.writeByte('D');
+        stream.writeInt(frameSize + 4);
+        stream.writeZero(frameSize);
+        for (int offset = 0; offset < stream.writerIndex(); offset += readSize) {
+            reads.add(stream.slice(offset, Math.min(readSize, stream.writerIndex() - offset)));
+        }
+        final TypedFrameDecoder decoder = new TypedFrameDecoder();
+        if (streamingThreshold > 0) {
+            decoder.enableStreaming(streamingThreshold);
+        }
+        channel = new EmbeddedChannel(decoder, sink);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        channel.finishAndReleaseAll();
+        stream.release();
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        maxHeldBytes = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void endIteration() {
+        System.out.printf("%nthreshold=%d, frameSize=%d: max %d bytes held by the decoder%n",
+                streamingThreshold, frameSize, maxHeldBytes);
+    }
+
+    @Benchmark
+    public int timeToFirstByte() {
+        startFrame();
+        int read = 0;
+        while (sink.forwarded == 0) {
+            feed(reads.get(read++));
+        }
+        // Complete the frame, so the next invocation starts with a new one
+        for (; read < reads.size(); read++) {
+            feed(reads.get(read));
+        }
+        return read;
+    }
+
+    @Benchmark
+    public long forwardFrame() {
+        startFrame();
+        for (final ByteBuf read : reads) {
+            feed(read);
+        }
+        return sink.forwarded;
+    }
+
+    private void startFrame() {
+        sink.forwarded = 0;
+        fedBytes = 0;
+    }
+
+    private void feed(final ByteBuf read) {
+        fedBytes += read.readableBytes();
+        channel.writeInbound(read.retainedDuplicate());
+        maxHeldBytes = Math.max(maxHeldBytes, fedBytes - sink.forwarded);
+    }
+
+    @Sharable
+    private static final class Sink extends ChannelInboundHandlerAdapter {
+        private long forwarded;
+
+        @Override
+        public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+            final ByteBuf content = msg instanceof ByteBufHolder ? ((ByteBufHolder) msg).content() : (ByteBuf) msg;
+            forwarded += content.readableBytes();
+            ReferenceCountUtil.release(msg);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.benchmarks;
+
+import com.dajudge.proxybase.config.Endpoint;
+import com.dajudge.psqlproxy.PostgresProxy;
+import com.dajudge.psqlproxy.PostgresProxyConfig;
+import com.dajudge.psqlproxy.pool.PoolConfig;
+import com.dajudge.psqlproxy.pool.PoolingMode;
+import org.openjdk.jmh.annotations.*;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static com.dajudge.psqlproxy.benchmarks.BenchmarkEnvironment.*;
+import static com.dajudge.psqlproxy.testutil.PostgresContainerFactory.DB_PASSWORD;
+import static com.dajudge.psqlproxy.testutil.PostgresContainerFactory.DB_USERNAME;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Every benchmark thread is one client holding its own connection to the proxy, so with the default of 400 threads
+ * four times as many clients as PostgreSQL's default <code>max_connections</code> are served by
+ * <code>serverConnections</code> backends. Use <code>-t</code> to vary the number of clients.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(SECONDS)
+@Threads(400)
+@Fork(1)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+public class TransactionPoolingBenchmark {
+    @Param({"10", "50"})
+    public int serverConnections;
+
+    private PostgreSQLContainer<?> postgres;
+    private PostgresProxy proxy;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        postgres = startPostgres(false);
+        final Endpoint serverEndpoint = endpoint(postgres);
+        proxy = new PostgresProxy(new PostgresProxyConfig(
+                serverEndpoint,
+                PROXY_ENDPOINT,
+                DB_USERNAME,
+                DB_PASSWORD,
+                plaintextSslConfig(serverEndpoint)
+        )
+                .withPoolConfig(new PoolConfig(PoolingMode.TRANSACTION, 0, serverConnections, 60000, 10000)));
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        proxy.close();
+        postgres.stop();
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        private Connection connection;
+
+        @Setup(Level.Trial)
+        public void connect() throws SQLException {
+            // Named server-side prepared statements do not survive across transactions in pooling mode
+            connection = BenchmarkEnvironment.connect(PROXY_ENDPOINT, "prepareThreshold=0");
+            connection.setAutoCommit(false);
+        }
+
+        @TearDown(Level.Trial)
+        public void disconnect() throws SQLException {
+            connection.close();
+        }
+    }
+
+    @Benchmark
+    public int transaction(final Client client) throws SQLException {
+        try (Statement statement = client.connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT 1")) {
+            resultSet.next();
+            final int result = resultSet.getInt(1);
+            client.connection.commit();
+            return result;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.benchmarks;
+
+import com.dajudge.proxybase.config.Endpoint;
+import com.dajudge.psqlproxy.PostgresProxy;
+import com.dajudge.psqlproxy.PostgresProxyConfig;
+import com.dajudge.psqlproxy.transport.TransportConfig;
+import com.dajudge.psqlproxy.transport.TransportType;
+import org.openjdk.jmh.annotations.*;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static com.dajudge.psqlproxy.benchmarks.BenchmarkEnvironment.*;
+import static com.dajudge.psqlproxy.testutil.PostgresContainerFactory.DB_PASSWORD;
+import static com.dajudge.psqlproxy.testutil.PostgresContainerFactory.DB_USERNAME;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Compares the transports for connection setup and bulk relaying. The score of <code>connect</code> is in
+ * connections per second, the score of <code>relay</code> in queries per second, each returning
+ * {@value #RELAY_ROWS} rows of {@value #RELAY_ROW_SIZE} bytes. Transports not available on the platform fall back
+ * to NIO.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(SECONDS)
+@Threads(8)
+@Fork(1)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+public class TransportBenchmark {
+    private static final int RELAY_ROWS = 1000;
+    private static final int RELAY_ROW_SIZE = 1024;
+    private static final String RELAY_QUERY = "SELECT repeat('x', " + RELAY_ROW_SIZE + ") "
+            + "FROM generate_series(1, " + RELAY_ROWS + ")";
+
+    @Param({"NIO", "EPOLL"})
+    public TransportType transport;
+
+    @Param({"false", "true"})
+    public boolean reusePort;
+
+    private PostgreSQLContainer<?> postgres;
+    private PostgresProxy proxy;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        postgres = startPostgres(false);
+        final Endpoint serverEndpoint = endpoint(postgres);
+        proxy = new PostgresProxy(new PostgresProxyConfig(
+                serverEndpoint,
+                PROXY_ENDPOINT,
+                DB_USERNAME,
+                DB_PASSWORD,
+                plaintextSslConfig(serverEndpoint)
+        )
+                .withTransportConfig(new TransportConfig(transport, 0, reusePort)));
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        proxy.close();
+        postgres.stop();
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        private Connection connection;
+
+        @Setup(Level.Trial)
+        public void connect() throws SQLException {
+            connection = BenchmarkEnvironment.connect(PROXY_ENDPOINT, "");
+        }
+
+        @TearDown(Level.Trial)
+        public void disconnect() throws SQLException {
+            connection.close();
+        }
+    }
+
+    @Benchmark
+    public boolean connect() throws SQLException {
+        try (Connection connection = BenchmarkEnvironment.connect(PROXY_ENDPOINT, "")) {
+            return connection.getAutoCommit();
+        }
+    }
+
+    @Benchmark
+    public int relay(final Client client) throws SQLException {
+        try (Statement statement = client.connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(RELAY_QUERY)) {
+            int rows = 0;
+            while (resultSet.next()) {
+                rows++;
+            }
+            return rows;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.benchmarks.chunked;
+
+import com.dajudge.proxybase.AbstractChunkedMessageStreamInboundHandler;
+import io.netty.channel.ChannelHandlerContext;
+
+/**
+ * Accumulates {@link ChunkedTypedFrame ChunkedTypedFrames} and forwards each complete frame as a single buffer,
+ * like psqlproxy's frame handling did before switching to slice based decoding.
+ */
+public class ChunkedTypedFrameHandler extends AbstractChunkedMessageStreamInboundHandler<ChunkedTypedFrame> {
+    @Override
+    protected void onMessageComplete(final ChannelHandlerContext ctx, final ChunkedTypedFrame message) {
+        ctx.fireChannelRead(message.all());
+    }
+
+    @Override
+    protected ChunkedTypedFrame createNewMessage() {
+        return new ChunkedTypedFrame();
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy;
+
+import com.dajudge.proxybase.config.Endpoint;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
+
+// Registered on the client's event loop, so relaying doesn't hand every buffer to another thread
+public class DirectServerConnector {
+    private final Bootstrap bootstrap;
+    private final Endpoint serverEndpoint;
+
+    public DirectServerConnector(final Bootstrap bootstrap, final Endpoint serverEndpoint) {
+        this.bootstrap = bootstrap;
+        this.serverEndpoint = serverEndpoint;
+    }
+
+    public ChannelFuture connect(final Channel upstreamChannel, final ChannelHandler downstreamHandler) {
+        return bootstrap.clone(upstreamChannel.eventLoop())
+                .handler(downstreamHandler)
+                .connect(serverEndpoint.getHost(), serverEndpoint.getPort());
+    }
+}
@@ -17,78 +17,82 @@
 
 package com.dajudge.psqlproxy;
 
-import com.dajudge.proxybase.ProxyApplication;
-import com.dajudge.proxybase.ProxyChannelFactory;
-import com.dajudge.proxybase.ProxyChannelFactory.ProxyChannelInitializer;
-import com.dajudge.proxybase.RelayingChannelInboundHandler;
 import com.dajudge.proxybase.config.Endpoint;
-import com.dajudge.psqlproxy.protocol.*;
-import com.dajudge.psqlproxy.protocol.TypedFrameHandler.ContinueFrameProcessor;
-import io.netty.channel.Channel;
-import io.netty.channel.ChannelInboundHandlerAdapter;
+import com.dajudge.psqlproxy.cache.ResultCache;
+import com.dajudge.psqlproxy.metrics.MetricsConfig;
+import com.dajudge.psqlproxy.metrics.ProxyMetrics;
+import com.dajudge.psqlproxy.protocol.scram.ScramKeyCache;
+import com.dajudge.psqlproxy.transport.ProxyServer;
+import com.dajudge.psqlproxy.transport.TransportConfig;
 
-import java.util.function.Consumer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.singletonList;
+import static java.util.Collections.unmodifiableMap;
+
+public class PostgresProxy implements AutoCloseable {
+    private final ProxyServer server;
+    private final ScramKeyCache scramKeyCache;
+    private final ProxyMetrics metrics;
+    private final List<ProxyRoute> routes = new ArrayList<>();
 
-public class PostgresProxy extends ProxyApplication {
     public PostgresProxy(final PostgresProxyConfig config) {
-        super(createProxyChannel(
-                config.getServerEndpoint(),
-                config.getProxyEndpoint(),
-                config.getUsername(),
-                config.getPassword(),
-                config.getSslConfig()
-        ));
+        this(
+                config.getTransportConfig(),
+                config.getMetricsConfig(),
+                singletonList(new RouteConfig(RouteConfig.DEFAULT_NAME, config))
+        );
     }
 
-    private static Consumer<ProxyChannelFactory> createProxyChannel(
-            final Endpoint serverEndpoint,
-            final Endpoint proxyEndpoint,
-            final String username,
-            final String password,
-            final PostgresSslConfig sslConfig
+    public PostgresProxy(
+            final TransportConfig transportConfig,
+            final MetricsConfig metricsConfig,
+            final List<RouteConfig> routeConfigs
     ) {
-        final ProxyChannelInitializer initializer = (upstreamChannel, downstreamChannel) -> {
-            configureUpstream(username, upstreamChannel, downstreamChannel);
-            configureDownstream(username, password, upstreamChannel, downstreamChannel, sslConfig);
-        };
-        return factory -> factory.createProxyChannel(
-                proxyEndpoint,
-                serverEndpoint,
-                initializer
-        );
+        metrics = new ProxyMetrics(metricsConfig);
+        final boolean splice = routeConfigs.stream().anyMatch(route -> ProxyRoute.isSplice(route.getProxyConfig()));
+        server = new ProxyServer(transportConfig, splice);
+        scramKeyCache = new ScramKeyCache(ScramKeyCache.DEFAULT_SIZE);
+        final Map<String, List<ProxyRoute>> routesByEndpoint = new LinkedHashMap<>();
+        for (final RouteConfig routeConfig : routeConfigs) {
+            final ProxyRoute route = new ProxyRoute(routeConfig, server, scramKeyCache, metrics);
+            final Endpoint endpoint = routeConfig.getProxyConfig().getProxyEndpoint();
+            routesByEndpoint.computeIfAbsent(endpoint.getHost() + ":" + endpoint.getPort(), k -> new ArrayList<>())
+                    .add(route);
+            routes.add(route);
+        }
+        routesByEndpoint.values().forEach(endpointRoutes -> {
+            final RouteConfig first = endpointRoutes.get(0).getConfig();
+            if (endpointRoutes.size() == 1 && !first.isMatching()) {
+                server.bind(first.getProxyConfig().getProxyEndpoint(), endpointRoutes.get(0).newClientInitializer());
+            } else {
+                server.bind(first.getProxyConfig().getProxyEndpoint(), StartupRouter.initializer(endpointRoutes));
+            }
+        });
     }
 
-    private static void configureUpstream(
-            final String username,
-            final Channel upstreamChannel,
-            final Channel downstreamChannel
-    ) {
-        final ContinueFrameProcessor finalProcessor = new ContinueFrameProcessor();
-        upstreamChannel.pipeline().addLast(new UpstreamSslRejectHandler());
-        upstreamChannel.pipeline().addLast(new UpstreamStartupHandler(username, new TypedFrameHandler(finalProcessor)));
-        upstreamChannel.pipeline().addLast(forwardTo("downstream", downstreamChannel));
+    public ProxyMetrics getMetrics() {
+        return metrics;
     }
 
-    private static void configureDownstream(
-            final String username,
-            final String password,
-            final Channel upstreamChannel,
-            final Channel downstreamChannel,
-            final PostgresSslConfig postgresSslConfig
-    ) {
-        final ContinueFrameProcessor finalProcessor = new ContinueFrameProcessor();
-        final DownstreamStartupProcessor downstreamStartupProcessor = new DownstreamStartupProcessor(
-                username,
-                password,
-                finalProcessor
-        );
-        downstreamChannel.pipeline().addLast(new TypedFrameHandler(downstreamStartupProcessor));
-        downstreamChannel.pipeline().addLast(forwardTo("upstream", upstreamChannel));
-        downstreamChannel.pipeline().addFirst(new DownstreamSslActivationHandler(postgresSslConfig));
+    public ResultCache getResultCache() {
+        return routes.get(0).getResultCache();
     }
 
-    private static ChannelInboundHandlerAdapter forwardTo(final String direction, final Channel fwd) {
-        return new RelayingChannelInboundHandler(direction, fwd);
+    public Map<String, ResultCache> getResultCaches() {
+        final Map<String, ResultCache> caches = new LinkedHashMap<>();
+        routes.forEach(route -> caches.put(route.getConfig().getName(), route.getResultCache()));
+        return unmodifiableMap(caches);
     }
 
+    @Override
+    public void close() {
+        routes.forEach(ProxyRoute::closePools);
+        server.close();
+        scramKeyCache.close();
+        routes.forEach(ProxyRoute::close);
+    }
 }
@@ -18,7 +18,12 @@
 package com.dajudge.psqlproxy;
 
 import com.dajudge.proxybase.config.Endpoint;
+import com.dajudge.psqlproxy.cache.ResultCacheConfig;
+import com.dajudge.psqlproxy.metrics.MetricsConfig;
+import com.dajudge.psqlproxy.pool.PoolConfig;
 import com.dajudge.psqlproxy.protocol.PostgresSslConfig;
+import com.dajudge.psqlproxy.routing.ReplicaConfig;
+import com.dajudge.psqlproxy.transport.TransportConfig;
 
 public class PostgresProxyConfig {
     private final Endpoint serverEndpoint;
@@ -26,6 +31,12 @@ public class PostgresProxyConfig {
     private final String username;
     private final String password;
     private final PostgresSslConfig sslConfig;
+    private final PoolConfig poolConfig;
+    private final RelayConfig relayConfig;
+    private final TransportConfig transportConfig;
+    private final MetricsConfig metricsConfig;
+    private final ResultCacheConfig resultCacheConfig;
+    private final ReplicaConfig replicaConfig;
 
     public PostgresProxyConfig(
             final Endpoint serverEndpoint,
@@ -33,12 +44,142 @@ public class PostgresProxyConfig {
             final String username,
             final String password,
             final PostgresSslConfig sslConfig
+    ) {
+        this(
+                serverEndpoint,
+                proxyEndpoint,
+                username,
+                password,
+                sslConfig,
+                PoolConfig.DISABLED,
+                RelayConfig.DEFAULT,
+                TransportConfig.DEFAULT,
+                MetricsConfig.DEFAULT,
+                ResultCacheConfig.DISABLED,
+                ReplicaConfig.DISABLED
+        );
+    }
+
+    private PostgresProxyConfig(
+            final Endpoint serverEndpoint,
+            final Endpoint proxyEndpoint,
+            final String username,
+            final String password,
+            final PostgresSslConfig sslConfig,
+            final PoolConfig poolConfig,
+            final RelayConfig relayConfig,
+            final TransportConfig transportConfig,
+            final MetricsConfig metricsConfig,
+            final ResultCacheConfig resultCacheConfig,
+            final ReplicaConfig replicaConfig
     ) {
         this.serverEndpoint = serverEndpoint;
         this.proxyEndpoint = proxyEndpoint;
         this.username = username;
         this.password = password;
         this.sslConfig = sslConfig;
+        this.poolConfig = poolConfig;
+        this.relayConfig = relayConfig;
+        this.transportConfig = transportConfig;
+        this.metricsConfig = metricsConfig;
+        this.resultCacheConfig = resultCacheConfig;
+        this.replicaConfig = replicaConfig;
+    }
+
+    public PostgresProxyConfig withPoolConfig(final PoolConfig newPoolConfig) {
+        return new PostgresProxyConfig(
+                serverEndpoint,
+                proxyEndpoint,
+                username,
+                password,
+                sslConfig,
+                newPoolConfig,
+                relayConfig,
+                transportConfig,
+                metricsConfig,
+                resultCacheConfig,
+                replicaConfig
+        );
+    }
+
+    public PostgresProxyConfig withRelayConfig(final RelayConfig newRelayConfig) {
+        return new PostgresProxyConfig(
+                serverEndpoint,
+                proxyEndpoint,
+                username,
+                password,
+                sslConfig,
+                poolConfig,
+                newRelayConfig,
+                transportConfig,
+                metricsConfig,
+                resultCacheConfig,
+                replicaConfig
+        );
+    }
+
+    public PostgresProxyConfig withTransportConfig(final TransportConfig newTransportConfig) {
+        return new PostgresProxyConfig(
+                serverEndpoint,
+                proxyEndpoint,
+                username,
+                password,
+                sslConfig,
+                poolConfig,
+                relayConfig,
+                newTransportConfig,
+                metricsConfig,
+                resultCacheConfig,
+                replicaConfig
+        );
+    }
+
+    public PostgresProxyConfig withMetricsConfig(final MetricsConfig newMetricsConfig) {
+        return new PostgresProxyConfig(
+                serverEndpoint,
+                proxyEndpoint,
+                username,
+                password,
+                sslConfig,
+                poolConfig,
+                relayConfig,
+                transportConfig,
+                newMetricsConfig,
+                resultCacheConfig,
+                replicaConfig
+        );
+    }
+
+    public PostgresProxyConfig withResultCacheConfig(final ResultCacheConfig newResultCacheConfig) {
+        return new PostgresProxyConfig(
+                serverEndpoint,
+                proxyEndpoint,
+                username,
+                password,
+                sslConfig,
+                poolConfig,
+                relayConfig,
+                transportConfig,
+                metricsConfig,
+                newResultCacheConfig,
+                replicaConfig
+        );
+    }
+
+    public PostgresProxyConfig withReplicaConfig(final ReplicaConfig newReplicaConfig) {
+        return new PostgresProxyConfig(
+                serverEndpoint,
+                proxyEndpoint,
+                username,
+                password,
+                sslConfig,
+                poolConfig,
+                relayConfig,
+                transportConfig,
+                metricsConfig,
+                resultCacheConfig,
+                newReplicaConfig
+        );
     }
 
     public Endpoint getServerEndpoint() {
@@ -60,4 +201,28 @@ public class PostgresProxyConfig {
     public PostgresSslConfig getSslConfig() {
         return sslConfig;
     }
+
+    public PoolConfig getPoolConfig() {
+        return poolConfig;
+    }
+
+    public RelayConfig getRelayConfig() {
+        return relayConfig;
+    }
+
+    public TransportConfig getTransportConfig() {
+        return transportConfig;
+    }
+
+    public MetricsConfig getMetricsConfig() {
+        return metricsConfig;
+    }
+
+    public ResultCacheConfig getResultCacheConfig() {
+        return resultCacheConfig;
+    }
+
+    public ReplicaConfig getReplicaConfig() {
+        return replicaConfig;
+    }
 }
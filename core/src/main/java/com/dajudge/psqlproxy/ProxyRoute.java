@@ -0,0 +1,325 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy;
+
+import com.dajudge.proxybase.RelayingChannelInboundHandler;
+import com.dajudge.proxybase.config.Endpoint;
+import com.dajudge.psqlproxy.cache.ResultCache;
+import com.dajudge.psqlproxy.metrics.EndpointMetrics;
+import com.dajudge.psqlproxy.metrics.FrameListener;
+import com.dajudge.psqlproxy.metrics.ProxyMetrics;
+import com.dajudge.psqlproxy.metrics.QueryTracker;
+import com.dajudge.psqlproxy.pool.PoolingMode;
+import com.dajudge.psqlproxy.pool.PooledClientInitializer;
+import com.dajudge.psqlproxy.pool.ServerConnectionPools;
+import com.dajudge.psqlproxy.pool.ServerConnector;
+import com.dajudge.psqlproxy.protocol.*;
+import com.dajudge.psqlproxy.protocol.TypedFrameHandler.ContinueFrameProcessor;
+import com.dajudge.psqlproxy.protocol.TypedFrameHandler.RawRelayFrameProcessor;
+import com.dajudge.psqlproxy.protocol.TypedFrameHandler.SpliceRelayFrameProcessor;
+import com.dajudge.psqlproxy.protocol.TypedFrameHandler.StreamingFrameProcessor;
+import com.dajudge.psqlproxy.protocol.frames.TypedFrameDecoder;
+import com.dajudge.psqlproxy.protocol.frames.UntypedFrameDecoder;
+import com.dajudge.psqlproxy.protocol.scram.ScramKeyCache;
+import com.dajudge.psqlproxy.routing.LoadBalancer;
+import com.dajudge.psqlproxy.transport.BackpressureHandler;
+import com.dajudge.psqlproxy.transport.ProxyServer;
+import com.dajudge.psqlproxy.transport.WriteBatchingHandler;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static java.util.Optional.empty;
+
+class ProxyRoute implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(ProxyRoute.class);
+    private final RouteConfig routeConfig;
+    private final String name;
+    private final PostgresProxyConfig config;
+    private final ByteBuf username;
+    private final DownstreamSslContext sslContext;
+    private final ScramKeyCache scramKeyCache;
+    private final ProxyMetrics metrics;
+    private final EndpointMetrics endpointMetrics;
+    private final ResultCache resultCache;
+    private final boolean splice;
+    private final DirectServerConnector connector;
+    private final Optional<ServerConnectionPools> pools;
+    private final Optional<PooledClientInitializer> pooledInitializer;
+    private final List<DownstreamSslContext> replicaSslContexts = new ArrayList<>();
+
+    ProxyRoute(
+            final RouteConfig routeConfig,
+            final ProxyServer server,
+            final ScramKeyCache scramKeyCache,
+            final ProxyMetrics metrics
+    ) {
+        this.routeConfig = routeConfig;
+        name = routeConfig.getName();
+        config = routeConfig.getProxyConfig();
+        this.scramKeyCache = scramKeyCache;
+        this.metrics = metrics;
+        username = UpstreamStartupHandler.encodeUsername(config.getUsername());
+        resultCache = new ResultCache(config.getResultCacheConfig());
+        splice = isSplice(config) && server.isSpliceEnabled();
+        sslContext = new DownstreamSslContext(config.getSslConfig(), config.getServerEndpoint().getPort());
+        endpointMetrics = metrics.newEndpoint(name, "primary", config.getServerEndpoint());
+        connector = new DirectServerConnector(server.newClientBootstrap(), config.getServerEndpoint());
+        final boolean routing = config.getPoolConfig().getMode() == PoolingMode.TRANSACTION;
+        if (config.getReplicaConfig().isEnabled() && !routing) {
+            LOG.warn("Read/write splitting requires transaction pooling, all queries are sent to the primary");
+        }
+        if (config.getPoolConfig().isEnabled()) {
+            final ServerConnector primaryConnector = new ServerConnector(
+                    server.newClientBootstrap(),
+                    config.getServerEndpoint(),
+                    config.getUsername(),
+                    config.getPassword(),
+                    sslContext,
+                    scramKeyCache,
+                    metrics,
+                    endpointMetrics
+            );
+            final List<ServerConnector> replicaConnectors = new ArrayList<>();
+            if (routing) {
+                for (final Endpoint replica : config.getReplicaConfig().getEndpoints()) {
+                    final DownstreamSslContext replicaSslContext = new DownstreamSslContext(
+                            config.getSslConfig().withDownstreamHostname(replica.getHost()),
+                            replica.getPort()
+                    );
+                    replicaSslContexts.add(replicaSslContext);
+                    replicaConnectors.add(new ServerConnector(
+                            server.newClientBootstrap(),
+                            replica,
+                            config.getUsername(),
+                            config.getPassword(),
+                            replicaSslContext,
+                            scramKeyCache,
+                            metrics,
+                            metrics.newEndpoint(name, "replica", replica)
+                    ));
+                }
+            }
+            final ServerConnectionPools serverConnectionPools = new ServerConnectionPools(
+                    config.getPoolConfig(),
+                    primaryConnector,
+                    replicaConnectors,
+                    new LoadBalancer(config.getReplicaConfig().getBalancingPolicy())
+            );
+            pools = Optional.of(serverConnectionPools);
+            pooledInitializer = Optional.of(new PooledClientInitializer(
+                    config.getPoolConfig(),
+                    serverConnectionPools,
+                    metrics,
+                    resultCache,
+                    config.getReplicaConfig()
+            ));
+        } else {
+            if (resultCache.isEnabled()) {
+                LOG.warn("The result cache requires connection pooling, no results will be cached");
+            }
+            pools = empty();
+            pooledInitializer = empty();
+        }
+    }
+
+    static boolean isSplice(final PostgresProxyConfig config) {
+        return config.getRelayConfig().isSplice() && !config.getPoolConfig().isEnabled();
+    }
+
+    RouteConfig getConfig() {
+        return routeConfig;
+    }
+
+    ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    ChannelHandler newClientInitializer() {
+        if (pooledInitializer.isPresent()) {
+            return pooledInitializer.get();
+        }
+        return new ChannelInitializer<Channel>() {
+            @Override
+            protected void initChannel(final Channel upstreamChannel) {
+                connect(upstreamChannel, empty());
+            }
+        };
+    }
+
+    // The pipeline is empty and startup holds the bytes received so far, starting with the StartupMessage
+    void accept(final Channel upstreamChannel, final ByteBuf startup) {
+        if (pooledInitializer.isPresent()) {
+            upstreamChannel.pipeline().addLast(pooledInitializer.get());
+            replay(upstreamChannel, startup);
+        } else {
+            connect(upstreamChannel, Optional.of(startup));
+        }
+    }
+
+    // Completes the read as well, the WriteBatchingHandler holds back flushes while a read is in progress
+    private static void replay(final Channel upstreamChannel, final ByteBuf startup) {
+        upstreamChannel.pipeline().fireChannelRead(startup);
+        upstreamChannel.pipeline().fireChannelReadComplete();
+    }
+
+    // While the event loops are still running
+    void closePools() {
+        pools.ifPresent(ServerConnectionPools::close);
+    }
+
+    @Override
+    public void close() {
+        sslContext.close();
+        replicaSslContexts.forEach(DownstreamSslContext::close);
+        resultCache.close();
+    }
+
+    private void connect(final Channel upstreamChannel, final Optional<ByteBuf> startup) {
+        upstreamChannel.pipeline().addLast(metrics.getClient().newHandler());
+        // Both channels share the client's event loop, so they can share the tracker
+        final QueryTracker queryTracker = new QueryTracker(metrics);
+        final FrameListener clientFrameListener = metrics.getClient().getFrames().andThen(queryTracker::clientFrame);
+        final FrameListener serverFrameListener = metrics.getServer().getFrames().andThen(queryTracker::serverFrame);
+        // Don't read from the client before the server connection's pipeline is complete
+        upstreamChannel.config().setAutoRead(false);
+        final ChannelInitializer<Channel> downstreamInitializer = new ChannelInitializer<Channel>() {
+            @Override
+            protected void initChannel(final Channel downstreamChannel) {
+                configureDownstream(
+                        config.getUsername(),
+                        config.getPassword(),
+                        upstreamChannel,
+                        downstreamChannel,
+                        sslContext,
+                        scramKeyCache,
+                        metrics,
+                        serverFrameListener,
+                        config.getRelayConfig(),
+                        splice
+                );
+            }
+        };
+        connector.connect(upstreamChannel, downstreamInitializer).addListener((ChannelFuture future) -> {
+            if (!future.isSuccess()) {
+                LOG.warn("Route {} failed to connect to server: {}", name, future.cause().getMessage());
+                endpointMetrics.connectFailed();
+                startup.ifPresent(ByteBuf::release);
+                upstreamChannel.close();
+                return;
+            }
+            final Channel downstreamChannel = future.channel();
+            endpointMetrics.connectionOpened();
+            downstreamChannel.closeFuture().addListener(f -> endpointMetrics.connectionClosed());
+            upstreamChannel.closeFuture().addListener(f -> downstreamChannel.close());
+            downstreamChannel.closeFuture().addListener(f -> upstreamChannel.close());
+            configureUpstream(
+                    username,
+                    clientFrameListener,
+                    upstreamChannel,
+                    downstreamChannel,
+                    config.getRelayConfig(),
+                    splice
+            );
+            startup.ifPresent(bytes -> replay(upstreamChannel, bytes));
+            upstreamChannel.config().setAutoRead(true);
+        });
+    }
+
+    private static void configureUpstream(
+            final ByteBuf username,
+            final FrameListener frameListener,
+            final Channel upstreamChannel,
+            final Channel downstreamChannel,
+            final RelayConfig relayConfig,
+            final boolean splice
+    ) {
+        final ContinueFrameProcessor finalProcessor = finalProcessor(relayConfig, splice, downstreamChannel);
+        upstreamChannel.pipeline().addLast(new WriteBatchingHandler());
+        upstreamChannel.pipeline().addLast(new BackpressureHandler(downstreamChannel));
+        upstreamChannel.pipeline().addLast(new UntypedFrameDecoder());
+        upstreamChannel.pipeline().addLast(new UpstreamSslRejectHandler());
+        upstreamChannel.pipeline().addLast(new UpstreamStartupHandler(
+                username,
+                new TypedFrameHandler(finalProcessor, frameListener)
+        ));
+        upstreamChannel.pipeline().addLast(forwardTo("downstream", downstreamChannel));
+    }
+
+    private static void configureDownstream(
+            final String username,
+            final String password,
+            final Channel upstreamChannel,
+            final Channel downstreamChannel,
+            final DownstreamSslContext sslContext,
+            final ScramKeyCache scramKeyCache,
+            final ProxyMetrics metrics,
+            final FrameListener frameListener,
+            final RelayConfig relayConfig,
+            final boolean splice
+    ) {
+        final ContinueFrameProcessor finalProcessor = finalProcessor(relayConfig, splice, upstreamChannel);
+        final DownstreamStartupProcessor downstreamStartupProcessor = new DownstreamStartupProcessor(
+                username,
+                password,
+                scramKeyCache,
+                metrics,
+                finalProcessor
+        );
+        downstreamChannel.pipeline().addLast(new WriteBatchingHandler());
+        downstreamChannel.pipeline().addLast(new BackpressureHandler(upstreamChannel));
+        downstreamChannel.pipeline().addLast(new TypedFrameDecoder());
+        downstreamChannel.pipeline().addLast(new TypedFrameHandler(
+                downstreamStartupProcessor,
+                frameListener
+        ));
+        downstreamChannel.pipeline().addLast(forwardTo("upstream", upstreamChannel));
+        downstreamChannel.pipeline().addFirst(new DownstreamSslActivationHandler(sslContext, metrics));
+        downstreamChannel.pipeline().addFirst(metrics.getServer().newHandler());
+    }
+
+    private static ContinueFrameProcessor finalProcessor(
+            final RelayConfig relayConfig,
+            final boolean splice,
+            final Channel target
+    ) {
+        if (splice) {
+            return new SpliceRelayFrameProcessor(target);
+        }
+        if (relayConfig.isRawRelay()) {
+            return new RawRelayFrameProcessor();
+        }
+        if (relayConfig.getStreamingThreshold() > 0) {
+            return new StreamingFrameProcessor(relayConfig.getStreamingThreshold());
+        }
+        return new ContinueFrameProcessor();
+    }
+
+    private static ChannelInboundHandlerAdapter forwardTo(final String direction, final Channel fwd) {
+        return new RelayingChannelInboundHandler(direction, fwd);
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy;
+
+public class RelayConfig {
+    public static final RelayConfig DEFAULT = new RelayConfig(false, false);
+
+    private final boolean rawRelay;
+    private final boolean splice;
+    private final int streamingThreshold;
+
+    public RelayConfig(final boolean rawRelay) {
+        this(rawRelay, false);
+    }
+
+    public RelayConfig(final boolean rawRelay, final boolean splice) {
+        this(rawRelay, splice, 0);
+    }
+
+    public RelayConfig(final boolean rawRelay, final boolean splice, final int streamingThreshold) {
+        this.rawRelay = rawRelay;
+        this.splice = splice;
+        this.streamingThreshold = streamingThreshold;
+    }
+
+    public boolean isRawRelay() {
+        return rawRelay || splice;
+    }
+
+    // Connections using SSL towards the server are relayed in user space
+    public boolean isSplice() {
+        return splice;
+    }
+
+    public int getStreamingThreshold() {
+        return streamingThreshold;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy;
+
+import java.util.Map;
+import java.util.Optional;
+
+public class RouteConfig {
+    public static final String DEFAULT_NAME = "default";
+    private static final String DATABASE_PARAM = "database";
+    private static final String USER_PARAM = "user";
+    private final String name;
+    private final Optional<String> database;
+    private final Optional<String> user;
+    private final PostgresProxyConfig proxyConfig;
+
+    public RouteConfig(final String name, final PostgresProxyConfig proxyConfig) {
+        this(name, Optional.empty(), Optional.empty(), proxyConfig);
+    }
+
+    public RouteConfig(
+            final String name,
+            final Optional<String> database,
+            final Optional<String> user,
+            final PostgresProxyConfig proxyConfig
+    ) {
+        this.name = name;
+        this.database = database;
+        this.user = user;
+        this.proxyConfig = proxyConfig;
+    }
+
+    // Like PostgreSQL, the database defaults to the user name
+    public boolean matches(final Map<String, String> startupParameters) {
+        final String clientUser = startupParameters.get(USER_PARAM);
+        final String clientDatabase = startupParameters.getOrDefault(DATABASE_PARAM, clientUser);
+        return database.map(d -> d.equals(clientDatabase)).orElse(true)
+                && user.map(u -> u.equals(clientUser)).orElse(true);
+    }
+
+    public boolean isMatching() {
+        return database.isPresent() || user.isPresent();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Optional<String> getDatabase() {
+        return database;
+    }
+
+    public Optional<String> getUser() {
+        return user;
+    }
+
+    public PostgresProxyConfig getProxyConfig() {
+        return proxyConfig;
+    }
+}
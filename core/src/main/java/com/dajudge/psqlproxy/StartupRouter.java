@@ -0,0 +1,99 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy;
+
+import com.dajudge.psqlproxy.protocol.UpstreamSslRejectHandler;
+import com.dajudge.psqlproxy.protocol.frames.UntypedFrame;
+import com.dajudge.psqlproxy.protocol.frames.UntypedFrameDecoder;
+import com.dajudge.psqlproxy.protocol.messages.StartupMessage;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static com.dajudge.psqlproxy.protocol.messages.BackendMessages.fatalError;
+
+class StartupRouter extends ChannelInboundHandlerAdapter {
+    private static final Logger LOG = LoggerFactory.getLogger(StartupRouter.class);
+    private static final int PROTOCOL_MAJOR_VERSION = 3;
+    // What PostgreSQL answers without a matching pg_hba.conf entry
+    private static final String SQLSTATE_INVALID_AUTHORIZATION = "28000";
+    private final List<ProxyRoute> routes;
+
+    private StartupRouter(final List<ProxyRoute> routes) {
+        this.routes = routes;
+    }
+
+    static ChannelInitializer<Channel> initializer(final List<ProxyRoute> routes) {
+        return new ChannelInitializer<Channel>() {
+            @Override
+            protected void initChannel(final Channel ch) {
+                ch.pipeline().addLast(new UntypedFrameDecoder());
+                ch.pipeline().addLast(new UpstreamSslRejectHandler());
+                ch.pipeline().addLast(new StartupRouter(routes));
+            }
+        };
+    }
+
+    @Override
+    public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+        final UntypedFrame message = (UntypedFrame) msg;
+        final Map<String, String> startupParameters = startupParameters(message.getPayload());
+        final Optional<ProxyRoute> route = route(startupParameters);
+        if (!route.isPresent()) {
+            LOG.debug("No route for client with startup parameters {}", startupParameters);
+            message.release();
+            ctx.writeAndFlush(fatalError(ctx.alloc(), SQLSTATE_INVALID_AUTHORIZATION, String.format(
+                    "No route for user \"%s\" and database \"%s\"",
+                    startupParameters.get("user"),
+                    startupParameters.getOrDefault("database", startupParameters.get("user"))
+            ))).addListener(f -> ctx.close());
+            return;
+        }
+        ctx.pipeline().remove(this);
+        final ByteBuf pipelined = UntypedFrameDecoder.remove(ctx.pipeline());
+        route.get().accept(ctx.channel(), Unpooled.wrappedBuffer(message.content(), pipelined));
+    }
+
+    private Optional<ProxyRoute> route(final Map<String, String> startupParameters) {
+        return routes.stream().filter(route -> route.getConfig().matches(startupParameters)).findFirst();
+    }
+
+    // A CancelRequest has no parameters and goes to the first route matching any client
+    private static Map<String, String> startupParameters(final ByteBuf payload) {
+        if (payload.getShort(payload.readerIndex()) != PROTOCOL_MAJOR_VERSION) {
+            return Collections.emptyMap();
+        }
+        final List<String> params = new StartupMessage(payload).getParams();
+        final Map<String, String> map = new HashMap<>();
+        for (int i = 0; i + 1 < params.size(); i += 2) {
+            map.put(params.get(i), params.get(i + 1));
+        }
+        return map;
+    }
+}
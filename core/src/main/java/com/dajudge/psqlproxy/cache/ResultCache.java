@@ -0,0 +1,228 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.cache;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+
+public class ResultCache implements AutoCloseable {
+    // Lookups only contend if their queries share a segment, recency and the size limit are tracked per segment
+    private static final int SEGMENTS = 16;
+    // Replies larger than this fraction of a segment's budget would evict too many other entries
+    private static final int MAX_ENTRY_FRACTION = 8;
+    private final Optional<Pattern> allowlist;
+    private final long ttlNanos;
+    private final long maxSegmentBytes;
+    private final LongSupplier nanoClock;
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    public ResultCache(final ResultCacheConfig config) {
+        this(config, System::nanoTime, SEGMENTS);
+    }
+
+    ResultCache(final ResultCacheConfig config, final LongSupplier nanoClock, final int segmentCount) {
+        this.allowlist = config.isEnabled() ? config.getAllowlist() : Optional.empty();
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(config.getTtlMsecs());
+        this.maxSegmentBytes = config.getMaxBytes() / segmentCount;
+        this.nanoClock = nanoClock;
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    public boolean isEnabled() {
+        return allowlist.isPresent();
+    }
+
+    public boolean isCacheable(final String sql) {
+        return allowlist.map(pattern -> pattern.matcher(sql).find()).orElse(false);
+    }
+
+    public long getMaxEntryBytes() {
+        return maxSegmentBytes / MAX_ENTRY_FRACTION;
+    }
+
+    public Optional<ByteBuf> get(final Map<String, String> startupParameters, final String sql) {
+        final Key key = new Key(startupParameters, sql);
+        final Optional<ByteBuf> reply = segment(key).get(key, nanoClock.getAsLong());
+        if (reply.isPresent()) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return reply;
+    }
+
+    public void put(final Map<String, String> startupParameters, final String sql, final ByteBuf reply) {
+        if (reply.readableBytes() > getMaxEntryBytes()) {
+            reply.release();
+            return;
+        }
+        final Key key = new Key(startupParameters, sql);
+        segment(key).put(key, new Entry(reply, nanoClock.getAsLong()));
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
+    public long getBytes() {
+        long bytes = 0;
+        for (final Segment segment : segments) {
+            bytes += segment.getBytes();
+        }
+        return bytes;
+    }
+
+    public int getEntries() {
+        int entries = 0;
+        for (final Segment segment : segments) {
+            entries += segment.getEntries();
+        }
+        return entries;
+    }
+
+    @Override
+    public void close() {
+        for (final Segment segment : segments) {
+            segment.close();
+        }
+    }
+
+    private Segment segment(final Key key) {
+        return segments[Math.floorMod(key.hashCode(), segments.length)];
+    }
+
+    private final class Segment {
+        private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long bytes;
+
+        private synchronized Optional<ByteBuf> get(final Key key, final long now) {
+            final Entry entry = entries.get(key);
+            if (entry != null && now - entry.storedNanos < ttlNanos) {
+                return Optional.of(entry.reply.retainedDuplicate());
+            }
+            if (entry != null) {
+                expirations.increment();
+                remove(key);
+            }
+            return Optional.empty();
+        }
+
+        private synchronized void put(final Key key, final Entry entry) {
+            remove(key);
+            entries.put(key, entry);
+            bytes += entry.reply.readableBytes();
+            final Iterator<Entry> eldest = entries.values().iterator();
+            while (bytes > maxSegmentBytes) {
+                final Entry evicted = eldest.next();
+                eldest.remove();
+                bytes -= evicted.reply.readableBytes();
+                evicted.reply.release();
+                evictions.increment();
+            }
+        }
+
+        private synchronized long getBytes() {
+            return bytes;
+        }
+
+        private synchronized int getEntries() {
+            return entries.size();
+        }
+
+        private synchronized void close() {
+            entries.values().forEach(entry -> entry.reply.release());
+            entries.clear();
+            bytes = 0;
+        }
+
+        private void remove(final Key key) {
+            final Entry removed = entries.remove(key);
+            if (removed != null) {
+                bytes -= removed.reply.readableBytes();
+                removed.reply.release();
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final ByteBuf reply;
+        private final long storedNanos;
+
+        private Entry(final ByteBuf reply, final long storedNanos) {
+            this.reply = reply;
+            this.storedNanos = storedNanos;
+        }
+    }
+
+    private static final class Key {
+        private final Map<String, String> startupParameters;
+        private final String sql;
+        private final int hash;
+
+        private Key(final Map<String, String> startupParameters, final String sql) {
+            this.startupParameters = startupParameters;
+            this.sql = sql;
+            this.hash = Objects.hash(startupParameters, sql);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return sql.equals(key.sql) && startupParameters.equals(key.startupParameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.cache;
+
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+public class ResultCacheConfig {
+    public static final ResultCacheConfig DISABLED = new ResultCacheConfig(Optional.empty(), 0, 0);
+
+    private final Optional<Pattern> allowlist;
+    private final long ttlMsecs;
+    private final long maxBytes;
+
+    public ResultCacheConfig(final Optional<Pattern> allowlist, final long ttlMsecs, final long maxBytes) {
+        this.allowlist = allowlist;
+        this.ttlMsecs = ttlMsecs;
+        this.maxBytes = maxBytes;
+    }
+
+    public Optional<Pattern> getAllowlist() {
+        return allowlist;
+    }
+
+    public long getTtlMsecs() {
+        return ttlMsecs;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public boolean isEnabled() {
+        return allowlist.isPresent() && ttlMsecs > 0 && maxBytes > 0;
+    }
+}
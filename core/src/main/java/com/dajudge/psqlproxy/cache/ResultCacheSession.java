@@ -0,0 +1,140 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.cache;
+
+import com.dajudge.psqlproxy.metrics.FrameListener;
+import com.dajudge.psqlproxy.protocol.frames.TypedFrame;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static com.dajudge.psqlproxy.protocol.frames.TypedFrame.HEADER_SIZE;
+import static com.dajudge.psqlproxy.protocol.messages.BackendMessages.transactionStatus;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// Only RowDescription, DataRows and a SELECT CommandComplete are cached, anything else can't be replayed
+public class ResultCacheSession {
+    private static final int MAX_SQL_BYTES = 4096;
+    private static final char NONE = 0;
+    private static final char ROW_DESCRIPTION = 'T';
+    private static final char DATA_ROW = 'D';
+    private static final char COMMAND_COMPLETE = 'C';
+    private static final char READY_FOR_QUERY = 'Z';
+    private static final char TRANSACTION_STATUS_IDLE = 'I';
+    private static final String SELECT_TAG = "SELECT ";
+    private final ResultCache cache;
+    private final Channel client;
+    private final FrameListener serverFrameListener;
+    private final List<ByteBuf> captured = new ArrayList<>();
+    private Map<String, String> captureStartupParameters;
+    private String captureSql;
+    private int capturedBytes;
+    private char lastCapturedType = NONE;
+
+    public ResultCacheSession(
+            final ResultCache cache,
+            final Channel client,
+            final FrameListener serverFrameListener
+    ) {
+        this.cache = cache;
+        this.client = client;
+        this.serverFrameListener = serverFrameListener;
+    }
+
+    // Only while nothing is in flight, so all frames up to the next ReadyForQuery belong to the reply
+    public boolean serve(final Map<String, String> startupParameters, final TypedFrame query) {
+        final int sqlBytes = query.content().readableBytes() - HEADER_SIZE - 1;
+        if (!cache.isEnabled() || sqlBytes > MAX_SQL_BYTES) {
+            return false;
+        }
+        final String sql = query.getPayload().toString(0, sqlBytes, UTF_8);
+        if (!cache.isCacheable(sql)) {
+            return false;
+        }
+        final Optional<ByteBuf> reply = cache.get(startupParameters, sql);
+        if (!reply.isPresent()) {
+            captureStartupParameters = startupParameters;
+            captureSql = sql;
+            return false;
+        }
+        query.release();
+        replay(reply.get());
+        client.writeAndFlush(reply.get());
+        return true;
+    }
+
+    private void replay(final ByteBuf reply) {
+        int index = reply.readerIndex();
+        while (index < reply.writerIndex()) {
+            final int length = reply.getInt(index + 1) + 1;
+            serverFrameListener.onFrame(new TypedFrame(reply.slice(index, length)));
+            index += length;
+        }
+    }
+
+    public void onServerFrame(final TypedFrame frame) {
+        if (captureSql == null) {
+            return;
+        }
+        final int frameBytes = frame.content().readableBytes();
+        if (!isExpected(frame) || capturedBytes + frameBytes > cache.getMaxEntryBytes()) {
+            discard();
+            return;
+        }
+        captured.add(frame.content().retainedDuplicate());
+        capturedBytes += frameBytes;
+        lastCapturedType = frame.getType();
+        if (lastCapturedType == READY_FOR_QUERY) {
+            final ByteBuf reply = Unpooled.directBuffer(capturedBytes);
+            captured.forEach(reply::writeBytes);
+            cache.put(captureStartupParameters, captureSql, reply);
+            discard();
+        }
+    }
+
+    private boolean isExpected(final TypedFrame frame) {
+        switch (frame.getType()) {
+            case ROW_DESCRIPTION:
+                return lastCapturedType == NONE;
+            case DATA_ROW:
+                return lastCapturedType == ROW_DESCRIPTION || lastCapturedType == DATA_ROW;
+            case COMMAND_COMPLETE:
+                return (lastCapturedType == ROW_DESCRIPTION || lastCapturedType == DATA_ROW)
+                        && frame.getPayload().toString(UTF_8).startsWith(SELECT_TAG);
+            case READY_FOR_QUERY:
+                return lastCapturedType == COMMAND_COMPLETE && transactionStatus(frame) == TRANSACTION_STATUS_IDLE;
+            default:
+                return false;
+        }
+    }
+
+    @SuppressWarnings(value = "PMD.NullAssignment") // Nothing to capture until the next cacheable query
+    public void discard() {
+        captured.forEach(ByteBuf::release);
+        captured.clear();
+        captureStartupParameters = null;
+        captureSql = null;
+        capturedBytes = 0;
+        lastCapturedType = NONE;
+    }
+}
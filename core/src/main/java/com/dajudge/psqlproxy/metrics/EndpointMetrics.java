@@ -0,0 +1,140 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.metrics;
+
+import com.dajudge.proxybase.config.Endpoint;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+public class EndpointMetrics {
+    // Each new sample contributes an eighth to the moving average
+    private static final int LATENCY_WEIGHT = 8;
+    // Without new samples the average decays towards zero, so a server that was slow once gets probed again
+    private static final double LATENCY_DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final int UNHEALTHY_AFTER_FAILURES = 3;
+    private static final long RETRY_DELAY_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private final String route;
+    private final String role;
+    private final Endpoint endpoint;
+    private final LongAdder connections = new LongAdder();
+    private final LongAdder activeConnections = new LongAdder();
+    private final LongAdder connectFailures = new LongAdder();
+    private final LongAdder transactions = new LongAdder();
+    private final AtomicInteger activeTransactions = new AtomicInteger();
+    private final AtomicReference<Latency> latency = new AtomicReference<>(new Latency(0, System.nanoTime()));
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile long retryAtNanos;
+
+    public EndpointMetrics(final String route, final String role, final Endpoint endpoint) {
+        this.route = route;
+        this.role = role;
+        this.endpoint = endpoint;
+    }
+
+    public String getRoute() {
+        return route;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public Endpoint getEndpoint() {
+        return endpoint;
+    }
+
+    public void connectionOpened() {
+        connections.increment();
+        activeConnections.increment();
+        consecutiveFailures.set(0);
+    }
+
+    public void connectionClosed() {
+        activeConnections.decrement();
+    }
+
+    public void connectFailed() {
+        connectFailures.increment();
+        if (consecutiveFailures.incrementAndGet() >= UNHEALTHY_AFTER_FAILURES) {
+            retryAtNanos = System.nanoTime() + RETRY_DELAY_NANOS;
+        }
+    }
+
+    public void transactionStarted() {
+        transactions.increment();
+        activeTransactions.incrementAndGet();
+    }
+
+    public void transactionFinished() {
+        activeTransactions.decrementAndGet();
+    }
+
+    public void recordLatency(final long nanos) {
+        final long now = System.nanoTime();
+        latency.updateAndGet(current -> {
+            final long decayed = current.at(now);
+            return new Latency(decayed == 0 ? nanos : decayed + (nanos - decayed) / LATENCY_WEIGHT, now);
+        });
+    }
+
+    public long getLatencyNanos(final long now) {
+        return latency.get().at(now);
+    }
+
+    public boolean isHealthy(final long now) {
+        return consecutiveFailures.get() < UNHEALTHY_AFTER_FAILURES || now - retryAtNanos >= 0;
+    }
+
+    public long getConnections() {
+        return connections.sum();
+    }
+
+    public long getActiveConnections() {
+        return activeConnections.sum();
+    }
+
+    public long getConnectFailures() {
+        return connectFailures.sum();
+    }
+
+    public long getTransactions() {
+        return transactions.sum();
+    }
+
+    public int getActiveTransactions() {
+        return activeTransactions.get();
+    }
+
+    private static final class Latency {
+        private final long nanos;
+        private final long updatedNanos;
+
+        private Latency(final long nanos, final long updatedNanos) {
+            this.nanos = nanos;
+            this.updatedNanos = updatedNanos;
+        }
+
+        private long at(final long now) {
+            final long age = now - updatedNanos;
+            return age <= 0 ? nanos : (long) (nanos * Math.exp(-age / LATENCY_DECAY_NANOS));
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.metrics;
+
+import com.dajudge.psqlproxy.protocol.frames.TypedFrame;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class FrameCounts implements FrameListener {
+    public static final FrameCounts NONE = new FrameCounts(0);
+    private static final int FRAME_TYPES = 128;
+    private final LongAdder[] counts;
+
+    public FrameCounts() {
+        this(FRAME_TYPES);
+    }
+
+    private FrameCounts(final int types) {
+        counts = new LongAdder[types];
+        for (int i = 0; i < types; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    public void onFrame(final TypedFrame frame) {
+        final char type = frame.getType();
+        if (type < counts.length) {
+            counts[type].increment();
+        }
+    }
+
+    public long get(final char type) {
+        return type < counts.length ? counts[type].sum() : 0;
+    }
+}
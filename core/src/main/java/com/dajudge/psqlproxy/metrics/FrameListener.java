@@ -0,0 +1,33 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.metrics;
+
+import com.dajudge.psqlproxy.protocol.frames.TypedFrame;
+
+// Called on the event loop for every frame, the frame must not be retained, released or modified
+@FunctionalInterface
+public interface FrameListener {
+    void onFrame(TypedFrame frame);
+
+    default FrameListener andThen(final FrameListener next) {
+        return frame -> {
+            onFrame(frame);
+            next.onFrame(frame);
+        };
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+// Latencies above one hour are recorded as one hour
+public class LatencyHistogram {
+    private static final long HIGHEST_TRACKABLE_MICROS = HOURS.toMicros(1);
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+    private final Histogram interval = new Histogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+    private final Histogram total = new Histogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+
+    public void record(final long nanos) {
+        recorder.recordValue(Math.max(0, Math.min(HIGHEST_TRACKABLE_MICROS, NANOSECONDS.toMicros(nanos))));
+    }
+
+    public synchronized long getCount() {
+        update();
+        return total.getTotalCount();
+    }
+
+    public synchronized long getMicrosAtPercentile(final double percentile) {
+        update();
+        return total.getValueAtPercentile(percentile);
+    }
+
+    public synchronized long getMaxMicros() {
+        update();
+        return total.getMaxValue();
+    }
+
+    private void update() {
+        recorder.getIntervalHistogramInto(interval);
+        total.add(interval);
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.metrics;
+
+public class MetricsConfig {
+    public static final int DEFAULT_QUERY_STATISTICS_SIZE = 100;
+    public static final int DEFAULT_QUERY_SAMPLE_EVERY = 10;
+    public static final MetricsConfig DEFAULT = new MetricsConfig(
+            DEFAULT_QUERY_STATISTICS_SIZE,
+            DEFAULT_QUERY_SAMPLE_EVERY
+    );
+
+    private final int queryStatisticsSize;
+    private final int querySampleEvery;
+
+    public MetricsConfig(final int queryStatisticsSize, final int querySampleEvery) {
+        this.queryStatisticsSize = queryStatisticsSize;
+        this.querySampleEvery = querySampleEvery;
+    }
+
+    public int getQueryStatisticsSize() {
+        return queryStatisticsSize;
+    }
+
+    public int getQuerySampleEvery() {
+        return querySampleEvery;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.metrics;
+
+import io.netty.channel.ChannelHandler;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class PeerMetrics {
+    private final LongAdder connections = new LongAdder();
+    private final LongAdder activeConnections = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final FrameCounts frames = new FrameCounts();
+
+    public ChannelHandler newHandler() {
+        return new TrafficMetricsHandler(this);
+    }
+
+    void connectionOpened() {
+        connections.increment();
+        activeConnections.increment();
+    }
+
+    void connectionClosed() {
+        activeConnections.decrement();
+    }
+
+    void received(final int bytes) {
+        bytesReceived.add(bytes);
+    }
+
+    void sent(final int bytes) {
+        bytesSent.add(bytes);
+    }
+
+    public FrameCounts getFrames() {
+        return frames;
+    }
+
+    public long getConnections() {
+        return connections.sum();
+    }
+
+    public long getActiveConnections() {
+        return activeConnections.sum();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.metrics;
+
+import com.dajudge.proxybase.config.Endpoint;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ProxyMetrics {
+    private final PeerMetrics client = new PeerMetrics();
+    private final PeerMetrics server = new PeerMetrics();
+    private final DurationStats sslHandshakes = new DurationStats();
+    private final DurationStats authentications = new DurationStats();
+    private final LatencyHistogram simpleQueries = new LatencyHistogram();
+    private final LatencyHistogram extendedQueries = new LatencyHistogram();
+    private final QueryStatistics queryStatistics;
+    private final List<EndpointMetrics> endpoints = new CopyOnWriteArrayList<>();
+    private final LongAdder sslAcceptedCount = new LongAdder();
+    private final LongAdder sslDeniedCount = new LongAdder();
+    private final LongAdder authFailures = new LongAdder();
+
+    public ProxyMetrics() {
+        this(MetricsConfig.DEFAULT);
+    }
+
+    public ProxyMetrics(final MetricsConfig config) {
+        queryStatistics = new QueryStatistics(config.getQueryStatisticsSize(), config.getQuerySampleEvery());
+    }
+
+    public PeerMetrics getClient() {
+        return client;
+    }
+
+    public PeerMetrics getServer() {
+        return server;
+    }
+
+    public DurationStats getSslHandshakes() {
+        return sslHandshakes;
+    }
+
+    public DurationStats getAuthentications() {
+        return authentications;
+    }
+
+    public LatencyHistogram getSimpleQueries() {
+        return simpleQueries;
+    }
+
+    public LatencyHistogram getExtendedQueries() {
+        return extendedQueries;
+    }
+
+    public QueryStatistics getQueryStatistics() {
+        return queryStatistics;
+    }
+
+    public EndpointMetrics newEndpoint(final String route, final String role, final Endpoint endpoint) {
+        final EndpointMetrics metrics = new EndpointMetrics(route, role, endpoint);
+        endpoints.add(metrics);
+        return metrics;
+    }
+
+    public List<EndpointMetrics> getEndpoints() {
+        return Collections.unmodifiableList(endpoints);
+    }
+
+    public void sslAccepted() {
+        sslAcceptedCount.increment();
+    }
+
+    public void sslDenied() {
+        sslDeniedCount.increment();
+    }
+
+    public void authFailed() {
+        authFailures.increment();
+    }
+
+    public long getSslAccepted() {
+        return sslAcceptedCount.sum();
+    }
+
+    public long getSslDenied() {
+        return sslDeniedCount.sum();
+    }
+
+    public long getAuthFailures() {
+        return authFailures.sum();
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.metrics;
+
+import java.util.regex.Pattern;
+
+// Like pg_stat_statements: literals and placeholders become ?, lists of them collapse into one
+public final class QueryFingerprint {
+    private static final char PLACEHOLDER = '?';
+    private static final char QUOTE = '\'';
+    private static final char DOUBLE_QUOTE = '"';
+    private static final char BACKSLASH = '\\';
+    private static final Pattern PLACEHOLDER_LIST = Pattern.compile("\\(\\?(?: ?, ?\\?)+\\)");
+
+    private QueryFingerprint() {
+    }
+
+    public static String of(final String sql) {
+        final StringBuilder out = new StringBuilder(sql.length());
+        int i = 0;
+        while (i < sql.length()) {
+            final char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i = skipWhitespace(sql, i);
+                space(out);
+            } else if (c == '-' && sql.startsWith("--", i)) {
+                i = skipLineComment(sql, i);
+                space(out);
+            } else if (c == '/' && sql.startsWith("/*", i)) {
+                i = skipBlockComment(sql, i);
+                space(out);
+            } else if (c == QUOTE) {
+                final boolean escapes = removeStringPrefix(out);
+                i = skipString(sql, i, escapes);
+                out.append(PLACEHOLDER);
+            } else if (c == DOUBLE_QUOTE) {
+                final int end = skipQuotedIdentifier(sql, i);
+                out.append(sql, i, end);
+                i = end;
+            } else if (c == '$' && !endsWithIdentifier(out)) {
+                i = skipDollar(sql, i, out);
+            } else if (isNumberStart(sql, i) && !endsWithIdentifier(out)) {
+                i = skipNumber(sql, i);
+                out.append(PLACEHOLDER);
+            } else {
+                out.append(c);
+                i++;
+            }
+        }
+        final int end = out.length() - 1;
+        if (end >= 0 && out.charAt(end) == ' ') {
+            out.setLength(end);
+        }
+        return PLACEHOLDER_LIST.matcher(out).replaceAll("(?)");
+    }
+
+    private static void space(final StringBuilder out) {
+        if (out.length() > 0 && out.charAt(out.length() - 1) != ' ') {
+            out.append(' ');
+        }
+    }
+
+    private static int skipWhitespace(final String sql, final int start) {
+        int i = start;
+        while (i < sql.length() && Character.isWhitespace(sql.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipLineComment(final String sql, final int start) {
+        final int end = sql.indexOf('\n', start);
+        return end < 0 ? sql.length() : end + 1;
+    }
+
+    private static int skipBlockComment(final String sql, final int start) {
+        // Block comments nest in PostgreSQL
+        int depth = 0;
+        int i = start;
+        while (i < sql.length()) {
+            if (sql.startsWith("/*", i)) {
+                depth++;
+                i += 2;
+            } else if (sql.startsWith("*/", i)) {
+                depth--;
+                i += 2;
+                if (depth == 0) {
+                    return i;
+                }
+            } else {
+                i++;
+            }
+        }
+        return i;
+    }
+
+    // Removes the E, B, X or N prefix of a string literal, returns true for E'...' strings with backslash escapes
+    private static boolean removeStringPrefix(final StringBuilder out) {
+        final int last = out.length() - 1;
+        if (last < 0) {
+            return false;
+        }
+        final char prefix = Character.toUpperCase(out.charAt(last));
+        final boolean standalone = last == 0 || !isIdentifierPart(out.charAt(last - 1));
+        if (standalone && "EBXN".indexOf(prefix) >= 0) {
+            out.setLength(last);
+            return prefix == 'E';
+        }
+        return false;
+    }
+
+    private static int skipString(final String sql, final int start, final boolean escapes) {
+        int i = start + 1;
+        while (i < sql.length()) {
+            final char c = sql.charAt(i);
+            if (escapes && c == BACKSLASH) {
+                i += 2;
+            } else if (c == QUOTE) {
+                if (i + 1 < sql.length() && sql.charAt(i + 1) == QUOTE) {
+                    i += 2;
+                } else {
+                    return i + 1;
+                }
+            } else {
+                i++;
+            }
+        }
+        return i;
+    }
+
+    private static int skipQuotedIdentifier(final String sql, final int start) {
+        int i = start + 1;
+        while (i < sql.length()) {
+            if (sql.charAt(i) == DOUBLE_QUOTE) {
+                if (i + 1 < sql.length() && sql.charAt(i + 1) == DOUBLE_QUOTE) {
+                    i += 2;
+                } else {
+                    return i + 1;
+                }
+            } else {
+                i++;
+            }
+        }
+        return i;
+    }
+
+    // Handles $1 style placeholders and $tag$...$tag$ literals, anything else is copied
+    private static int skipDollar(final String sql, final int start, final StringBuilder out) {
+        int i = start + 1;
+        if (i < sql.length() && Character.isDigit(sql.charAt(i))) {
+            while (i < sql.length() && Character.isDigit(sql.charAt(i))) {
+                i++;
+            }
+            out.append(PLACEHOLDER);
+            return i;
+        }
+        while (i < sql.length() && isIdentifierPart(sql.charAt(i)) && sql.charAt(i) != '$') {
+            i++;
+        }
+        if (i < sql.length() && sql.charAt(i) == '$') {
+            final String tag = sql.substring(start, i + 1);
+            final int end = sql.indexOf(tag, i + 1);
+            out.append(PLACEHOLDER);
+            return end < 0 ? sql.length() : end + tag.length();
+        }
+        out.append('$');
+        return start + 1;
+    }
+
+    private static boolean isNumberStart(final String sql, final int i) {
+        final char c = sql.charAt(i);
+        return Character.isDigit(c)
+                || c == '.' && i + 1 < sql.length() && Character.isDigit(sql.charAt(i + 1));
+    }
+
+    private static int skipNumber(final String sql, final int start) {
+        int i = start;
+        while (i < sql.length()) {
+            final char c = sql.charAt(i);
+            if (Character.isDigit(c) || c == '.') {
+                i++;
+            } else if ((c == 'e' || c == 'E') && i + 1 < sql.length()) {
+                final char next = sql.charAt(i + 1);
+                i += next == '+' || next == '-' ? 2 : 1;
+            } else {
+                return i;
+            }
+        }
+        return i;
+    }
+
+    private static boolean endsWithIdentifier(final StringBuilder out) {
+        return out.length() > 0 && isIdentifierPart(out.charAt(out.length() - 1));
+    }
+
+    private static boolean isIdentifierPart(final char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+}
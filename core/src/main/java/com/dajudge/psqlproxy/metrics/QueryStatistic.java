@@ -0,0 +1,67 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.metrics;
+
+public class QueryStatistic {
+    private final String fingerprint;
+    private final long calls;
+    private final long totalNanos;
+    private final long totalNanosError;
+    private final long rows;
+    private final long bytes;
+
+    public QueryStatistic(
+            final String fingerprint,
+            final long calls,
+            final long totalNanos,
+            final long totalNanosError,
+            final long rows,
+            final long bytes
+    ) {
+        this.fingerprint = fingerprint;
+        this.calls = calls;
+        this.totalNanos = totalNanos;
+        this.totalNanosError = totalNanosError;
+        this.rows = rows;
+        this.bytes = bytes;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public long getCalls() {
+        return calls;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getTotalNanosError() {
+        return totalNanosError;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+}
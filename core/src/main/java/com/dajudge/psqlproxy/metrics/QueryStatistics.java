@@ -0,0 +1,128 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.metrics;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.stream.Collectors.toList;
+
+// Space-Saving: a new fingerprint inherits the total time of the one it evicts, reported as its error.
+// Known fingerprints are recorded without locking, only new ones take the lock to evict the cheapest.
+// A record racing the eviction of its fingerprint is lost.
+public class QueryStatistics {
+    private final int capacity;
+    private final int sampleEvery;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    // Ordered by the total each entry had when it was queued, which can only have grown since
+    private final Queue<Entry> evictionQueue = new PriorityQueue<>(Comparator.comparingLong(e -> e.queuedNanos));
+
+    public QueryStatistics(final int capacity, final int sampleEvery) {
+        this.capacity = capacity;
+        this.sampleEvery = Math.max(1, sampleEvery);
+    }
+
+    public boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    public int getSampleEvery() {
+        return sampleEvery;
+    }
+
+    public void record(final String sql, final long nanos, final long rows, final long bytes) {
+        final String fingerprint = QueryFingerprint.of(sql);
+        Entry entry = entries.get(fingerprint);
+        if (entry == null) {
+            entry = newEntry(fingerprint);
+        }
+        entry.calls.increment();
+        entry.totalNanos.add(nanos);
+        entry.rows.add(rows);
+        entry.bytes.add(bytes);
+    }
+
+    private Entry newEntry(final String fingerprint) {
+        synchronized (evictionQueue) {
+            final Entry existing = entries.get(fingerprint);
+            if (existing != null) {
+                return existing;
+            }
+            long inheritedNanos = 0;
+            if (entries.size() >= capacity) {
+                final Entry evicted = cheapest();
+                entries.remove(evicted.fingerprint);
+                inheritedNanos = evicted.totalNanos.sum();
+            }
+            final Entry entry = new Entry(fingerprint, inheritedNanos);
+            entries.put(fingerprint, entry);
+            evictionQueue.add(entry);
+            return entry;
+        }
+    }
+
+    // An entry whose total didn't grow since it was queued is cheaper than all others, otherwise it's requeued
+    private Entry cheapest() {
+        Entry entry = evictionQueue.remove();
+        long totalNanos = entry.totalNanos.sum();
+        while (totalNanos != entry.queuedNanos) {
+            entry.queuedNanos = totalNanos;
+            evictionQueue.add(entry);
+            entry = evictionQueue.remove();
+            totalNanos = entry.totalNanos.sum();
+        }
+        return entry;
+    }
+
+    public List<QueryStatistic> top(final int limit, final Comparator<QueryStatistic> order) {
+        return entries.values().stream()
+                .map(entry -> new QueryStatistic(
+                        entry.fingerprint,
+                        entry.calls.sum() * sampleEvery,
+                        entry.totalNanos.sum() * sampleEvery,
+                        entry.errorNanos * sampleEvery,
+                        entry.rows.sum() * sampleEvery,
+                        entry.bytes.sum() * sampleEvery
+                ))
+                .sorted(order)
+                .limit(limit)
+                .collect(toList());
+    }
+
+    private static final class Entry {
+        private final String fingerprint;
+        private final long errorNanos;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private long queuedNanos;
+
+        private Entry(final String fingerprint, final long inheritedNanos) {
+            this.fingerprint = fingerprint;
+            this.errorNanos = inheritedNanos;
+            this.queuedNanos = inheritedNanos;
+            totalNanos.add(inheritedNanos);
+        }
+    }
+}
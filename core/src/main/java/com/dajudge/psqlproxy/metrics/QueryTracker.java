@@ -0,0 +1,219 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.metrics;
+
+import com.dajudge.psqlproxy.protocol.frames.TypedFrame;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ByteProcessor;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// Pipelined requests are answered in order, so the pending ones are kept in a ring buffer. Extended
+// protocol requests are attributed to the last statement parsed or bound before the Sync.
+public class QueryTracker {
+    private static final int MAX_PENDING = 32;
+    private static final int MAX_PREPARED_STATEMENTS = 256;
+    private static final int MAX_SQL_BYTES = 4096;
+    private static final char READY_FOR_QUERY = 'Z';
+    private static final char COMMAND_COMPLETE = 'C';
+    private static final byte CLOSE_STATEMENT = 'S';
+    private final LatencyHistogram simpleQueries;
+    private final LatencyHistogram extendedQueries;
+    private final QueryStatistics statistics;
+    private final long[] startNanos = new long[MAX_PENDING];
+    private final LatencyHistogram[] histograms = new LatencyHistogram[MAX_PENDING];
+    private final String[] sampledSql = new String[MAX_PENDING];
+    private final Map<String, String> preparedStatements = new HashMap<>();
+    private int head;
+    private int size;
+    private int untracked;
+    private boolean inBatch;
+    private boolean batchSampled;
+    private String batchSql;
+    private long responseRows;
+    private long responseBytes;
+
+    public QueryTracker(final ProxyMetrics metrics) {
+        this.simpleQueries = metrics.getSimpleQueries();
+        this.extendedQueries = metrics.getExtendedQueries();
+        this.statistics = metrics.getQueryStatistics();
+    }
+
+    @SuppressWarnings(value = "PMD.NullAssignment") // Requests without SQL aren't sampled
+    public void clientFrame(final TypedFrame frame) {
+        switch (frame.getType()) {
+            case 'Q':
+                start(simpleQueries, sample() ? readString(frame.content(), TypedFrame.HEADER_SIZE) : null);
+                break;
+            case 'F':
+                start(simpleQueries, null);
+                break;
+            case 'P':
+                parse(frame.content());
+                break;
+            case 'B':
+                bind(frame.content());
+                break;
+            case 'C':
+                close(frame.content());
+                break;
+            case 'S':
+                start(extendedQueries, batchSampled ? batchSql : null);
+                inBatch = false;
+                batchSql = null;
+                break;
+            default:
+                break;
+        }
+    }
+
+    public void serverFrame(final TypedFrame frame) {
+        final char type = frame.getType();
+        if (size > 0 && sampledSql[head] != null) {
+            responseBytes += frame.content().readableBytes();
+            if (type == COMMAND_COMPLETE) {
+                responseRows += rows(frame.content());
+            }
+        }
+        if (type == READY_FOR_QUERY) {
+            complete();
+        }
+    }
+
+    private boolean sample() {
+        return statistics.isEnabled() && ThreadLocalRandom.current().nextInt(statistics.getSampleEvery()) == 0;
+    }
+
+    private void startBatch() {
+        if (!inBatch) {
+            inBatch = true;
+            batchSampled = sample();
+        }
+    }
+
+    private void parse(final ByteBuf frame) {
+        startBatch();
+        final int nameStart = frame.readerIndex() + TypedFrame.HEADER_SIZE;
+        final int nameEnd = indexOfNul(frame, nameStart);
+        // Named statements are cached for the Binds of later sampled batches
+        final boolean cached = nameEnd > nameStart
+                && statistics.isEnabled()
+                && preparedStatements.size() < MAX_PREPARED_STATEMENTS;
+        if (nameEnd < 0 || !cached && !batchSampled) {
+            return;
+        }
+        final String sql = readString(frame, nameEnd + 1 - frame.readerIndex());
+        if (cached) {
+            preparedStatements.put(frame.toString(nameStart, nameEnd - nameStart, UTF_8), sql);
+        }
+        if (batchSampled) {
+            batchSql = sql;
+        }
+    }
+
+    private void bind(final ByteBuf frame) {
+        startBatch();
+        if (!batchSampled) {
+            return;
+        }
+        final int statementIndex = indexOfNul(frame, frame.readerIndex() + TypedFrame.HEADER_SIZE) + 1;
+        // The SQL of the unnamed statement is known from the Parse preceding the Bind
+        if (statementIndex > 0 && frame.getByte(statementIndex) != 0) {
+            final String sql = preparedStatements.get(readString(frame, statementIndex - frame.readerIndex()));
+            if (sql != null) {
+                batchSql = sql;
+            }
+        }
+    }
+
+    private void close(final ByteBuf frame) {
+        final int index = frame.readerIndex() + TypedFrame.HEADER_SIZE;
+        if (!preparedStatements.isEmpty() && frame.getByte(index) == CLOSE_STATEMENT) {
+            preparedStatements.remove(readString(frame, TypedFrame.HEADER_SIZE + 1));
+        }
+    }
+
+    private void start(final LatencyHistogram histogram, final String sql) {
+        // Once a request wasn't tracked, all later ones aren't either until it completed, to keep the order
+        if (untracked > 0 || size == MAX_PENDING) {
+            untracked++;
+            return;
+        }
+        final int tail = (head + size) % MAX_PENDING;
+        startNanos[tail] = System.nanoTime();
+        histograms[tail] = histogram;
+        sampledSql[tail] = sql;
+        size++;
+    }
+
+    @SuppressWarnings(value = "PMD.NullAssignment") // Don't keep the SQL of completed requests
+    private void complete() {
+        if (size > 0) {
+            final long nanos = System.nanoTime() - startNanos[head];
+            histograms[head].record(nanos);
+            if (sampledSql[head] != null) {
+                statistics.record(sampledSql[head], nanos, responseRows, responseBytes);
+                sampledSql[head] = null;
+                responseRows = 0;
+                responseBytes = 0;
+            }
+            head = (head + 1) % MAX_PENDING;
+            size--;
+        } else if (untracked > 0) {
+            untracked--;
+        }
+        // Otherwise the ReadyForQuery completes the startup
+    }
+
+    // Reads the null terminated string at the given offset into the frame, truncated to MAX_SQL_BYTES
+    private static String readString(final ByteBuf frame, final int offset) {
+        final int start = frame.readerIndex() + offset;
+        final int end = indexOfNul(frame, start);
+        final int length = (end < 0 ? frame.writerIndex() : end) - start;
+        return frame.toString(start, Math.min(length, MAX_SQL_BYTES), UTF_8);
+    }
+
+    private static int indexOfNul(final ByteBuf frame, final int start) {
+        return frame.forEachByte(start, frame.writerIndex() - start, ByteProcessor.FIND_NUL);
+    }
+
+    // The row count is the last number in the CommandComplete tag, e.g. "SELECT 5" or "INSERT 0 5"
+    private static long rows(final ByteBuf frame) {
+        int index = frame.writerIndex() - 1;
+        final int start = frame.readerIndex() + TypedFrame.HEADER_SIZE;
+        while (index > start && frame.getByte(index) == 0) {
+            index--;
+        }
+        long rows = 0;
+        long factor = 1;
+        while (index >= start) {
+            final int digit = frame.getByte(index) - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            rows += digit * factor;
+            factor *= 10;
+            index--;
+        }
+        return rows;
+    }
+}
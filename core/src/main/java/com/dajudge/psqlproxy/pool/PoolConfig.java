@@ -0,0 +1,120 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.pool;
+
+public class PoolConfig {
+    public static final int DEFAULT_MAX_PREPARED_STATEMENTS = 200;
+    public static final long DEFAULT_IDLE_TIMEOUT_MSECS = 600000;
+    public static final int DEFAULT_MAX_SERVER_CONNECTIONS = 100;
+    public static final PoolConfig DISABLED = new PoolConfig(PoolingMode.NONE, 0, 0, 0, 0);
+
+    private final PoolingMode mode;
+    private final int minIdle;
+    private final int maxSize;
+    private final long acquireTimeoutMsecs;
+    private final int maxWaitingClients;
+    private final int maxPreparedStatements;
+    private final long idleTimeoutMsecs;
+    private final int maxServerConnections;
+
+    public PoolConfig(
+            final PoolingMode mode,
+            final int minIdle,
+            final int maxSize,
+            final long acquireTimeoutMsecs,
+            final int maxWaitingClients
+    ) {
+        this(mode, minIdle, maxSize, acquireTimeoutMsecs, maxWaitingClients, DEFAULT_MAX_PREPARED_STATEMENTS);
+    }
+
+    public PoolConfig(
+            final PoolingMode mode,
+            final int minIdle,
+            final int maxSize,
+            final long acquireTimeoutMsecs,
+            final int maxWaitingClients,
+            final int maxPreparedStatements
+    ) {
+        this(
+                mode,
+                minIdle,
+                maxSize,
+                acquireTimeoutMsecs,
+                maxWaitingClients,
+                maxPreparedStatements,
+                DEFAULT_IDLE_TIMEOUT_MSECS,
+                DEFAULT_MAX_SERVER_CONNECTIONS
+        );
+    }
+
+    public PoolConfig(
+            final PoolingMode mode,
+            final int minIdle,
+            final int maxSize,
+            final long acquireTimeoutMsecs,
+            final int maxWaitingClients,
+            final int maxPreparedStatements,
+            final long idleTimeoutMsecs,
+            final int maxServerConnections
+    ) {
+        this.mode = mode;
+        this.minIdle = minIdle;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMsecs = acquireTimeoutMsecs;
+        this.maxWaitingClients = maxWaitingClients;
+        this.maxPreparedStatements = maxPreparedStatements;
+        this.idleTimeoutMsecs = idleTimeoutMsecs;
+        this.maxServerConnections = maxServerConnections;
+    }
+
+    public PoolingMode getMode() {
+        return mode;
+    }
+
+    public boolean isEnabled() {
+        return mode != PoolingMode.NONE;
+    }
+
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getAcquireTimeoutMsecs() {
+        return acquireTimeoutMsecs;
+    }
+
+    public int getMaxWaitingClients() {
+        return maxWaitingClients;
+    }
+
+    public int getMaxPreparedStatements() {
+        return maxPreparedStatements;
+    }
+
+    public long getIdleTimeoutMsecs() {
+        return idleTimeoutMsecs;
+    }
+
+    public int getMaxServerConnections() {
+        return maxServerConnections;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.pool;
+
+import com.dajudge.psqlproxy.cache.ResultCache;
+import com.dajudge.psqlproxy.metrics.ProxyMetrics;
+import com.dajudge.psqlproxy.metrics.QueryTracker;
+import com.dajudge.psqlproxy.protocol.UpstreamSslRejectHandler;
+import com.dajudge.psqlproxy.protocol.frames.UntypedFrameDecoder;
+import com.dajudge.psqlproxy.routing.ReplicaConfig;
+import com.dajudge.psqlproxy.transport.BackpressureHandler;
+import com.dajudge.psqlproxy.transport.WriteBatchingHandler;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+
+public class PooledClientInitializer extends ChannelInitializer<Channel> {
+    private final PoolConfig config;
+    private final ServerConnectionPools pools;
+    private final ProxyMetrics metrics;
+    private final ResultCache resultCache;
+    private final ReplicaConfig replicaConfig;
+
+    public PooledClientInitializer(
+            final PoolConfig config,
+            final ServerConnectionPools pools,
+            final ProxyMetrics metrics,
+            final ResultCache resultCache,
+            final ReplicaConfig replicaConfig
+    ) {
+        this.config = config;
+        this.pools = pools;
+        this.metrics = metrics;
+        this.resultCache = resultCache;
+        this.replicaConfig = replicaConfig;
+    }
+
+    @Override
+    protected void initChannel(final Channel ch) {
+        // The sessions pass on the server's frames on the client's event loop, so the tracker is confined to it
+        final QueryTracker queryTracker = new QueryTracker(metrics);
+        final PooledSession session = config.getMode() == PoolingMode.SESSION
+                ? new SessionPoolingSession(ch, queryTracker::serverFrame, resultCache)
+                : new TransactionPoolingSession(
+                        ch,
+                        queryTracker::serverFrame,
+                        resultCache,
+                        config.getMaxPreparedStatements(),
+                        replicaConfig
+                );
+        ch.pipeline().addLast(metrics.getClient().newHandler());
+        ch.pipeline().addLast(new WriteBatchingHandler());
+        ch.pipeline().addLast(new BackpressureHandler(session::onClientWritabilityChanged));
+        ch.pipeline().addLast(new UntypedFrameDecoder());
+        ch.pipeline().addLast(new UpstreamSslRejectHandler());
+        ch.pipeline().addLast(new PooledStartupHandler(
+                pools,
+                session,
+                metrics.getClient().getFrames().andThen(queryTracker::clientFrame)
+        ));
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.pool;
+
+import com.dajudge.psqlproxy.protocol.TypedFrameHandler.FrameProcessor;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.Future;
+
+import java.util.List;
+import java.util.Map;
+
+public interface PooledSession extends FrameProcessor {
+    // Completes with the ParameterStatus and BackendKeyData frames for the client, owned by the caller
+    Future<List<ByteBuf>> start(
+            ServerConnectionPool pool,
+            ReplicaPools replicas,
+            Map<String, String> startupParameters,
+            Map<String, String> settings
+    );
+
+    void onClientWritabilityChanged(boolean writable);
+}
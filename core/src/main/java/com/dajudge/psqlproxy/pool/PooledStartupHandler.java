@@ -0,0 +1,145 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.pool;
+
+import com.dajudge.psqlproxy.metrics.FrameListener;
+import com.dajudge.psqlproxy.protocol.TypedFrameHandler;
+import com.dajudge.psqlproxy.protocol.exception.ProtocolErrorException;
+import com.dajudge.psqlproxy.protocol.frames.UntypedFrame;
+import com.dajudge.psqlproxy.protocol.messages.StartupMessage;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.concurrent.Future;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.dajudge.psqlproxy.protocol.frames.UntypedFrameDecoder.switchToTypedFrames;
+import static com.dajudge.psqlproxy.protocol.messages.BackendMessages.authenticationOk;
+import static com.dajudge.psqlproxy.protocol.messages.BackendMessages.fatalError;
+import static com.dajudge.psqlproxy.protocol.messages.BackendMessages.parameterName;
+import static com.dajudge.psqlproxy.protocol.messages.BackendMessages.parameterStatus;
+import static com.dajudge.psqlproxy.protocol.messages.BackendMessages.readyForQuery;
+
+public class PooledStartupHandler extends ChannelInboundHandlerAdapter {
+    private static final Logger LOG = LoggerFactory.getLogger(PooledStartupHandler.class);
+    private static final int PROTOCOL_MAJOR_VERSION = 3;
+    private static final String USER_PARAM = "user";
+    // https://www.postgresql.org/docs/current/errcodes-appendix.html
+    private static final String SQLSTATE_CONNECTION_FAILURE = "08006";
+    private static final String SQLSTATE_FEATURE_NOT_SUPPORTED = "0A000";
+    private static final byte PARAMETER_STATUS = 'S';
+    private final ServerConnectionPools pools;
+    private final PooledSession session;
+    private final FrameListener frameListener;
+
+    public PooledStartupHandler(
+            final ServerConnectionPools pools,
+            final PooledSession session,
+            final FrameListener frameListener
+    ) {
+        this.pools = pools;
+        this.session = session;
+        this.frameListener = frameListener;
+    }
+
+    @Override
+    public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+        final UntypedFrame message = (UntypedFrame) msg;
+        final ByteBuf payload = message.getPayload();
+        if (payload.getShort(payload.readerIndex()) != PROTOCOL_MAJOR_VERSION) {
+            // CancelRequest cannot be routed to the right server connection in pooling mode
+            LOG.debug("Unsupported startup request, closing connection");
+            message.release();
+            ctx.close();
+            return;
+        }
+        final StartupMessage startupMessage = new StartupMessage(payload);
+        message.release();
+        final Map<String, String> startupParameters = startupParameters(startupMessage);
+        final Channel client = ctx.channel();
+        final Map<String, String> settings;
+        try {
+            settings = SessionSettings.of(startupParameters);
+        } catch (final ProtocolErrorException e) {
+            LOG.debug("Rejecting client: {}", e.getMessage());
+            client.writeAndFlush(fatalError(client.alloc(), SQLSTATE_FEATURE_NOT_SUPPORTED, e.getMessage()))
+                    .addListener(f -> client.close());
+            ctx.pipeline().remove(this);
+            return;
+        }
+        final ServerConnectionPool pool = pools.forClient(startupParameters);
+        final ReplicaPools replicas = pools.replicasForClient(startupParameters);
+        client.closeFuture().addListener(future -> {
+            pool.removeClient();
+            replicas.removeClient();
+        });
+        session.start(pool, replicas, startupParameters, settings).addListener((Future<List<ByteBuf>> future) -> {
+            if (future.isSuccess()) {
+                sendStartupResponse(client, future.getNow(), settings);
+            } else {
+                final String error = future.cause().getMessage();
+                LOG.warn("Failed to start session: {}", error);
+                client.writeAndFlush(fatalError(client.alloc(), SQLSTATE_CONNECTION_FAILURE, error))
+                        .addListener(f -> client.close());
+            }
+        });
+        ctx.pipeline().replace(this, null, new TypedFrameHandler(session, frameListener));
+        switchToTypedFrames(ctx.pipeline());
+    }
+
+    private static Map<String, String> startupParameters(final StartupMessage startupMessage) {
+        final Map<String, String> params = new LinkedHashMap<>();
+        final List<String> list = startupMessage.getParams();
+        for (int i = 0; i + 1 < list.size(); i += 2) {
+            if (!USER_PARAM.equals(list.get(i))) {
+                params.put(list.get(i), list.get(i + 1));
+            }
+        }
+        return params;
+    }
+
+    private static void sendStartupResponse(
+            final Channel client,
+            final List<ByteBuf> frames,
+            final Map<String, String> settings
+    ) {
+        client.write(authenticationOk());
+        frames.forEach(frame -> client.write(withSettings(client, frame, settings)));
+        client.writeAndFlush(readyForQuery(client.alloc(), 'I'));
+    }
+
+    // The frames were sent to whichever client opened the server connection, so report the client's own settings
+    private static ByteBuf withSettings(final Channel client, final ByteBuf frame, final Map<String, String> settings) {
+        if (settings.isEmpty() || frame.getByte(frame.readerIndex()) != PARAMETER_STATUS) {
+            return frame;
+        }
+        final String name = parameterName(frame);
+        final String value = settings.get(name);
+        if (value == null) {
+            return frame;
+        }
+        frame.release();
+        return parameterStatus(client.alloc(), name, value);
+    }
+}
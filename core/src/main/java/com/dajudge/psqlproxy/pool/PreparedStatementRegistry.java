@@ -0,0 +1,52 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.pool;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static java.util.Optional.empty;
+
+public class PreparedStatementRegistry {
+    private final Map<String, Boolean> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+    public boolean contains(final String name) {
+        return statements.get(name) != null;
+    }
+
+    public Optional<String> add(final String name, final int maxStatements) {
+        statements.put(name, Boolean.TRUE);
+        if (statements.size() <= maxStatements) {
+            return empty();
+        }
+        final Iterator<String> eldest = statements.keySet().iterator();
+        final String evicted = eldest.next();
+        eldest.remove();
+        return Optional.of(evicted);
+    }
+
+    public void remove(final String name) {
+        statements.remove(name);
+    }
+
+    public void clear() {
+        statements.clear();
+    }
+}
@@ -0,0 +1,380 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.pool;
+
+import com.dajudge.psqlproxy.protocol.frames.TypedFrame;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.Channel;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static com.dajudge.psqlproxy.protocol.frames.TypedFrame.HEADER_SIZE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.regex.Pattern.CASE_INSENSITIVE;
+
+// Statements are created on the server under a name derived from their query, so clients share them.
+// Missing ones are parsed before a Bind or Describe, and the responses to inserted frames dropped.
+public class PreparedStatementTracker {
+    // https://www.postgresql.org/docs/current/protocol-message-formats.html
+    private static final char PARSE = 'P';
+    private static final char BIND = 'B';
+    private static final char DESCRIBE = 'D';
+    private static final char CLOSE = 'C';
+    private static final char EXECUTE = 'E';
+    private static final char SYNC = 'S';
+    private static final char QUERY = 'Q';
+    private static final char FUNCTION_CALL = 'F';
+    private static final char STATEMENT = 'S';
+    private static final char PARSE_COMPLETE = '1';
+    private static final char BIND_COMPLETE = '2';
+    private static final char CLOSE_COMPLETE = '3';
+    private static final char ROW_DESCRIPTION = 'T';
+    private static final char NO_DATA = 'n';
+    private static final char COMMAND_COMPLETE = 'C';
+    private static final char EMPTY_QUERY_RESPONSE = 'I';
+    private static final char PORTAL_SUSPENDED = 's';
+    private static final char READY_FOR_QUERY = 'Z';
+    private static final char ERROR_RESPONSE = 'E';
+    private static final int LENGTH_FIELD_SIZE = 4;
+    private static final String NAME_PREFIX = "psqlproxy_";
+    private static final int NAME_DIGEST_BYTES = 16;
+    private static final int MAX_DISCARD_ALL_BYTES = 64;
+    private static final Pattern DISCARD_ALL = Pattern.compile(
+            "^\\s*(DISCARD|DEALLOCATE(\\s+PREPARE)?)\\s+ALL\\b",
+            CASE_INSENSITIVE
+    );
+    private final Channel client;
+    private final int maxStatements;
+    private final Map<String, Statement> statements = new HashMap<>();
+    private final Deque<Request> requests = new ArrayDeque<>();
+    private MessageDigest digest;
+
+    public PreparedStatementTracker(final Channel client, final int maxStatements) {
+        this.client = client;
+        this.maxStatements = maxStatements;
+    }
+
+    public void send(final ServerConnection server, final ByteBuf frame) {
+        if (maxStatements == 0) {
+            server.write(frame);
+            return;
+        }
+        final char type = (char) frame.getByte(frame.readerIndex());
+        switch (type) {
+            case PARSE:
+                sendParse(server, frame);
+                break;
+            case BIND:
+                sendBind(server, frame);
+                break;
+            case DESCRIBE:
+                sendDescribe(server, frame);
+                break;
+            case CLOSE:
+                sendClose(server, frame);
+                break;
+            case QUERY:
+                sendQuery(server, frame);
+                break;
+            case EXECUTE:
+            case SYNC:
+            case FUNCTION_CALL:
+                forward(server, type, frame);
+                break;
+            default:
+                // Flush and COPY data have no response of their own
+                server.write(frame);
+                break;
+        }
+    }
+
+    public void relay(final TypedFrame frame) {
+        final Request head = requests.peekFirst();
+        if (head == null) {
+            client.writeAndFlush(frame.content());
+            return;
+        }
+        final char type = frame.getType();
+        if (type == ERROR_RESPONSE && head.isExtendedQuery()) {
+            // The server skips everything up to the next Sync after an error
+            client.writeAndFlush(frame.content());
+            do {
+                requests.pollFirst().onFailure();
+            } while (!requests.isEmpty() && requests.peekFirst().type != SYNC);
+            return;
+        }
+        if (!head.isCompletedBy(type)) {
+            client.writeAndFlush(frame.content());
+            return;
+        }
+        requests.pollFirst();
+        if (head.inserted) {
+            frame.release();
+        } else {
+            client.writeAndFlush(frame.content());
+        }
+        answerPendingRequests();
+    }
+
+    private void sendParse(final ServerConnection server, final ByteBuf frame) {
+        final int nameIndex = frame.readerIndex() + HEADER_SIZE;
+        final int nameLength = frame.bytesBefore(nameIndex, frame.writerIndex() - nameIndex, (byte) 0);
+        if (nameLength == 0) {
+            forward(server, PARSE, frame);
+            return;
+        }
+        final String clientName = frame.toString(nameIndex, nameLength, UTF_8);
+        final byte[] body = ByteBufUtil.getBytes(frame, nameIndex + nameLength + 1,
+                frame.writerIndex() - nameIndex - nameLength - 1);
+        frame.release();
+        final Statement statement = new Statement(serverName(body), body);
+        statements.put(clientName, statement);
+        if (server.getPreparedStatements().contains(statement.name)) {
+            answer(PARSE_COMPLETE);
+        } else {
+            prepare(server, statement, clientName);
+        }
+    }
+
+    private void sendBind(final ServerConnection server, final ByteBuf frame) {
+        final int portalIndex = frame.readerIndex() + HEADER_SIZE;
+        final int portalLength = frame.bytesBefore(portalIndex, frame.writerIndex() - portalIndex, (byte) 0);
+        final int nameIndex = portalIndex + portalLength + 1;
+        final Statement statement = lookup(frame, nameIndex);
+        if (statement == null) {
+            forward(server, BIND, frame);
+            return;
+        }
+        ensurePrepared(server, statement);
+        final int restIndex = nameIndex + frame.bytesBefore(nameIndex, frame.writerIndex() - nameIndex, (byte) 0) + 1;
+        final ByteBuf portal = frame.retainedSlice(portalIndex, portalLength + 1);
+        final ByteBuf rest = frame.retainedSlice(restIndex, frame.writerIndex() - restIndex);
+        frame.release();
+        forward(server, BIND, withName(server.alloc(), BIND, portal, statement.name, rest));
+    }
+
+    private void sendDescribe(final ServerConnection server, final ByteBuf frame) {
+        final int kindIndex = frame.readerIndex() + HEADER_SIZE;
+        final Statement statement = frame.getByte(kindIndex) == STATEMENT ? lookup(frame, kindIndex + 1) : null;
+        if (statement == null) {
+            forward(server, DESCRIBE, frame);
+            return;
+        }
+        ensurePrepared(server, statement);
+        final ByteBuf kind = frame.retainedSlice(kindIndex, 1);
+        frame.release();
+        forward(server, DESCRIBE, withName(server.alloc(), DESCRIBE, kind, statement.name, null));
+    }
+
+    private void sendClose(final ServerConnection server, final ByteBuf frame) {
+        final int kindIndex = frame.readerIndex() + HEADER_SIZE;
+        if (frame.getByte(kindIndex) != STATEMENT || frame.getByte(kindIndex + 1) == 0) {
+            forward(server, CLOSE, frame);
+            return;
+        }
+        // Other clients may share the statement, so it's left for the server connection's limit to evict
+        final int nameIndex = kindIndex + 1;
+        statements.remove(frame.toString(nameIndex, frame.writerIndex() - nameIndex - 1, UTF_8));
+        frame.release();
+        answer(CLOSE_COMPLETE);
+    }
+
+    private void sendQuery(final ServerConnection server, final ByteBuf frame) {
+        final int sqlIndex = frame.readerIndex() + HEADER_SIZE;
+        final int sqlLength = Math.min(frame.writerIndex() - sqlIndex, MAX_DISCARD_ALL_BYTES);
+        if (DISCARD_ALL.matcher(frame.toString(sqlIndex, sqlLength, UTF_8)).find()) {
+            server.getPreparedStatements().clear();
+            statements.clear();
+        }
+        forward(server, QUERY, frame);
+    }
+
+    private Statement lookup(final ByteBuf frame, final int nameIndex) {
+        final int nameLength = frame.bytesBefore(nameIndex, frame.writerIndex() - nameIndex, (byte) 0);
+        if (nameLength <= 0) {
+            return null;
+        }
+        return statements.get(frame.toString(nameIndex, nameLength, UTF_8));
+    }
+
+    private void ensurePrepared(final ServerConnection server, final Statement statement) {
+        if (!server.getPreparedStatements().contains(statement.name)) {
+            prepare(server, statement, null);
+        }
+    }
+
+    private void prepare(final ServerConnection server, final Statement statement, final String clientName) {
+        final PreparedStatementRegistry registry = server.getPreparedStatements();
+        registry.add(statement.name, maxStatements).ifPresent(evicted -> {
+            final ByteBuf kind = server.alloc().buffer(1).writeByte(STATEMENT);
+            requests.addLast(new Request(CLOSE, true, evicted, null, registry));
+            server.write(withName(server.alloc(), CLOSE, kind, evicted, null));
+        });
+        final ByteBuf body = server.alloc().buffer(statement.body.length).writeBytes(statement.body);
+        requests.addLast(new Request(PARSE, clientName == null, statement.name, clientName, registry));
+        server.write(withName(server.alloc(), PARSE, null, statement.name, body));
+    }
+
+    private void forward(final ServerConnection server, final char type, final ByteBuf frame) {
+        requests.addLast(new Request(type, false, null, null, null));
+        server.write(frame);
+    }
+
+    private void answer(final char type) {
+        requests.addLast(new Request(type, false, null, null, null));
+        answerPendingRequests();
+    }
+
+    private void answerPendingRequests() {
+        while (!requests.isEmpty() && requests.peekFirst().isAnswered()) {
+            final ByteBuf response = client.alloc().buffer(HEADER_SIZE);
+            response.writeByte(requests.pollFirst().type);
+            response.writeInt(LENGTH_FIELD_SIZE);
+            client.writeAndFlush(response);
+        }
+    }
+
+    private String serverName(final byte[] body) {
+        if (digest == null) {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (final NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not supported by the JVM", e);
+            }
+        }
+        final byte[] hash = digest.digest(body);
+        return NAME_PREFIX + ByteBufUtil.hexDump(hash, 0, NAME_DIGEST_BYTES);
+    }
+
+    private static ByteBuf withName(
+            final ByteBufAllocator alloc,
+            final char type,
+            final ByteBuf prefix,
+            final String name,
+            final ByteBuf suffix
+    ) {
+        final int nameLength = ByteBufUtil.utf8Bytes(name) + 1;
+        final int prefixLength = prefix == null ? 0 : prefix.readableBytes();
+        final int suffixLength = suffix == null ? 0 : suffix.readableBytes();
+        final ByteBuf header = alloc.buffer(HEADER_SIZE + nameLength);
+        header.writeByte(type);
+        header.writeInt(LENGTH_FIELD_SIZE + prefixLength + nameLength + suffixLength);
+        if (prefix == null) {
+            header.writeCharSequence(name, UTF_8);
+            header.writeByte(0);
+            return suffix == null ? header : alloc.compositeBuffer(2).addComponents(true, header, suffix);
+        }
+        final ByteBuf nameBuffer = alloc.buffer(nameLength);
+        nameBuffer.writeCharSequence(name, UTF_8);
+        nameBuffer.writeByte(0);
+        if (suffix == null) {
+            return alloc.compositeBuffer(3).addComponents(true, header, prefix, nameBuffer);
+        }
+        return alloc.compositeBuffer(4).addComponents(true, header, prefix, nameBuffer, suffix);
+    }
+
+    private static final class Statement {
+        private final String name;
+        private final byte[] body;
+
+        private Statement(final String name, final byte[] body) {
+            this.name = name;
+            this.body = body;
+        }
+    }
+
+    private final class Request {
+        private final char type;
+        private final boolean inserted;
+        private final String statement;
+        private final String clientName;
+        private final PreparedStatementRegistry registry;
+
+        private Request(
+                final char type,
+                final boolean inserted,
+                final String statement,
+                final String clientName,
+                final PreparedStatementRegistry registry
+        ) {
+            this.type = type;
+            this.inserted = inserted;
+            this.statement = statement;
+            this.clientName = clientName;
+            this.registry = registry;
+        }
+
+        private boolean isAnswered() {
+            return type == PARSE_COMPLETE || type == CLOSE_COMPLETE;
+        }
+
+        private boolean isExtendedQuery() {
+            switch (type) {
+                case PARSE:
+                case BIND:
+                case DESCRIBE:
+                case CLOSE:
+                case EXECUTE:
+                case PARSE_COMPLETE:
+                case CLOSE_COMPLETE:
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        private boolean isCompletedBy(final char response) {
+            switch (type) {
+                case PARSE:
+                    return response == PARSE_COMPLETE;
+                case BIND:
+                    return response == BIND_COMPLETE;
+                case CLOSE:
+                    return response == CLOSE_COMPLETE;
+                case DESCRIBE:
+                    return response == ROW_DESCRIPTION || response == NO_DATA;
+                case EXECUTE:
+                    return response == COMMAND_COMPLETE || response == EMPTY_QUERY_RESPONSE
+                            || response == PORTAL_SUSPENDED;
+                default:
+                    return response == READY_FOR_QUERY;
+            }
+        }
+
+        private void onFailure() {
+            if (type == PARSE && statement != null) {
+                registry.remove(statement);
+                if (clientName != null && statements.containsKey(clientName)
+                        && statements.get(clientName).name.equals(statement)) {
+                    statements.remove(clientName);
+                }
+            } else if (type == CLOSE && statement != null) {
+                // The evicted statement still exists on the server
+                registry.add(statement, Integer.MAX_VALUE);
+            }
+        }
+    }
+}
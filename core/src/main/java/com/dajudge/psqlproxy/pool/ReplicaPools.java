@@ -0,0 +1,83 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.pool;
+
+import com.dajudge.psqlproxy.metrics.EndpointMetrics;
+import com.dajudge.psqlproxy.routing.BalancingPolicy;
+import com.dajudge.psqlproxy.routing.LoadBalancer;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static java.util.stream.Collectors.toList;
+
+public class ReplicaPools implements AutoCloseable {
+    public static final ReplicaPools NONE = new ReplicaPools(
+            Collections.emptyList(),
+            new LoadBalancer(BalancingPolicy.ROUND_ROBIN)
+    );
+
+    private final List<ServerConnectionPool> pools;
+    private final List<EndpointMetrics> endpoints;
+    private final LoadBalancer balancer;
+
+    public ReplicaPools(final List<ServerConnectionPool> pools, final LoadBalancer balancer) {
+        this.pools = pools;
+        this.endpoints = pools.stream().map(ServerConnectionPool::getEndpointMetrics).collect(toList());
+        this.balancer = balancer;
+    }
+
+    public boolean isEmpty() {
+        return pools.isEmpty();
+    }
+
+    public Optional<ServerConnectionPool> pick() {
+        final int index = balancer.pick(endpoints);
+        return index == LoadBalancer.NONE ? Optional.empty() : Optional.of(pools.get(index));
+    }
+
+    void addClient() {
+        pools.forEach(ServerConnectionPool::addClient);
+    }
+
+    public void removeClient() {
+        pools.forEach(ServerConnectionPool::removeClient);
+    }
+
+    void ensureMinIdle() {
+        pools.forEach(ServerConnectionPool::ensureMinIdle);
+    }
+
+    void closeIdleConnections(final long idleSinceNanos) {
+        pools.forEach(pool -> pool.closeIdleConnections(idleSinceNanos));
+    }
+
+    boolean closeIfUnused() {
+        if (!pools.stream().allMatch(ServerConnectionPool::isUnused)) {
+            return false;
+        }
+        close();
+        return true;
+    }
+
+    @Override
+    public void close() {
+        pools.forEach(ServerConnectionPool::close);
+    }
+}
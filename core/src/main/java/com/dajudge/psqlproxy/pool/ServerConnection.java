@@ -0,0 +1,255 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.pool;
+
+import com.dajudge.psqlproxy.protocol.TypedFrameHandler.FrameProcessor;
+import com.dajudge.psqlproxy.protocol.exception.ProtocolErrorException;
+import com.dajudge.psqlproxy.protocol.exception.ServerErrorException;
+import com.dajudge.psqlproxy.protocol.frames.TypedFrame;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.EventLoop;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.dajudge.psqlproxy.protocol.messages.FrontendMessages.query;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Optional.empty;
+
+public class ServerConnection implements FrameProcessor {
+    private static final Logger LOG = LoggerFactory.getLogger(ServerConnection.class);
+    private final Channel channel;
+    private final Promise<ServerConnection> ready;
+    private final List<ByteBuf> parameterStatus = new ArrayList<>();
+    private final PreparedStatementRegistry preparedStatements = new PreparedStatementRegistry();
+    private final AtomicInteger pendingConfigurations = new AtomicInteger();
+    private Optional<ByteBuf> backendKeyData = empty();
+    private Map<String, String> settings = SessionSettings.NONE;
+    private long idleSinceNanos;
+    private volatile ServerConnectionListener listener;
+
+    public ServerConnection(final Channel channel) {
+        this.channel = channel;
+        this.ready = channel.eventLoop().newPromise();
+        channel.closeFuture().addListener(future -> onClosed());
+    }
+
+    @Override
+    public FrameProcessor process(final ChannelHandlerContext ctx, final TypedFrame message) {
+        if (!ready.isDone()) {
+            processStartup(message);
+            return this;
+        }
+        if (pendingConfigurations.get() > 0) {
+            processConfiguration(message);
+            return this;
+        }
+        final ServerConnectionListener currentListener = listener;
+        if (currentListener == null) {
+            LOG.debug("Discarding '{}' frame received on idle server connection", message.getType());
+            message.release();
+        } else {
+            currentListener.onServerFrame(message);
+        }
+        return this;
+    }
+
+    private void processStartup(final TypedFrame message) {
+        // https://www.postgresql.org/docs/current/protocol-flow.html#id-1.10.5.7.3
+        switch (message.getType()) {
+            case 'S':
+                parameterStatus.add(message.content());
+                break;
+            case 'K':
+                backendKeyData = Optional.of(message.content());
+                break;
+            case 'Z':
+                LOG.debug("Server connection ready");
+                message.release();
+                ready.trySuccess(this);
+                break;
+            case 'E':
+                final ByteBuf payload = message.getPayload();
+                final String error = payload.toString(UTF_8);
+                message.release();
+                fail(new ServerErrorException(error));
+                break;
+            default:
+                message.release();
+                break;
+        }
+    }
+
+    // The client didn't ask for the responses to the SET statements, so only errors are passed on
+    private void processConfiguration(final TypedFrame message) {
+        switch (message.getType()) {
+            case 'Z':
+                message.release();
+                pendingConfigurations.decrementAndGet();
+                break;
+            case 'E':
+                LOG.warn("Failed to apply client settings to server connection");
+                final ServerConnectionListener currentListener = listener;
+                if (currentListener == null) {
+                    message.release();
+                } else {
+                    currentListener.onServerFrame(message);
+                }
+                channel.close();
+                break;
+            default:
+                message.release();
+                break;
+        }
+    }
+
+    private void fail(final Throwable cause) {
+        ready.tryFailure(cause);
+        channel.close();
+    }
+
+    private void onClosed() {
+        ready.tryFailure(new ProtocolErrorException("Server closed connection during startup"));
+        parameterStatus.forEach(ByteBuf::release);
+        backendKeyData.ifPresent(ByteBuf::release);
+        final ServerConnectionListener currentListener = listener;
+        if (currentListener != null) {
+            currentListener.onServerConnectionClosed();
+        }
+    }
+
+    void onWritabilityChanged(final boolean writable) {
+        final ServerConnectionListener currentListener = listener;
+        if (currentListener != null) {
+            currentListener.onServerWritabilityChanged(writable);
+        }
+    }
+
+    ChannelHandler tailHandler() {
+        return new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+                // The server's AuthenticationOk is replaced by the one the proxy sends to each client
+                ReferenceCountUtil.release(msg);
+            }
+
+            @Override
+            public void exceptionCaught(final ChannelHandlerContext ctx, final Throwable cause) {
+                LOG.debug("Server connection failed", cause);
+                fail(cause);
+            }
+        };
+    }
+
+    public Future<ServerConnection> readyFuture() {
+        return ready;
+    }
+
+    public void attach(final ServerConnectionListener newListener) {
+        listener = newListener;
+        setAutoRead(true);
+    }
+
+    @SuppressWarnings(value = "PMD.NullAssignment") // No listener while idle in the pool
+    public void detach() {
+        listener = null;
+        setAutoRead(true);
+    }
+
+    // Before relaying the client's frames, so the responses to the SET statements come first
+    public void configure(final Map<String, String> wanted) {
+        final String changes = SessionSettings.changes(settings, wanted);
+        settings = wanted;
+        if (!changes.isEmpty()) {
+            pendingConfigurations.incrementAndGet();
+            write(query(channel.alloc(), changes));
+        }
+    }
+
+    // DISCARD ALL resets all run-time parameters
+    void resetSettings() {
+        settings = SessionSettings.NONE;
+    }
+
+    void markIdle() {
+        idleSinceNanos = System.nanoTime();
+    }
+
+    long getIdleSinceNanos() {
+        return idleSinceNanos;
+    }
+
+    public void setAutoRead(final boolean autoRead) {
+        channel.config().setAutoRead(autoRead);
+    }
+
+    public void write(final ByteBuf buffer) {
+        channel.writeAndFlush(buffer);
+    }
+
+    public boolean isWritable() {
+        return channel.isWritable();
+    }
+
+    public ByteBufAllocator alloc() {
+        return channel.alloc();
+    }
+
+    public List<ByteBuf> getParameterStatus() {
+        return unmodifiableList(parameterStatus);
+    }
+
+    public Optional<ByteBuf> getBackendKeyData() {
+        return backendKeyData;
+    }
+
+    public PreparedStatementRegistry getPreparedStatements() {
+        return preparedStatements;
+    }
+
+    public boolean isRegisteredOn(final EventLoop eventLoop) {
+        return eventLoop.equals(channel.eventLoop());
+    }
+
+    public boolean isActive() {
+        return channel.isActive();
+    }
+
+    public ChannelFuture closeFuture() {
+        return channel.closeFuture();
+    }
+
+    public void close() {
+        channel.close();
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.pool;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Pools are never called back while the lock is held
+class ServerConnectionLimit {
+    private final int max;
+    private final Set<ServerConnectionPool> pools = ConcurrentHashMap.newKeySet();
+    private final Deque<ServerConnectionPool> waiting = new ArrayDeque<>();
+    private int connections;
+
+    ServerConnectionLimit(final int max) {
+        this.max = max;
+    }
+
+    void register(final ServerConnectionPool pool) {
+        pools.add(pool);
+    }
+
+    void unregister(final ServerConnectionPool pool) {
+        pools.remove(pool);
+        synchronized (this) {
+            waiting.remove(pool);
+        }
+    }
+
+    synchronized boolean tryAcquire() {
+        if (!isAvailable()) {
+            return false;
+        }
+        connections++;
+        return true;
+    }
+
+    void release() {
+        synchronized (this) {
+            connections--;
+        }
+        signal();
+    }
+
+    void await(final ServerConnectionPool pool) {
+        synchronized (this) {
+            if (!waiting.contains(pool)) {
+                waiting.addLast(pool);
+            }
+        }
+        if (signal()) {
+            return;
+        }
+        for (final ServerConnectionPool other : pools) {
+            if (!other.equals(pool) && other.closeIdleConnection()) {
+                return;
+            }
+        }
+    }
+
+    private boolean signal() {
+        boolean signalled = false;
+        while (true) {
+            final ServerConnectionPool next;
+            synchronized (this) {
+                if (!isAvailable() || waiting.isEmpty()) {
+                    return signalled;
+                }
+                next = waiting.pollFirst();
+            }
+            signalled = true;
+            next.onPermitAvailable();
+        }
+    }
+
+    synchronized int getConnections() {
+        return connections;
+    }
+
+    private boolean isAvailable() {
+        return max == 0 || connections < max;
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.pool;
+
+import com.dajudge.psqlproxy.metrics.EndpointMetrics;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static com.dajudge.psqlproxy.protocol.messages.FrontendMessages.query;
+import static java.util.Collections.unmodifiableList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.stream.Collectors.toList;
+
+public class ServerConnectionPool {
+    private static final Logger LOG = LoggerFactory.getLogger(ServerConnectionPool.class);
+    // https://www.postgresql.org/docs/current/sql-discard.html
+    private static final String RESET_QUERY = "DISCARD ALL";
+    private final PoolConfig config;
+    private final ServerConnector connector;
+    private final ServerConnectionLimit limit;
+    private final Map<String, String> startupParameters;
+    private final Deque<ServerConnection> idle = new ArrayDeque<>();
+    private final Deque<Promise<ServerConnection>> waiters = new ArrayDeque<>();
+    private volatile List<ByteBuf> parameterStatusTemplate;
+    private int connections;
+    private int opening;
+    private int clients;
+    private boolean closed;
+
+    ServerConnectionPool(
+            final PoolConfig config,
+            final ServerConnector connector,
+            final ServerConnectionLimit limit,
+            final Map<String, String> startupParameters
+    ) {
+        this.config = config;
+        this.connector = connector;
+        this.limit = limit;
+        this.startupParameters = startupParameters;
+        limit.register(this);
+    }
+
+    public EndpointMetrics getEndpointMetrics() {
+        return connector.getEndpointMetrics();
+    }
+
+    // Completes on the client's event loop
+    public Future<ServerConnection> acquire(final EventLoop eventLoop) {
+        final Promise<ServerConnection> promise = eventLoop.newPromise();
+        final ServerConnection connection;
+        final boolean connect;
+        final boolean awaitPermit;
+        synchronized (this) {
+            if (closed) {
+                return promise.setFailure(new PoolExhaustedException("Pool closed"));
+            }
+            connection = pollIdle(eventLoop);
+            if (connection == null) {
+                if (waiters.size() >= config.getMaxWaitingClients()) {
+                    return promise.setFailure(new PoolExhaustedException("Too many clients waiting for a server connection"));
+                }
+                waiters.addLast(promise);
+                connect = reserveConnection();
+                awaitPermit = !connect && connections < config.getMaxSize();
+            } else {
+                connect = false;
+                awaitPermit = false;
+            }
+        }
+        if (connection != null) {
+            ensureMinIdle();
+            return promise.setSuccess(connection);
+        }
+        scheduleTimeout(eventLoop, promise);
+        if (connect) {
+            // Registering the connection on the client's event loop saves a thread hop for every relayed buffer
+            openConnection(eventLoop);
+        } else if (awaitPermit) {
+            limit.await(this);
+        }
+        return promise;
+    }
+
+    private ServerConnection pollIdle(final EventLoop eventLoop) {
+        ServerConnection fallback = null;
+        final Iterator<ServerConnection> iterator = idle.iterator();
+        while (iterator.hasNext()) {
+            final ServerConnection connection = iterator.next();
+            if (!connection.isActive()) {
+                iterator.remove();
+            } else if (connection.isRegisteredOn(eventLoop)) {
+                iterator.remove();
+                return connection;
+            } else if (fallback == null) {
+                fallback = connection;
+            }
+        }
+        if (fallback != null) {
+            idle.remove(fallback);
+        }
+        return fallback;
+    }
+
+    public void release(final ServerConnection connection) {
+        connection.detach();
+        if (!connection.isActive()) {
+            return;
+        }
+        while (true) {
+            final Promise<ServerConnection> waiter;
+            synchronized (this) {
+                if (closed) {
+                    break;
+                }
+                waiter = waiters.pollFirst();
+                if (waiter == null) {
+                    connection.markIdle();
+                    idle.addFirst(connection);
+                    return;
+                }
+            }
+            if (waiter.trySuccess(connection)) {
+                return;
+            }
+        }
+        connection.close();
+    }
+
+    public void reset(final ServerConnection connection) {
+        connection.getPreparedStatements().clear();
+        connection.resetSettings();
+        connection.attach(new ServerConnectionReset(this, connection));
+        connection.write(query(connection.alloc(), RESET_QUERY));
+    }
+
+    public void ensureMinIdle() {
+        int toOpen = 0;
+        synchronized (this) {
+            if (closed || clients == 0) {
+                return;
+            }
+            while (idle.size() + opening < config.getMinIdle() && reserveConnection()) {
+                toOpen++;
+            }
+        }
+        for (int i = 0; i < toOpen; i++) {
+            openConnection(connector.getEventLoopGroup());
+        }
+    }
+
+    // Opens connections for waiting clients once the server connection limit allows it
+    void onPermitAvailable() {
+        int toOpen = 0;
+        final boolean awaitPermit;
+        synchronized (this) {
+            while (waiters.size() > opening && reserveConnection()) {
+                toOpen++;
+            }
+            awaitPermit = !closed && waiters.size() > opening && connections < config.getMaxSize();
+        }
+        for (int i = 0; i < toOpen; i++) {
+            openConnection(connector.getEventLoopGroup());
+        }
+        if (awaitPermit) {
+            limit.await(this);
+        }
+    }
+
+    private boolean reserveConnection() {
+        if (closed || connections >= config.getMaxSize() || !limit.tryAcquire()) {
+            return false;
+        }
+        connections++;
+        opening++;
+        return true;
+    }
+
+    boolean closeIdleConnection() {
+        final ServerConnection connection;
+        synchronized (this) {
+            connection = idle.pollLast();
+        }
+        if (connection == null) {
+            return false;
+        }
+        connection.close();
+        return true;
+    }
+
+    void closeIdleConnections(final long idleSinceNanos) {
+        final List<ServerConnection> toClose = new ArrayList<>();
+        synchronized (this) {
+            final int keep = clients > 0 ? config.getMinIdle() : 0;
+            while (idle.size() > keep && idle.peekLast().getIdleSinceNanos() - idleSinceNanos < 0) {
+                toClose.add(idle.pollLast());
+            }
+        }
+        toClose.forEach(ServerConnection::close);
+    }
+
+    synchronized void addClient() {
+        clients++;
+    }
+
+    public synchronized void removeClient() {
+        clients--;
+    }
+
+    // No client uses the pool and the idle timeout closed all its connections
+    synchronized boolean isUnused() {
+        return clients == 0 && connections == 0;
+    }
+
+    boolean closeIfUnused() {
+        if (!isUnused()) {
+            return false;
+        }
+        close();
+        return true;
+    }
+
+    public Future<List<ByteBuf>> parameterStatus(final EventLoop eventLoop) {
+        final List<ByteBuf> known = parameterStatusTemplate;
+        if (known != null) {
+            return eventLoop.newSucceededFuture(known);
+        }
+        final Promise<List<ByteBuf>> promise = eventLoop.newPromise();
+        acquire(eventLoop).addListener((Future<ServerConnection> future) -> {
+            if (future.isSuccess()) {
+                release(future.getNow());
+                promise.setSuccess(parameterStatusTemplate);
+            } else {
+                promise.setFailure(future.cause());
+            }
+        });
+        return promise;
+    }
+
+    private void scheduleTimeout(final EventLoop eventLoop, final Promise<ServerConnection> promise) {
+        final ScheduledFuture<?> timeout = eventLoop.schedule(() -> {
+            if (removeWaiter(promise)) {
+                promise.tryFailure(new PoolExhaustedException("Timed out waiting for a server connection"));
+            }
+        }, config.getAcquireTimeoutMsecs(), MILLISECONDS);
+        promise.addListener(future -> timeout.cancel(false));
+    }
+
+    private synchronized boolean removeWaiter(final Promise<ServerConnection> promise) {
+        return waiters.remove(promise);
+    }
+
+    private void openConnection(final EventLoopGroup eventLoopGroup) {
+        LOG.debug("Opening new server connection");
+        final Promise<ServerConnection> promise = ImmediateEventExecutor.INSTANCE.newPromise();
+        connector.connect(eventLoopGroup, startupParameters, promise).addListener((Future<ServerConnection> future) -> {
+            synchronized (this) {
+                opening--;
+            }
+            if (future.isSuccess()) {
+                final ServerConnection connection = future.getNow();
+                rememberParameterStatus(connection);
+                connection.closeFuture().addListener(closeFuture -> onClosed(connection));
+                release(connection);
+            } else {
+                LOG.warn("Failed to open server connection", future.cause());
+                onConnectFailed(future.cause());
+            }
+        });
+    }
+
+    private synchronized void rememberParameterStatus(final ServerConnection connection) {
+        if (parameterStatusTemplate == null) {
+            parameterStatusTemplate = unmodifiableList(connection.getParameterStatus().stream()
+                    .map(ByteBuf::copy)
+                    .collect(toList()));
+        }
+    }
+
+    private void onConnectFailed(final Throwable cause) {
+        final Promise<ServerConnection> waiter;
+        synchronized (this) {
+            connections--;
+            waiter = waiters.pollFirst();
+        }
+        limit.release();
+        if (waiter != null) {
+            waiter.tryFailure(cause);
+        }
+    }
+
+    private void onClosed(final ServerConnection connection) {
+        LOG.debug("Server connection closed");
+        synchronized (this) {
+            connections--;
+            idle.remove(connection);
+        }
+        limit.release();
+        onPermitAvailable();
+        ensureMinIdle();
+    }
+
+    public void close() {
+        final List<ServerConnection> toClose;
+        final List<Promise<ServerConnection>> toFail;
+        synchronized (this) {
+            closed = true;
+            toClose = new ArrayList<>(idle);
+            toFail = new ArrayList<>(waiters);
+            idle.clear();
+            waiters.clear();
+        }
+        limit.unregister(this);
+        toClose.forEach(ServerConnection::close);
+        toFail.forEach(waiter -> waiter.tryFailure(new PoolExhaustedException("Pool closed")));
+        final List<ByteBuf> known = parameterStatusTemplate;
+        if (known != null) {
+            known.forEach(ByteBuf::release);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.pool;
+
+import com.dajudge.psqlproxy.routing.BalancingPolicy;
+import com.dajudge.psqlproxy.routing.LoadBalancer;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.stream.Collectors.toList;
+
+public class ServerConnectionPools implements AutoCloseable {
+    private static final String DATABASE_PARAM = "database";
+    private static final long MAX_SWEEP_INTERVAL_MSECS = 10000;
+    private final Map<String, ServerConnectionPool> pools = new ConcurrentHashMap<>();
+    private final Map<String, ReplicaPools> replicaPools = new ConcurrentHashMap<>();
+    private final PoolConfig config;
+    private final ServerConnector connector;
+    private final ServerConnectionLimit limit;
+    private final List<ServerConnector> replicaConnectors;
+    private final List<ServerConnectionLimit> replicaLimits;
+    private final LoadBalancer balancer;
+    private final Optional<ScheduledFuture<?>> sweeper;
+
+    public ServerConnectionPools(final PoolConfig config, final ServerConnector connector) {
+        this(config, connector, Collections.emptyList(), new LoadBalancer(BalancingPolicy.ROUND_ROBIN));
+    }
+
+    public ServerConnectionPools(
+            final PoolConfig config,
+            final ServerConnector connector,
+            final List<ServerConnector> replicaConnectors,
+            final LoadBalancer balancer
+    ) {
+        this.config = config;
+        this.connector = connector;
+        this.limit = new ServerConnectionLimit(config.getMaxServerConnections());
+        this.replicaConnectors = replicaConnectors;
+        this.replicaLimits = replicaConnectors.stream()
+                .map(replicaConnector -> new ServerConnectionLimit(config.getMaxServerConnections()))
+                .collect(toList());
+        this.balancer = balancer;
+        this.sweeper = scheduleSweeper();
+    }
+
+    private Optional<ScheduledFuture<?>> scheduleSweeper() {
+        if (config.getIdleTimeoutMsecs() <= 0) {
+            return Optional.empty();
+        }
+        final long interval = Math.min(config.getIdleTimeoutMsecs(), MAX_SWEEP_INTERVAL_MSECS);
+        return Optional.of(connector.getEventLoopGroup().next()
+                .scheduleAtFixedRate(this::closeIdleConnections, interval, interval, MILLISECONDS));
+    }
+
+    // The client must call removeClient() when it disconnects
+    public ServerConnectionPool forClient(final Map<String, String> startupParameters) {
+        final ServerConnectionPool pool = pools.compute(database(startupParameters), (database, existing) -> {
+            final ServerConnectionPool result = existing == null ? newPool(connector, limit, database) : existing;
+            result.addClient();
+            return result;
+        });
+        pool.ensureMinIdle();
+        return pool;
+    }
+
+    // The client must call removeClient() when it disconnects
+    public ReplicaPools replicasForClient(final Map<String, String> startupParameters) {
+        if (replicaConnectors.isEmpty()) {
+            return ReplicaPools.NONE;
+        }
+        final ReplicaPools replicas = replicaPools.compute(database(startupParameters), (database, existing) -> {
+            final ReplicaPools result = existing == null ? newReplicaPools(database) : existing;
+            result.addClient();
+            return result;
+        });
+        replicas.ensureMinIdle();
+        return replicas;
+    }
+
+    private ReplicaPools newReplicaPools(final String database) {
+        final List<ServerConnectionPool> newPools = new ArrayList<>();
+        for (int i = 0; i < replicaConnectors.size(); i++) {
+            newPools.add(newPool(replicaConnectors.get(i), replicaLimits.get(i), database));
+        }
+        return new ReplicaPools(newPools, balancer);
+    }
+
+    private ServerConnectionPool newPool(
+            final ServerConnector poolConnector,
+            final ServerConnectionLimit poolLimit,
+            final String database
+    ) {
+        final Map<String, String> params = database.isEmpty()
+                ? Collections.emptyMap()
+                : Collections.singletonMap(DATABASE_PARAM, database);
+        return new ServerConnectionPool(config, poolConnector, poolLimit, params);
+    }
+
+    // The server falls back to the user name without a database
+    private static String database(final Map<String, String> startupParameters) {
+        return startupParameters.getOrDefault(DATABASE_PARAM, "");
+    }
+
+    private void closeIdleConnections() {
+        final long idleSinceNanos = System.nanoTime() - MILLISECONDS.toNanos(config.getIdleTimeoutMsecs());
+        pools.forEach((database, pool) -> {
+            pool.closeIdleConnections(idleSinceNanos);
+            pools.computeIfPresent(database, (key, existing) -> existing.closeIfUnused() ? null : existing);
+        });
+        replicaPools.forEach((database, replicas) -> {
+            replicas.closeIdleConnections(idleSinceNanos);
+            replicaPools.computeIfPresent(database, (key, existing) -> existing.closeIfUnused() ? null : existing);
+        });
+    }
+
+    int getServerConnections() {
+        return limit.getConnections();
+    }
+
+    @Override
+    public void close() {
+        sweeper.ifPresent(future -> future.cancel(false));
+        pools.values().forEach(ServerConnectionPool::close);
+        replicaPools.values().forEach(ReplicaPools::close);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.pool;
+
+import com.dajudge.psqlproxy.protocol.frames.TypedFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.dajudge.psqlproxy.protocol.messages.BackendMessages.transactionStatus;
+
+class ServerConnectionReset implements ServerConnectionListener {
+    private static final Logger LOG = LoggerFactory.getLogger(ServerConnectionReset.class);
+    private static final char TRANSACTION_STATUS_IDLE = 'I';
+    private final ServerConnectionPool pool;
+    private final ServerConnection connection;
+    private boolean failed;
+
+    ServerConnectionReset(final ServerConnectionPool pool, final ServerConnection connection) {
+        this.pool = pool;
+        this.connection = connection;
+    }
+
+    @Override
+    public void onServerFrame(final TypedFrame frame) {
+        switch (frame.getType()) {
+            case 'E':
+                LOG.warn("Failed to reset server connection");
+                failed = true;
+                break;
+            case 'Z':
+                if (failed || transactionStatus(frame) != TRANSACTION_STATUS_IDLE) {
+                    connection.close();
+                } else {
+                    pool.release(connection);
+                }
+                break;
+            default:
+                break;
+        }
+        frame.release();
+    }
+
+    @Override
+    public void onServerConnectionClosed() {
+        LOG.debug("Server connection closed during reset");
+    }
+
+    @Override
+    public void onServerWritabilityChanged(final boolean writable) {
+        // Only the reset query is written
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.pool;
+
+import com.dajudge.proxybase.config.Endpoint;
+import com.dajudge.psqlproxy.metrics.EndpointMetrics;
+import com.dajudge.psqlproxy.metrics.ProxyMetrics;
+import com.dajudge.psqlproxy.protocol.DownstreamSslActivationHandler;
+import com.dajudge.psqlproxy.protocol.DownstreamSslContext;
+import com.dajudge.psqlproxy.protocol.DownstreamStartupProcessor;
+import com.dajudge.psqlproxy.protocol.TypedFrameHandler;
+import com.dajudge.psqlproxy.protocol.frames.TypedFrameDecoder;
+import com.dajudge.psqlproxy.protocol.frames.UntypedFrame;
+import com.dajudge.psqlproxy.protocol.messages.StartupMessage;
+import com.dajudge.psqlproxy.protocol.scram.ScramKeyCache;
+import com.dajudge.psqlproxy.transport.BackpressureHandler;
+import com.dajudge.psqlproxy.transport.WriteBatchingHandler;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class ServerConnector {
+    private static final AttributeKey<ServerConnection> CONNECTION = AttributeKey.valueOf("psqlproxy.connection");
+    private static final short PROTOCOL_MAJOR_VERSION = 3;
+    private static final short PROTOCOL_MINOR_VERSION = 0;
+    private final Bootstrap bootstrap;
+    private final String username;
+    private final EndpointMetrics endpointMetrics;
+
+    public ServerConnector(
+            final Bootstrap bootstrap,
+            final Endpoint serverEndpoint,
+            final String username,
+            final String password,
+            final DownstreamSslContext sslContext,
+            final ScramKeyCache scramKeyCache,
+            final ProxyMetrics metrics,
+            final EndpointMetrics endpointMetrics
+    ) {
+        this.username = username;
+        this.endpointMetrics = endpointMetrics;
+        this.bootstrap = bootstrap
+                .remoteAddress(serverEndpoint.getHost(), serverEndpoint.getPort())
+                .handler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(final Channel ch) {
+                        final ServerConnection connection = new ServerConnection(ch);
+                        ch.attr(CONNECTION).set(connection);
+                        ch.pipeline().addLast(metrics.getServer().newHandler());
+                        ch.pipeline().addLast(new DownstreamSslActivationHandler(sslContext, metrics));
+                        ch.pipeline().addLast(new WriteBatchingHandler());
+                        ch.pipeline().addLast(new BackpressureHandler(connection::onWritabilityChanged));
+                        ch.pipeline().addLast(new TypedFrameDecoder());
+                        ch.pipeline().addLast(new TypedFrameHandler(new DownstreamStartupProcessor(
+                                username,
+                                password,
+                                scramKeyCache,
+                                metrics,
+                                connection
+                        ), metrics.getServer().getFrames()));
+                        ch.pipeline().addLast(connection.tailHandler());
+                    }
+                });
+    }
+
+    public EndpointMetrics getEndpointMetrics() {
+        return endpointMetrics;
+    }
+
+    public EventLoopGroup getEventLoopGroup() {
+        return bootstrap.config().group();
+    }
+
+    public Future<ServerConnection> connect(
+            final EventLoopGroup eventLoopGroup,
+            final Map<String, String> startupParameters,
+            final Promise<ServerConnection> promise
+    ) {
+        final long startNanos = System.nanoTime();
+        final ChannelFuture connectFuture = bootstrap.clone(eventLoopGroup).connect();
+        connectFuture.addListener(future -> {
+            if (!future.isSuccess()) {
+                endpointMetrics.connectFailed();
+                promise.tryFailure(future.cause());
+                return;
+            }
+            final Channel channel = connectFuture.channel();
+            final ServerConnection connection = channel.attr(CONNECTION).get();
+            connection.readyFuture().addListener(ready -> {
+                if (ready.isSuccess()) {
+                    endpointMetrics.connectionOpened();
+                    endpointMetrics.recordLatency(System.nanoTime() - startNanos);
+                    channel.closeFuture().addListener(closed -> endpointMetrics.connectionClosed());
+                    if (!promise.trySuccess(connection)) {
+                        connection.close();
+                    }
+                } else {
+                    endpointMetrics.connectFailed();
+                    promise.tryFailure(ready.cause());
+                }
+            });
+            final StartupMessage startupMessage = new StartupMessage(
+                    PROTOCOL_MAJOR_VERSION,
+                    PROTOCOL_MINOR_VERSION,
+                    params(startupParameters)
+            );
+            final ByteBuf payload = startupMessage.serialize(channel.alloc());
+            channel.writeAndFlush(UntypedFrame.of(channel.alloc(), payload).content());
+        });
+        return promise;
+    }
+
+    private List<String> params(final Map<String, String> startupParameters) {
+        final List<String> params = new ArrayList<>();
+        startupParameters.forEach((key, value) -> {
+            params.add(key);
+            params.add(value);
+        });
+        params.add("user");
+        params.add(username);
+        return params;
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.pool;
+
+import com.dajudge.psqlproxy.cache.ResultCache;
+import com.dajudge.psqlproxy.cache.ResultCacheSession;
+import com.dajudge.psqlproxy.metrics.FrameListener;
+import com.dajudge.psqlproxy.protocol.TypedFrameHandler.FrameProcessor;
+import com.dajudge.psqlproxy.protocol.frames.TypedFrame;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+import static com.dajudge.psqlproxy.protocol.messages.BackendMessages.transactionStatus;
+import static java.util.stream.Collectors.toCollection;
+
+public class SessionPoolingSession implements PooledSession, ServerConnectionListener {
+    private static final Logger LOG = LoggerFactory.getLogger(SessionPoolingSession.class);
+    private static final char TRANSACTION_STATUS_IDLE = 'I';
+    private static final char READY_FOR_QUERY = 'Z';
+    private static final char QUERY = 'Q';
+    private final Channel client;
+    private final FrameListener serverFrameListener;
+    private final ResultCacheSession resultCache;
+    private final Deque<ByteBuf> pendingFrames = new ArrayDeque<>();
+    private ServerConnectionPool pool;
+    private Map<String, String> startupParameters;
+    private ServerConnection server;
+    private int pendingResponses;
+    private boolean transactionIdle = true;
+
+    public SessionPoolingSession(
+            final Channel client,
+            final FrameListener serverFrameListener,
+            final ResultCache resultCache
+    ) {
+        this.client = client;
+        this.serverFrameListener = serverFrameListener;
+        this.resultCache = new ResultCacheSession(resultCache, client, serverFrameListener);
+        client.closeFuture().addListener(future -> onClientClosed());
+    }
+
+    @Override
+    public Future<List<ByteBuf>> start(
+            final ServerConnectionPool serverConnectionPool,
+            final ReplicaPools replicas,
+            final Map<String, String> clientStartupParameters,
+            final Map<String, String> settings
+    ) {
+        this.pool = serverConnectionPool;
+        this.startupParameters = clientStartupParameters;
+        final Promise<List<ByteBuf>> promise = client.eventLoop().newPromise();
+        // Frames pipelined after the StartupMessage are queued until the server connection is acquired
+        client.config().setAutoRead(false);
+        pool.acquire(client.eventLoop()).addListener((Future<ServerConnection> future) -> {
+            if (!future.isSuccess()) {
+                promise.setFailure(future.cause());
+                return;
+            }
+            final ServerConnection connection = future.getNow();
+            if (!client.isActive()) {
+                pool.release(connection);
+                promise.setFailure(new ClosedChannelException());
+                return;
+            }
+            LOG.trace("Server connection acquired");
+            server = connection;
+            connection.attach(this);
+            connection.setAutoRead(client.isWritable());
+            connection.configure(settings);
+            final List<ByteBuf> frames = connection.getParameterStatus().stream()
+                    .map(ByteBuf::retainedDuplicate)
+                    .collect(toCollection(ArrayList::new));
+            connection.getBackendKeyData().ifPresent(keyData -> frames.add(keyData.retainedDuplicate()));
+            promise.setSuccess(frames);
+            while (!pendingFrames.isEmpty()) {
+                connection.write(pendingFrames.pollFirst());
+            }
+            client.config().setAutoRead(connection.isWritable());
+        });
+        return promise;
+    }
+
+    @Override
+    public FrameProcessor process(final ChannelHandlerContext ctx, final TypedFrame message) {
+        if (message.getType() == QUERY && server != null && pendingResponses == 0 && transactionIdle
+                && resultCache.serve(startupParameters, message)) {
+            return this;
+        }
+        switch (message.getType()) {
+            case 'X':
+                LOG.debug("Client terminated session");
+                message.release();
+                ctx.close();
+                return this;
+            case 'Q':
+            case 'S':
+            case 'F':
+                // Query, Sync and FunctionCall are each answered with a ReadyForQuery
+                pendingResponses++;
+                break;
+            default:
+                break;
+        }
+        if (server == null) {
+            pendingFrames.addLast(message.content());
+        } else {
+            server.write(message.content());
+        }
+        return this;
+    }
+
+    @Override
+    public void onClientWritabilityChanged(final boolean writable) {
+        if (server != null) {
+            server.setAutoRead(writable);
+        }
+    }
+
+    @Override
+    public void onServerWritabilityChanged(final boolean writable) {
+        client.config().setAutoRead(writable);
+    }
+
+    @Override
+    public void onServerFrame(final TypedFrame frame) {
+        if (client.eventLoop().inEventLoop()) {
+            forwardToClient(frame);
+        } else {
+            client.eventLoop().execute(() -> forwardToClient(frame));
+        }
+    }
+
+    private void forwardToClient(final TypedFrame frame) {
+        serverFrameListener.onFrame(frame);
+        resultCache.onServerFrame(frame);
+        if (frame.getType() == READY_FOR_QUERY) {
+            pendingResponses = Math.max(0, pendingResponses - 1);
+            transactionIdle = transactionStatus(frame) == TRANSACTION_STATUS_IDLE;
+        }
+        client.writeAndFlush(frame.content());
+    }
+
+    @Override
+    public void onServerConnectionClosed() {
+        client.eventLoop().execute(() -> {
+            LOG.debug("Server connection closed, closing client connection");
+            client.close();
+        });
+    }
+
+    @SuppressWarnings(value = "PMD.NullAssignment") // Client connection is gone
+    private void onClientClosed() {
+        resultCache.discard();
+        pendingFrames.forEach(ByteBuf::release);
+        pendingFrames.clear();
+        if (server == null) {
+            return;
+        }
+        server.detach();
+        if (transactionIdle && pendingResponses == 0) {
+            LOG.trace("Resetting server connection");
+            pool.reset(server);
+        } else {
+            LOG.debug("Client closed connection while server was busy, closing server connection");
+            server.close();
+        }
+        server = null;
+    }
+}
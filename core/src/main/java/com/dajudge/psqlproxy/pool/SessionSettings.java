@@ -0,0 +1,138 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.pool;
+
+import com.dajudge.psqlproxy.protocol.exception.ProtocolErrorException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+final class SessionSettings {
+    static final SortedMap<String, String> NONE = Collections.unmodifiableSortedMap(newSettings());
+    private static final String USER_PARAM = "user";
+    private static final String DATABASE_PARAM = "database";
+    private static final String OPTIONS_PARAM = "options";
+    private static final String REPLICATION_PARAM = "replication";
+    private static final String PROTOCOL_OPTION_PREFIX = "_pq_.";
+    private static final String SHORT_OPTION = "-c";
+    private static final String LONG_OPTION = "--";
+    private static final char ESCAPE = '\\';
+
+    private SessionSettings() {
+    }
+
+    static SortedMap<String, String> of(final Map<String, String> startupParameters) {
+        final SortedMap<String, String> settings = newSettings();
+        startupParameters.forEach((name, value) -> {
+            switch (name) {
+                case USER_PARAM:
+                case DATABASE_PARAM:
+                    break;
+                case OPTIONS_PARAM:
+                    parseOptions(value, settings);
+                    break;
+                case REPLICATION_PARAM:
+                    throw new ProtocolErrorException("Replication connections cannot be pooled");
+                default:
+                    if (!name.startsWith(PROTOCOL_OPTION_PREFIX)) {
+                        settings.put(name, value);
+                    }
+                    break;
+            }
+        });
+        return Collections.unmodifiableSortedMap(settings);
+    }
+
+    // Only the -c name=value and --name=value forms set run-time parameters, see pg_split_opts()
+    private static void parseOptions(final String options, final Map<String, String> settings) {
+        final List<String> args = splitOptions(options);
+        for (int i = 0; i < args.size(); i++) {
+            final String arg = args.get(i);
+            final String setting;
+            if (SHORT_OPTION.equals(arg) && i + 1 < args.size()) {
+                setting = args.get(++i);
+            } else if (arg.startsWith(SHORT_OPTION)) {
+                setting = arg.substring(SHORT_OPTION.length());
+            } else if (arg.startsWith(LONG_OPTION)) {
+                setting = arg.substring(LONG_OPTION.length());
+            } else {
+                throw new ProtocolErrorException("Unsupported startup option: " + arg);
+            }
+            final int separator = setting.indexOf('=');
+            if (separator <= 0) {
+                throw new ProtocolErrorException("Invalid startup option: " + arg);
+            }
+            settings.put(setting.substring(0, separator).replace('-', '_'), setting.substring(separator + 1));
+        }
+    }
+
+    private static List<String> splitOptions(final String options) {
+        final List<String> args = new ArrayList<>();
+        final StringBuilder arg = new StringBuilder();
+        boolean escaped = false;
+        for (final char c : options.toCharArray()) {
+            if (escaped) {
+                arg.append(c);
+                escaped = false;
+            } else if (c == ESCAPE) {
+                escaped = true;
+            } else if (Character.isWhitespace(c)) {
+                if (arg.length() > 0) {
+                    args.add(arg.toString());
+                    arg.setLength(0);
+                }
+            } else {
+                arg.append(c);
+            }
+        }
+        if (arg.length() > 0) {
+            args.add(arg.toString());
+        }
+        return args;
+    }
+
+    static String changes(final Map<String, String> current, final Map<String, String> wanted) {
+        final StringBuilder sql = new StringBuilder();
+        wanted.forEach((name, value) -> {
+            if (!value.equals(current.get(name))) {
+                sql.append("SET ").append(identifier(name)).append(" TO ").append(literal(value)).append(';');
+            }
+        });
+        current.keySet().stream()
+                .filter(name -> !wanted.containsKey(name))
+                .forEach(name -> sql.append("RESET ").append(identifier(name)).append(';'));
+        return sql.toString();
+    }
+
+    private static String identifier(final String name) {
+        return '"' + name.replace("\"", "\"\"") + '"';
+    }
+
+    // An escape string constant doesn't depend on standard_conforming_strings
+    private static String literal(final String value) {
+        return "E'" + value.replace("\\", "\\\\").replace("'", "''") + "'";
+    }
+
+    private static SortedMap<String, String> newSettings() {
+        return new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.pool;
+
+import com.dajudge.psqlproxy.cache.ResultCache;
+import com.dajudge.psqlproxy.cache.ResultCacheSession;
+import com.dajudge.psqlproxy.metrics.FrameListener;
+import com.dajudge.psqlproxy.protocol.TypedFrameHandler.FrameProcessor;
+import com.dajudge.psqlproxy.protocol.frames.TypedFrame;
+import com.dajudge.psqlproxy.routing.ReadOnlyClassifier;
+import com.dajudge.psqlproxy.routing.ReplicaConfig;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.dajudge.psqlproxy.protocol.messages.BackendMessages.backendKeyData;
+import static com.dajudge.psqlproxy.protocol.messages.BackendMessages.fatalError;
+import static com.dajudge.psqlproxy.protocol.messages.BackendMessages.transactionStatus;
+import static java.util.stream.Collectors.toCollection;
+
+// Lends a server connection from the first frame of a transaction until ReadyForQuery reports it idle
+public class TransactionPoolingSession implements PooledSession, ServerConnectionListener {
+    private static final Logger LOG = LoggerFactory.getLogger(TransactionPoolingSession.class);
+    private static final char TRANSACTION_STATUS_IDLE = 'I';
+    private static final char READY_FOR_QUERY = 'Z';
+    private static final char QUERY = 'Q';
+    // https://www.postgresql.org/docs/current/errcodes-appendix.html
+    private static final String SQLSTATE_TOO_MANY_CONNECTIONS = "53300";
+    private final Channel client;
+    private final FrameListener serverFrameListener;
+    private final ResultCacheSession resultCache;
+    private final PreparedStatementTracker preparedStatements;
+    private final ReadOnlyClassifier classifier;
+    private final Deque<ByteBuf> pendingFrames = new ArrayDeque<>();
+    private ServerConnectionPool pool;
+    private ReplicaPools replicas = ReplicaPools.NONE;
+    private Map<String, String> startupParameters;
+    private Map<String, String> settings;
+    private ServerConnectionPool serverPool;
+    private ServerConnection server;
+    private Future<ServerConnection> acquisition;
+    private boolean acquiring;
+    private int pendingResponses;
+    // When the oldest request not answered yet was sent to the server, 0 if there is none
+    private long requestStartNanos;
+
+    public TransactionPoolingSession(
+            final Channel client,
+            final FrameListener serverFrameListener,
+            final ResultCache resultCache,
+            final int maxPreparedStatements,
+            final ReplicaConfig replicaConfig
+    ) {
+        this.client = client;
+        this.serverFrameListener = serverFrameListener;
+        this.resultCache = new ResultCacheSession(resultCache, client, serverFrameListener);
+        this.preparedStatements = new PreparedStatementTracker(client, maxPreparedStatements);
+        this.classifier = new ReadOnlyClassifier(replicaConfig.getReadPattern());
+        client.closeFuture().addListener(future -> onClientClosed());
+    }
+
+    @Override
+    public Future<List<ByteBuf>> start(
+            final ServerConnectionPool serverConnectionPool,
+            final ReplicaPools replicaPools,
+            final Map<String, String> clientStartupParameters,
+            final Map<String, String> clientSettings
+    ) {
+        this.pool = serverConnectionPool;
+        this.replicas = replicaPools;
+        this.startupParameters = clientStartupParameters;
+        this.settings = clientSettings;
+        classifier.start(startupParameters);
+        final Promise<List<ByteBuf>> promise = client.eventLoop().newPromise();
+        pool.parameterStatus(client.eventLoop()).addListener((Future<List<ByteBuf>> future) -> {
+            if (!future.isSuccess()) {
+                promise.setFailure(future.cause());
+                return;
+            }
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            final List<ByteBuf> frames = future.getNow().stream()
+                    .map(ByteBuf::retainedDuplicate)
+                    .collect(toCollection(ArrayList::new));
+            // Query cancellation is not supported in transaction pooling mode, so the key data is not meaningful
+            frames.add(backendKeyData(client.alloc(), random.nextInt(), random.nextInt()));
+            promise.setSuccess(frames);
+        });
+        return promise;
+    }
+
+    @Override
+    public FrameProcessor process(final ChannelHandlerContext ctx, final TypedFrame message) {
+        if (message.getType() == QUERY && server == null && pendingFrames.isEmpty()
+                && resultCache.serve(startupParameters, message)) {
+            return this;
+        }
+        switch (message.getType()) {
+            case 'X':
+                LOG.debug("Client terminated session");
+                message.release();
+                ctx.close();
+                return this;
+            case 'Q':
+            case 'S':
+            case 'F':
+                // Query, Sync and FunctionCall are each answered with a ReadyForQuery
+                pendingResponses++;
+                break;
+            default:
+                break;
+        }
+        final ByteBuf frame = message.content();
+        if (!replicas.isEmpty()) {
+            classifier.track(frame);
+        }
+        if (server == null) {
+            pendingFrames.addLast(frame);
+            if (replicas.isEmpty()) {
+                acquire(pool);
+            } else if (!acquiring && isResponseExpected(message.getType())) {
+                // Routing needs all frames up to the first one the client waits for
+                acquire(classifier.isReadOnly(pendingFrames) ? replicas.pick().orElse(pool) : pool);
+            }
+        } else {
+            if (requestStartNanos == 0 && pendingResponses > 0) {
+                requestStartNanos = System.nanoTime();
+            }
+            preparedStatements.send(server, frame);
+        }
+        return this;
+    }
+
+    private static boolean isResponseExpected(final char type) {
+        switch (type) {
+            case 'Q':
+            case 'S':
+            case 'F':
+            case 'H':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void acquire(final ServerConnectionPool target) {
+        if (acquiring) {
+            return;
+        }
+        acquiring = true;
+        serverPool = target;
+        updateClientAutoRead();
+        acquisition = target.acquire(client.eventLoop());
+        acquisition.addListener((Future<ServerConnection> future) -> onAcquired(future));
+    }
+
+    private void onAcquired(final Future<ServerConnection> future) {
+        acquiring = false;
+        if (future.isCancelled()) {
+            return;
+        }
+        if (!future.isSuccess() && !pool.equals(serverPool) && client.isActive()) {
+            LOG.debug("Failed to acquire replica connection, using primary: {}", future.cause().getMessage());
+            acquire(pool);
+            return;
+        }
+        if (!future.isSuccess()) {
+            final String message = future.cause().getMessage();
+            LOG.warn("Failed to acquire server connection: {}", message);
+            client.writeAndFlush(fatalError(client.alloc(), SQLSTATE_TOO_MANY_CONNECTIONS, message))
+                    .addListener(f -> client.close());
+            return;
+        }
+        final ServerConnection connection = future.getNow();
+        if (!client.isActive()) {
+            serverPool.release(connection);
+            return;
+        }
+        LOG.trace("Server connection acquired");
+        serverPool.getEndpointMetrics().transactionStarted();
+        server = connection;
+        connection.attach(this);
+        connection.setAutoRead(client.isWritable());
+        connection.configure(settings);
+        if (pendingResponses > 0) {
+            requestStartNanos = System.nanoTime();
+        }
+        while (!pendingFrames.isEmpty()) {
+            preparedStatements.send(connection, pendingFrames.pollFirst());
+        }
+        updateClientAutoRead();
+    }
+
+    @Override
+    public void onClientWritabilityChanged(final boolean writable) {
+        if (server != null) {
+            server.setAutoRead(writable);
+        }
+    }
+
+    @Override
+    public void onServerWritabilityChanged(final boolean writable) {
+        client.eventLoop().execute(this::updateClientAutoRead);
+    }
+
+    // Frames are only read while they can be passed on, not while acquiring or while the server can't keep up
+    private void updateClientAutoRead() {
+        client.config().setAutoRead(!acquiring && (server == null || server.isWritable()));
+    }
+
+    @Override
+    public void onServerFrame(final TypedFrame frame) {
+        if (client.eventLoop().inEventLoop()) {
+            forwardToClient(frame);
+        } else {
+            client.eventLoop().execute(() -> forwardToClient(frame));
+        }
+    }
+
+    private void forwardToClient(final TypedFrame frame) {
+        serverFrameListener.onFrame(frame);
+        resultCache.onServerFrame(frame);
+        final boolean readyForQuery = frame.getType() == READY_FOR_QUERY;
+        final boolean transactionIdle = readyForQuery && transactionStatus(frame) == TRANSACTION_STATUS_IDLE;
+        preparedStatements.relay(frame);
+        if (readyForQuery) {
+            pendingResponses = Math.max(0, pendingResponses - 1);
+            if (pendingResponses == 0) {
+                recordLatency();
+            }
+            if (transactionIdle && pendingResponses == 0) {
+                releaseServer();
+            }
+        }
+    }
+
+    private void recordLatency() {
+        if (requestStartNanos != 0 && !replicas.isEmpty()) {
+            serverPool.getEndpointMetrics().recordLatency(System.nanoTime() - requestStartNanos);
+        }
+        requestStartNanos = 0;
+    }
+
+    @SuppressWarnings(value = "PMD.NullAssignment") // No server connection between transactions
+    private void releaseServer() {
+        if (server != null) {
+            LOG.trace("Returning server connection to pool");
+            serverPool.getEndpointMetrics().transactionFinished();
+            serverPool.release(server);
+            server = null;
+            updateClientAutoRead();
+        }
+    }
+
+    @Override
+    public void onServerConnectionClosed() {
+        client.eventLoop().execute(() -> {
+            LOG.debug("Server connection closed during transaction, closing client connection");
+            client.close();
+        });
+    }
+
+    @SuppressWarnings(value = "PMD.NullAssignment") // Client connection is gone
+    private void onClientClosed() {
+        resultCache.discard();
+        pendingFrames.forEach(ByteBuf::release);
+        pendingFrames.clear();
+        if (acquiring) {
+            acquisition.cancel(false);
+        }
+        if (server != null) {
+            LOG.debug("Client closed connection during transaction, closing server connection");
+            serverPool.getEndpointMetrics().transactionFinished();
+            server.detach();
+            server.close();
+            server = null;
+        }
+    }
+}
@@ -17,39 +17,43 @@
 
 package com.dajudge.psqlproxy.protocol;
 
+import com.dajudge.psqlproxy.metrics.ProxyMetrics;
 import com.dajudge.psqlproxy.protocol.exception.ProtocolErrorException;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelDuplexHandler;
-import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
+import io.netty.handler.ssl.SslHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
 
-import static com.dajudge.proxybase.DownstreamSslHandlerFactory.createDownstreamSslHandler;
+import static io.netty.buffer.Unpooled.directBuffer;
+import static io.netty.buffer.Unpooled.unreleasableBuffer;
 
 public class DownstreamSslActivationHandler extends ChannelDuplexHandler {
     private static final Logger LOG = LoggerFactory.getLogger(DownstreamSslActivationHandler.class);
+    private static final ByteBuf SSL_REQUEST = unreleasableBuffer(directBuffer(8)
+            .writeInt(8)
+            .writeShort(1234)
+            .writeShort(5679)
+            .asReadOnly());
     private final List<Object> messageBuffer = new ArrayList<>();
-    private final PostgresSslConfig sslConfig;
+    private final DownstreamSslContext sslContext;
+    private final ProxyMetrics metrics;
 
-    public DownstreamSslActivationHandler(final PostgresSslConfig sslConfig) {
-        this.sslConfig = sslConfig;
+    public DownstreamSslActivationHandler(final DownstreamSslContext sslContext, final ProxyMetrics metrics) {
+        this.sslContext = sslContext;
+        this.metrics = metrics;
     }
 
     @Override
     public void write(final ChannelHandlerContext ctx, final Object msg, final ChannelPromise promise) {
         if (messageBuffer.isEmpty()) {
             LOG.trace("Requesting SSL communication with server");
-            final ByteBuf buffer = Unpooled.buffer(8);
-            buffer.writeInt(8);
-            buffer.writeShort(1234);
-            buffer.writeShort(5679);
-            ctx.writeAndFlush(buffer, promise);
+            ctx.writeAndFlush(SSL_REQUEST.duplicate(), promise);
         }
         LOG.trace("Buffering message: {}", msg);
         messageBuffer.add(msg);
@@ -59,12 +63,14 @@ public class DownstreamSslActivationHandler extends ChannelDuplexHandler {
     public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
         final ByteBuf buffer = (ByteBuf) msg;
         final char type = (char) buffer.readByte();
+        buffer.release();
         LOG.trace("Received server response: {}", type);
         switch (type) {
             case 'E':
                 throw new ProtocolErrorException("Server error");
             case 'N':
-                if (sslConfig.isSslRequired()) {
+                metrics.sslDenied();
+                if (sslContext.getConfig().isSslRequired()) {
                     LOG.warn("Server denied required SSL, terminating connection");
                     ctx.close();
                 } else {
@@ -74,19 +80,22 @@ public class DownstreamSslActivationHandler extends ChannelDuplexHandler {
                 break;
             case 'S':
                 LOG.debug("Server accepted SSL");
-                final ChannelHandler downstreamSslHandler = createDownstreamSslHandler(
-                        sslConfig.getConfig(),
-                        sslConfig.getDownstreamHostname(),
-                        sslConfig.getClock(),
-                        sslConfig.getFilesystem()
-                );
-                ctx.pipeline().replace(this, "SSL", downstreamSslHandler);
+                metrics.sslAccepted();
+                final long handshakeStart = System.nanoTime();
+                final SslHandler sslHandler = sslContext.newHandler(ctx.alloc());
+                sslHandler.handshakeFuture().addListener(future -> {
+                    if (future.isSuccess()) {
+                        metrics.getSslHandshakes().record(System.nanoTime() - handshakeStart);
+                    }
+                });
+                ctx.pipeline().replace(this, "SSL", sslHandler);
                 break;
             default:
                 throw new ProtocolErrorException("Unhandled server response type: " + type);
         }
         LOG.trace("Flushing message buffer");
-        messageBuffer.forEach(ctx::writeAndFlush);
+        messageBuffer.forEach(ctx::write);
+        ctx.flush();
     }
 
     @Override
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.protocol;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+// Sessions are cached by host and port, so reconnects resume them instead of a full handshake
+public class DownstreamSslContext implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(DownstreamSslContext.class);
+    private static final String HOSTNAME_VERIFICATION_ALGORITHM = "HTTPS";
+    private final PostgresSslConfig config;
+    private final int port;
+    private final SslProvider sslProvider;
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(
+            new DefaultThreadFactory("psqlproxy-truststore", true)
+    );
+    private volatile LoadedTrustStore current;
+
+    public DownstreamSslContext(final PostgresSslConfig config, final int port) {
+        this.config = config;
+        this.port = port;
+        this.sslProvider = selectSslProvider(config.getSslProvider());
+        // Loaded up front, so the first connection doesn't read files on its event loop
+        if (config.isSslRequired()) {
+            current = load(read(trustStoreConfig().getLocation()), read(trustStoreConfig().getPasswordLocation()));
+            final int interval = trustStoreConfig().getUpdateIntervalMsecs();
+            if (interval > 0) {
+                refresher.scheduleWithFixedDelay(this::refresh, interval, interval, MILLISECONDS);
+            }
+        }
+    }
+
+    public PostgresSslConfig getConfig() {
+        return config;
+    }
+
+    public SslHandler newHandler(final ByteBufAllocator alloc) {
+        final SslHandler handler = getSslContext().newHandler(alloc, config.getDownstreamHostname(), port);
+        if (config.isHostnameVerificationEnabled()) {
+            final SSLEngine engine = handler.engine();
+            final SSLParameters parameters = engine.getSSLParameters();
+            parameters.setEndpointIdentificationAlgorithm(HOSTNAME_VERIFICATION_ALGORITHM);
+            engine.setSSLParameters(parameters);
+        }
+        return handler;
+    }
+
+    @Override
+    public void close() {
+        refresher.shutdownNow();
+    }
+
+    public SslContext getSslContext() {
+        final LoadedTrustStore loaded = current;
+        if (loaded == null) {
+            throw new IllegalStateException("SSL is not enabled for " + config.getDownstreamHostname());
+        }
+        return loaded.sslContext;
+    }
+
+    private void refresh() {
+        try {
+            final byte[] trustStore = read(trustStoreConfig().getLocation());
+            final byte[] password = read(trustStoreConfig().getPasswordLocation());
+            if (current.isLoadedFrom(trustStore, password)) {
+                return;
+            }
+            current = load(trustStore, password);
+            LOG.info("Reloaded truststore {}", trustStoreConfig().getLocation());
+        } catch (final RuntimeException e) {
+            LOG.warn("Failed to reload truststore {}, keeping the previous one", trustStoreConfig().getLocation(), e);
+        }
+    }
+
+    private LoadedTrustStore load(final byte[] trustStore, final byte[] password) {
+        try {
+            final KeyStore keyStore = KeyStore.getInstance(trustStoreConfig().getType());
+            keyStore.load(new ByteArrayInputStream(trustStore), new String(password, UTF_8).toCharArray());
+            final TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(
+                    TrustManagerFactory.getDefaultAlgorithm()
+            );
+            trustManagerFactory.init(keyStore);
+            final SslContext sslContext = SslContextBuilder.forClient()
+                    .sslProvider(sslProvider)
+                    .trustManager(trustManagerFactory)
+                    .build();
+            return new LoadedTrustStore(trustStore, password, sslContext);
+        } catch (final GeneralSecurityException | IOException e) {
+            throw new IllegalStateException("Failed to load truststore " + trustStoreConfig().getLocation(), e);
+        }
+    }
+
+    private static SslProvider selectSslProvider(final SslProvider requested) {
+        if (SslProvider.JDK.equals(requested) || OpenSsl.isAvailable()) {
+            return requested;
+        }
+        LOG.warn("OpenSSL not available, falling back to the JDK SSL provider", OpenSsl.unavailabilityCause());
+        return SslProvider.JDK;
+    }
+
+    private byte[] read(final String location) {
+        final byte[] bytes = config.getFilesystem().apply(location);
+        if (bytes == null) {
+            throw new IllegalStateException("File not found: " + location);
+        }
+        return bytes;
+    }
+
+    private TrustStoreConfig trustStoreConfig() {
+        return config.getTrustStore();
+    }
+
+    private static class LoadedTrustStore {
+        private final byte[] trustStore;
+        private final byte[] password;
+        private final SslContext sslContext;
+
+        private LoadedTrustStore(final byte[] trustStore, final byte[] password, final SslContext sslContext) {
+            this.trustStore = trustStore;
+            this.password = password;
+            this.sslContext = sslContext;
+        }
+
+        private boolean isLoadedFrom(final byte[] trustStore, final byte[] password) {
+            return Arrays.equals(this.trustStore, trustStore) && Arrays.equals(this.password, password);
+        }
+    }
+}
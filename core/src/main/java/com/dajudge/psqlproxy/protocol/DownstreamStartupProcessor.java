@@ -17,17 +17,24 @@
 
 package com.dajudge.psqlproxy.protocol;
 
+import com.dajudge.psqlproxy.metrics.ProxyMetrics;
 import com.dajudge.psqlproxy.protocol.TypedFrameHandler.FrameProcessor;
 import com.dajudge.psqlproxy.protocol.exception.ProtocolErrorException;
 import com.dajudge.psqlproxy.protocol.exception.ServerErrorException;
 import com.dajudge.psqlproxy.protocol.frames.TypedFrame;
+import com.dajudge.psqlproxy.protocol.messages.FrontendMessages;
+import com.dajudge.psqlproxy.protocol.scram.ScramClient;
+import com.dajudge.psqlproxy.protocol.scram.ScramKeyCache;
+import com.dajudge.psqlproxy.protocol.scram.ScramKeys;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import org.postgresql.util.MD5Digest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import static io.netty.buffer.Unpooled.buffer;
+import java.util.ArrayList;
+import java.util.List;
+
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 public class DownstreamStartupProcessor implements FrameProcessor {
@@ -35,24 +42,51 @@ public class DownstreamStartupProcessor implements FrameProcessor {
     private final FrameProcessor next;
     private final String username;
     private final String password;
+    private final ScramKeyCache scramKeyCache;
+    private final ProxyMetrics metrics;
+    private ScramClient scramClient;
+    private long authenticationStart;
 
     // https://github.com/pgjdbc/pgjdbc/blob/f3abb4eb19357ac353d4a1e59d2920135619ad9a/pgjdbc/src/main/java/org/postgresql/core/v3/ConnectionFactoryImpl.java#L58
     private static final int AUTH_REQ_OK = 0;
     private static final int AUTH_REQ_MD5 = 5;
+    private static final int AUTH_REQ_SASL = 10;
+    private static final int AUTH_REQ_SASL_CONTINUE = 11;
+    private static final int AUTH_REQ_SASL_FINAL = 12;
 
-    public DownstreamStartupProcessor(final String username, final String password, final FrameProcessor next) {
+    public DownstreamStartupProcessor(
+            final String username,
+            final String password,
+            final ScramKeyCache scramKeyCache,
+            final ProxyMetrics metrics,
+            final FrameProcessor next
+    ) {
         this.username = username;
         this.password = password;
+        this.scramKeyCache = scramKeyCache;
+        this.metrics = metrics;
         this.next = next;
     }
 
     @Override
     public FrameProcessor process(final ChannelHandlerContext ctx, final TypedFrame message) {
+        try {
+            return processStartupResponse(ctx, message);
+        } catch (final RuntimeException e) {
+            metrics.authFailed();
+            throw e;
+        }
+    }
+
+    private FrameProcessor processStartupResponse(final ChannelHandlerContext ctx, final TypedFrame message) {
         // https://github.com/pgjdbc/pgjdbc/blob/f3abb4eb19357ac353d4a1e59d2920135619ad9a/pgjdbc/src/main/java/org/postgresql/core/v3/ConnectionFactoryImpl.java#L508
         switch (message.getType()) {
             case 'E':
                 return handleErrorResponse(ctx, message);
             case 'R':
+                if (authenticationStart == 0) {
+                    authenticationStart = System.nanoTime();
+                }
                 return handleAuthenticationRequest(ctx, message);
             default:
                 throw new ProtocolErrorException("Unhandled startup response type: " + message.getType());
@@ -60,31 +94,38 @@ public class DownstreamStartupProcessor implements FrameProcessor {
     }
 
     private FrameProcessor handleErrorResponse(final ChannelHandlerContext ctx, final TypedFrame message) {
-        final ByteBuf payload = message.getChunks().get(1);
-        try {
-            final byte[] bytes = new byte[payload.readableBytes()];
-            payload.readBytes(bytes, 0, bytes.length);
-            throw new ServerErrorException(new String(bytes, UTF_8));
-        } finally {
-            payload.resetReaderIndex();
-        }
+        final String error = message.getPayload().toString(UTF_8);
+        message.release();
+        throw new ServerErrorException(error);
     }
 
     private FrameProcessor handleAuthenticationRequest(
             final ChannelHandlerContext ctx,
             final TypedFrame message
     ) {
-        final ByteBuf payload = message.getChunks().get(1);
+        final ByteBuf payload = message.getPayload();
         final int requestType = payload.readInt();
         switch (requestType) {
             case AUTH_REQ_MD5:
                 handleMd5(ctx, payload);
                 message.release();
                 return this;
+            case AUTH_REQ_SASL:
+                handleSasl(ctx, payload);
+                message.release();
+                return this;
+            case AUTH_REQ_SASL_CONTINUE:
+                handleSaslContinue(ctx, payload);
+                message.release();
+                return this;
+            case AUTH_REQ_SASL_FINAL:
+                handleSaslFinal(payload);
+                message.release();
+                return this;
             case AUTH_REQ_OK:
                 LOG.debug("Authentication successful");
-                payload.resetReaderIndex();
-                ctx.fireChannelRead(message.all());
+                metrics.getAuthentications().record(System.nanoTime() - authenticationStart);
+                ctx.fireChannelRead(message.content());
                 return next;
             default:
                 throw new ProtocolErrorException("Unhandled authentication type requested: " + requestType);
@@ -96,11 +137,75 @@ public class DownstreamStartupProcessor implements FrameProcessor {
         final byte[] salt = new byte[4];
         payload.readBytes(salt, 0, salt.length);
         byte[] digest = MD5Digest.encode(username.getBytes(UTF_8), password.getBytes(UTF_8), salt);
-        final ByteBuf authMessage = buffer(digest.length + 1);
+        final ByteBuf authMessage = ctx.alloc().buffer(digest.length + 1);
         authMessage.writeBytes(digest, 0, digest.length);
         authMessage.writeByte(0);
-        authMessage.resetReaderIndex();
-        ctx.writeAndFlush(new TypedFrame('p', authMessage).all());
+        ctx.writeAndFlush(TypedFrame.of(ctx.alloc(), 'p', authMessage).content());
         return this;
     }
+
+    private void handleSasl(final ChannelHandlerContext ctx, final ByteBuf payload) {
+        final List<String> mechanisms = new ArrayList<>();
+        while (payload.isReadable()) {
+            final int end = payload.bytesBefore((byte) 0);
+            if (end <= 0) {
+                break;
+            }
+            mechanisms.add(payload.readCharSequence(end, UTF_8).toString());
+            payload.skipBytes(1);
+        }
+        LOG.debug("SASL authentication requested: {}", mechanisms);
+        if (!mechanisms.contains(ScramClient.MECHANISM)) {
+            throw new ProtocolErrorException("Unsupported SASL authentication mechanisms: " + mechanisms);
+        }
+        scramClient = new ScramClient();
+        ctx.writeAndFlush(FrontendMessages.saslInitialResponse(
+                ctx.alloc(),
+                ScramClient.MECHANISM,
+                scramClient.clientFirstMessage()
+        ));
+    }
+
+    private void handleSaslContinue(final ChannelHandlerContext ctx, final ByteBuf payload) {
+        if (scramClient == null) {
+            throw new ProtocolErrorException("Unexpected SASL continuation");
+        }
+        final ScramClient client = scramClient;
+        client.serverFirstMessage(payload.toString(UTF_8));
+        // Deriving the keys is expensive, so it's done on a separate executor unless they are cached already
+        scramKeyCache.get(password, client.getSalt(), client.getIterations()).whenComplete((keys, error) -> {
+            if (ctx.executor().inEventLoop()) {
+                sendSaslResponse(ctx, client, keys, error);
+            } else {
+                ctx.executor().execute(() -> sendSaslResponse(ctx, client, keys, error));
+            }
+        });
+    }
+
+    private void sendSaslResponse(
+            final ChannelHandlerContext ctx,
+            final ScramClient client,
+            final ScramKeys keys,
+            final Throwable error
+    ) {
+        if (error != null) {
+            metrics.authFailed();
+            ctx.fireExceptionCaught(error);
+            return;
+        }
+        try {
+            ctx.writeAndFlush(FrontendMessages.saslResponse(ctx.alloc(), client.clientFinalMessage(keys)));
+        } catch (final RuntimeException e) {
+            metrics.authFailed();
+            ctx.fireExceptionCaught(e);
+        }
+    }
+
+    private void handleSaslFinal(final ByteBuf payload) {
+        if (scramClient == null) {
+            throw new ProtocolErrorException("Unexpected SASL completion");
+        }
+        scramClient.serverFinalMessage(payload.toString(UTF_8));
+        LOG.debug("SCRAM server signature verified");
+    }
 }
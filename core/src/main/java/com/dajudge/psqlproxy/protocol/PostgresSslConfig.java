@@ -17,49 +17,76 @@
 
 package com.dajudge.psqlproxy.protocol;
 
-import com.dajudge.proxybase.certs.Filesystem;
-import com.dajudge.proxybase.config.DownstreamSslConfig;
+import io.netty.handler.ssl.SslProvider;
 
-import java.util.function.Supplier;
+import java.util.function.Function;
 
 public class PostgresSslConfig {
     private final boolean sslRequired;
-    private final DownstreamSslConfig config;
+    private final TrustStoreConfig trustStore;
+    private final boolean hostnameVerificationEnabled;
     private final String downstreamHostname;
-    private final Supplier<Long> clock;
-    private final Filesystem filesystem;
+    private final Function<String, byte[]> filesystem;
+    private final SslProvider sslProvider;
 
     public PostgresSslConfig(
             final boolean sslRequired,
-            final DownstreamSslConfig config,
+            final TrustStoreConfig trustStore,
+            final boolean hostnameVerificationEnabled,
             final String downstreamHostname,
-            final Supplier<Long> clock,
-            final Filesystem filesystem
+            final Function<String, byte[]> filesystem
+    ) {
+        this(sslRequired, trustStore, hostnameVerificationEnabled, downstreamHostname, filesystem, SslProvider.JDK);
+    }
+
+    public PostgresSslConfig(
+            final boolean sslRequired,
+            final TrustStoreConfig trustStore,
+            final boolean hostnameVerificationEnabled,
+            final String downstreamHostname,
+            final Function<String, byte[]> filesystem,
+            final SslProvider sslProvider
     ) {
         this.sslRequired = sslRequired;
-        this.config = config;
+        this.trustStore = trustStore;
+        this.hostnameVerificationEnabled = hostnameVerificationEnabled;
         this.downstreamHostname = downstreamHostname;
-        this.clock = clock;
         this.filesystem = filesystem;
+        this.sslProvider = sslProvider;
     }
 
     public boolean isSslRequired() {
         return sslRequired;
     }
 
-    public DownstreamSslConfig getConfig() {
-        return config;
+    public TrustStoreConfig getTrustStore() {
+        return trustStore;
+    }
+
+    public boolean isHostnameVerificationEnabled() {
+        return hostnameVerificationEnabled;
     }
 
     public String getDownstreamHostname() {
         return downstreamHostname;
     }
 
-    public Supplier<Long> getClock() {
-        return clock;
+    public Function<String, byte[]> getFilesystem() {
+        return filesystem;
+    }
+
+    public SslProvider getSslProvider() {
+        return sslProvider;
     }
 
-    public Filesystem getFilesystem() {
-        return filesystem;
+    public PostgresSslConfig withDownstreamHostname(final String hostname) {
+        return new PostgresSslConfig(
+                sslRequired,
+                trustStore,
+                hostnameVerificationEnabled,
+                hostname,
+                filesystem,
+                sslProvider
+        );
     }
 }
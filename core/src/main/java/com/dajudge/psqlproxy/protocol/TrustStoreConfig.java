@@ -0,0 +1,53 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.protocol;
+
+public class TrustStoreConfig {
+    private final String location;
+    private final String passwordLocation;
+    private final String type;
+    private final int updateIntervalMsecs;
+
+    public TrustStoreConfig(
+            final String location,
+            final String passwordLocation,
+            final String type,
+            final int updateIntervalMsecs
+    ) {
+        this.location = location;
+        this.passwordLocation = passwordLocation;
+        this.type = type;
+        this.updateIntervalMsecs = updateIntervalMsecs;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public String getPasswordLocation() {
+        return passwordLocation;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public int getUpdateIntervalMsecs() {
+        return updateIntervalMsecs;
+    }
+}
@@ -17,31 +17,57 @@
 
 package com.dajudge.psqlproxy.protocol;
 
-import com.dajudge.proxybase.AbstractChunkedMessageStreamInboundHandler;
+import com.dajudge.psqlproxy.metrics.FrameCounts;
+import com.dajudge.psqlproxy.metrics.FrameListener;
 import com.dajudge.psqlproxy.protocol.frames.TypedFrame;
+import com.dajudge.psqlproxy.protocol.frames.TypedFrameDecoder;
+import com.dajudge.psqlproxy.transport.SpliceRelay;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class TypedFrameHandler extends AbstractChunkedMessageStreamInboundHandler<TypedFrame> {
+public class TypedFrameHandler extends ChannelInboundHandlerAdapter {
     private static final Logger LOG = LoggerFactory.getLogger(TypedFrameHandler.class);
+    private final FrameListener frameListener;
     private FrameProcessor frameProcessor;
+    private boolean streaming;
 
     public TypedFrameHandler(final FrameProcessor initialFrameProcessor) {
+        this(initialFrameProcessor, FrameCounts.NONE);
+    }
+
+    public TypedFrameHandler(final FrameProcessor initialFrameProcessor, final FrameListener frameListener) {
         this.frameProcessor = initialFrameProcessor;
+        this.frameListener = frameListener;
     }
 
     @Override
-    protected void onMessageComplete(final ChannelHandlerContext ctx, final TypedFrame message) {
-        if(LOG.isTraceEnabled()) {
-            LOG.trace("Typed frame '{}': {} bytes", message.getType(), message.getChunks().get(1).readableBytes());
+    public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+        if (!(msg instanceof TypedFrame)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        final TypedFrame message = (TypedFrame) msg;
+        frameListener.onFrame(message);
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Typed frame '{}': {} bytes", message.getType(), message.content().readableBytes());
         }
         frameProcessor = frameProcessor.process(ctx, message);
-    }
-
-    @Override
-    protected TypedFrame createNewMessage() {
-        return new TypedFrame();
+        if (frameProcessor instanceof RawRelayFrameProcessor) {
+            // The decoder emits one frame at a time and hands over the bytes it didn't decode yet when
+            // it's removed, so all further bytes will be relayed as they are.
+            LOG.debug("Switching to raw relay");
+            ctx.pipeline().remove(this);
+            ctx.pipeline().remove(TypedFrameDecoder.class);
+            ((RawRelayFrameProcessor) frameProcessor).rawRelayStarted(ctx.channel());
+        } else if (!streaming && frameProcessor instanceof StreamingFrameProcessor) {
+            final int threshold = ((StreamingFrameProcessor) frameProcessor).getThreshold();
+            LOG.debug("Switching to streaming frames larger than {} bytes", threshold);
+            streaming = true;
+            ctx.pipeline().get(TypedFrameDecoder.class).enableStreaming(threshold);
+        }
     }
 
     public interface FrameProcessor {
@@ -51,8 +77,38 @@ public class TypedFrameHandler extends AbstractChunkedMessageStreamInboundHandle
     public static class ContinueFrameProcessor implements FrameProcessor {
         @Override
         public FrameProcessor process(final ChannelHandlerContext ctx, final TypedFrame message) {
-            ctx.fireChannelRead(message.all());
+            ctx.fireChannelRead(message.content());
             return this;
         }
     }
+
+    public static class StreamingFrameProcessor extends ContinueFrameProcessor {
+        private final int threshold;
+
+        public StreamingFrameProcessor(final int threshold) {
+            this.threshold = threshold;
+        }
+
+        public int getThreshold() {
+            return threshold;
+        }
+    }
+
+    public static class RawRelayFrameProcessor extends ContinueFrameProcessor {
+        public void rawRelayStarted(final Channel channel) {
+        }
+    }
+
+    public static class SpliceRelayFrameProcessor extends RawRelayFrameProcessor {
+        private final Channel target;
+
+        public SpliceRelayFrameProcessor(final Channel target) {
+            this.target = target;
+        }
+
+        @Override
+        public void rawRelayStarted(final Channel channel) {
+            SpliceRelay.start(channel, target);
+        }
+    }
 }
@@ -17,51 +17,41 @@
 
 package com.dajudge.psqlproxy.protocol;
 
-import com.dajudge.proxybase.AbstractSingleChunkedMessageInboundHandler;
 import com.dajudge.psqlproxy.protocol.frames.UntypedFrame;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class UpstreamSslRejectHandler extends AbstractSingleChunkedMessageInboundHandler<UntypedFrame> {
+import static io.netty.buffer.Unpooled.directBuffer;
+import static io.netty.buffer.Unpooled.unreleasableBuffer;
+
+public class UpstreamSslRejectHandler extends ChannelInboundHandlerAdapter {
     private static final Logger LOG = LoggerFactory.getLogger(UpstreamSslRejectHandler.class);
     private static final int SSL_REQUEST_LENGTH = 4;
+    private static final ByteBuf SSL_REJECTED = unreleasableBuffer(directBuffer(1).writeByte('N').asReadOnly());
 
     @Override
-    public void channelRead(final ChannelHandlerContext ctx, final Object msg) throws Exception {
-        super.channelRead(ctx, msg);
-    }
-
-    @Override
-    protected void onMessageComplete(final ChannelHandlerContext ctx, final UntypedFrame message) {
-        final ByteBuf payload = message.getChunks().get(1);
-        if (payload.readableBytes() != SSL_REQUEST_LENGTH) {
-            ctx.fireChannelRead(message.all());
-            return;
-        }
-        final short major = payload.readShort();
-        final short minor = payload.readShort();
-        if (isSslRequest(major, minor)) {
+    public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+        final UntypedFrame message = (UntypedFrame) msg;
+        if (isSslRequest(message.getPayload())) {
             LOG.debug("Rejecting client's SSL request");
-            final ByteBuf buffer = Unpooled.buffer(1);
-            buffer.writeByte('N');
-            ctx.writeAndFlush(buffer);
+            ctx.writeAndFlush(SSL_REJECTED.duplicate());
             message.release();
         } else {
-            payload.resetReaderIndex();
-            ctx.fireChannelRead(message.all());
+            ctx.pipeline().remove(this);
+            ctx.fireChannelRead(message);
         }
     }
 
-    private boolean isSslRequest(final short major, final short minor) {
+    private boolean isSslRequest(final ByteBuf payload) {
+        if (payload.readableBytes() != SSL_REQUEST_LENGTH) {
+            return false;
+        }
+        final short major = payload.getShort(payload.readerIndex());
+        final short minor = payload.getShort(payload.readerIndex() + 2);
         // https://github.com/pgjdbc/pgjdbc/blob/f3abb4eb19357ac353d4a1e59d2920135619ad9a/pgjdbc/src/main/java/org/postgresql/core/v3/ConnectionFactoryImpl.java#L411
         return major == 1234 && minor == 5679;
     }
-
-    @Override
-    protected UntypedFrame createNewMessage() {
-        return new UntypedFrame();
-    }
 }
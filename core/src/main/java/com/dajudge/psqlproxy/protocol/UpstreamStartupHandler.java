@@ -17,55 +17,103 @@
 
 package com.dajudge.psqlproxy.protocol;
 
-import com.dajudge.proxybase.AbstractSingleChunkedMessageInboundHandler;
+import com.dajudge.psqlproxy.protocol.exception.ProtocolErrorException;
 import com.dajudge.psqlproxy.protocol.frames.UntypedFrame;
-import com.dajudge.psqlproxy.protocol.messages.StartupMessage;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.ByteProcessor;
 
-import java.util.ArrayList;
-import java.util.List;
+import static com.dajudge.psqlproxy.protocol.frames.UntypedFrameDecoder.switchToTypedFrames;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
-public class UpstreamStartupHandler extends AbstractSingleChunkedMessageInboundHandler<UntypedFrame> {
-    private final String username;
+// The StartupMessage is forwarded as slices of the received frame, only the user is replaced
+public class UpstreamStartupHandler extends ChannelInboundHandlerAdapter {
+    private static final ByteBuf USER_KEY = Unpooled.unreleasableBuffer(
+            Unpooled.wrappedBuffer("user".getBytes(UTF_8)).asReadOnly()
+    );
+    // The length and the protocol version
+    private static final int PARAMS_OFFSET = 8;
+    private final ByteBuf username;
+    private final ChannelHandler nextHandler;
 
-    public UpstreamStartupHandler(final String username, final ChannelHandler nextHandler) {
-        super(nextHandler);
+    public UpstreamStartupHandler(final ByteBuf username, final ChannelHandler nextHandler) {
         this.username = username;
+        this.nextHandler = nextHandler;
+    }
+
+    public static ByteBuf encodeUsername(final String username) {
+        final ByteBuf param = Unpooled.directBuffer(USER_KEY.readableBytes() + ByteBufUtil.utf8Bytes(username) + 2);
+        param.writeBytes(USER_KEY, USER_KEY.readerIndex(), USER_KEY.readableBytes());
+        param.writeByte(0);
+        param.writeCharSequence(username, UTF_8);
+        param.writeByte(0);
+        return Unpooled.unreleasableBuffer(param.asReadOnly());
     }
 
     @Override
-    protected void onMessageComplete(
-            final ChannelHandlerContext ctx,
-            final UntypedFrame message
-    ) {
+    public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
         // https://github.com/pgjdbc/pgjdbc/blob/f3abb4eb19357ac353d4a1e59d2920135619ad9a/pgjdbc/src/main/java/org/postgresql/core/v3/ConnectionFactoryImpl.java#L455
-        final ByteBuf payload = message.getChunks().get(1);
-        final StartupMessage parsedMessage = new StartupMessage(payload);
-        final List<String> newParams = new ArrayList<>();
-        final List<String> oldParams = parsedMessage.getParams();
-        for (int i = 0; i < oldParams.size(); i++) {
-            if (oldParams.get(i).equals("user")) {
-                i++;
-            } else {
-                newParams.add(oldParams.get(i));
+        ctx.fireChannelRead(replaceUser(ctx.alloc(), ((UntypedFrame) msg).content(), username));
+        ctx.pipeline().replace(this, null, nextHandler);
+        switchToTypedFrames(ctx.pipeline());
+    }
+
+    public static ByteBuf replaceUser(final ByteBufAllocator alloc, final ByteBuf frame, final ByteBuf username) {
+        final int start = frame.readerIndex();
+        final int end = frame.writerIndex();
+        final int valueOffset = username.readerIndex() + USER_KEY.readableBytes() + 1;
+        final int valueLength = username.writerIndex() - valueOffset;
+        final CompositeByteBuf result = alloc.compositeBuffer();
+        try {
+            int length = frame.readableBytes();
+            int copied = start;
+            boolean replaced = false;
+            int key = start + PARAMS_OFFSET;
+            for (int keyEnd = nul(frame, key, end); keyEnd != key; keyEnd = nul(frame, key, end)) {
+                final int valueEnd = nul(frame, keyEnd + 1, end);
+                if (isUserKey(frame, key, keyEnd)) {
+                    result.addComponent(true, frame.retainedSlice(copied, keyEnd + 1 - copied));
+                    result.addComponent(true, username.slice(valueOffset, valueLength));
+                    length += valueLength - (valueEnd - keyEnd);
+                    copied = valueEnd + 1;
+                    replaced = true;
+                }
+                key = valueEnd + 1;
+            }
+            if (!replaced) {
+                // Insert before the terminating 0 char
+                result.addComponent(true, frame.retainedSlice(copied, key - copied));
+                result.addComponent(true, username.slice());
+                length += username.readableBytes();
+                copied = key;
             }
+            result.addComponent(true, frame.retainedSlice(copied, end - copied));
+            frame.setInt(start, length);
+            return result;
+        } catch (final RuntimeException e) {
+            result.release();
+            throw e;
+        } finally {
+            frame.release();
         }
-        newParams.add("user");
-        newParams.add(username);
-        message.release();
-        final StartupMessage newStartupMessage = new StartupMessage(
-                parsedMessage.getMajorVersion(),
-                parsedMessage.getMinorVersion(),
-                newParams
-        );
-        final UntypedFrame newFrame = new UntypedFrame(newStartupMessage.serialize());
-        ctx.fireChannelRead(newFrame.all());
     }
 
-    @Override
-    protected UntypedFrame createNewMessage() {
-        return new UntypedFrame();
+    private static boolean isUserKey(final ByteBuf frame, final int key, final int keyEnd) {
+        return keyEnd - key == USER_KEY.readableBytes()
+                && ByteBufUtil.equals(frame, key, USER_KEY, USER_KEY.readerIndex(), USER_KEY.readableBytes());
+    }
+
+    private static int nul(final ByteBuf frame, final int from, final int end) {
+        final int index = frame.forEachByte(from, end - from, ByteProcessor.FIND_NUL);
+        if (index < 0) {
+            throw new ProtocolErrorException("Malformed startup message");
+        }
+        return index;
     }
 }
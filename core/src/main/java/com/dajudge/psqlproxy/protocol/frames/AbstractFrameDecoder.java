@@ -0,0 +1,68 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.protocol.frames;
+
+import com.dajudge.psqlproxy.protocol.exception.ProtocolErrorException;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+
+import java.util.List;
+
+// Frames are retained slices of the cumulation, so payloads are never copied
+abstract class AbstractFrameDecoder<T> extends ByteToMessageDecoder {
+    private static final int LENGTH_FIELD_SIZE = 4;
+    private final int lengthOffset;
+    private int streamingThreshold = Integer.MAX_VALUE;
+    private int remainingStreamedBytes;
+
+    protected AbstractFrameDecoder(final int lengthOffset) {
+        this.lengthOffset = lengthOffset;
+    }
+
+    protected void streamFramesLargerThan(final int threshold) {
+        streamingThreshold = threshold;
+    }
+
+    @Override
+    protected void decode(final ChannelHandlerContext ctx, final ByteBuf in, final List<Object> out) {
+        final int readable = in.readableBytes();
+        if (remainingStreamedBytes > 0) {
+            final int fragment = Math.min(remainingStreamedBytes, readable);
+            remainingStreamedBytes -= fragment;
+            out.add(in.readRetainedSlice(fragment));
+            return;
+        }
+        if (readable < lengthOffset + LENGTH_FIELD_SIZE) {
+            return;
+        }
+        final int length = in.getInt(in.readerIndex() + lengthOffset);
+        if (length < LENGTH_FIELD_SIZE) {
+            throw new ProtocolErrorException("Invalid frame length: " + length);
+        }
+        final int missing = length - (readable - lengthOffset);
+        if (missing <= 0) {
+            out.add(createFrame(in.readRetainedSlice(lengthOffset + length)));
+        } else if (length > streamingThreshold - lengthOffset) {
+            remainingStreamedBytes = missing;
+            out.add(in.readRetainedSlice(readable));
+        }
+    }
+
+    protected abstract T createFrame(ByteBuf frame);
+}
@@ -17,56 +17,31 @@
 
 package com.dajudge.psqlproxy.protocol.frames;
 
-import com.dajudge.proxybase.AbstractChunkedMessage;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.DefaultByteBufHolder;
 
-import java.util.List;
+public class TypedFrame extends DefaultByteBufHolder {
+    public static final int HEADER_SIZE = 5;
+    private static final int LENGTH_FIELD_SIZE = 4;
 
-import static java.util.Arrays.asList;
-
-public class TypedFrame extends AbstractChunkedMessage {
-    private static final int HEADER_CHUNK_INDEX = 0;
-
-    public TypedFrame() {
-        super(5);
-    }
-
-    public TypedFrame(final char type, final ByteBuf payload) {
-        super(asList(header(type, payload.readableBytes()), payload));
+    public TypedFrame(final ByteBuf frame) {
+        super(frame);
     }
 
-    private static ByteBuf header(final char type, final int payloadSize) {
-        final ByteBuf header = Unpooled.buffer(5);
+    public static TypedFrame of(final ByteBufAllocator alloc, final char type, final ByteBuf payload) {
+        final ByteBuf header = alloc.buffer(HEADER_SIZE);
         header.writeByte(type);
-        header.writeInt(payloadSize + 4);
-        return header;
+        header.writeInt(payload.readableBytes() + LENGTH_FIELD_SIZE);
+        return new TypedFrame(alloc.compositeBuffer(2).addComponents(true, header, payload));
     }
 
-    @Override
-    protected int nextChunkSize(final List<ByteBuf> chunks) {
-        if (messageComplete(chunks)) {
-            return NO_MORE_CHUNKS;
-        }
-        final ByteBuf sizeChunk = chunks.get(HEADER_CHUNK_INDEX);
-        try {
-            sizeChunk.skipBytes(1); // Skip over type
-            return (int) sizeChunk.readUnsignedInt() - 4;
-        } finally {
-            sizeChunk.resetReaderIndex();
-        }
-    }
-
-    private boolean messageComplete(final List<ByteBuf> chunks) {
-        return chunks.size() == 2;
+    public char getType() {
+        return (char) content().getByte(content().readerIndex());
     }
 
-    public char getType() {
-        final ByteBuf sizeChunk = getChunks().get(HEADER_CHUNK_INDEX);
-        try {
-            return (char) sizeChunk.readByte();
-        } finally {
-            sizeChunk.resetReaderIndex();
-        }
+    public ByteBuf getPayload() {
+        final ByteBuf frame = content();
+        return frame.slice(frame.readerIndex() + HEADER_SIZE, frame.readableBytes() - HEADER_SIZE);
     }
 }
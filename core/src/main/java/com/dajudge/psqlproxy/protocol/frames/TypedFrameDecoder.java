@@ -0,0 +1,35 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.protocol.frames;
+
+import io.netty.buffer.ByteBuf;
+
+public class TypedFrameDecoder extends AbstractFrameDecoder<TypedFrame> {
+    public TypedFrameDecoder() {
+        super(1);
+    }
+
+    public void enableStreaming(final int threshold) {
+        streamFramesLargerThan(threshold);
+    }
+
+    @Override
+    protected TypedFrame createFrame(final ByteBuf frame) {
+        return new TypedFrame(frame);
+    }
+}
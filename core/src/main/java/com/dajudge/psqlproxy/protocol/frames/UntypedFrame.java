@@ -17,45 +17,25 @@
 
 package com.dajudge.psqlproxy.protocol.frames;
 
-import com.dajudge.proxybase.AbstractChunkedMessage;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.DefaultByteBufHolder;
 
-import java.util.List;
+public class UntypedFrame extends DefaultByteBufHolder {
+    public static final int HEADER_SIZE = 4;
 
-import static java.util.Arrays.asList;
-
-public class UntypedFrame extends AbstractChunkedMessage {
-    private static final int SIZE_CHUNK_INDEX = 0;
-
-    public UntypedFrame() {
-        super(4);
-    }
-
-    public UntypedFrame(final ByteBuf payload) {
-        super(asList(header(payload.readableBytes()), payload));
-    }
-
-    private static ByteBuf header(final int payloadBytes) {
-        final ByteBuf header = Unpooled.buffer(4);
-        header.writeInt(payloadBytes + 4);
-        return header;
+    public UntypedFrame(final ByteBuf frame) {
+        super(frame);
     }
 
-    @Override
-    protected int nextChunkSize(final List<ByteBuf> chunks) {
-        if (messageComplete(chunks)) {
-            return NO_MORE_CHUNKS;
-        }
-        final ByteBuf sizeChunk = chunks.get(SIZE_CHUNK_INDEX);
-        try {
-            return (int) sizeChunk.readUnsignedInt() - 4;
-        } finally {
-            sizeChunk.resetReaderIndex();
-        }
+    public static UntypedFrame of(final ByteBufAllocator alloc, final ByteBuf payload) {
+        final ByteBuf header = alloc.buffer(HEADER_SIZE);
+        header.writeInt(payload.readableBytes() + HEADER_SIZE);
+        return new UntypedFrame(alloc.compositeBuffer(2).addComponents(true, header, payload));
     }
 
-    private boolean messageComplete(final List<ByteBuf> chunks) {
-        return chunks.size() == 2;
+    public ByteBuf getPayload() {
+        final ByteBuf frame = content();
+        return frame.slice(frame.readerIndex() + HEADER_SIZE, frame.readableBytes() - HEADER_SIZE);
     }
 }
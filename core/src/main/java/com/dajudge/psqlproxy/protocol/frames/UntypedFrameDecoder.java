@@ -0,0 +1,46 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.protocol.frames;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelPipeline;
+
+public class UntypedFrameDecoder extends AbstractFrameDecoder<UntypedFrame> {
+    public UntypedFrameDecoder() {
+        super(0);
+    }
+
+    @Override
+    protected UntypedFrame createFrame(final ByteBuf frame) {
+        return new UntypedFrame(frame);
+    }
+
+    // Bytes received but not decoded yet are handed over to the new decoder
+    public static void switchToTypedFrames(final ChannelPipeline pipeline) {
+        pipeline.replace(UntypedFrameDecoder.class, null, new TypedFrameDecoder());
+    }
+
+    // Bytes received but not decoded yet are returned instead of being passed down the pipeline
+    public static ByteBuf remove(final ChannelPipeline pipeline) {
+        final UntypedFrameDecoder decoder = pipeline.get(UntypedFrameDecoder.class);
+        final ByteBuf cumulation = decoder.internalBuffer();
+        final ByteBuf undecoded = cumulation.readRetainedSlice(cumulation.readableBytes());
+        pipeline.remove(decoder);
+        return undecoded;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.protocol.messages;
+
+import com.dajudge.psqlproxy.protocol.frames.TypedFrame;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import static io.netty.buffer.Unpooled.directBuffer;
+import static io.netty.buffer.Unpooled.unreleasableBuffer;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public final class BackendMessages {
+    // https://www.postgresql.org/docs/current/protocol-message-formats.html
+    private static final int AUTH_REQ_OK = 0;
+    private static final ByteBuf AUTHENTICATION_OK = unreleasableBuffer(directBuffer(9)
+            .writeByte('R')
+            .writeInt(8)
+            .writeInt(AUTH_REQ_OK)
+            .asReadOnly());
+
+    private BackendMessages() {
+    }
+
+    public static ByteBuf authenticationOk() {
+        return AUTHENTICATION_OK.duplicate();
+    }
+
+    public static ByteBuf backendKeyData(final ByteBufAllocator alloc, final int processId, final int secretKey) {
+        return alloc.buffer(13)
+                .writeByte('K')
+                .writeInt(12)
+                .writeInt(processId)
+                .writeInt(secretKey);
+    }
+
+    public static ByteBuf parameterStatus(final ByteBufAllocator alloc, final String name, final String value) {
+        final ByteBuf payload = alloc.buffer();
+        payload.writeCharSequence(name, UTF_8);
+        payload.writeByte(0);
+        payload.writeCharSequence(value, UTF_8);
+        payload.writeByte(0);
+        return TypedFrame.of(alloc, 'S', payload).content();
+    }
+
+    public static String parameterName(final ByteBuf parameterStatus) {
+        final int start = parameterStatus.readerIndex() + TypedFrame.HEADER_SIZE;
+        final int end = parameterStatus.indexOf(start, parameterStatus.writerIndex(), (byte) 0);
+        return parameterStatus.toString(start, end - start, UTF_8);
+    }
+
+    public static ByteBuf readyForQuery(final ByteBufAllocator alloc, final char transactionStatus) {
+        return alloc.buffer(6)
+                .writeByte('Z')
+                .writeInt(5)
+                .writeByte(transactionStatus);
+    }
+
+    public static char transactionStatus(final TypedFrame readyForQuery) {
+        final ByteBuf payload = readyForQuery.getPayload();
+        return (char) payload.getByte(payload.readerIndex());
+    }
+
+    public static ByteBuf fatalError(final ByteBufAllocator alloc, final String sqlState, final String message) {
+        final ByteBuf payload = alloc.buffer();
+        writeField(payload, 'S', "FATAL");
+        writeField(payload, 'V', "FATAL");
+        writeField(payload, 'C', sqlState);
+        writeField(payload, 'M', message);
+        payload.writeByte(0);
+        return TypedFrame.of(alloc, 'E', payload).content();
+    }
+
+    private static void writeField(final ByteBuf payload, final char type, final String value) {
+        payload.writeByte(type);
+        payload.writeCharSequence(value, UTF_8);
+        payload.writeByte(0);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.protocol.messages;
+
+import com.dajudge.psqlproxy.protocol.frames.TypedFrame;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public final class FrontendMessages {
+    private FrontendMessages() {
+    }
+
+    public static ByteBuf query(final ByteBufAllocator alloc, final String sql) {
+        final ByteBuf payload = alloc.buffer(ByteBufUtil.utf8Bytes(sql) + 1);
+        payload.writeCharSequence(sql, UTF_8);
+        payload.writeByte(0);
+        return TypedFrame.of(alloc, 'Q', payload).content();
+    }
+
+    public static ByteBuf saslInitialResponse(
+            final ByteBufAllocator alloc,
+            final String mechanism,
+            final String response
+    ) {
+        final ByteBuf payload = alloc.buffer(ByteBufUtil.utf8Bytes(mechanism) + 5 + ByteBufUtil.utf8Bytes(response));
+        payload.writeCharSequence(mechanism, UTF_8);
+        payload.writeByte(0);
+        payload.writeInt(ByteBufUtil.utf8Bytes(response));
+        payload.writeCharSequence(response, UTF_8);
+        return TypedFrame.of(alloc, 'p', payload).content();
+    }
+
+    public static ByteBuf saslResponse(final ByteBufAllocator alloc, final String response) {
+        final ByteBuf payload = alloc.buffer(ByteBufUtil.utf8Bytes(response));
+        payload.writeCharSequence(response, UTF_8);
+        return TypedFrame.of(alloc, 'p', payload).content();
+    }
+}
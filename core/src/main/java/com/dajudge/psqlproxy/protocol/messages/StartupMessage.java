@@ -17,16 +17,17 @@
 
 package com.dajudge.psqlproxy.protocol.messages;
 
+import com.dajudge.psqlproxy.protocol.exception.ProtocolErrorException;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.util.ByteProcessor;
 
-import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
 import java.util.List;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Collections.unmodifiableList;
-import static java.util.stream.Collectors.toList;
 
 public class StartupMessage {
     private final short majorVersion;
@@ -45,45 +46,34 @@ public class StartupMessage {
         this.params = unmodifiableList(params);
     }
 
-    public ByteBuf serialize() {
-        List<byte[]> paramsBytes = params.stream()
-                .map(p -> p.getBytes(UTF_8))
-                .collect(toList());
-        final int paramsLength = 1 + params.size() + paramsBytes.stream().map(a -> a.length)
-                .reduce(Integer::sum)
-                .orElse(0);
-        final ByteBuf buffer = Unpooled.buffer(4 + paramsLength);
+    public ByteBuf serialize(final ByteBufAllocator alloc) {
+        int paramsLength = 1;
+        for (final String param : params) {
+            paramsLength += ByteBufUtil.utf8Bytes(param) + 1;
+        }
+        final ByteBuf buffer = alloc.buffer(4 + paramsLength);
         buffer.writeShort(majorVersion);
         buffer.writeShort(minorVersion);
-        paramsBytes.forEach(b -> {
-            buffer.writeBytes(b, 0, b.length);
+        for (final String param : params) {
+            buffer.writeCharSequence(param, UTF_8);
             buffer.writeByte(0);
-        });
+        }
         buffer.writeByte(0);
         return buffer;
     }
 
-    @SuppressWarnings(value = "PMD.NullAssignment") // See comments below
     private static List<String> readParams(final ByteBuf payload) {
         final List<String> params = new ArrayList<>();
-        ByteArrayOutputStream bos = null;
-        while (true) {
-            final byte b = payload.readByte();
-            if (b == 0) {
-                if (bos == null) {
-                    // 0 char when no param currently being parsed flags end of params
-                    break;
-                }
-                params.add(new String(bos.toByteArray(), UTF_8));
-                bos = null; // No param currently being parsed
-            } else {
-                if (bos == null) {
-                    // New param begins
-                    bos = new ByteArrayOutputStream();
-                }
-                bos.write(b);
+        // 0 char when no param currently being parsed flags end of params
+        while (payload.getByte(payload.readerIndex()) != 0) {
+            final int end = payload.forEachByte(ByteProcessor.FIND_NUL);
+            if (end < 0) {
+                throw new ProtocolErrorException("Unterminated startup parameter");
             }
+            params.add(payload.toString(payload.readerIndex(), end - payload.readerIndex(), UTF_8));
+            payload.readerIndex(end + 1);
         }
+        payload.skipBytes(1);
         return params;
     }
 
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.protocol.scram;
+
+import com.dajudge.psqlproxy.protocol.exception.ProtocolErrorException;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// PostgreSQL takes the user from the StartupMessage, so the SCRAM user name is left empty
+public class ScramClient {
+    public static final String MECHANISM = "SCRAM-SHA-256";
+    private static final String GS2_HEADER = "n,,";
+    private static final int NONCE_LENGTH = 18;
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private final String clientNonce;
+    private final String clientFirstMessageBare;
+    private String serverFirst;
+    private String serverNonce;
+    private byte[] salt;
+    private int iterations;
+    private byte[] expectedServerSignature;
+
+    public ScramClient() {
+        this("", randomNonce());
+    }
+
+    ScramClient(final String username, final String clientNonce) {
+        this.clientNonce = clientNonce;
+        this.clientFirstMessageBare = "n=" + username + ",r=" + clientNonce;
+    }
+
+    public String clientFirstMessage() {
+        return GS2_HEADER + clientFirstMessageBare;
+    }
+
+    public void serverFirstMessage(final String message) {
+        serverFirst = message;
+        for (final String attribute : message.split(",")) {
+            if (attribute.startsWith("r=")) {
+                serverNonce = attribute.substring(2);
+            } else if (attribute.startsWith("s=")) {
+                salt = Base64.getDecoder().decode(attribute.substring(2));
+            } else if (attribute.startsWith("i=")) {
+                iterations = Integer.parseInt(attribute.substring(2));
+            }
+        }
+        if (serverNonce == null || salt == null || iterations <= 0) {
+            throw new ProtocolErrorException("Invalid SCRAM server-first-message: " + message);
+        }
+        if (!serverNonce.startsWith(clientNonce)) {
+            throw new ProtocolErrorException("SCRAM server nonce doesn't start with the client nonce");
+        }
+    }
+
+    public byte[] getSalt() {
+        return salt.clone();
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public String clientFinalMessage(final ScramKeys keys) {
+        final String channelBinding = Base64.getEncoder().encodeToString(GS2_HEADER.getBytes(UTF_8));
+        final String clientFinalMessageWithoutProof = "c=" + channelBinding + ",r=" + serverNonce;
+        final byte[] authMessage = (clientFirstMessageBare + "," + serverFirst + ","
+                + clientFinalMessageWithoutProof).getBytes(UTF_8);
+        try {
+            expectedServerSignature = keys.serverSignature(authMessage);
+            final String proof = Base64.getEncoder().encodeToString(keys.clientProof(authMessage));
+            return clientFinalMessageWithoutProof + ",p=" + proof;
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalStateException("SCRAM-SHA-256 not supported by the JVM", e);
+        }
+    }
+
+    public void serverFinalMessage(final String message) {
+        if (message.startsWith("e=")) {
+            throw new ProtocolErrorException("SCRAM authentication failed: " + message.substring(2));
+        }
+        if (!message.startsWith("v=") || expectedServerSignature == null) {
+            throw new ProtocolErrorException("Invalid SCRAM server-final-message: " + message);
+        }
+        final byte[] serverSignature = Base64.getDecoder().decode(message.substring(2).split(",")[0]);
+        if (!MessageDigest.isEqual(expectedServerSignature, serverSignature)) {
+            throw new ProtocolErrorException("SCRAM server signature mismatch");
+        }
+    }
+
+    private static String randomNonce() {
+        final byte[] nonce = new byte[NONCE_LENGTH];
+        RANDOM.nextBytes(nonce);
+        return Base64.getEncoder().encodeToString(nonce);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.protocol.scram;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// The server sends the same salt and iteration count for every connection of a user
+public class ScramKeyCache implements AutoCloseable {
+    public static final int DEFAULT_SIZE = 64;
+    private final int maxSize;
+    private final ExecutorService executor;
+    private final Map<Key, CompletableFuture<ScramKeys>> cache;
+
+    public ScramKeyCache(final int maxSize) {
+        this.maxSize = maxSize;
+        this.executor = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(),
+                new DefaultThreadFactory("psqlproxy-scram", true)
+        );
+        this.cache = new LinkedHashMap<Key, CompletableFuture<ScramKeys>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Key, CompletableFuture<ScramKeys>> eldest) {
+                return size() > ScramKeyCache.this.maxSize;
+            }
+        };
+    }
+
+    public CompletableFuture<ScramKeys> get(final String password, final byte[] salt, final int iterations) {
+        if (maxSize == 0) {
+            return derive(password, salt, iterations);
+        }
+        final Key key = new Key(password, salt, iterations);
+        final CompletableFuture<ScramKeys> keys;
+        synchronized (cache) {
+            keys = cache.computeIfAbsent(key, k -> derive(password, salt, iterations));
+        }
+        keys.whenComplete((result, error) -> {
+            if (error != null) {
+                synchronized (cache) {
+                    cache.remove(key, keys);
+                }
+            }
+        });
+        return keys;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private CompletableFuture<ScramKeys> derive(final String password, final byte[] salt, final int iterations) {
+        return CompletableFuture.supplyAsync(() -> ScramKeys.derive(password, salt, iterations), executor);
+    }
+
+    private static final class Key {
+        private final String password;
+        private final byte[] salt;
+        private final int iterations;
+
+        private Key(final String password, final byte[] salt, final int iterations) {
+            this.password = password;
+            this.salt = salt.clone();
+            this.iterations = iterations;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return iterations == key.iterations && password.equals(key.password) && Arrays.equals(salt, key.salt);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(password, Arrays.hashCode(salt), iterations);
+        }
+    }
+}
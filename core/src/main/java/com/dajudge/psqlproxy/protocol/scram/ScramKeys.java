@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.protocol.scram;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+public final class ScramKeys {
+    private static final String HMAC_SHA_256 = "HmacSHA256";
+    private static final String SHA_256 = "SHA-256";
+    private final byte[] clientKey;
+    private final byte[] storedKey;
+    private final byte[] serverKey;
+
+    private ScramKeys(final byte[] clientKey, final byte[] storedKey, final byte[] serverKey) {
+        this.clientKey = clientKey;
+        this.storedKey = storedKey;
+        this.serverKey = serverKey;
+    }
+
+    // One HMAC per iteration, so never on the event loop
+    public static ScramKeys derive(final String password, final byte[] salt, final int iterations) {
+        try {
+            final byte[] saltedPassword = hi(password.getBytes(UTF_8), salt, iterations);
+            final byte[] clientKey = hmac(saltedPassword, "Client Key".getBytes(UTF_8));
+            final byte[] storedKey = MessageDigest.getInstance(SHA_256).digest(clientKey);
+            final byte[] serverKey = hmac(saltedPassword, "Server Key".getBytes(UTF_8));
+            return new ScramKeys(clientKey, storedKey, serverKey);
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalStateException("SCRAM-SHA-256 not supported by the JVM", e);
+        }
+    }
+
+    byte[] clientProof(final byte[] authMessage) throws GeneralSecurityException {
+        final byte[] clientSignature = hmac(storedKey, authMessage);
+        final byte[] proof = new byte[clientKey.length];
+        for (int i = 0; i < proof.length; i++) {
+            proof[i] = (byte) (clientKey[i] ^ clientSignature[i]);
+        }
+        return proof;
+    }
+
+    byte[] serverSignature(final byte[] authMessage) throws GeneralSecurityException {
+        return hmac(serverKey, authMessage);
+    }
+
+    // Hi() is PBKDF2 with HMAC-SHA-256 and the output length of a single HMAC
+    private static byte[] hi(
+            final byte[] password,
+            final byte[] salt,
+            final int iterations
+    ) throws GeneralSecurityException {
+        final Mac mac = mac(password);
+        mac.update(salt);
+        mac.update(new byte[]{0, 0, 0, 1});
+        byte[] u = mac.doFinal();
+        final byte[] result = u.clone();
+        for (int i = 1; i < iterations; i++) {
+            u = mac.doFinal(u);
+            for (int j = 0; j < result.length; j++) {
+                result[j] ^= u[j];
+            }
+        }
+        return result;
+    }
+
+    static byte[] hmac(final byte[] key, final byte[] data) throws GeneralSecurityException {
+        return mac(key).doFinal(data);
+    }
+
+    private static Mac mac(final byte[] key) throws GeneralSecurityException {
+        final Mac mac = Mac.getInstance(HMAC_SHA_256);
+        mac.init(new SecretKeySpec(key, HMAC_SHA_256));
+        return mac;
+    }
+}
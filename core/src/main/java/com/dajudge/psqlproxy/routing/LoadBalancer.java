@@ -0,0 +1,75 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.routing;
+
+import com.dajudge.psqlproxy.metrics.EndpointMetrics;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Called for every transaction on all event loops, so it's lock-free and doesn't allocate
+public class LoadBalancer {
+    public static final int NONE = -1;
+    private final BalancingPolicy policy;
+    // Where the next search starts, so ties don't always go to the first server
+    private final AtomicInteger next = new AtomicInteger();
+
+    public LoadBalancer(final BalancingPolicy policy) {
+        this.policy = policy;
+    }
+
+    public int pick(final List<EndpointMetrics> endpoints) {
+        final int size = endpoints.size();
+        if (size == 0) {
+            return NONE;
+        }
+        final long now = System.nanoTime();
+        final int start = Math.floorMod(next.getAndIncrement(), size);
+        int best = NONE;
+        long bestScore = Long.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            final int index = (start + i) % size;
+            final EndpointMetrics endpoint = endpoints.get(index);
+            if (!endpoint.isHealthy(now)) {
+                continue;
+            }
+            if (policy == BalancingPolicy.ROUND_ROBIN) {
+                return index;
+            }
+            final long score = score(endpoint, now);
+            if (score < bestScore) {
+                best = index;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    private long score(final EndpointMetrics endpoint, final long now) {
+        final long active = endpoint.getActiveTransactions();
+        if (policy == BalancingPolicy.LEAST_CONNECTIONS) {
+            return active;
+        }
+        // Servers without samples yet score lowest, so they get some
+        return endpoint.getLatencyNanos(now) * (active + 1);
+    }
+
+    public BalancingPolicy getPolicy() {
+        return policy;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.routing;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+import static com.dajudge.psqlproxy.protocol.frames.TypedFrame.HEADER_SIZE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.regex.Pattern.CASE_INSENSITIVE;
+import static java.util.regex.Pattern.DOTALL;
+
+// Replicas reject writes, so a wrong guess surfaces as an error instead of a lost write
+public class ReadOnlyClassifier {
+    private static final Pattern BEGIN = Pattern.compile("^\\s*(BEGIN|START\\s+TRANSACTION)\\b", CASE_INSENSITIVE);
+    private static final Pattern SET_TRANSACTION = Pattern.compile("^\\s*SET\\s+TRANSACTION\\b", CASE_INSENSITIVE);
+    private static final Pattern READ_ONLY = Pattern.compile("\\bREAD\\s+ONLY\\b", CASE_INSENSITIVE | DOTALL);
+    // https://www.postgresql.org/docs/current/libpq-connect.html#LIBPQ-CONNECT-OPTIONS
+    private static final Pattern READ_ONLY_OPTION = Pattern.compile(
+            "(^|\\s)(-c\\s*|--)default_transaction_read_only=(on|true|yes|1)\\b",
+            CASE_INSENSITIVE
+    );
+    private static final Pattern ON = Pattern.compile("on|true|yes|1", CASE_INSENSITIVE);
+    private static final String READ_ONLY_PARAM = "default_transaction_read_only";
+    private static final String OPTIONS_PARAM = "options";
+    private static final String STATEMENT_SEPARATOR = ";";
+    // Stands in for the rest of a query too long to be inspected
+    private static final String TRUNCATED = "";
+    private static final int MAX_SQL_BYTES = 4096;
+    private static final byte STATEMENT = 'S';
+    private final Optional<Pattern> readPattern;
+    private final Map<String, String> namedStatements = new HashMap<>();
+    private boolean readOnlySession;
+
+    public ReadOnlyClassifier(final Optional<Pattern> readPattern) {
+        this.readPattern = readPattern;
+    }
+
+    public void start(final Map<String, String> startupParameters) {
+        final String readOnly = startupParameters.get(READ_ONLY_PARAM);
+        final String options = startupParameters.get(OPTIONS_PARAM);
+        readOnlySession = (readOnly != null && ON.matcher(readOnly.trim()).matches())
+                || (options != null && READ_ONLY_OPTION.matcher(options).find());
+    }
+
+    // Remembers the queries of named statements, so transactions only binding them can be classified
+    public void track(final ByteBuf frame) {
+        final int nameIndex = frame.readerIndex() + HEADER_SIZE;
+        switch (frame.getByte(frame.readerIndex())) {
+            case 'P':
+                final int sqlIndex = skipString(frame, nameIndex);
+                if (sqlIndex > nameIndex + 1) {
+                    namedStatements.put(readString(frame, nameIndex), readString(frame, sqlIndex));
+                }
+                break;
+            case 'C':
+                if (frame.getByte(nameIndex) == STATEMENT) {
+                    namedStatements.remove(readString(frame, nameIndex + 1));
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    public boolean isReadOnly(final Collection<ByteBuf> frames) {
+        if (readOnlySession) {
+            return true;
+        }
+        final List<String> statements = statements(frames);
+        if (statements == null || statements.isEmpty()) {
+            return false;
+        }
+        final String first = statements.get(0);
+        if (BEGIN.matcher(first).find()) {
+            return READ_ONLY.matcher(first).find() || (statements.size() > 1
+                    && SET_TRANSACTION.matcher(statements.get(1)).find()
+                    && READ_ONLY.matcher(statements.get(1)).find());
+        }
+        return statements.size() == 1 && readPattern.map(pattern -> pattern.matcher(first).find()).orElse(false);
+    }
+
+    private List<String> statements(final Collection<ByteBuf> frames) {
+        final List<String> statements = new ArrayList<>();
+        final Map<String, String> parsed = new HashMap<>();
+        final Map<String, String> portals = new HashMap<>();
+        for (final ByteBuf frame : frames) {
+            final int index = frame.readerIndex() + HEADER_SIZE;
+            switch (frame.getByte(frame.readerIndex())) {
+                case 'Q':
+                    addQueries(statements, frame, index);
+                    break;
+                case 'P':
+                    parsed.put(readString(frame, index), readString(frame, skipString(frame, index)));
+                    break;
+                case 'B':
+                    final int nameIndex = skipString(frame, index);
+                    final String name = readString(frame, nameIndex);
+                    final String sql = parsed.containsKey(name) ? parsed.get(name) : namedStatements.get(name);
+                    if (sql == null) {
+                        return null;
+                    }
+                    portals.put(readString(frame, index), sql);
+                    break;
+                case 'E':
+                    final String portal = portals.get(readString(frame, index));
+                    if (portal == null) {
+                        return null;
+                    }
+                    statements.add(portal);
+                    break;
+                case 'F':
+                    return null;
+                default:
+                    break;
+            }
+        }
+        return statements;
+    }
+
+    private static void addQueries(final List<String> statements, final ByteBuf frame, final int sqlIndex) {
+        final int length = frame.writerIndex() - sqlIndex - 1;
+        for (final String statement : frame.toString(sqlIndex, Math.min(length, MAX_SQL_BYTES), UTF_8)
+                .split(STATEMENT_SEPARATOR)) {
+            if (!statement.trim().isEmpty()) {
+                statements.add(statement);
+            }
+        }
+        if (length > MAX_SQL_BYTES) {
+            statements.add(TRUNCATED);
+        }
+    }
+
+    private static int skipString(final ByteBuf frame, final int index) {
+        return index + frame.bytesBefore(index, frame.writerIndex() - index, (byte) 0) + 1;
+    }
+
+    private static String readString(final ByteBuf frame, final int index) {
+        final int end = frame.indexOf(index, frame.writerIndex(), (byte) 0);
+        final int length = (end < 0 ? frame.writerIndex() : end) - index;
+        return frame.toString(index, Math.min(length, MAX_SQL_BYTES), UTF_8);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.routing;
+
+import com.dajudge.proxybase.config.Endpoint;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+import static java.util.Collections.unmodifiableList;
+
+public class ReplicaConfig {
+    public static final ReplicaConfig DISABLED = new ReplicaConfig(Collections.emptyList(), Optional.empty());
+
+    private final List<Endpoint> endpoints;
+    private final Optional<Pattern> readPattern;
+    private final BalancingPolicy balancingPolicy;
+
+    public ReplicaConfig(final List<Endpoint> endpoints, final Optional<Pattern> readPattern) {
+        this(endpoints, readPattern, BalancingPolicy.EWMA);
+    }
+
+    public ReplicaConfig(
+            final List<Endpoint> endpoints,
+            final Optional<Pattern> readPattern,
+            final BalancingPolicy balancingPolicy
+    ) {
+        this.endpoints = unmodifiableList(endpoints);
+        this.readPattern = readPattern;
+        this.balancingPolicy = balancingPolicy;
+    }
+
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    public Optional<Pattern> getReadPattern() {
+        return readPattern;
+    }
+
+    public BalancingPolicy getBalancingPolicy() {
+        return balancingPolicy;
+    }
+
+    public boolean isEnabled() {
+        return !endpoints.isEmpty();
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.transport;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+
+import java.util.function.Consumer;
+
+public class BackpressureHandler extends ChannelInboundHandlerAdapter {
+    private final Consumer<Boolean> sourceAutoRead;
+
+    public BackpressureHandler(final Channel source) {
+        this(autoRead -> source.config().setAutoRead(autoRead));
+    }
+
+    public BackpressureHandler(final Consumer<Boolean> sourceAutoRead) {
+        this.sourceAutoRead = sourceAutoRead;
+    }
+
+    @Override
+    public void channelWritabilityChanged(final ChannelHandlerContext ctx) {
+        sourceAutoRead.accept(ctx.channel().isWritable());
+        ctx.fireChannelWritabilityChanged();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.transport;
+
+import com.dajudge.proxybase.config.Endpoint;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// With SO_REUSEPORT one acceptor is bound per core and the kernel distributes the connections
+public class ProxyServer implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(ProxyServer.class);
+    private final Transport transport;
+    private final boolean reusePort;
+    private final boolean splice;
+    private final int acceptors;
+    private final WriteBufferWaterMark waterMark;
+    private final EventLoopGroup acceptorGroup;
+    private final EventLoopGroup workerGroup;
+    private final List<Channel> serverChannels = new ArrayList<>();
+
+    public ProxyServer(final TransportConfig config) {
+        this(config, false);
+    }
+
+    public ProxyServer(final TransportConfig config, final boolean splice) {
+        transport = Transport.select(config.getType());
+        if (config.isReusePort() && !transport.isReusePortSupported()) {
+            LOG.warn("SO_REUSEPORT is not supported by the {} transport, using a single acceptor", transport.getType());
+        }
+        reusePort = config.isReusePort() && transport.isReusePortSupported();
+        if (splice && !transport.isSpliceSupported()) {
+            LOG.warn("splice is not supported by the {} transport, relaying in user space", transport.getType());
+        }
+        this.splice = splice && transport.isSpliceSupported();
+        waterMark = new WriteBufferWaterMark(config.getLowWaterMark(), config.getHighWaterMark());
+        acceptors = reusePort ? Runtime.getRuntime().availableProcessors() : 1;
+        acceptorGroup = transport.newEventLoopGroup(acceptors, new DefaultThreadFactory("psqlproxy-acceptor"));
+        workerGroup = transport.newEventLoopGroup(
+                config.getWorkerThreads(),
+                new DefaultThreadFactory("psqlproxy-worker")
+        );
+    }
+
+    public void bind(final Endpoint endpoint, final ChannelHandler childHandler) {
+        final ServerBootstrap bootstrap = new ServerBootstrap()
+                .group(acceptorGroup, workerGroup)
+                .channel(transport.getServerChannelClass())
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, waterMark)
+                .childHandler(childHandler);
+        if (reusePort) {
+            transport.enableReusePort(bootstrap);
+        }
+        if (splice) {
+            transport.enableSplice(bootstrap);
+        }
+        for (int i = 0; i < acceptors; i++) {
+            serverChannels.add(bootstrap.bind(endpoint.getHost(), endpoint.getPort()).syncUninterruptibly().channel());
+        }
+        LOG.info(
+                "Proxy listening on {} using {} transport with {} acceptor(s)",
+                serverChannels.get(serverChannels.size() - 1).localAddress(),
+                transport.getType(),
+                acceptors
+        );
+    }
+
+    public Bootstrap newClientBootstrap() {
+        final Bootstrap bootstrap = new Bootstrap()
+                .group(workerGroup)
+                .channel(transport.getChannelClass())
+                .option(ChannelOption.TCP_NODELAY, true)
+                .option(ChannelOption.WRITE_BUFFER_WATER_MARK, waterMark);
+        if (splice) {
+            transport.enableSplice(bootstrap);
+        }
+        return bootstrap;
+    }
+
+    public boolean isSpliceEnabled() {
+        return splice;
+    }
+
+    @Override
+    public void close() {
+        serverChannels.forEach(channel -> channel.close().syncUninterruptibly());
+        workerGroup.shutdownGracefully().syncUninterruptibly();
+        acceptorGroup.shutdownGracefully().syncUninterruptibly();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.transport;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.epoll.AbstractEpollStreamChannel;
+import io.netty.channel.epoll.EpollChannelConfig;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.handler.ssl.SslHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Only possible for plaintext epoll channels on the same event loop in level triggered mode
+public final class SpliceRelay {
+    private static final Logger LOG = LoggerFactory.getLogger(SpliceRelay.class);
+
+    private SpliceRelay() {
+    }
+
+    public static boolean isPossible(final Channel source, final Channel target) {
+        return isLevelTriggeredEpoll(source)
+                && isLevelTriggeredEpoll(target)
+                && source.eventLoop().equals(target.eventLoop())
+                && source.pipeline().get(SslHandler.class) == null
+                && target.pipeline().get(SslHandler.class) == null;
+    }
+
+    // splice(2) bypasses the target's outbound buffer, so bytes already written are flushed first
+    public static void start(final Channel source, final Channel target) {
+        if (!isPossible(source, target)) {
+            LOG.debug("Cannot splice from {} to {}, relaying in user space", source, target);
+            return;
+        }
+        source.config().setAutoRead(false);
+        target.writeAndFlush(Unpooled.EMPTY_BUFFER).addListener((ChannelFuture flushed) -> {
+            if (!flushed.isSuccess()) {
+                return;
+            }
+            LOG.debug("Splicing from {} to {}", source, target);
+            ((AbstractEpollStreamChannel) source).spliceTo((AbstractEpollStreamChannel) target, Integer.MAX_VALUE)
+                    .addListener((ChannelFuture spliced) -> {
+                        if (!spliced.isSuccess()) {
+                            LOG.debug("Splicing from {} to {} failed", source, target, spliced.cause());
+                            source.close();
+                        }
+                    });
+            source.config().setAutoRead(true);
+        });
+    }
+
+    private static boolean isLevelTriggeredEpoll(final Channel channel) {
+        return channel instanceof AbstractEpollStreamChannel
+                && EpollMode.LEVEL_TRIGGERED.equals(((EpollChannelConfig) channel.config()).getEpollMode());
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.transport;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadFactory;
+
+public abstract class Transport {
+    private static final Logger LOG = LoggerFactory.getLogger(Transport.class);
+
+    public static Transport select(final TransportType type) {
+        switch (type) {
+            case AUTO:
+                return EpollTransport.isAvailable() ? new EpollTransport() : new NioTransport();
+            case EPOLL:
+                if (EpollTransport.isAvailable()) {
+                    return new EpollTransport();
+                }
+                LOG.warn("Native epoll transport not available, falling back to NIO");
+                return new NioTransport();
+            default:
+                return new NioTransport();
+        }
+    }
+
+    public abstract TransportType getType();
+
+    public abstract EventLoopGroup newEventLoopGroup(int threads, ThreadFactory threadFactory);
+
+    public abstract Class<? extends ServerChannel> getServerChannelClass();
+
+    public abstract Class<? extends Channel> getChannelClass();
+
+    public boolean isReusePortSupported() {
+        return false;
+    }
+
+    public void enableReusePort(final ServerBootstrap bootstrap) {
+        throw new UnsupportedOperationException("SO_REUSEPORT is not supported by the " + getType() + " transport");
+    }
+
+    public boolean isSpliceSupported() {
+        return false;
+    }
+
+    public void enableSplice(final ServerBootstrap bootstrap) {
+        throw new UnsupportedOperationException("splice is not supported by the " + getType() + " transport");
+    }
+
+    public void enableSplice(final Bootstrap bootstrap) {
+        throw new UnsupportedOperationException("splice is not supported by the " + getType() + " transport");
+    }
+}
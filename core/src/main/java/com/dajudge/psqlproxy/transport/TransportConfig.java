@@ -0,0 +1,67 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.transport;
+
+public class TransportConfig {
+    public static final int DEFAULT_LOW_WATER_MARK = 32 * 1024;
+    public static final int DEFAULT_HIGH_WATER_MARK = 64 * 1024;
+    public static final TransportConfig DEFAULT = new TransportConfig(TransportType.AUTO, 0, false);
+    private final TransportType type;
+    private final int workerThreads;
+    private final boolean reusePort;
+    private final int lowWaterMark;
+    private final int highWaterMark;
+
+    public TransportConfig(final TransportType type, final int workerThreads, final boolean reusePort) {
+        this(type, workerThreads, reusePort, DEFAULT_LOW_WATER_MARK, DEFAULT_HIGH_WATER_MARK);
+    }
+
+    public TransportConfig(
+            final TransportType type,
+            final int workerThreads,
+            final boolean reusePort,
+            final int lowWaterMark,
+            final int highWaterMark
+    ) {
+        this.type = type;
+        this.workerThreads = workerThreads;
+        this.reusePort = reusePort;
+        this.lowWaterMark = lowWaterMark;
+        this.highWaterMark = highWaterMark;
+    }
+
+    public TransportType getType() {
+        return type;
+    }
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public boolean isReusePort() {
+        return reusePort;
+    }
+
+    public int getLowWaterMark() {
+        return lowWaterMark;
+    }
+
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.transport;
+
+import io.netty.handler.flush.FlushConsolidationHandler;
+
+// Flushes are deferred to the end of the current read, or to a task if the connection isn't reading
+public class WriteBatchingHandler extends FlushConsolidationHandler {
+    public static final int MAX_FLUSHES_PER_BATCH = DEFAULT_EXPLICIT_FLUSH_AFTER_FLUSHES;
+
+    public WriteBatchingHandler() {
+        super(MAX_FLUSHES_PER_BATCH, true);
+    }
+}
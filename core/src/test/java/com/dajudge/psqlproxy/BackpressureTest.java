@@ -0,0 +1,228 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy;
+
+import com.dajudge.proxybase.RelayingChannelInboundHandler;
+import com.dajudge.proxybase.config.Endpoint;
+import com.dajudge.psqlproxy.pool.PoolConfig;
+import com.dajudge.psqlproxy.pool.PoolingMode;
+import com.dajudge.psqlproxy.testutil.fake.FakePostgres;
+import com.dajudge.psqlproxy.testutil.fake.FakePostgresConfig;
+import com.dajudge.psqlproxy.transport.BackpressureHandler;
+import com.dajudge.psqlproxy.transport.ProxyServer;
+import com.dajudge.psqlproxy.transport.TransportConfig;
+import com.dajudge.psqlproxy.transport.TransportType;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOutboundBuffer;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.dajudge.psqlproxy.TestProxyConfigs.proxyConfig;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class BackpressureTest {
+    private static final Endpoint PROXY_ENDPOINT = new Endpoint("localhost", 55435);
+    private static final int LOW_WATER_MARK = 8 * 1024;
+    private static final int HIGH_WATER_MARK = 16 * 1024;
+    // A single read from the server can overshoot the high water mark by at most one receive buffer
+    private static final int MAX_READ_SIZE = 64 * 1024;
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int CHUNKS = 64;
+    private static final int SLOW_READS = 50;
+    private static final long SLOW_READ_DELAY_MSECS = 20;
+    // Socket buffers on the way from the client to the server, which can grow to a few megabytes each
+    private static final long MAX_BUFFERED = 32 * 1024 * 1024;
+    private static final long STALL_MSECS = 500;
+    private static final int PROTOCOL_VERSION = 196608;
+
+    @Test
+    public void buffers_bounded_amount_for_slow_client() throws Exception {
+        final BlockingQueue<Channel> clientChannels = new LinkedBlockingQueue<>();
+        try (
+                final ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+                final ProxyServer proxy = new ProxyServer(new TransportConfig(
+                        TransportType.NIO,
+                        1,
+                        false,
+                        LOW_WATER_MARK,
+                        HIGH_WATER_MARK
+                ))
+        ) {
+            final Thread serverThread = streamToFirstClient(server);
+            final DirectServerConnector connector = new DirectServerConnector(
+                    proxy.newClientBootstrap(),
+                    new Endpoint(server.getInetAddress().getHostAddress(), server.getLocalPort())
+            );
+            proxy.bind(PROXY_ENDPOINT, new ChannelInitializer<Channel>() {
+                @Override
+                protected void initChannel(final Channel upstream) {
+                    connector.connect(upstream, new ChannelInitializer<Channel>() {
+                        @Override
+                        protected void initChannel(final Channel downstream) {
+                            upstream.pipeline().addLast(new BackpressureHandler(downstream));
+                            upstream.pipeline().addLast(new RelayingChannelInboundHandler("downstream", downstream));
+                            downstream.pipeline().addLast(new BackpressureHandler(upstream));
+                            downstream.pipeline().addLast(new RelayingChannelInboundHandler("upstream", upstream));
+                        }
+                    });
+                    clientChannels.add(upstream);
+                }
+            });
+            try (final Socket client = new Socket()) {
+                client.setReceiveBufferSize(4096);
+                client.connect(proxy(PROXY_ENDPOINT));
+                final Channel clientChannel = clientChannels.poll(10, SECONDS);
+                assertNotNull("Client connection not accepted", clientChannel);
+                final InputStream in = client.getInputStream();
+                final byte[] buffer = new byte[CHUNK_SIZE];
+                long received = 0;
+                long maxPending = 0;
+                for (int i = 0; i < SLOW_READS; i++) {
+                    received += Math.max(0, in.read(buffer, 0, 1024));
+                    Thread.sleep(SLOW_READ_DELAY_MSECS);
+                    maxPending = Math.max(maxPending, pendingWriteBytes(clientChannel));
+                }
+                assertTrue("Proxy buffered " + maxPending + " bytes", maxPending <= HIGH_WATER_MARK + MAX_READ_SIZE);
+                int read = 0;
+                while (received < (long) CHUNK_SIZE * CHUNKS && read >= 0) {
+                    read = in.read(buffer);
+                    received += Math.max(0, read);
+                }
+                assertEquals((long) CHUNK_SIZE * CHUNKS, received);
+            }
+            serverThread.join(SECONDS.toMillis(10));
+        }
+    }
+
+    @Test
+    public void pauses_client_while_pooled_server_is_slow() throws Exception {
+        try (final FakePostgres server = new FakePostgres(FakePostgresConfig.DEFAULT);
+             final PostgresProxy proxy = new PostgresProxy(pooledConfig(server));
+             final Socket client = new Socket()) {
+            client.setSendBufferSize(4096);
+            client.connect(proxy(PROXY_ENDPOINT));
+            final DataOutputStream out = new DataOutputStream(client.getOutputStream());
+            final DataInputStream in = new DataInputStream(client.getInputStream());
+            startup(out, in);
+            query(out, "SELECT 1");
+            awaitReadyForQuery(in);
+            server.setReading(false);
+            final AtomicLong written = new AtomicLong();
+            final Thread writer = new Thread(() -> {
+                final char[] literal = new char[CHUNK_SIZE];
+                Arrays.fill(literal, 'x');
+                final String sql = "SELECT '" + new String(literal) + "'";
+                try {
+                    for (int i = 0; i < CHUNKS; i++) {
+                        query(out, sql);
+                        written.addAndGet(sql.length());
+                    }
+                } catch (final IOException e) {
+                    // The client is closed at the end of the test
+                }
+            }, "fast-client");
+            writer.setDaemon(true);
+            writer.start();
+            long last = -1;
+            while (written.get() != last && written.get() < (long) CHUNK_SIZE * CHUNKS) {
+                last = written.get();
+                Thread.sleep(STALL_MSECS);
+            }
+            assertTrue("Proxy accepted " + written.get() + " bytes", written.get() <= MAX_BUFFERED);
+        }
+    }
+
+    private static void startup(final DataOutputStream out, final DataInputStream in) throws IOException {
+        final byte[] params = "user\0postgres\0database\0postgres\0\0".getBytes(UTF_8);
+        out.writeInt(8 + params.length);
+        out.writeInt(PROTOCOL_VERSION);
+        out.write(params);
+        out.flush();
+        awaitReadyForQuery(in);
+    }
+
+    private static void query(final DataOutputStream out, final String sql) throws IOException {
+        final byte[] bytes = sql.getBytes(UTF_8);
+        out.writeByte('Q');
+        out.writeInt(5 + bytes.length);
+        out.write(bytes);
+        out.writeByte(0);
+        out.flush();
+    }
+
+    private static void awaitReadyForQuery(final DataInputStream in) throws IOException {
+        while (true) {
+            final int type = in.readUnsignedByte();
+            in.readFully(new byte[in.readInt() - 4]);
+            if (type == 'Z') {
+                return;
+            }
+        }
+    }
+
+    private static PostgresProxyConfig pooledConfig(final FakePostgres server) {
+        return proxyConfig(server, PROXY_ENDPOINT)
+                .withPoolConfig(new PoolConfig(PoolingMode.TRANSACTION, 0, 1, 5000, 100))
+                .withTransportConfig(new TransportConfig(TransportType.NIO, 1, false, LOW_WATER_MARK, HIGH_WATER_MARK));
+    }
+
+    private static InetSocketAddress proxy(final Endpoint endpoint) {
+        return new InetSocketAddress(endpoint.getHost(), endpoint.getPort());
+    }
+
+    private static long pendingWriteBytes(final Channel channel) throws Exception {
+        return channel.eventLoop().submit(() -> {
+            final ChannelOutboundBuffer outboundBuffer = channel.unsafe().outboundBuffer();
+            return outboundBuffer == null ? 0 : outboundBuffer.totalPendingWriteBytes();
+        }).get(10, SECONDS);
+    }
+
+    private static Thread streamToFirstClient(final ServerSocket server) {
+        final Thread thread = new Thread(() -> {
+            try (final Socket socket = server.accept(); final OutputStream out = socket.getOutputStream()) {
+                final byte[] chunk = new byte[CHUNK_SIZE];
+                for (int i = 0; i < CHUNKS; i++) {
+                    out.write(chunk);
+                }
+            } catch (final IOException e) {
+                throw new AssertionError(e);
+            }
+        }, "fast-server");
+        thread.start();
+        return thread;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy;
+
+import com.dajudge.proxybase.config.Endpoint;
+import com.dajudge.psqlproxy.transport.ProxyServer;
+import com.dajudge.psqlproxy.transport.TransportConfig;
+import com.dajudge.psqlproxy.transport.TransportType;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoop;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DirectServerConnectorTest {
+    private static final int CLIENTS = 16;
+    private static final int WORKER_THREADS = 4;
+    private static final Endpoint PROXY_ENDPOINT = new Endpoint("localhost", 55434);
+
+    @Test
+    public void registers_server_connection_on_client_event_loop() throws Exception {
+        final BlockingQueue<Entry<Channel, ChannelFuture>> connects = new LinkedBlockingQueue<>();
+        final List<Socket> clients = new ArrayList<>();
+        try (
+                final ServerSocket server = new ServerSocket(0, CLIENTS, InetAddress.getLoopbackAddress());
+                final ProxyServer proxy = new ProxyServer(new TransportConfig(TransportType.NIO, WORKER_THREADS, false))
+        ) {
+            final DirectServerConnector connector = new DirectServerConnector(
+                    proxy.newClientBootstrap(),
+                    new Endpoint(server.getInetAddress().getHostAddress(), server.getLocalPort())
+            );
+            proxy.bind(PROXY_ENDPOINT, new ChannelInitializer<Channel>() {
+                @Override
+                protected void initChannel(final Channel ch) {
+                    connects.add(new SimpleImmutableEntry<>(
+                            ch,
+                            connector.connect(ch, new ChannelInboundHandlerAdapter())
+                    ));
+                }
+            });
+            final Set<EventLoop> eventLoops = new HashSet<>();
+            for (int i = 0; i < CLIENTS; i++) {
+                clients.add(new Socket(PROXY_ENDPOINT.getHost(), PROXY_ENDPOINT.getPort()));
+                final Entry<Channel, ChannelFuture> connect = connects.poll(10, SECONDS);
+                assertNotNull("No server connection opened", connect);
+                final ChannelFuture serverConnect = connect.getValue();
+                assertTrue("Server connection failed", serverConnect.await(10, SECONDS) && serverConnect.isSuccess());
+                assertSame(connect.getKey().eventLoop(), serverConnect.channel().eventLoop());
+                eventLoops.add(connect.getKey().eventLoop());
+            }
+            assertTrue("Clients were not distributed across event loops", eventLoops.size() > 1);
+        } finally {
+            for (final Socket client : clients) {
+                close(client);
+            }
+        }
+    }
+
+    private static void close(final Socket socket) {
+        try {
+            socket.close();
+        } catch (final IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy;
+
+import com.dajudge.proxybase.config.Endpoint;
+import com.dajudge.psqlproxy.pool.PoolConfig;
+import com.dajudge.psqlproxy.pool.PoolingMode;
+import com.dajudge.psqlproxy.testutil.fake.FakeAuthMethod;
+import com.dajudge.psqlproxy.testutil.fake.FakePostgres;
+import com.dajudge.psqlproxy.testutil.fake.FakePostgresConfig;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static com.dajudge.psqlproxy.TestProxyConfigs.proxyConfig;
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.sql.DriverManager.getConnection;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs the proxy against {@link FakePostgres}, so the authentication methods and both query protocols are covered
+ * without Docker.
+ */
+public class FakePostgresProxyTest {
+    private static final Endpoint PROXY_ENDPOINT = new Endpoint("localhost", 55437);
+    private static final FakePostgresConfig CONFIG = FakePostgresConfig.DEFAULT.withRows(3, 16);
+
+    @Test
+    public void authenticates_with_md5() throws SQLException {
+        withProxy(CONFIG.withAuthMethod(FakeAuthMethod.MD5), PoolingMode.NONE, FakePostgresProxyTest::expectRows);
+    }
+
+    @Test
+    public void authenticates_with_scram() throws SQLException {
+        withProxy(
+                CONFIG.withAuthMethod(FakeAuthMethod.SCRAM_SHA_256),
+                PoolingMode.NONE,
+                FakePostgresProxyTest::expectRows
+        );
+    }
+
+    @Test
+    public void connects_with_ssl() throws SQLException {
+        withProxy(CONFIG.withSsl(true), PoolingMode.NONE, FakePostgresProxyTest::expectRows);
+    }
+
+    @Test
+    public void serves_from_transaction_pool() throws SQLException {
+        withProxy(CONFIG.withAuthMethod(FakeAuthMethod.SCRAM_SHA_256), PoolingMode.TRANSACTION, connection -> {
+            connection.setAutoCommit(false);
+            expectRows(connection);
+            connection.commit();
+        });
+    }
+
+    @Test
+    @SuppressWarnings(value = "PMD.EmptyCatchBlock") // For the happy path
+    public void fails_with_wrong_password() {
+        try (final FakePostgres server = new FakePostgres(CONFIG.withCredentials("postgres", "other"));
+             final PostgresProxy proxy = new PostgresProxy(config(server, PoolingMode.NONE));
+             final Connection connection = connect()) {
+            fail("Expected authentication failure");
+        } catch (final SQLException e) {
+            // Expected
+        }
+    }
+
+    private static void expectRows(final Connection connection) throws SQLException {
+        try (final Statement statement = connection.createStatement();
+             final ResultSet resultSet = statement.executeQuery("SELECT 1")) {
+            assertEquals(3, count(resultSet));
+        }
+        try (final PreparedStatement statement = connection.prepareStatement("SELECT ?")) {
+            statement.setInt(1, 1);
+            try (final ResultSet resultSet = statement.executeQuery()) {
+                assertEquals(3, count(resultSet));
+            }
+        }
+    }
+
+    private static int count(final ResultSet resultSet) throws SQLException {
+        int rows = 0;
+        while (resultSet.next()) {
+            assertEquals("xxxxxxxxxxxxxxxx", resultSet.getString(1));
+            rows++;
+        }
+        return rows;
+    }
+
+    private static void withProxy(
+            final FakePostgresConfig serverConfig,
+            final PoolingMode mode,
+            final ConnectionConsumer test
+    ) throws SQLException {
+        try (final FakePostgres server = new FakePostgres(serverConfig);
+             final PostgresProxy proxy = new PostgresProxy(config(server, mode));
+             final Connection connection = connect()) {
+            test.accept(connection);
+        }
+    }
+
+    private static PostgresProxyConfig config(final FakePostgres server, final PoolingMode mode) {
+        return proxyConfig(server, PROXY_ENDPOINT, CONFIG.getUsername(), CONFIG.getPassword())
+                .withPoolConfig(new PoolConfig(mode, 0, 2, 5000, 100));
+    }
+
+    private static Connection connect() throws SQLException {
+        return getConnection(format(
+                "jdbc:postgresql://%s:%d/postgres?user=postgres&prepareThreshold=0",
+                PROXY_ENDPOINT.getHost(),
+                PROXY_ENDPOINT.getPort()
+        ));
+    }
+
+    private interface ConnectionConsumer {
+        void accept(Connection connection) throws SQLException;
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy;
+
+import com.dajudge.proxybase.config.Endpoint;
+import com.dajudge.psqlproxy.metrics.EndpointMetrics;
+import com.dajudge.psqlproxy.metrics.MetricsConfig;
+import com.dajudge.psqlproxy.pool.PoolConfig;
+import com.dajudge.psqlproxy.pool.PoolingMode;
+import com.dajudge.psqlproxy.testutil.fake.FakeAuthMethod;
+import com.dajudge.psqlproxy.testutil.fake.FakePostgres;
+import com.dajudge.psqlproxy.testutil.fake.FakePostgresConfig;
+import com.dajudge.psqlproxy.transport.TransportConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Optional;
+
+import static com.dajudge.psqlproxy.TestProxyConfigs.proxyConfig;
+import static java.lang.String.format;
+import static java.sql.DriverManager.getConnection;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Serves three fake servers from one proxy: two routes sharing a port, chosen by the database, and one on its own
+ * port. Each server answers with a different number of rows.
+ */
+public class MultiRouteProxyTest {
+    private static final Endpoint SHARED_ENDPOINT = new Endpoint("localhost", 55438);
+    private static final Endpoint DEDICATED_ENDPOINT = new Endpoint("localhost", 55439);
+
+    private FakePostgres orders;
+    private FakePostgres billing;
+    private FakePostgres analytics;
+    private PostgresProxy proxy;
+
+    @Before
+    public void start() {
+        orders = new FakePostgres(FakePostgresConfig.DEFAULT.withCredentials("orders", "secret1").withRows(1, 8));
+        billing = new FakePostgres(FakePostgresConfig.DEFAULT
+                .withCredentials("billing", "secret2")
+                .withAuthMethod(FakeAuthMethod.SCRAM_SHA_256)
+                .withRows(2, 8));
+        analytics = new FakePostgres(FakePostgresConfig.DEFAULT.withCredentials("analytics", "secret3").withRows(3, 8));
+        proxy = new PostgresProxy(TransportConfig.DEFAULT, MetricsConfig.DEFAULT, Arrays.asList(
+                new RouteConfig(
+                        "orders",
+                        Optional.of("orders"),
+                        Optional.empty(),
+                        config(orders, SHARED_ENDPOINT, PoolingMode.NONE)
+                ),
+                new RouteConfig(
+                        "billing",
+                        Optional.of("billing"),
+                        Optional.of("app"),
+                        config(billing, SHARED_ENDPOINT, PoolingMode.TRANSACTION)
+                ),
+                new RouteConfig("analytics", config(analytics, DEDICATED_ENDPOINT, PoolingMode.SESSION))
+        ));
+    }
+
+    @After
+    public void stop() {
+        proxy.close();
+        orders.close();
+        billing.close();
+        analytics.close();
+    }
+
+    @Test
+    public void routes_by_database_and_user() throws SQLException {
+        assertEquals(1, rows(SHARED_ENDPOINT, "orders", "app"));
+        assertEquals(2, rows(SHARED_ENDPOINT, "billing", "app"));
+        assertEquals(1, rows(SHARED_ENDPOINT, "orders", "other"));
+    }
+
+    @Test
+    public void routes_by_port() throws SQLException {
+        assertEquals(3, rows(DEDICATED_ENDPOINT, "anything", "app"));
+    }
+
+    @Test
+    public void rejects_clients_without_route() {
+        try {
+            rows(SHARED_ENDPOINT, "billing", "other");
+            fail("Expected no route");
+        } catch (final SQLException e) {
+            assertEquals("28000", e.getSQLState());
+        }
+    }
+
+    @Test
+    public void tags_endpoint_metrics_with_route() throws SQLException {
+        rows(SHARED_ENDPOINT, "orders", "app");
+        rows(SHARED_ENDPOINT, "billing", "app");
+        assertEquals(
+                Arrays.asList("orders", "billing", "analytics"),
+                proxy.getMetrics().getEndpoints().stream().map(EndpointMetrics::getRoute).collect(toList())
+        );
+        assertEquals(Arrays.asList("orders", "billing", "analytics"), Arrays.asList(
+                proxy.getResultCaches().keySet().toArray()
+        ));
+        proxy.getMetrics().getEndpoints().stream()
+                .filter(endpoint -> !"analytics".equals(endpoint.getRoute()))
+                .forEach(endpoint -> assertEquals(1, endpoint.getConnections()));
+    }
+
+    @Test
+    public void keeps_frames_pipelined_after_startup_message() throws IOException {
+        try (final RawClient client = new RawClient(SHARED_ENDPOINT)) {
+            client.startup("app", "billing").query("SELECT 1").flush();
+            assertEquals(0, client.dataRowsUntilReadyForQuery());
+            assertEquals(2, client.dataRowsUntilReadyForQuery());
+        }
+    }
+
+    private static int rows(final Endpoint endpoint, final String database, final String user) throws SQLException {
+        try (final Connection connection = getConnection(format(
+                "jdbc:postgresql://%s:%d/%s?user=%s",
+                endpoint.getHost(),
+                endpoint.getPort(),
+                database,
+                user
+        ));
+             final Statement statement = connection.createStatement();
+             final ResultSet resultSet = statement.executeQuery("SELECT 1")) {
+            int rows = 0;
+            while (resultSet.next()) {
+                rows++;
+            }
+            return rows;
+        }
+    }
+
+    private static PostgresProxyConfig config(
+            final FakePostgres server,
+            final Endpoint proxyEndpoint,
+            final PoolingMode mode
+    ) {
+        return proxyConfig(server, proxyEndpoint).withPoolConfig(new PoolConfig(mode, 0, 2, 5000, 100));
+    }
+}
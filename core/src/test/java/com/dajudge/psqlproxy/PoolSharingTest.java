@@ -0,0 +1,149 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy;
+
+import com.dajudge.proxybase.config.Endpoint;
+import com.dajudge.psqlproxy.pool.PoolConfig;
+import com.dajudge.psqlproxy.pool.PoolingMode;
+import com.dajudge.psqlproxy.testutil.fake.FakePostgres;
+import com.dajudge.psqlproxy.testutil.fake.FakePostgresConfig;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static com.dajudge.psqlproxy.TestProxyConfigs.proxyConfig;
+import static java.lang.String.format;
+import static java.sql.DriverManager.getConnection;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Clients of the same database share server connections regardless of their other startup parameters, which are
+ * applied with <code>SET</code> instead.
+ */
+public class PoolSharingTest {
+    private static final Endpoint PROXY_ENDPOINT = new Endpoint("localhost", 55441);
+    private static final long TIMEOUT_MSECS = 5000;
+
+    @Test
+    public void shares_server_connections_between_application_names() throws SQLException {
+        try (final FakePostgres server = new FakePostgres(FakePostgresConfig.DEFAULT);
+             final PostgresProxy proxy = new PostgresProxy(config(server, PoolingMode.TRANSACTION, 1, 0, 0))) {
+            try (final Connection first = connect("postgres", "first");
+                 final Connection second = connect("postgres", "second")) {
+                assertEquals("first", show(first, "application_name"));
+                assertEquals("second", show(second, "application_name"));
+                assertEquals("first", show(first, "application_name"));
+            }
+            assertEquals(1, server.getConnections());
+        }
+    }
+
+    @Test
+    public void applies_settings_in_session_pooling_mode() throws SQLException {
+        try (final FakePostgres server = new FakePostgres(FakePostgresConfig.DEFAULT);
+             final PostgresProxy proxy = new PostgresProxy(config(server, PoolingMode.SESSION, 1, 0, 0))) {
+            try (final Connection connection = connect("postgres", "first")) {
+                assertEquals("first", show(connection, "application_name"));
+            }
+            try (final Connection connection = connect("postgres", "second")) {
+                assertEquals("second", show(connection, "application_name"));
+            }
+            assertEquals(1, server.getConnections());
+        }
+    }
+
+    @Test
+    public void caps_server_connections_across_databases() throws SQLException {
+        try (final FakePostgres server = new FakePostgres(FakePostgresConfig.DEFAULT);
+             final PostgresProxy proxy = new PostgresProxy(config(server, PoolingMode.TRANSACTION, 2, 0, 2))) {
+            for (int i = 0; i < 5; i++) {
+                try (final Connection connection = connect("db" + i, "app")) {
+                    assertEquals("app", show(connection, "application_name"));
+                }
+                assertTrue(server.getOpenConnections() <= 2);
+            }
+            assertEquals(5, server.getConnections());
+        }
+    }
+
+    @Test
+    public void closes_idle_server_connections() throws SQLException, InterruptedException {
+        try (final FakePostgres server = new FakePostgres(FakePostgresConfig.DEFAULT);
+             final PostgresProxy proxy = new PostgresProxy(config(server, PoolingMode.TRANSACTION, 2, 100, 0))) {
+            try (final Connection connection = connect("postgres", "app")) {
+                assertEquals("app", show(connection, "application_name"));
+            }
+            final long deadline = System.currentTimeMillis() + TIMEOUT_MSECS;
+            while (server.getOpenConnections() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, server.getOpenConnections());
+        }
+    }
+
+    @Test
+    @SuppressWarnings(value = "PMD.EmptyCatchBlock") // For the happy path
+    public void rejects_unsupported_options() throws SQLException {
+        try (final FakePostgres server = new FakePostgres(FakePostgresConfig.DEFAULT);
+             final PostgresProxy proxy = new PostgresProxy(config(server, PoolingMode.TRANSACTION, 1, 0, 0));
+             final Connection connection = getConnection(url("postgres", "app") + "&options=-P")) {
+            fail("Expected the client to be rejected");
+        } catch (final SQLException e) {
+            // Expected
+        }
+    }
+
+    private static String show(final Connection connection, final String name) throws SQLException {
+        try (final Statement statement = connection.createStatement();
+             final ResultSet resultSet = statement.executeQuery("SHOW " + name)) {
+            assertTrue(resultSet.next());
+            return resultSet.getString(1);
+        }
+    }
+
+    private static Connection connect(final String database, final String applicationName) throws SQLException {
+        return getConnection(url(database, applicationName));
+    }
+
+    // The driver only sends the application name in the startup message to servers it knows to support it
+    private static String url(final String database, final String applicationName) {
+        return format(
+                "jdbc:postgresql://%s:%d/%s?user=postgres&assumeMinServerVersion=9.0&ApplicationName=%s",
+                PROXY_ENDPOINT.getHost(),
+                PROXY_ENDPOINT.getPort(),
+                database,
+                applicationName
+        );
+    }
+
+    private static PostgresProxyConfig config(
+            final FakePostgres server,
+            final PoolingMode mode,
+            final int poolSize,
+            final long idleTimeoutMsecs,
+            final int maxServerConnections
+    ) {
+        return proxyConfig(server, PROXY_ENDPOINT)
+                .withPoolConfig(new PoolConfig(mode, 0, poolSize, 5000, 100, 0, idleTimeoutMsecs, maxServerConnections));
+    }
+}
@@ -17,12 +17,9 @@
 
 package com.dajudge.psqlproxy;
 
-import com.dajudge.proxybase.ProxyApplication;
-import com.dajudge.proxybase.certs.Filesystem;
-import com.dajudge.proxybase.certs.KeyStoreConfig;
-import com.dajudge.proxybase.config.DownstreamSslConfig;
 import com.dajudge.proxybase.config.Endpoint;
 import com.dajudge.psqlproxy.protocol.PostgresSslConfig;
+import com.dajudge.psqlproxy.protocol.TrustStoreConfig;
 import com.dajudge.psqlproxy.testutil.PostgresContainerFactory;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.jetbrains.annotations.NotNull;
@@ -34,12 +31,12 @@ import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.UUID;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 import static com.dajudge.psqlproxy.testutil.PostgresContainerFactory.*;
 import static java.lang.String.format;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.sql.DriverManager.getConnection;
-import static java.util.Optional.empty;
 import static org.junit.Assert.assertEquals;
 
 public class ProxyTest {
@@ -94,7 +91,7 @@ public class ProxyTest {
     ) {
         withPostgres(sslHostname, postgres -> {
             final Endpoint proxyEndpoint = new Endpoint("localhost", 55432);
-            try (final ProxyApplication proxy = createProxy(postgres, proxyEndpoint, sslRequired, checkHostname)) {
+            try (final PostgresProxy proxy = createProxy(postgres, proxyEndpoint, sslRequired, checkHostname)) {
                 runnable.accept(proxyEndpoint);
             }
         }, enableServerSsl);
@@ -110,28 +107,21 @@ public class ProxyTest {
         final String truststorePassword = UUID.randomUUID().toString();
         final String truststoreLocation = UUID.randomUUID().toString();
         final String truststorePasswordLocation = UUID.randomUUID().toString();
-        final KeyStoreConfig trustStore = new KeyStoreConfig(
+        final TrustStoreConfig trustStore = new TrustStoreConfig(
                 truststoreLocation,
-                "".toCharArray(),
                 truststorePasswordLocation,
-                "".toCharArray(),
-                null,
                 "pkcs12",
-                30000);
-        final DownstreamSslConfig downstreamSslConfig = new DownstreamSslConfig(
-                trustStore,
-                empty(),
-                hostnameVerificationEnabled
+                30000
         );
-        final Filesystem filesystem = new HashMap<String, byte[]>() {{
+        final Function<String, byte[]> filesystem = new HashMap<String, byte[]>() {{
             put(truststoreLocation, psql.getTrustStore(truststorePassword));
             put(truststorePasswordLocation, truststorePassword.getBytes(UTF_8));
         }}::get;
         final PostgresSslConfig sslConfig = new PostgresSslConfig(
                 sslRequired,
-                downstreamSslConfig,
+                trustStore,
+                hostnameVerificationEnabled,
                 psql.getEndpoint().getHost(),
-                System::currentTimeMillis,
                 filesystem
         );
         final PostgresProxy postgresProxy = new PostgresProxy(new PostgresProxyConfig(
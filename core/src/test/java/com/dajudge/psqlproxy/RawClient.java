@@ -0,0 +1,82 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy;
+
+import com.dajudge.proxybase.config.Endpoint;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// Speaks the protocol on a plain socket, so several messages can be sent in one write
+final class RawClient implements AutoCloseable {
+    private static final int PROTOCOL_VERSION = 196608;
+    private static final int READ_TIMEOUT_MSECS = 5000;
+    private final Socket socket;
+    private final DataOutputStream out;
+    private final DataInputStream in;
+
+    RawClient(final Endpoint endpoint) throws IOException {
+        socket = new Socket(endpoint.getHost(), endpoint.getPort());
+        socket.setSoTimeout(READ_TIMEOUT_MSECS);
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        in = new DataInputStream(socket.getInputStream());
+    }
+
+    RawClient startup(final String user, final String database) throws IOException {
+        final byte[] params = ("user\0" + user + "\0database\0" + database + "\0\0").getBytes(UTF_8);
+        out.writeInt(8 + params.length);
+        out.writeInt(PROTOCOL_VERSION);
+        out.write(params);
+        return this;
+    }
+
+    RawClient query(final String sql) throws IOException {
+        final byte[] bytes = (sql + "\0").getBytes(UTF_8);
+        out.writeByte('Q');
+        out.writeInt(4 + bytes.length);
+        out.write(bytes);
+        return this;
+    }
+
+    void flush() throws IOException {
+        out.flush();
+    }
+
+    int dataRowsUntilReadyForQuery() throws IOException {
+        int rows = 0;
+        while (true) {
+            final int type = in.readUnsignedByte();
+            in.readFully(new byte[in.readInt() - 4]);
+            if (type == 'D') {
+                rows++;
+            } else if (type == 'Z') {
+                return rows;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy;
+
+import com.dajudge.proxybase.config.Endpoint;
+import com.dajudge.psqlproxy.metrics.EndpointMetrics;
+import com.dajudge.psqlproxy.pool.PoolConfig;
+import com.dajudge.psqlproxy.pool.PoolingMode;
+import com.dajudge.psqlproxy.routing.ReplicaConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+import static com.dajudge.psqlproxy.TestProxyConfigs.plaintextProxyConfig;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+public class ReadWriteSplittingTest {
+    private static final Endpoint PROXY_ENDPOINT = new Endpoint("localhost", 55436);
+    private static final String PRIMARY = "primary";
+    private static final String REPLICA = "replica";
+
+    private StandInBackend primary;
+    private StandInBackend replica;
+    private PostgresProxy proxy;
+
+    @Before
+    public void start() throws IOException {
+        primary = new StandInBackend(PRIMARY);
+        replica = new StandInBackend(REPLICA);
+        proxy = new PostgresProxy(plaintextProxyConfig(primary.getEndpoint(), PROXY_ENDPOINT, "postgres", "unused")
+                .withPoolConfig(new PoolConfig(PoolingMode.TRANSACTION, 0, 2, 5000, 100))
+                .withReplicaConfig(new ReplicaConfig(
+                        Collections.singletonList(replica.getEndpoint()),
+                        Optional.of(Pattern.compile("^\\s*SELECT\\b", Pattern.CASE_INSENSITIVE))
+                )));
+    }
+
+    @After
+    public void stop() throws IOException {
+        proxy.close();
+        primary.close();
+        replica.close();
+    }
+
+    @Test
+    public void routes_read_only_transactions_to_replica() throws IOException {
+        try (final Client client = new Client(Collections.emptyMap())) {
+            assertEquals(REPLICA, client.query("BEGIN READ ONLY"));
+            assertEquals(REPLICA, client.query("INSERT INTO t VALUES (1)"));
+            assertEquals(REPLICA, client.query("COMMIT"));
+            assertEquals(REPLICA + " " + REPLICA, client.query("BEGIN; SET TRANSACTION READ ONLY"));
+            assertEquals(REPLICA, client.query("COMMIT"));
+            assertEquals(PRIMARY, client.query("BEGIN"));
+            assertEquals(PRIMARY, client.query("SELECT 1"));
+            assertEquals(PRIMARY, client.query("COMMIT"));
+        }
+    }
+
+    @Test
+    public void routes_matching_autocommit_statements_to_replica() throws IOException {
+        try (final Client client = new Client(Collections.emptyMap())) {
+            assertEquals(REPLICA, client.query("SELECT 1"));
+            assertEquals(REPLICA, client.extended("SELECT 1"));
+            assertEquals(PRIMARY, client.query("INSERT INTO t VALUES (1)"));
+            assertEquals(PRIMARY, client.extended("UPDATE t SET x = 1"));
+            assertEquals(PRIMARY + " " + PRIMARY, client.query("SELECT 1; DELETE FROM t"));
+        }
+        assertEquals(3, transactions(PRIMARY));
+        assertEquals(2, transactions(REPLICA));
+    }
+
+    @Test
+    public void routes_read_only_sessions_to_replica() throws IOException {
+        final Map<String, String> params = Collections.singletonMap("options", "-c default_transaction_read_only=on");
+        try (final Client client = new Client(params)) {
+            assertEquals(REPLICA, client.query("UPDATE t SET x = 1"));
+            assertEquals(REPLICA, client.extended("DELETE FROM t"));
+        }
+    }
+
+    private long transactions(final String role) {
+        return proxy.getMetrics().getEndpoints().stream()
+                .filter(endpoint -> endpoint.getRole().equals(role))
+                .mapToLong(EndpointMetrics::getTransactions)
+                .sum();
+    }
+
+    /**
+     * Speaks just enough of the protocol to answer every statement with a CommandComplete tagged with the name of
+     * the backend.
+     */
+    private static final class StandInBackend implements AutoCloseable {
+        private static final int SSL_REQUEST_CODE = 80877103;
+        private final String name;
+        private final ServerSocket serverSocket;
+        private final List<Socket> sockets = Collections.synchronizedList(new ArrayList<>());
+
+        private StandInBackend(final String name) throws IOException {
+            this.name = name;
+            serverSocket = new ServerSocket(0, 16, InetAddress.getLoopbackAddress());
+            start(this::accept);
+        }
+
+        private Endpoint getEndpoint() {
+            return new Endpoint(serverSocket.getInetAddress().getHostAddress(), serverSocket.getLocalPort());
+        }
+
+        private void accept() {
+            try {
+                while (true) {
+                    final Socket socket = serverSocket.accept();
+                    sockets.add(socket);
+                    start(() -> serve(socket));
+                }
+            } catch (final IOException e) {
+                // Closed
+            }
+        }
+
+        private void serve(final Socket socket) {
+            try (
+                    final DataInputStream in = new DataInputStream(socket.getInputStream());
+                    final DataOutputStream out = new DataOutputStream(socket.getOutputStream())
+            ) {
+                if (skipStartupMessage(in) == SSL_REQUEST_CODE) {
+                    out.write('N');
+                    out.flush();
+                    skipStartupMessage(in);
+                }
+                send(out, 'R', new byte[4]);
+                send(out, 'S', strings("server_version", "13.0"));
+                send(out, 'K', new byte[8]);
+                char status = 'I';
+                send(out, 'Z', new byte[]{(byte) status});
+                String parsed = "";
+                for (int type = in.read(); type >= 0 && type != 'X'; type = in.read()) {
+                    final byte[] payload = new byte[in.readInt() - 4];
+                    in.readFully(payload);
+                    switch (type) {
+                        case 'Q':
+                            status = execute(out, string(payload, 0), status);
+                            send(out, 'Z', new byte[]{(byte) status});
+                            break;
+                        case 'P':
+                            parsed = string(payload, string(payload, 0).length() + 1);
+                            send(out, '1', new byte[0]);
+                            break;
+                        case 'B':
+                            send(out, '2', new byte[0]);
+                            break;
+                        case 'E':
+                            status = execute(out, parsed, status);
+                            break;
+                        case 'S':
+                            send(out, 'Z', new byte[]{(byte) status});
+                            break;
+                        default:
+                            break;
+                    }
+                }
+            } catch (final IOException e) {
+                // Closed
+            }
+        }
+
+        private char execute(final DataOutputStream out, final String sql, final char status) throws IOException {
+            char newStatus = status;
+            for (final String statement : sql.split(";")) {
+                final String keyword = statement.trim().split("\\s+")[0].toUpperCase(Locale.US);
+                if ("BEGIN".equals(keyword)) {
+                    newStatus = 'T';
+                } else if ("COMMIT".equals(keyword) || "ROLLBACK".equals(keyword)) {
+                    newStatus = 'I';
+                }
+                send(out, 'C', strings(name));
+            }
+            return newStatus;
+        }
+
+        private static int skipStartupMessage(final DataInputStream in) throws IOException {
+            final int length = in.readInt();
+            final int code = in.readInt();
+            in.readFully(new byte[length - 8]);
+            return code;
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+            synchronized (sockets) {
+                for (final Socket socket : sockets) {
+                    socket.close();
+                }
+            }
+        }
+    }
+
+    private static final class Client implements AutoCloseable {
+        private static final int PROTOCOL_VERSION = 3 << 16;
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        private Client(final Map<String, String> params) throws IOException {
+            socket = new Socket(PROXY_ENDPOINT.getHost(), PROXY_ENDPOINT.getPort());
+            in = new DataInputStream(socket.getInputStream());
+            out = new DataOutputStream(socket.getOutputStream());
+            final ByteArrayOutputStream startup = new ByteArrayOutputStream();
+            startup.write(strings("user", "postgres", "database", "postgres"));
+            for (final Map.Entry<String, String> param : params.entrySet()) {
+                startup.write(strings(param.getKey(), param.getValue()));
+            }
+            startup.write(0);
+            out.writeInt(startup.size() + 8);
+            out.writeInt(PROTOCOL_VERSION);
+            startup.writeTo(out);
+            out.flush();
+            readTags();
+        }
+
+        private String query(final String sql) throws IOException {
+            send(out, 'Q', strings(sql));
+            return readTags();
+        }
+
+        private String extended(final String sql) throws IOException {
+            final ByteArrayOutputStream parse = new ByteArrayOutputStream();
+            parse.write(strings("", sql));
+            parse.write(new byte[2]);
+            write(out, 'P', parse.toByteArray());
+            final ByteArrayOutputStream bind = new ByteArrayOutputStream();
+            bind.write(strings("", ""));
+            bind.write(new byte[6]);
+            write(out, 'B', bind.toByteArray());
+            final ByteArrayOutputStream execute = new ByteArrayOutputStream();
+            execute.write(strings(""));
+            execute.write(new byte[4]);
+            write(out, 'E', execute.toByteArray());
+            send(out, 'S', new byte[0]);
+            return readTags();
+        }
+
+        // The tags of the CommandComplete frames up to the next ReadyForQuery
+        private String readTags() throws IOException {
+            final List<String> tags = new ArrayList<>();
+            while (true) {
+                final int type = in.read();
+                final byte[] payload = new byte[in.readInt() - 4];
+                in.readFully(payload);
+                if (type == 'C') {
+                    tags.add(string(payload, 0));
+                } else if (type == 'E') {
+                    throw new AssertionError("Error response: " + new String(payload, UTF_8));
+                } else if (type == 'Z') {
+                    return String.join(" ", tags);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            send(out, 'X', new byte[0]);
+            socket.close();
+        }
+    }
+
+    private static void start(final Runnable runnable) {
+        final Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void send(final DataOutputStream out, final char type, final byte[] payload) throws IOException {
+        write(out, type, payload);
+        out.flush();
+    }
+
+    private static void write(final DataOutputStream out, final char type, final byte[] payload) throws IOException {
+        out.write(type);
+        out.writeInt(payload.length + 4);
+        out.write(payload);
+    }
+
+    private static byte[] strings(final String... strings) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (final String string : strings) {
+            out.write(string.getBytes(UTF_8));
+            out.write(0);
+        }
+        return out.toByteArray();
+    }
+
+    private static String string(final byte[] payload, final int offset) {
+        int end = offset;
+        while (end < payload.length && payload[end] != 0) {
+            end++;
+        }
+        return new String(payload, offset, end - offset, UTF_8);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy;
+
+import com.dajudge.proxybase.config.Endpoint;
+import com.dajudge.psqlproxy.pool.PoolConfig;
+import com.dajudge.psqlproxy.pool.PoolingMode;
+import com.dajudge.psqlproxy.testutil.fake.FakePostgres;
+import com.dajudge.psqlproxy.testutil.fake.FakePostgresConfig;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.function.LongSupplier;
+
+import static com.dajudge.psqlproxy.TestProxyConfigs.proxyConfig;
+import static java.lang.String.format;
+import static java.sql.DriverManager.getConnection;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Starting, warming and resetting of pooled server connections in session pooling mode.
+ */
+public class SessionPoolingTest {
+    private static final Endpoint PROXY_ENDPOINT = new Endpoint("localhost", 55443);
+    private static final long TIMEOUT_MSECS = 5000;
+    private static final long SETTLE_MSECS = 200;
+
+    @Test
+    public void discards_session_state_between_clients() throws SQLException {
+        try (final FakePostgres server = new FakePostgres(FakePostgresConfig.DEFAULT);
+             final PostgresProxy proxy = new PostgresProxy(config(server, 0, 1, 0))) {
+            try (final Connection connection = connect("postgres");
+                 final Statement statement = connection.createStatement()) {
+                statement.execute("SET my.setting = 'x'");
+                assertEquals("x", show(connection, "my.setting"));
+            }
+            try (final Connection connection = connect("postgres")) {
+                assertEquals("", show(connection, "my.setting"));
+            }
+            assertEquals(1, server.getConnections());
+        }
+    }
+
+    @Test
+    public void warms_only_databases_in_use() throws SQLException, InterruptedException {
+        try (final FakePostgres server = new FakePostgres(FakePostgresConfig.DEFAULT);
+             final PostgresProxy proxy = new PostgresProxy(config(server, 2, 4, 3))) {
+            Thread.sleep(SETTLE_MSECS);
+            assertEquals(0, server.getOpenConnections());
+            try (final Connection first = connect("first")) {
+                // The connection lent to the client and the idle minimum
+                awaitEquals(3, server::getOpenConnections);
+                try (final Connection second = connect("second")) {
+                    assertEquals("", show(second, "my.setting"));
+                    Thread.sleep(SETTLE_MSECS);
+                    assertTrue(server.getOpenConnections() <= 3);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void queues_frames_pipelined_after_startup_message() throws IOException {
+        try (final FakePostgres server = new FakePostgres(FakePostgresConfig.DEFAULT.withRows(2, 8));
+             final PostgresProxy proxy = new PostgresProxy(config(server, 0, 1, 0));
+             final RawClient client = new RawClient(PROXY_ENDPOINT)) {
+            client.startup("postgres", "postgres").query("SELECT 1").flush();
+            assertEquals(0, client.dataRowsUntilReadyForQuery());
+            assertEquals(2, client.dataRowsUntilReadyForQuery());
+        }
+    }
+
+    private static void awaitEquals(final long expected, final LongSupplier actual) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MSECS;
+        while (actual.getAsLong() != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, actual.getAsLong());
+    }
+
+    private static String show(final Connection connection, final String name) throws SQLException {
+        try (final Statement statement = connection.createStatement();
+             final ResultSet resultSet = statement.executeQuery("SHOW " + name)) {
+            assertTrue(resultSet.next());
+            return resultSet.getString(1);
+        }
+    }
+
+    private static Connection connect(final String database) throws SQLException {
+        return getConnection(format(
+                "jdbc:postgresql://%s:%d/%s?user=postgres",
+                PROXY_ENDPOINT.getHost(),
+                PROXY_ENDPOINT.getPort(),
+                database
+        ));
+    }
+
+    private static PostgresProxyConfig config(
+            final FakePostgres server,
+            final int minIdle,
+            final int poolSize,
+            final int maxServerConnections
+    ) {
+        return proxyConfig(server, PROXY_ENDPOINT).withPoolConfig(new PoolConfig(
+                PoolingMode.SESSION,
+                minIdle,
+                poolSize,
+                5000,
+                100,
+                PoolConfig.DEFAULT_MAX_PREPARED_STATEMENTS,
+                0,
+                maxServerConnections
+        ));
+    }
+}
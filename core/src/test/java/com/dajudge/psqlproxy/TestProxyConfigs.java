@@ -0,0 +1,80 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy;
+
+import com.dajudge.proxybase.config.Endpoint;
+import com.dajudge.psqlproxy.protocol.PostgresSslConfig;
+import com.dajudge.psqlproxy.protocol.TrustStoreConfig;
+import com.dajudge.psqlproxy.testutil.fake.FakePostgres;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+final class TestProxyConfigs {
+    private static final String TRUST_STORE = "truststore";
+    private static final String TRUST_STORE_PASSWORD = "truststore-password";
+    private static final String PASSWORD = "secret";
+
+    private TestProxyConfigs() {
+    }
+
+    static PostgresProxyConfig proxyConfig(final FakePostgres server, final Endpoint proxyEndpoint) {
+        return proxyConfig(server, proxyEndpoint, server.getConfig().getUsername(), server.getConfig().getPassword());
+    }
+
+    // Connects with SSL if the server accepts it
+    static PostgresProxyConfig proxyConfig(
+            final FakePostgres server,
+            final Endpoint proxyEndpoint,
+            final String username,
+            final String password
+    ) {
+        final Map<String, byte[]> files = new HashMap<>();
+        files.put(TRUST_STORE, server.getTrustStore(PASSWORD));
+        files.put(TRUST_STORE_PASSWORD, PASSWORD.getBytes(UTF_8));
+        final boolean ssl = server.getConfig().isSslEnabled();
+        return new PostgresProxyConfig(
+                new Endpoint(server.getHost(), server.getPort()),
+                proxyEndpoint,
+                username,
+                password,
+                new PostgresSslConfig(ssl, trustStoreConfig(), ssl, server.getHost(), files::get)
+        );
+    }
+
+    static PostgresProxyConfig plaintextProxyConfig(
+            final Endpoint serverEndpoint,
+            final Endpoint proxyEndpoint,
+            final String username,
+            final String password
+    ) {
+        return new PostgresProxyConfig(
+                serverEndpoint,
+                proxyEndpoint,
+                username,
+                password,
+                new PostgresSslConfig(false, trustStoreConfig(), false, serverEndpoint.getHost(), name -> null)
+        );
+    }
+
+    private static TrustStoreConfig trustStoreConfig() {
+        return new TrustStoreConfig(TRUST_STORE, TRUST_STORE_PASSWORD, "pkcs12", 30000);
+    }
+}
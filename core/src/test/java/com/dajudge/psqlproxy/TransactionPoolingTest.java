@@ -0,0 +1,183 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy;
+
+import com.dajudge.proxybase.config.Endpoint;
+import com.dajudge.psqlproxy.pool.PoolConfig;
+import com.dajudge.psqlproxy.pool.PoolingMode;
+import com.dajudge.psqlproxy.testutil.fake.FakePostgres;
+import com.dajudge.psqlproxy.testutil.fake.FakePostgresConfig;
+import org.junit.After;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+
+import static com.dajudge.psqlproxy.TestProxyConfigs.proxyConfig;
+import static java.lang.String.format;
+import static java.sql.DriverManager.getConnection;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Clients sharing a single server connection in transaction pooling mode.
+ */
+public class TransactionPoolingTest {
+    private static final Endpoint PROXY_ENDPOINT = new Endpoint("localhost", 55442);
+    private static final long BLOCKED_MSECS = 300;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void releases_connection_when_transaction_ends() throws Exception {
+        try (final FakePostgres server = new FakePostgres(FakePostgresConfig.DEFAULT);
+             final PostgresProxy proxy = new PostgresProxy(config(server, 5000, 100));
+             final Connection first = connect();
+             final Connection second = connect()) {
+            first.setAutoCommit(false);
+            query(first);
+            final Future<Integer> waiting = executor.submit(() -> query(second));
+            assertBlocked(waiting);
+            first.commit();
+            assertEquals(1, (int) waiting.get(5, SECONDS));
+            query(first);
+            first.commit();
+            assertEquals(1, server.getConnections());
+        }
+    }
+
+    @Test
+    public void queues_pipelined_frames_while_waiting() throws Exception {
+        try (final FakePostgres server = new FakePostgres(FakePostgresConfig.DEFAULT);
+             final PostgresProxy proxy = new PostgresProxy(config(server, 5000, 100));
+             final Connection first = connect();
+             final Connection second = connect()) {
+            first.setAutoCommit(false);
+            query(first);
+            final Future<int[]> batch = executor.submit(() -> {
+                try (final PreparedStatement statement = second.prepareStatement("INSERT INTO t VALUES (?)")) {
+                    for (int i = 0; i < 10; i++) {
+                        statement.setInt(1, i);
+                        statement.addBatch();
+                    }
+                    return statement.executeBatch();
+                }
+            });
+            assertBlocked(batch);
+            first.commit();
+            final int[] expected = new int[10];
+            Arrays.fill(expected, 1);
+            assertArrayEquals(expected, batch.get(5, SECONDS));
+        }
+    }
+
+    @Test
+    public void fails_client_after_acquire_timeout() throws Exception {
+        try (final FakePostgres server = new FakePostgres(FakePostgresConfig.DEFAULT);
+             final PostgresProxy proxy = new PostgresProxy(config(server, 200, 100));
+             final Connection first = connect();
+             final Connection second = connect()) {
+            first.setAutoCommit(false);
+            query(first);
+            expectFailure(() -> query(second), "Timed out waiting for a server connection");
+            first.commit();
+        }
+    }
+
+    @Test
+    public void rejects_clients_beyond_max_waiting() throws Exception {
+        try (final FakePostgres server = new FakePostgres(FakePostgresConfig.DEFAULT);
+             final PostgresProxy proxy = new PostgresProxy(config(server, 5000, 1));
+             final Connection first = connect();
+             final Connection second = connect();
+             final Connection third = connect()) {
+            first.setAutoCommit(false);
+            query(first);
+            final Future<Integer> waiting = executor.submit(() -> query(second));
+            assertBlocked(waiting);
+            expectFailure(() -> query(third), "Too many clients waiting for a server connection");
+            first.commit();
+            assertEquals(1, (int) waiting.get(5, SECONDS));
+        }
+    }
+
+    private static void assertBlocked(final Future<?> future) throws InterruptedException, ExecutionException {
+        try {
+            future.get(BLOCKED_MSECS, MILLISECONDS);
+            fail("Expected the client to wait for the server connection");
+        } catch (final TimeoutException e) {
+            assertFalse(future.isDone());
+        }
+    }
+
+    private static void expectFailure(final Callable<?> call, final String message) throws Exception {
+        try {
+            call.call();
+            fail("Expected failure: " + message);
+        } catch (final SQLException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    private static int query(final Connection connection) throws SQLException {
+        try (final Statement statement = connection.createStatement();
+             final ResultSet resultSet = statement.executeQuery("SELECT 1")) {
+            int rows = 0;
+            while (resultSet.next()) {
+                rows++;
+            }
+            return rows;
+        }
+    }
+
+    private static Connection connect() throws SQLException {
+        return getConnection(format(
+                "jdbc:postgresql://%s:%d/postgres?user=postgres",
+                PROXY_ENDPOINT.getHost(),
+                PROXY_ENDPOINT.getPort()
+        ));
+    }
+
+    private static PostgresProxyConfig config(
+            final FakePostgres server,
+            final long acquireTimeoutMsecs,
+            final int maxWaitingClients
+    ) {
+        return proxyConfig(server, PROXY_ENDPOINT)
+                .withPoolConfig(new PoolConfig(PoolingMode.TRANSACTION, 0, 1, acquireTimeoutMsecs, maxWaitingClients));
+    }
+}
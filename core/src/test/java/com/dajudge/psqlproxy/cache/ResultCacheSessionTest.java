@@ -0,0 +1,131 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.cache;
+
+import com.dajudge.psqlproxy.protocol.frames.TypedFrame;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResultCacheSessionTest {
+    private static final Map<String, String> PARAMS = Collections.singletonMap("database", "postgres");
+    private static final String SQL = "SELECT * FROM flags";
+
+    private final ResultCache cache = new ResultCache(
+            new ResultCacheConfig(Optional.of(Pattern.compile("flags")), 60_000, 1024 * 1024)
+    );
+    private final EmbeddedChannel client = new EmbeddedChannel();
+    private final List<Character> replayed = new ArrayList<>();
+    private final ResultCacheSession session = new ResultCacheSession(
+            cache,
+            client,
+            frame -> replayed.add(frame.getType())
+    );
+    private final List<TypedFrame> frames = new ArrayList<>();
+
+    @After
+    public void close() {
+        session.discard();
+        frames.forEach(TypedFrame::release);
+        client.finishAndReleaseAll();
+        cache.close();
+    }
+
+    @Test
+    public void serves_captured_reply() {
+        assertFalse(session.serve(PARAMS, query(SQL)));
+        final ByteBuf expected = Unpooled.buffer();
+        for (final TypedFrame frame : reply('T', 'D', 'D', 'C')) {
+            session.onServerFrame(frame);
+            expected.writeBytes(frame.content(), frame.content().readerIndex(), frame.content().readableBytes());
+        }
+        assertEquals(1, cache.getEntries());
+
+        final TypedFrame query = query(SQL);
+        frames.removeIf(frame -> frame == query);
+        assertTrue(session.serve(PARAMS, query));
+        assertEquals(0, query.refCnt());
+        final ByteBuf served = client.readOutbound();
+        assertEquals(expected, served);
+        assertEquals(5, replayed.size());
+        served.release();
+        expected.release();
+    }
+
+    @Test
+    public void ignores_queries_not_on_allowlist() {
+        assertFalse(session.serve(PARAMS, query("SELECT * FROM users")));
+        reply('T', 'D', 'C').forEach(session::onServerFrame);
+        assertEquals(0, cache.getEntries());
+        assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    public void does_not_cache_unexpected_replies() {
+        assertFalse(session.serve(PARAMS, query(SQL)));
+        reply('T', 'D', 'N', 'C').forEach(session::onServerFrame);
+        assertFalse(session.serve(PARAMS, query(SQL)));
+        reply('E').forEach(session::onServerFrame);
+        assertFalse(session.serve(PARAMS, query(SQL)));
+        for (final TypedFrame frame : reply('T', 'D')) {
+            session.onServerFrame(frame);
+        }
+        session.onServerFrame(frame('C', "INSERT 0 1"));
+        session.onServerFrame(frame('Z', "I"));
+        assertEquals(0, cache.getEntries());
+    }
+
+    private List<TypedFrame> reply(final char... types) {
+        final List<TypedFrame> reply = new ArrayList<>();
+        for (final char type : types) {
+            reply.add(frame(type, type == 'C' ? "SELECT 2" : "payload"));
+        }
+        reply.add(frame('Z', "I"));
+        return reply;
+    }
+
+    private TypedFrame query(final String sql) {
+        return frame('Q', sql);
+    }
+
+    private TypedFrame frame(final char type, final String payload) {
+        final ByteBuf content = Unpooled.buffer();
+        content.writeCharSequence(payload, UTF_8);
+        if (type != 'Z') {
+            content.writeByte(0);
+        }
+        final TypedFrame frame = TypedFrame.of(UnpooledByteBufAllocator.DEFAULT, type, content);
+        frames.add(frame);
+        return frame;
+    }
+}
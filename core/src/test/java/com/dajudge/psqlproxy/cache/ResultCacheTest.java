@@ -0,0 +1,129 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.cache;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResultCacheTest {
+    private static final Map<String, String> PARAMS = Collections.singletonMap("database", "postgres");
+    private static final int MAX_BYTES = 2400;
+    private static final int ENTRY_BYTES = MAX_BYTES / 8;
+
+    private long nanos;
+    private final ResultCache cache = new ResultCache(
+            new ResultCacheConfig(Optional.of(Pattern.compile("flags")), 1000, MAX_BYTES),
+            () -> nanos,
+            1
+    );
+
+    @After
+    public void close() {
+        cache.close();
+    }
+
+    @Test
+    public void matches_allowlist() {
+        assertTrue(cache.isCacheable("SELECT * FROM flags"));
+        assertFalse(cache.isCacheable("SELECT * FROM users"));
+        assertFalse(new ResultCache(ResultCacheConfig.DISABLED).isCacheable("SELECT * FROM flags"));
+    }
+
+    @Test
+    public void separates_startup_parameters() {
+        cache.put(PARAMS, "SELECT 1", reply(ENTRY_BYTES));
+        assertTrue(hit(PARAMS, "SELECT 1"));
+        assertFalse(hit(Collections.singletonMap("database", "other"), "SELECT 1"));
+        assertFalse(hit(PARAMS, "SELECT 2"));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void expires_entries() {
+        cache.put(PARAMS, "SELECT 1", reply(ENTRY_BYTES));
+        nanos += 999_999_999L;
+        assertTrue(hit(PARAMS, "SELECT 1"));
+        nanos += 1;
+        assertFalse(hit(PARAMS, "SELECT 1"));
+        assertEquals(1, cache.getExpirations());
+        assertEquals(0, cache.getEntries());
+        assertEquals(0, cache.getBytes());
+    }
+
+    @Test
+    public void evicts_least_recently_used_entries() {
+        for (int i = 0; i < 8; i++) {
+            cache.put(PARAMS, "SELECT " + i, reply(ENTRY_BYTES));
+        }
+        assertTrue(hit(PARAMS, "SELECT 0"));
+        cache.put(PARAMS, "SELECT 8", reply(ENTRY_BYTES));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(MAX_BYTES, cache.getBytes());
+        assertTrue(hit(PARAMS, "SELECT 0"));
+        assertFalse(hit(PARAMS, "SELECT 1"));
+    }
+
+    @Test
+    public void limits_size_per_segment() {
+        final int segments = 4;
+        try (final ResultCache striped = new ResultCache(
+                new ResultCacheConfig(Optional.of(Pattern.compile("flags")), 1000, MAX_BYTES),
+                () -> nanos,
+                segments
+        )) {
+            final int entryBytes = (int) striped.getMaxEntryBytes();
+            assertEquals(MAX_BYTES / segments / 8, entryBytes);
+            for (int i = 0; i < 100; i++) {
+                striped.put(PARAMS, "SELECT " + i, reply(entryBytes));
+            }
+            assertTrue(striped.getBytes() <= MAX_BYTES);
+            assertEquals((long) striped.getEntries() * entryBytes, striped.getBytes());
+            assertEquals(100 - striped.getEntries(), striped.getEvictions());
+        }
+    }
+
+    @Test
+    public void rejects_large_entries() {
+        final ByteBuf reply = reply((int) cache.getMaxEntryBytes() + 1);
+        cache.put(PARAMS, "SELECT 1", reply);
+        assertEquals(0, reply.refCnt());
+        assertEquals(0, cache.getEntries());
+    }
+
+    private boolean hit(final Map<String, String> params, final String sql) {
+        final Optional<ByteBuf> reply = cache.get(params, sql);
+        reply.ifPresent(ByteBuf::release);
+        return reply.isPresent();
+    }
+
+    private static ByteBuf reply(final int bytes) {
+        return Unpooled.directBuffer(bytes).writeZero(bytes);
+    }
+}
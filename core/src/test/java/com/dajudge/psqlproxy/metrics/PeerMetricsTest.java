@@ -0,0 +1,71 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.metrics;
+
+import com.dajudge.psqlproxy.protocol.TypedFrameHandler;
+import com.dajudge.psqlproxy.protocol.TypedFrameHandler.ContinueFrameProcessor;
+import com.dajudge.psqlproxy.protocol.frames.TypedFrame;
+import com.dajudge.psqlproxy.protocol.frames.TypedFrameDecoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class PeerMetricsTest {
+    private static final int PAYLOAD = 10;
+    private static final int FRAME_SIZE = TypedFrame.HEADER_SIZE + PAYLOAD;
+
+    @Test
+    public void counts_connections() {
+        final PeerMetrics metrics = new PeerMetrics();
+        final EmbeddedChannel channel = new EmbeddedChannel(metrics.newHandler());
+        assertEquals(1, metrics.getConnections());
+        assertEquals(1, metrics.getActiveConnections());
+        channel.close();
+        assertEquals(1, metrics.getConnections());
+        assertEquals(0, metrics.getActiveConnections());
+    }
+
+    @Test
+    public void counts_bytes_and_frames() {
+        final PeerMetrics metrics = new PeerMetrics();
+        final EmbeddedChannel channel = new EmbeddedChannel(
+                metrics.newHandler(),
+                new TypedFrameDecoder(),
+                new TypedFrameHandler(new ContinueFrameProcessor(), metrics.getFrames())
+        );
+        channel.writeInbound(Unpooled.wrappedBuffer(frame('D'), frame('D'), frame('C')));
+        channel.writeOutbound(frame('Q'));
+        assertEquals(3 * FRAME_SIZE, metrics.getBytesReceived());
+        assertEquals(FRAME_SIZE, metrics.getBytesSent());
+        assertEquals(2, metrics.getFrames().get('D'));
+        assertEquals(1, metrics.getFrames().get('C'));
+        assertEquals(0, metrics.getFrames().get('Q'));
+        channel.finishAndReleaseAll();
+    }
+
+    private static ByteBuf frame(final char type) {
+        final ByteBuf frame = Unpooled.buffer(FRAME_SIZE);
+        frame.writeByte(type);
+        frame.writeInt(PAYLOAD + 4);
+        frame.writeZero(PAYLOAD);
+        return frame;
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class QueryFingerprintTest {
+    @Test
+    public void replaces_literals() {
+        assertEquals(
+                "SELECT * FROM t1 WHERE a = ? AND b = ? AND c > ? AND d = ?",
+                QueryFingerprint.of("SELECT * FROM t1 WHERE a = 'it''s' AND b = E'\\'x' AND c > 1.5e-3 "
+                        + "AND d = $tag$$x$tag$")
+        );
+    }
+
+    @Test
+    public void collapses_lists_comments_and_whitespace() {
+        assertEquals(
+                "SELECT \"Col 1\" FROM t WHERE id IN (?) LIMIT ?",
+                QueryFingerprint.of("SELECT  \"Col 1\" -- comment\n FROM t /* a /* nested */ comment */"
+                        + "WHERE id IN ($1, $2,$3)\n\tLIMIT 10 ")
+        );
+    }
+}
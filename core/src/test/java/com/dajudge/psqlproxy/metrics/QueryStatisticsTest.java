@@ -0,0 +1,110 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.metrics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.util.Comparator.comparingLong;
+import static org.junit.Assert.assertEquals;
+
+public class QueryStatisticsTest {
+    private static final int THREADS = 4;
+    private static final int FINGERPRINTS = 10;
+    private static final int RECORDS_PER_THREAD = 10000;
+    private static final Comparator<QueryStatistic> BY_TIME = comparingLong(QueryStatistic::getTotalNanos).reversed();
+
+    @Test
+    public void evicts_cheapest_fingerprint() {
+        final QueryStatistics statistics = new QueryStatistics(2, 1);
+        statistics.record("SELECT 1", 100, 1, 10);
+        statistics.record("SELECT 2", 30, 1, 10);
+        statistics.record("SELECT a FROM t", 50, 1, 10);
+        statistics.record("SELECT b FROM t", 20, 1, 10);
+        final List<QueryStatistic> top = statistics.top(10, BY_TIME);
+        assertEquals(2, top.size());
+        assertEquals("SELECT ?", top.get(0).getFingerprint());
+        assertEquals(2, top.get(0).getCalls());
+        assertEquals(130, top.get(0).getTotalNanos());
+        assertEquals("SELECT b FROM t", top.get(1).getFingerprint());
+        assertEquals(1, top.get(1).getCalls());
+        assertEquals(70, top.get(1).getTotalNanos());
+        assertEquals(50, top.get(1).getTotalNanosError());
+    }
+
+    @Test
+    public void evicts_cheapest_fingerprint_after_totals_grew() {
+        final QueryStatistics statistics = new QueryStatistics(2, 1);
+        statistics.record("SELECT 1", 10, 1, 10);
+        statistics.record("SELECT a FROM t", 20, 1, 10);
+        statistics.record("SELECT 2", 100, 1, 10);
+        statistics.record("SELECT b FROM t", 5, 1, 10);
+        final List<QueryStatistic> top = statistics.top(10, BY_TIME);
+        assertEquals(2, top.size());
+        assertEquals("SELECT ?", top.get(0).getFingerprint());
+        assertEquals(110, top.get(0).getTotalNanos());
+        assertEquals("SELECT b FROM t", top.get(1).getFingerprint());
+        assertEquals(25, top.get(1).getTotalNanos());
+        assertEquals(20, top.get(1).getTotalNanosError());
+    }
+
+    @Test
+    public void records_from_several_threads() throws Exception {
+        final QueryStatistics statistics = new QueryStatistics(FINGERPRINTS, 1);
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < RECORDS_PER_THREAD; i++) {
+                        statistics.record("SELECT * FROM t" + i % FINGERPRINTS, 1, 1, 10);
+                    }
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        final List<QueryStatistic> top = statistics.top(FINGERPRINTS, BY_TIME);
+        assertEquals(FINGERPRINTS, top.size());
+        for (final QueryStatistic statistic : top) {
+            assertEquals(THREADS * RECORDS_PER_THREAD / FINGERPRINTS, statistic.getCalls());
+            assertEquals(THREADS * RECORDS_PER_THREAD / FINGERPRINTS, statistic.getTotalNanos());
+            assertEquals(0, statistic.getTotalNanosError());
+        }
+    }
+
+    @Test
+    public void extrapolates_samples() {
+        final QueryStatistics statistics = new QueryStatistics(2, 10);
+        statistics.record("SELECT 1", 100, 1, 10);
+        final QueryStatistic statistic = statistics.top(1, BY_TIME).get(0);
+        assertEquals(10, statistic.getCalls());
+        assertEquals(1000, statistic.getTotalNanos());
+        assertEquals(10, statistic.getRows());
+        assertEquals(100, statistic.getBytes());
+    }
+}
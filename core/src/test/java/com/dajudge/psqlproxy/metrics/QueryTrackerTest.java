@@ -0,0 +1,172 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.metrics;
+
+import com.dajudge.psqlproxy.protocol.frames.TypedFrame;
+import com.sun.management.ThreadMXBean;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.After;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QueryTrackerTest {
+    private static final int PIPELINED = 100;
+    private static final int MAX_PENDING = 32;
+    private static final int ITERATIONS = 10000;
+
+    private final ProxyMetrics metrics = new ProxyMetrics(new MetricsConfig(10, 1));
+    private final QueryTracker tracker = new QueryTracker(metrics);
+    private final List<TypedFrame> frames = new ArrayList<>();
+
+    @After
+    public void releaseFrames() {
+        frames.forEach(TypedFrame::release);
+    }
+
+    @Test
+    public void ignores_startup_ready_for_query() {
+        server('Z', "I");
+        client('Q', "SELECT 1");
+        server('T', "");
+        server('C', "SELECT 1");
+        server('Z', "I");
+        assertEquals(1, metrics.getSimpleQueries().getCount());
+        assertEquals(0, metrics.getExtendedQueries().getCount());
+    }
+
+    @Test
+    public void splits_simple_and_extended_protocol() {
+        client('P', "", "SELECT $1", "");
+        client('B', "", "", "");
+        client('E', "", "");
+        client('S');
+        client('Q', "SELECT 1");
+        server('Z', "I");
+        server('Z', "I");
+        assertEquals(1, metrics.getSimpleQueries().getCount());
+        assertEquals(1, metrics.getExtendedQueries().getCount());
+    }
+
+    @Test
+    public void keeps_pipelined_requests_in_order() {
+        for (int i = 0; i < PIPELINED; i++) {
+            client('S');
+        }
+        client('Q', "SELECT 1");
+        for (int i = 0; i <= PIPELINED; i++) {
+            server('Z', "I");
+        }
+        client('Q', "SELECT 1");
+        server('Z', "I");
+        assertEquals(1, metrics.getSimpleQueries().getCount());
+        assertEquals(MAX_PENDING, metrics.getExtendedQueries().getCount());
+    }
+
+    @Test
+    public void records_statement_statistics() {
+        client('Q', "SELECT * FROM t WHERE id = 42");
+        server('D', "row");
+        server('D', "row");
+        server('C', "SELECT 2");
+        server('Z', "I");
+        client('P', "S_1", "INSERT INTO t VALUES ($1)", "");
+        client('B', "", "S_1", "");
+        client('E', "", "");
+        client('S');
+        client('B', "", "S_1", "");
+        client('E', "", "");
+        client('S');
+        server('C', "INSERT 0 1");
+        server('Z', "I");
+        server('C', "INSERT 0 1");
+        server('Z', "I");
+        final List<QueryStatistic> top = metrics.getQueryStatistics()
+                .top(10, Comparator.comparing(QueryStatistic::getFingerprint));
+        assertEquals(2, top.size());
+        assertEquals("INSERT INTO t VALUES (?)", top.get(0).getFingerprint());
+        assertEquals(2, top.get(0).getCalls());
+        assertEquals(2, top.get(0).getRows());
+        assertEquals("SELECT * FROM t WHERE id = ?", top.get(1).getFingerprint());
+        assertEquals(1, top.get(1).getCalls());
+        assertEquals(2, top.get(1).getRows());
+    }
+
+    @Test
+    public void does_not_allocate_without_statistics() {
+        final ProxyMetrics disabled = new ProxyMetrics(new MetricsConfig(0, 1));
+        final QueryTracker untracked = new QueryTracker(disabled);
+        final TypedFrame[] requests = {
+                frame('P', "S_1", "SELECT $1", ""),
+                frame('B', "", "S_1", ""),
+                frame('E', "", ""),
+                frame('S'),
+                frame('C', "SS_1"),
+                frame('Q', "SELECT 1")
+        };
+        final TypedFrame[] responses = {frame('C', "SELECT 1"), frame('Z', "I")};
+        final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        long allocated = 0;
+        // Only the second run is measured, after the first one warmed up
+        for (int run = 0; run < 2; run++) {
+            allocated = threads.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < ITERATIONS; i++) {
+                for (final TypedFrame request : requests) {
+                    untracked.clientFrame(request);
+                }
+                for (final TypedFrame response : responses) {
+                    untracked.serverFrame(response);
+                    untracked.serverFrame(response);
+                }
+            }
+            allocated = threads.getThreadAllocatedBytes(threadId) - allocated;
+        }
+        assertEquals(2 * ITERATIONS, disabled.getSimpleQueries().getCount());
+        assertEquals(2 * ITERATIONS, disabled.getExtendedQueries().getCount());
+        assertTrue("Allocated " + allocated + " bytes", allocated < ITERATIONS);
+    }
+
+    private void client(final char type, final String... strings) {
+        tracker.clientFrame(frame(type, strings));
+    }
+
+    private void server(final char type, final String... strings) {
+        tracker.serverFrame(frame(type, strings));
+    }
+
+    private TypedFrame frame(final char type, final String... strings) {
+        final ByteBuf payload = Unpooled.buffer();
+        for (final String string : strings) {
+            payload.writeCharSequence(string, UTF_8);
+            payload.writeByte(0);
+        }
+        final TypedFrame frame = TypedFrame.of(UnpooledByteBufAllocator.DEFAULT, type, payload);
+        frames.add(frame);
+        return frame;
+    }
+}
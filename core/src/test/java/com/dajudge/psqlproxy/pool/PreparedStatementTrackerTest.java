@@ -0,0 +1,153 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.pool;
+
+import com.dajudge.psqlproxy.protocol.frames.TypedFrame;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+public class PreparedStatementTrackerTest {
+    private static final String SQL = "SELECT * FROM t WHERE id = $1";
+
+    private final EmbeddedChannel client = new EmbeddedChannel();
+    private final EmbeddedChannel serverChannel1 = new EmbeddedChannel();
+    private final EmbeddedChannel serverChannel2 = new EmbeddedChannel();
+    private final ServerConnection server1 = new ServerConnection(serverChannel1);
+    private final ServerConnection server2 = new ServerConnection(serverChannel2);
+    private final PreparedStatementTracker tracker = new PreparedStatementTracker(client, 2);
+
+    @After
+    public void close() {
+        client.finishAndReleaseAll();
+        serverChannel1.finishAndReleaseAll();
+        serverChannel2.finishAndReleaseAll();
+    }
+
+    @Test
+    public void prepares_statement_on_other_server_connection() {
+        send(server1, 'P', "S_1", SQL, "");
+        send(server1, 'S');
+        assertEquals("P psqlproxy_ S", sent(serverChannel1));
+        relay('1', 'Z');
+        assertEquals("1 Z", received());
+
+        send(server2, 'B', "", "S_1", "");
+        send(server2, 'E', "", "");
+        send(server2, 'S');
+        assertEquals("P psqlproxy_ B psqlproxy_ E S", sent(serverChannel2));
+        relay('1', '2', 'C', 'Z');
+        assertEquals("2 C Z", received());
+    }
+
+    @Test
+    public void answers_parse_of_existing_statement() {
+        send(server1, 'P', "S_1", SQL, "");
+        send(server1, 'S');
+        relay('1', 'Z');
+        received();
+
+        send(server1, 'P', "S_2", SQL, "");
+        send(server1, 'B', "", "S_2", "");
+        send(server1, 'S');
+        assertEquals("P psqlproxy_ S B psqlproxy_ S", sent(serverChannel1));
+        relay('2', 'Z');
+        assertEquals("1 2 Z", received());
+        send(server1, 'C', "SS_2");
+        assertEquals("3", received());
+    }
+
+    @Test
+    public void skips_to_sync_after_error() {
+        send(server1, 'P', "S_1", "SELEC", "");
+        send(server1, 'P', "S_2", "SELEC", "");
+        send(server1, 'B', "", "S_1", "");
+        send(server1, 'S');
+        assertEquals("P psqlproxy_ B psqlproxy_ S", sent(serverChannel1));
+        relay('E', 'Z');
+        assertEquals("E Z", received());
+
+        send(server1, 'P', "S_1", "SELEC", "");
+        send(server1, 'S');
+        assertEquals("P psqlproxy_ S", sent(serverChannel1));
+    }
+
+    @Test
+    public void evicts_least_recently_used_statements() {
+        for (int i = 1; i <= 3; i++) {
+            send(server1, 'P', "S_" + i, "SELECT " + i, "");
+        }
+        send(server1, 'S');
+        assertEquals("P psqlproxy_ P psqlproxy_ C Spsqlproxy_ P psqlproxy_ S", sent(serverChannel1));
+        relay('1', '1', '3', '1', 'Z');
+        assertEquals("1 1 1 Z", received());
+    }
+
+    private void send(final ServerConnection server, final char type, final String... strings) {
+        tracker.send(server, frame(type, strings).content());
+    }
+
+    private void relay(final char... types) {
+        for (final char type : types) {
+            tracker.relay(frame(type));
+        }
+    }
+
+    private String received() {
+        final List<String> types = new ArrayList<>();
+        for (ByteBuf frame = client.readOutbound(); frame != null; frame = client.readOutbound()) {
+            types.add(String.valueOf((char) frame.getByte(frame.readerIndex())));
+            frame.release();
+        }
+        return String.join(" ", types);
+    }
+
+    private static String sent(final EmbeddedChannel server) {
+        final List<String> frames = new ArrayList<>();
+        for (ByteBuf frame = server.readOutbound(); frame != null; frame = server.readOutbound()) {
+            // The name follows the portal name in Bind frames, the test's portals are unnamed
+            final int nameIndex = frame.readerIndex() + TypedFrame.HEADER_SIZE
+                    + (frame.getByte(frame.readerIndex()) == 'B' ? 1 : 0);
+            final String name = frame.toString(nameIndex, Math.min(11, frame.writerIndex() - nameIndex), UTF_8);
+            final char type = (char) frame.getByte(frame.readerIndex());
+            frames.add(name.startsWith("psqlproxy_") || name.startsWith("Spsqlproxy_")
+                    ? type + " " + name.substring(0, name.indexOf('_') + 1)
+                    : String.valueOf(type));
+            frame.release();
+        }
+        return String.join(" ", frames);
+    }
+
+    private static TypedFrame frame(final char type, final String... strings) {
+        final ByteBuf payload = Unpooled.buffer();
+        for (final String string : strings) {
+            payload.writeCharSequence(string, UTF_8);
+            payload.writeByte(0);
+        }
+        return TypedFrame.of(UnpooledByteBufAllocator.DEFAULT, type, payload);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.protocol;
+
+import com.dajudge.psqlproxy.metrics.ProxyMetrics;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.After;
+import org.junit.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class DownstreamSslActivationHandlerTest {
+    private static final ByteBuf SSL_REQUEST = Unpooled.buffer().writeInt(8).writeShort(1234).writeShort(5679);
+
+    private final DownstreamSslContext sslContext = new DownstreamSslContext(new PostgresSslConfig(
+            false,
+            null,
+            false,
+            "localhost",
+            location -> null
+    ), 5432);
+    private final FlushCounter flushes = new FlushCounter();
+    private final EmbeddedChannel channel = new EmbeddedChannel(
+            flushes,
+            new DownstreamSslActivationHandler(sslContext, new ProxyMetrics())
+    );
+
+    @After
+    public void closeSslContext() {
+        channel.finishAndReleaseAll();
+        sslContext.close();
+    }
+
+    @Test
+    public void requests_ssl_before_first_message() {
+        channel.write(message("startup"));
+        channel.write(message("query"));
+        assertOutbound(SSL_REQUEST);
+        assertNull(channel.readOutbound());
+        assertEquals(1, flushes.getCount());
+    }
+
+    @Test
+    public void writes_buffered_messages_with_one_flush_when_ssl_is_denied() {
+        channel.write(message("startup"));
+        channel.write(message("query"));
+        assertOutbound(SSL_REQUEST);
+        channel.writeInbound(Unpooled.buffer().writeByte('N'));
+        assertOutbound(message("startup"));
+        assertOutbound(message("query"));
+        assertNull(channel.readOutbound());
+        assertEquals(2, flushes.getCount());
+        assertNull(channel.pipeline().get(DownstreamSslActivationHandler.class));
+    }
+
+    private void assertOutbound(final ByteBuf expected) {
+        final ByteBuf actual = channel.readOutbound();
+        assertEquals(expected, actual);
+        actual.release();
+    }
+
+    private static ByteBuf message(final String text) {
+        return Unpooled.copiedBuffer(text, UTF_8);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.protocol;
+
+import com.dajudge.psqlproxy.testutil.TestCertificateAuthority;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.handler.ssl.SslContext;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.security.KeyStore;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DownstreamSslContextTest {
+    private static final String TRUSTSTORE = "truststore";
+    private static final String TRUSTSTORE_PASSWORD = "truststore-password";
+    private static final String PASSWORD = "changeit";
+    private static final int UPDATE_INTERVAL_MSECS = 10;
+    private static final long TIMEOUT_MSECS = 10000;
+
+    private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+
+    @Test
+    public void reuses_context_while_truststore_is_unchanged() throws Exception {
+        files.put(TRUSTSTORE, newTrustStore("CN=first-ca"));
+        files.put(TRUSTSTORE_PASSWORD, PASSWORD.getBytes(UTF_8));
+        try (final DownstreamSslContext sslContext = newSslContext()) {
+            final SslContext initial = sslContext.getSslContext();
+            assertNotSame(
+                    sslContext.newHandler(UnpooledByteBufAllocator.DEFAULT).engine(),
+                    sslContext.newHandler(UnpooledByteBufAllocator.DEFAULT).engine()
+            );
+            Thread.sleep(UPDATE_INTERVAL_MSECS * 10);
+            assertSame(initial, sslContext.getSslContext());
+        }
+    }
+
+    @Test
+    public void reloads_changed_truststore() throws Exception {
+        files.put(TRUSTSTORE, newTrustStore("CN=first-ca"));
+        files.put(TRUSTSTORE_PASSWORD, PASSWORD.getBytes(UTF_8));
+        try (final DownstreamSslContext sslContext = newSslContext()) {
+            final SslContext initial = sslContext.getSslContext();
+            files.put(TRUSTSTORE, newTrustStore("CN=second-ca"));
+            assertTrue("Truststore was not reloaded", awaitContextChange(sslContext, initial));
+        }
+    }
+
+    @Test
+    public void keeps_context_when_truststore_becomes_unreadable() throws Exception {
+        files.put(TRUSTSTORE, newTrustStore("CN=first-ca"));
+        files.put(TRUSTSTORE_PASSWORD, PASSWORD.getBytes(UTF_8));
+        try (final DownstreamSslContext sslContext = newSslContext()) {
+            final SslContext initial = sslContext.getSslContext();
+            files.put(TRUSTSTORE, "garbage".getBytes(UTF_8));
+            Thread.sleep(UPDATE_INTERVAL_MSECS * 10);
+            assertSame(initial, sslContext.getSslContext());
+        }
+    }
+
+    @Test
+    public void loads_truststore_when_created() throws Exception {
+        files.put(TRUSTSTORE, newTrustStore("CN=first-ca"));
+        files.put(TRUSTSTORE_PASSWORD, PASSWORD.getBytes(UTF_8));
+        try (final DownstreamSslContext sslContext = newSslContext(0)) {
+            files.clear();
+            assertNotNull(sslContext.newHandler(UnpooledByteBufAllocator.DEFAULT));
+        }
+    }
+
+    @Test
+    public void keeps_truststore_without_update_interval() throws Exception {
+        files.put(TRUSTSTORE, newTrustStore("CN=first-ca"));
+        files.put(TRUSTSTORE_PASSWORD, PASSWORD.getBytes(UTF_8));
+        try (final DownstreamSslContext sslContext = newSslContext(0)) {
+            final SslContext initial = sslContext.getSslContext();
+            files.put(TRUSTSTORE, newTrustStore("CN=second-ca"));
+            Thread.sleep(UPDATE_INTERVAL_MSECS * 10);
+            assertSame(initial, sslContext.getSslContext());
+        }
+    }
+
+    private DownstreamSslContext newSslContext() {
+        return newSslContext(UPDATE_INTERVAL_MSECS);
+    }
+
+    private DownstreamSslContext newSslContext(final int updateIntervalMsecs) {
+        return new DownstreamSslContext(new PostgresSslConfig(
+                true,
+                new TrustStoreConfig(TRUSTSTORE, TRUSTSTORE_PASSWORD, "pkcs12", updateIntervalMsecs),
+                true,
+                "localhost",
+                files::get
+        ), 5432);
+    }
+
+    private static boolean awaitContextChange(
+            final DownstreamSslContext sslContext,
+            final SslContext initial
+    ) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MSECS;
+        while (System.currentTimeMillis() < deadline) {
+            if (sslContext.getSslContext() != initial) {
+                return true;
+            }
+            Thread.sleep(UPDATE_INTERVAL_MSECS);
+        }
+        return false;
+    }
+
+    private static byte[] newTrustStore(final String issuerDn) throws Exception {
+        final KeyStore trustStore = new TestCertificateAuthority(issuerDn, "pkcs12").getTrustStore();
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        trustStore.store(bos, PASSWORD.toCharArray());
+        return bos.toByteArray();
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.protocol;
+
+import com.dajudge.psqlproxy.protocol.frames.UntypedFrame;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class UpstreamSslRejectHandlerTest {
+    private final FlushCounter flushes = new FlushCounter();
+    private final EmbeddedChannel channel = new EmbeddedChannel(flushes, new UpstreamSslRejectHandler());
+
+    @Test
+    public void rejects_ssl_request_with_one_flush() {
+        final UntypedFrame request = frame(Unpooled.buffer().writeShort(1234).writeShort(5679));
+        channel.writeInbound(request);
+        final ByteBuf reply = channel.readOutbound();
+        assertEquals(Unpooled.wrappedBuffer(new byte[]{'N'}), reply);
+        assertNull(channel.readOutbound());
+        assertEquals(1, flushes.getCount());
+        assertEquals(0, request.refCnt());
+        reply.release();
+    }
+
+    @Test
+    public void passes_startup_message() {
+        final UntypedFrame startup = frame(Unpooled.buffer().writeShort(3).writeShort(0).writeByte(0));
+        channel.writeInbound(startup);
+        assertSame(startup, channel.readInbound());
+        assertNull(channel.readOutbound());
+        assertEquals(0, flushes.getCount());
+        assertNull(channel.pipeline().get(UpstreamSslRejectHandler.class));
+        startup.release();
+    }
+
+    private static UntypedFrame frame(final ByteBuf payload) {
+        return UntypedFrame.of(UnpooledByteBufAllocator.DEFAULT, payload);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.protocol;
+
+import com.dajudge.psqlproxy.protocol.exception.ProtocolErrorException;
+import com.dajudge.psqlproxy.protocol.messages.StartupMessage;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class UpstreamStartupHandlerTest {
+    private static final ByteBuf USERNAME = UpstreamStartupHandler.encodeUsername("pröxy");
+
+    @Test
+    public void replaces_user() {
+        assertEquals(
+                Arrays.asList("database", "db", "user", "pröxy", "application_name", "app"),
+                replaceUser(Arrays.asList("database", "db", "user", "client", "application_name", "app"))
+        );
+    }
+
+    @Test
+    public void replaces_user_at_end() {
+        assertEquals(
+                Arrays.asList("database", "db", "user", "pröxy"),
+                replaceUser(Arrays.asList("database", "db", "user", "a-much-longer-client-username"))
+        );
+    }
+
+    @Test
+    public void adds_missing_user() {
+        assertEquals(
+                Arrays.asList("database", "db", "user", "pröxy"),
+                replaceUser(Arrays.asList("database", "db"))
+        );
+    }
+
+    @Test
+    public void releases_frame() {
+        final ByteBuf frame = frame(Arrays.asList("user", "client"));
+        UpstreamStartupHandler.replaceUser(ByteBufAllocator.DEFAULT, frame, USERNAME).release();
+        assertEquals(0, frame.refCnt());
+        assertEquals("user\0pröxy\0", USERNAME.toString(UTF_8));
+    }
+
+    @Test
+    public void rejects_unterminated_parameters() {
+        final ByteBuf frame = frame(Arrays.asList("user", "client"));
+        final ByteBuf truncated = frame.retainedSlice(0, frame.readableBytes() - 2);
+        frame.release();
+        try {
+            UpstreamStartupHandler.replaceUser(ByteBufAllocator.DEFAULT, truncated, USERNAME).release();
+            fail("Expected protocol error");
+        } catch (final ProtocolErrorException e) {
+            assertEquals(0, truncated.refCnt());
+        }
+    }
+
+    private static List<String> replaceUser(final List<String> params) {
+        final ByteBuf result = UpstreamStartupHandler.replaceUser(ByteBufAllocator.DEFAULT, frame(params), USERNAME);
+        try {
+            assertEquals(result.readableBytes(), result.readInt());
+            return new StartupMessage(result).getParams();
+        } finally {
+            result.release();
+        }
+    }
+
+    private static ByteBuf frame(final List<String> params) {
+        final ByteBuf payload = new StartupMessage((short) 3, (short) 0, params).serialize(ByteBufAllocator.DEFAULT);
+        final ByteBuf frame = Unpooled.buffer().writeInt(payload.readableBytes() + 4).writeBytes(payload);
+        payload.release();
+        return frame;
+    }
+}
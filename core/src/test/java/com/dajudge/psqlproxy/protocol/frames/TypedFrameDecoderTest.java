@@ -0,0 +1,150 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.protocol.frames;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TypedFrameDecoderTest {
+    private static final int SMALL_PAYLOAD = 10;
+    private static final int LARGE_PAYLOAD = 1000;
+    private static final int FRAGMENT = 300;
+    private static final int THRESHOLD = 100;
+
+    @Test
+    public void holds_back_incomplete_frames_by_default() {
+        final EmbeddedChannel channel = new EmbeddedChannel(new TypedFrameDecoder());
+        final ByteBuf frame = frame('D', LARGE_PAYLOAD);
+        channel.writeInbound(frame.readRetainedSlice(FRAGMENT));
+        assertNull(channel.readInbound());
+        channel.writeInbound(frame);
+        final TypedFrame decoded = channel.readInbound();
+        assertEquals('D', decoded.getType());
+        assertEquals(LARGE_PAYLOAD, decoded.getPayload().readableBytes());
+        decoded.release();
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void decodes_frame_with_split_header() {
+        final EmbeddedChannel channel = new EmbeddedChannel(new TypedFrameDecoder());
+        final ByteBuf frame = frame('C', SMALL_PAYLOAD);
+        channel.writeInbound(frame.readRetainedSlice(1));
+        assertNull(channel.readInbound());
+        channel.writeInbound(frame.readRetainedSlice(2));
+        assertNull(channel.readInbound());
+        channel.writeInbound(frame);
+        assertFrame('C', SMALL_PAYLOAD, channel.readInbound());
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void decodes_frame_split_across_reads() {
+        final EmbeddedChannel channel = new EmbeddedChannel(new TypedFrameDecoder());
+        final ByteBuf frame = frame('D', LARGE_PAYLOAD);
+        while (frame.readableBytes() > FRAGMENT) {
+            channel.writeInbound(frame.readRetainedSlice(FRAGMENT));
+            assertNull(channel.readInbound());
+        }
+        channel.writeInbound(frame);
+        assertFrame('D', LARGE_PAYLOAD, channel.readInbound());
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void decodes_several_frames_from_one_buffer() {
+        final EmbeddedChannel channel = new EmbeddedChannel(new TypedFrameDecoder());
+        final ByteBuf frames = Unpooled.wrappedBuffer(
+                frame('T', SMALL_PAYLOAD),
+                frame('D', LARGE_PAYLOAD),
+                frame('Z', 1)
+        );
+        // Plus the first byte of the next frame
+        channel.writeInbound(Unpooled.wrappedBuffer(frames, frame('C', SMALL_PAYLOAD).slice(0, 1)));
+        assertFrame('T', SMALL_PAYLOAD, channel.readInbound());
+        assertFrame('D', LARGE_PAYLOAD, channel.readInbound());
+        assertFrame('Z', 1, channel.readInbound());
+        assertNull(channel.readInbound());
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void streams_incomplete_large_frames() {
+        final TypedFrameDecoder decoder = new TypedFrameDecoder();
+        decoder.enableStreaming(THRESHOLD);
+        final EmbeddedChannel channel = new EmbeddedChannel(decoder);
+        final ByteBuf frame = frame('D', LARGE_PAYLOAD);
+        final int frameSize = frame.readableBytes();
+        final ByteBuf next = frame('C', 4);
+        long streamed = 0;
+        while (frame.isReadable()) {
+            channel.writeInbound(frame.readRetainedSlice(Math.min(FRAGMENT, frame.readableBytes())));
+            final Object fragment = channel.readInbound();
+            assertTrue(fragment instanceof ByteBuf);
+            streamed += ((ByteBuf) fragment).readableBytes();
+            ((ByteBuf) fragment).release();
+        }
+        frame.release();
+        assertEquals(frameSize, streamed);
+        channel.writeInbound(next);
+        final TypedFrame decoded = channel.readInbound();
+        assertEquals('C', decoded.getType());
+        decoded.release();
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void emits_complete_frames_while_streaming() {
+        final TypedFrameDecoder decoder = new TypedFrameDecoder();
+        decoder.enableStreaming(THRESHOLD);
+        final EmbeddedChannel channel = new EmbeddedChannel(decoder);
+        channel.writeInbound(frame('D', LARGE_PAYLOAD));
+        final TypedFrame decoded = channel.readInbound();
+        assertEquals(LARGE_PAYLOAD, decoded.getPayload().readableBytes());
+        decoded.release();
+        assertFalse(channel.finish());
+    }
+
+    private static void assertFrame(final char type, final int payloadSize, final TypedFrame frame) {
+        assertEquals(type, frame.getType());
+        final ByteBuf payload = frame.getPayload();
+        assertEquals(payloadSize, payload.readableBytes());
+        for (int i = 0; i < payloadSize; i++) {
+            assertEquals((byte) (type + i), payload.getByte(payload.readerIndex() + i));
+        }
+        frame.release();
+    }
+
+    // The payload bytes depend on the type and position, so mixed up frames are noticed
+    private static ByteBuf frame(final char type, final int payloadSize) {
+        final ByteBuf frame = Unpooled.buffer(TypedFrame.HEADER_SIZE + payloadSize);
+        frame.writeByte(type);
+        frame.writeInt(payloadSize + 4);
+        for (int i = 0; i < payloadSize; i++) {
+            frame.writeByte(type + i);
+        }
+        return frame;
+    }
+}
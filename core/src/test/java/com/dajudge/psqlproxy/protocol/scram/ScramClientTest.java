@@ -0,0 +1,58 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.protocol.scram;
+
+import com.dajudge.psqlproxy.protocol.exception.ProtocolErrorException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ScramClientTest {
+    // Test vector from RFC 7677, section 3
+    private static final String USERNAME = "user";
+    private static final String PASSWORD = "pencil";
+    private static final String CLIENT_NONCE = "rOprNGfwEbeRWgbNEkqO";
+    private static final String SERVER_FIRST_MESSAGE = "r=rOprNGfwEbeRWgbNEkqO%hvYDpWUa2RaTCAfuxFIlj)hNlF$k0,"
+            + "s=W22ZaJ0SNY7soEsUEjb6gQ==,i=4096";
+    private static final String CLIENT_FINAL_MESSAGE = "c=biws,r=rOprNGfwEbeRWgbNEkqO%hvYDpWUa2RaTCAfuxFIlj)hNlF$k0,"
+            + "p=dHzbZapWIk4jUhN+Ute9ytag9zjfMHgsqmmiz7AndVQ=";
+    private static final String SERVER_FINAL_MESSAGE = "v=6rriTRBi23WpRR/wtup+mMhUZUn/dB5nLTJRsjl95G4=";
+
+    @Test
+    public void authenticates_with_rfc_7677_test_vector() {
+        final ScramClient client = new ScramClient(USERNAME, CLIENT_NONCE);
+        assertEquals("n,,n=user,r=rOprNGfwEbeRWgbNEkqO", client.clientFirstMessage());
+        client.serverFirstMessage(SERVER_FIRST_MESSAGE);
+        final ScramKeys keys = ScramKeys.derive(PASSWORD, client.getSalt(), client.getIterations());
+        assertEquals(CLIENT_FINAL_MESSAGE, client.clientFinalMessage(keys));
+        client.serverFinalMessage(SERVER_FINAL_MESSAGE);
+    }
+
+    @Test(expected = ProtocolErrorException.class)
+    public void rejects_wrong_server_signature() {
+        final ScramClient client = new ScramClient(USERNAME, CLIENT_NONCE);
+        client.serverFirstMessage(SERVER_FIRST_MESSAGE);
+        client.clientFinalMessage(ScramKeys.derive("wrong", client.getSalt(), client.getIterations()));
+        client.serverFinalMessage(SERVER_FINAL_MESSAGE);
+    }
+
+    @Test(expected = ProtocolErrorException.class)
+    public void rejects_foreign_server_nonce() {
+        new ScramClient(USERNAME, CLIENT_NONCE).serverFirstMessage("r=other,s=W22ZaJ0SNY7soEsUEjb6gQ==,i=4096");
+    }
+}
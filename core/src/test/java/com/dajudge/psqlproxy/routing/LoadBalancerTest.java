@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.routing;
+
+import com.dajudge.proxybase.config.Endpoint;
+import com.dajudge.psqlproxy.metrics.EndpointMetrics;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class LoadBalancerTest {
+    private final EndpointMetrics first = new EndpointMetrics("default", "replica", new Endpoint("first", 5432));
+    private final EndpointMetrics second = new EndpointMetrics("default", "replica", new Endpoint("second", 5432));
+    private final EndpointMetrics third = new EndpointMetrics("default", "replica", new Endpoint("third", 5432));
+    private final List<EndpointMetrics> endpoints = Arrays.asList(first, second, third);
+
+    @Test
+    public void round_robin_takes_turns() {
+        final LoadBalancer balancer = new LoadBalancer(BalancingPolicy.ROUND_ROBIN);
+        final Set<Integer> picked = new HashSet<>();
+        for (int i = 0; i < endpoints.size(); i++) {
+            picked.add(balancer.pick(endpoints));
+        }
+        assertEquals(3, picked.size());
+    }
+
+    @Test
+    public void skips_unhealthy_endpoints() {
+        fail(second);
+        fail(third);
+        for (final BalancingPolicy policy : BalancingPolicy.values()) {
+            final LoadBalancer balancer = new LoadBalancer(policy);
+            for (int i = 0; i < endpoints.size(); i++) {
+                assertEquals(0, balancer.pick(endpoints));
+            }
+        }
+        fail(first);
+        assertEquals(LoadBalancer.NONE, new LoadBalancer(BalancingPolicy.EWMA).pick(endpoints));
+    }
+
+    @Test
+    public void recovers_after_successful_connection() {
+        fail(first);
+        assertFalse(first.isHealthy(System.nanoTime()));
+        first.connectionOpened();
+        assertEquals(0, new LoadBalancer(BalancingPolicy.ROUND_ROBIN).pick(Arrays.asList(first)));
+    }
+
+    @Test
+    public void least_connections_picks_least_busy() {
+        first.transactionStarted();
+        first.transactionStarted();
+        third.transactionStarted();
+        final LoadBalancer balancer = new LoadBalancer(BalancingPolicy.LEAST_CONNECTIONS);
+        for (int i = 0; i < endpoints.size(); i++) {
+            assertEquals(1, balancer.pick(endpoints));
+        }
+        second.transactionStarted();
+        first.transactionFinished();
+        first.transactionFinished();
+        assertEquals(0, balancer.pick(endpoints));
+    }
+
+    @Test
+    public void ewma_avoids_slow_endpoint() {
+        first.recordLatency(MILLISECONDS.toNanos(1));
+        second.recordLatency(MILLISECONDS.toNanos(10));
+        third.recordLatency(MILLISECONDS.toNanos(2));
+        final LoadBalancer balancer = new LoadBalancer(BalancingPolicy.EWMA);
+        for (int i = 0; i < endpoints.size(); i++) {
+            assertEquals(0, balancer.pick(endpoints));
+        }
+        // Weighted by the transactions in progress
+        first.transactionStarted();
+        first.transactionStarted();
+        assertEquals(2, balancer.pick(endpoints));
+    }
+
+    private static void fail(final EndpointMetrics endpoint) {
+        for (int i = 0; i < 3; i++) {
+            endpoint.connectFailed();
+        }
+    }
+}
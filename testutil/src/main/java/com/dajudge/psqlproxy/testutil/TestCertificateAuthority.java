@@ -159,7 +159,7 @@ public class TestCertificateAuthority {
         return trustStore;
     }
 
-    static class ServerKeyPair {
+    public static class ServerKeyPair {
         private final KeyPair keyPair;
         private final X509Certificate cert;
 
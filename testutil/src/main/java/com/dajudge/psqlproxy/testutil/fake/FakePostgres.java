@@ -0,0 +1,183 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.testutil.fake;
+
+import com.dajudge.psqlproxy.testutil.TestCertificateAuthority;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.util.concurrent.GlobalEventExecutor;
+
+import javax.net.ssl.SSLException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.GeneralSecurityException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An in-process stand-in for a PostgreSQL server, answering every <code>SELECT</code> with the configured rows.
+ */
+public class FakePostgres implements AutoCloseable {
+    private static final TestCertificateAuthority CERTIFICATE_AUTHORITY = new TestCertificateAuthority(
+            "CN=fake-ca",
+            "pkcs12"
+    );
+    private final FakePostgresConfig config;
+    private final EventLoopGroup eventLoopGroup;
+    private final Channel serverChannel;
+    private final Optional<SslContext> sslContext;
+    private final FakeScramVerifier scramVerifier;
+    private final ByteBuf dataRow;
+    private final LongAdder connections = new LongAdder();
+    private final LongAdder openConnections = new LongAdder();
+    private final LongAdder queries = new LongAdder();
+    private final ChannelGroup sessions = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+    private volatile boolean reading = true;
+
+    public FakePostgres(final FakePostgresConfig config) {
+        this(config, 0);
+    }
+
+    public FakePostgres(final FakePostgresConfig config, final int port) {
+        this.config = config;
+        this.sslContext = config.isSslEnabled() ? Optional.of(createSslContext()) : Optional.empty();
+        this.scramVerifier = new FakeScramVerifier(config.getPassword());
+        this.dataRow = Unpooled.unreleasableBuffer(createDataRow(config.getRowSize()));
+        this.eventLoopGroup = new NioEventLoopGroup();
+        this.serverChannel = new ServerBootstrap()
+                .group(eventLoopGroup)
+                .channel(NioServerSocketChannel.class)
+                .option(ChannelOption.SO_BACKLOG, 1024)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(final SocketChannel ch) {
+                        connections.increment();
+                        openConnections.increment();
+                        ch.closeFuture().addListener(future -> openConnections.decrement());
+                        ch.config().setAutoRead(reading);
+                        sessions.add(ch);
+                        ch.pipeline().addLast(new FakeSession(FakePostgres.this));
+                    }
+                })
+                .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port))
+                .syncUninterruptibly()
+                .channel();
+    }
+
+    private static SslContext createSslContext() {
+        final TestCertificateAuthority.ServerKeyPair keyPair = CERTIFICATE_AUTHORITY.newServerKeyPair("CN=localhost");
+        try {
+            return SslContextBuilder.forServer(
+                    new ByteArrayInputStream(keyPair.getCertificate()),
+                    new ByteArrayInputStream(keyPair.getPrivateKey())
+            ).build();
+        } catch (final SSLException e) {
+            throw new IllegalStateException("Failed to create SSL context", e);
+        }
+    }
+
+    private static ByteBuf createDataRow(final int rowSize) {
+        final ByteBuf row = Unpooled.directBuffer(11 + rowSize);
+        row.writeByte('D');
+        row.writeInt(10 + rowSize);
+        row.writeShort(1);
+        row.writeInt(rowSize);
+        for (int i = 0; i < rowSize; i++) {
+            row.writeByte('x');
+        }
+        return row;
+    }
+
+    public byte[] getTrustStore(final String password) {
+        try {
+            final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            CERTIFICATE_AUTHORITY.getTrustStore().store(bos, password.toCharArray());
+            return bos.toByteArray();
+        } catch (final IOException | GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to store trust store", e);
+        }
+    }
+
+    public String getHost() {
+        return "localhost";
+    }
+
+    public int getPort() {
+        return ((InetSocketAddress) serverChannel.localAddress()).getPort();
+    }
+
+    public FakePostgresConfig getConfig() {
+        return config;
+    }
+
+    public long getConnections() {
+        return connections.sum();
+    }
+
+    public long getOpenConnections() {
+        return openConnections.sum();
+    }
+
+    public long getQueries() {
+        return queries.sum();
+    }
+
+    public void setReading(final boolean newReading) {
+        reading = newReading;
+        sessions.forEach(channel -> channel.config().setAutoRead(newReading));
+    }
+
+    Optional<SslContext> getSslContext() {
+        return sslContext;
+    }
+
+    FakeScramVerifier getScramVerifier() {
+        return scramVerifier;
+    }
+
+    ByteBuf getDataRow() {
+        return dataRow;
+    }
+
+    void queryExecuted() {
+        queries.increment();
+    }
+
+    @Override
+    public void close() {
+        serverChannel.close().syncUninterruptibly();
+        eventLoopGroup.shutdownGracefully(0, 0, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+}
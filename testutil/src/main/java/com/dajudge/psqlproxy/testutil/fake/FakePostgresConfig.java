@@ -0,0 +1,107 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.testutil.fake;
+
+/**
+ * The behavior of a {@link FakePostgres} server.
+ */
+public class FakePostgresConfig {
+    public static final FakePostgresConfig DEFAULT = new FakePostgresConfig(
+            "postgres",
+            "postgres",
+            FakeAuthMethod.MD5,
+            false,
+            1,
+            8,
+            0
+    );
+
+    private final String username;
+    private final String password;
+    private final FakeAuthMethod authMethod;
+    private final boolean sslEnabled;
+    private final int rows;
+    private final int rowSize;
+    private final long delayMillis;
+
+    public FakePostgresConfig(
+            final String username,
+            final String password,
+            final FakeAuthMethod authMethod,
+            final boolean sslEnabled,
+            final int rows,
+            final int rowSize,
+            final long delayMillis
+    ) {
+        this.username = username;
+        this.password = password;
+        this.authMethod = authMethod;
+        this.sslEnabled = sslEnabled;
+        this.rows = rows;
+        this.rowSize = rowSize;
+        this.delayMillis = delayMillis;
+    }
+
+    public FakePostgresConfig withCredentials(final String newUsername, final String newPassword) {
+        return new FakePostgresConfig(newUsername, newPassword, authMethod, sslEnabled, rows, rowSize, delayMillis);
+    }
+
+    public FakePostgresConfig withAuthMethod(final FakeAuthMethod newAuthMethod) {
+        return new FakePostgresConfig(username, password, newAuthMethod, sslEnabled, rows, rowSize, delayMillis);
+    }
+
+    public FakePostgresConfig withSsl(final boolean newSslEnabled) {
+        return new FakePostgresConfig(username, password, authMethod, newSslEnabled, rows, rowSize, delayMillis);
+    }
+
+    public FakePostgresConfig withRows(final int newRows, final int newRowSize) {
+        return new FakePostgresConfig(username, password, authMethod, sslEnabled, newRows, newRowSize, delayMillis);
+    }
+
+    public FakePostgresConfig withDelayMillis(final long newDelayMillis) {
+        return new FakePostgresConfig(username, password, authMethod, sslEnabled, rows, rowSize, newDelayMillis);
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public FakeAuthMethod getAuthMethod() {
+        return authMethod;
+    }
+
+    public boolean isSslEnabled() {
+        return sslEnabled;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getRowSize() {
+        return rowSize;
+    }
+
+    public long getDelayMillis() {
+        return delayMillis;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.testutil.fake;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The SCRAM-SHA-256 verifier of a user, derived once like PostgreSQL stores it, and the server side of the exchange.
+ * See <a href="https://tools.ietf.org/html/rfc5802">RFC 5802</a>.
+ */
+final class FakeScramVerifier {
+    static final String MECHANISM = "SCRAM-SHA-256";
+    private static final int ITERATIONS = 4096;
+    private static final int SALT_SIZE = 16;
+    private static final int NONCE_SIZE = 18;
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private final byte[] salt = new byte[SALT_SIZE];
+    private final byte[] storedKey;
+    private final byte[] serverKey;
+
+    FakeScramVerifier(final String password) {
+        RANDOM.nextBytes(salt);
+        try {
+            final byte[] saltedPassword = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256")
+                    .generateSecret(new PBEKeySpec(password.toCharArray(), salt, ITERATIONS, 256))
+                    .getEncoded();
+            storedKey = MessageDigest.getInstance("SHA-256").digest(hmac(saltedPassword, "Client Key"));
+            serverKey = hmac(saltedPassword, "Server Key");
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to derive SCRAM keys", e);
+        }
+    }
+
+    /**
+     * One client's exchange.
+     */
+    final class Exchange {
+        private String clientFirstBare;
+        private String serverFirstMessage;
+        private String nonce;
+
+        String serverFirst(final String clientFirst) {
+            // Skip the GS2 header, e.g. "n,,"
+            clientFirstBare = clientFirst.substring(clientFirst.indexOf(',', clientFirst.indexOf(',') + 1) + 1);
+            final byte[] serverNonce = new byte[NONCE_SIZE];
+            RANDOM.nextBytes(serverNonce);
+            nonce = attribute(clientFirstBare, "r=") + Base64.getEncoder().encodeToString(serverNonce);
+            serverFirstMessage = "r=" + nonce + ",s=" + Base64.getEncoder().encodeToString(salt) + ",i=" + ITERATIONS;
+            return serverFirstMessage;
+        }
+
+        String serverFinal(final String clientFinal) {
+            final int proofIndex = clientFinal.lastIndexOf(",p=");
+            if (proofIndex < 0 || !nonce.equals(attribute(clientFinal, "r="))) {
+                return null;
+            }
+            final String authMessage = clientFirstBare + "," + serverFirstMessage + "," + clientFinal.substring(0, proofIndex);
+            final byte[] clientKey = Base64.getDecoder().decode(clientFinal.substring(proofIndex + 3));
+            final byte[] clientSignature = hmac(storedKey, authMessage);
+            for (int i = 0; i < clientKey.length && i < clientSignature.length; i++) {
+                clientKey[i] ^= clientSignature[i];
+            }
+            try {
+                if (!MessageDigest.isEqual(storedKey, MessageDigest.getInstance("SHA-256").digest(clientKey))) {
+                    return null;
+                }
+            } catch (final GeneralSecurityException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+            return "v=" + Base64.getEncoder().encodeToString(hmac(serverKey, authMessage));
+        }
+    }
+
+    private static String attribute(final String message, final String prefix) {
+        for (final String attribute : message.split(",")) {
+            if (attribute.startsWith(prefix)) {
+                return attribute.substring(prefix.length());
+            }
+        }
+        return "";
+    }
+
+    private static byte[] hmac(final byte[] key, final String message) {
+        try {
+            final Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(new SecretKeySpec(key, HMAC_ALGORITHM));
+            return mac.doFinal(message.getBytes(UTF_8));
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to compute HMAC", e);
+        }
+    }
+}
@@ -0,0 +1,558 @@
+/*
+ * Copyright 2020 The psqlproxy developers (see CONTRIBUTORS)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.dajudge.psqlproxy.testutil.fake;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.util.ReferenceCountUtil;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * One client connection of a {@link FakePostgres} server, confined to its event loop.
+ */
+final class FakeSession extends ByteToMessageDecoder {
+    private static final int SSL_REQUEST_CODE = 80877103;
+    private static final int CANCEL_REQUEST_CODE = 80877102;
+    private static final int AUTH_OK = 0;
+    private static final int AUTH_MD5 = 5;
+    private static final int AUTH_SASL = 10;
+    private static final int AUTH_SASL_CONTINUE = 11;
+    private static final int AUTH_SASL_FINAL = 12;
+    private static final int TEXT_OID = 25;
+    private static final int INT_SIZE = 4;
+    private static final int TYPED_HEADER_SIZE = 5;
+    private static final int MD5_SALT_SIZE = 4;
+    private static final char IDLE = 'I';
+    private static final char IN_TRANSACTION = 'T';
+    // https://www.postgresql.org/docs/current/errcodes-appendix.html
+    private static final String SQLSTATE_INVALID_PASSWORD = "28P01";
+    private static final String SQLSTATE_INVALID_STATEMENT = "26000";
+
+    private enum State {
+        STARTUP,
+        PASSWORD,
+        SASL_INITIAL,
+        SASL_RESPONSE,
+        READY
+    }
+
+    private final FakePostgres server;
+    private final FakePostgresConfig config;
+    private final Map<String, String> statements = new HashMap<>();
+    private final Map<String, String> portals = new HashMap<>();
+    private final Map<String, String> startupSettings = new HashMap<>();
+    private final Map<String, String> settings = new HashMap<>();
+    private State state = State.STARTUP;
+    private String user = "";
+    private byte[] md5Salt;
+    private FakeScramVerifier.Exchange scram;
+    private char transactionStatus = IDLE;
+    private boolean failed;
+    private ByteBuf pending;
+
+    FakeSession(final FakePostgres server) {
+        this.server = server;
+        this.config = server.getConfig();
+    }
+
+    @Override
+    protected void decode(final ChannelHandlerContext ctx, final ByteBuf in, final List<Object> out) {
+        while (ctx.channel().isActive()) {
+            if (state == State.STARTUP) {
+                if (in.readableBytes() < INT_SIZE || in.readableBytes() < in.getInt(in.readerIndex())) {
+                    return;
+                }
+                final int length = in.readInt();
+                startup(ctx, in.readSlice(length - INT_SIZE));
+            } else {
+                if (in.readableBytes() < TYPED_HEADER_SIZE
+                        || in.readableBytes() < 1 + in.getInt(in.readerIndex() + 1)) {
+                    return;
+                }
+                final char type = (char) in.readByte();
+                final int length = in.readInt();
+                process(ctx, type, in.readSlice(length - INT_SIZE));
+            }
+        }
+    }
+
+    private void startup(final ChannelHandlerContext ctx, final ByteBuf payload) {
+        final int code = payload.readInt();
+        switch (code) {
+            case SSL_REQUEST_CODE:
+                final boolean ssl = server.getSslContext().isPresent();
+                ctx.writeAndFlush(ctx.alloc().buffer(1).writeByte(ssl ? 'S' : 'N'));
+                server.getSslContext().ifPresent(context -> ctx.pipeline().addFirst(context.newHandler(ctx.alloc())));
+                return;
+            case CANCEL_REQUEST_CODE:
+                ctx.close();
+                return;
+            default:
+                break;
+        }
+        final Map<String, String> params = new HashMap<>();
+        while (payload.isReadable() && payload.getByte(payload.readerIndex()) != 0) {
+            params.put(readString(payload), readString(payload));
+        }
+        user = params.getOrDefault("user", "");
+        params.forEach((name, value) -> {
+            if (!"user".equals(name) && !"database".equals(name) && !"options".equals(name)) {
+                startupSettings.put(name.toLowerCase(Locale.US), value);
+            }
+        });
+        settings.putAll(startupSettings);
+        switch (config.getAuthMethod()) {
+            case MD5:
+                md5Salt = new byte[MD5_SALT_SIZE];
+                ThreadLocalRandom.current().nextBytes(md5Salt);
+                final ByteBuf buffer = buffer(ctx);
+                final int index = begin(buffer, 'R');
+                buffer.writeInt(AUTH_MD5).writeBytes(md5Salt);
+                end(buffer, index);
+                state = State.PASSWORD;
+                break;
+            case SCRAM_SHA_256:
+                final ByteBuf sasl = buffer(ctx);
+                final int saslIndex = begin(sasl, 'R');
+                sasl.writeInt(AUTH_SASL);
+                writeString(sasl, FakeScramVerifier.MECHANISM);
+                sasl.writeByte(0);
+                end(sasl, saslIndex);
+                state = State.SASL_INITIAL;
+                break;
+            default:
+                authenticated(ctx);
+                break;
+        }
+        flush(ctx, false);
+    }
+
+    private void process(final ChannelHandlerContext ctx, final char type, final ByteBuf payload) {
+        switch (state) {
+            case PASSWORD:
+                password(ctx, payload);
+                return;
+            case SASL_INITIAL:
+                saslInitial(ctx, payload);
+                return;
+            case SASL_RESPONSE:
+                saslResponse(ctx, payload);
+                return;
+            default:
+                break;
+        }
+        if (failed && type != 'S') {
+            // After an error the server ignores everything up to the next Sync
+            return;
+        }
+        switch (type) {
+            case 'Q':
+                query(ctx, readString(payload));
+                break;
+            case 'P':
+                final String name = readString(payload);
+                statements.put(name, readString(payload));
+                message(ctx, '1');
+                break;
+            case 'B':
+                bind(ctx, payload);
+                break;
+            case 'D':
+                describe(ctx, payload);
+                break;
+            case 'E':
+                execute(ctx, readString(payload));
+                break;
+            case 'C':
+                final boolean statement = payload.readByte() == 'S';
+                (statement ? statements : portals).remove(readString(payload));
+                message(ctx, '3');
+                break;
+            case 'S':
+                failed = false;
+                readyForQuery(ctx);
+                flush(ctx, true);
+                break;
+            case 'H':
+                flush(ctx, false);
+                break;
+            case 'X':
+                ctx.close();
+                break;
+            default:
+                error(ctx, "08P01", "Unsupported message type: " + type);
+                break;
+        }
+    }
+
+    private void password(final ChannelHandlerContext ctx, final ByteBuf payload) {
+        final String expected = "md5" + md5Hex(concat(
+                md5Hex(concat(config.getPassword().getBytes(UTF_8), user.getBytes(UTF_8))).getBytes(UTF_8),
+                md5Salt
+        ));
+        if (config.getUsername().equals(user) && expected.equals(readString(payload))) {
+            authenticated(ctx);
+            flush(ctx, false);
+        } else {
+            authenticationFailed(ctx);
+        }
+    }
+
+    private void saslInitial(final ChannelHandlerContext ctx, final ByteBuf payload) {
+        if (!FakeScramVerifier.MECHANISM.equals(readString(payload)) || !config.getUsername().equals(user)) {
+            authenticationFailed(ctx);
+            return;
+        }
+        final int length = payload.readInt();
+        scram = server.getScramVerifier().new Exchange();
+        final ByteBuf buffer = buffer(ctx);
+        final int index = begin(buffer, 'R');
+        buffer.writeInt(AUTH_SASL_CONTINUE);
+        // SASL data is not null terminated
+        buffer.writeCharSequence(scram.serverFirst(payload.readCharSequence(length, UTF_8).toString()), UTF_8);
+        end(buffer, index);
+        state = State.SASL_RESPONSE;
+        flush(ctx, false);
+    }
+
+    private void saslResponse(final ChannelHandlerContext ctx, final ByteBuf payload) {
+        final String serverFinal = scram.serverFinal(payload.toString(UTF_8));
+        if (serverFinal == null) {
+            authenticationFailed(ctx);
+            return;
+        }
+        final ByteBuf buffer = buffer(ctx);
+        final int index = begin(buffer, 'R');
+        buffer.writeInt(AUTH_SASL_FINAL);
+        buffer.writeCharSequence(serverFinal, UTF_8);
+        end(buffer, index);
+        authenticated(ctx);
+        flush(ctx, false);
+    }
+
+    private void authenticated(final ChannelHandlerContext ctx) {
+        final ByteBuf buffer = buffer(ctx);
+        final int index = begin(buffer, 'R');
+        buffer.writeInt(AUTH_OK);
+        end(buffer, index);
+        parameterStatus(buffer, "server_version", "12.4");
+        parameterStatus(buffer, "server_encoding", "UTF8");
+        parameterStatus(buffer, "client_encoding", "UTF8");
+        parameterStatus(buffer, "DateStyle", "ISO, MDY");
+        parameterStatus(buffer, "TimeZone", "UTC");
+        parameterStatus(buffer, "integer_datetimes", "on");
+        parameterStatus(buffer, "standard_conforming_strings", "on");
+        parameterStatus(buffer, "is_superuser", "off");
+        final int keyIndex = begin(buffer, 'K');
+        buffer.writeInt(ThreadLocalRandom.current().nextInt()).writeInt(ThreadLocalRandom.current().nextInt());
+        end(buffer, keyIndex);
+        state = State.READY;
+        readyForQuery(ctx);
+    }
+
+    @SuppressWarnings(value = "PMD.NullAssignment") // The connection is closed
+    private void authenticationFailed(final ChannelHandlerContext ctx) {
+        error(ctx, SQLSTATE_INVALID_PASSWORD, "password authentication failed for user \"" + user + "\"");
+        final ByteBuf response = pending;
+        pending = null;
+        ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+    }
+
+    private void query(final ChannelHandlerContext ctx, final String sql) {
+        boolean empty = true;
+        for (final String statement : sql.split(";")) {
+            if (!statement.trim().isEmpty()) {
+                empty = false;
+                result(ctx, statement, true);
+            }
+        }
+        if (empty) {
+            message(ctx, 'I');
+        }
+        readyForQuery(ctx);
+        flush(ctx, true);
+    }
+
+    private void bind(final ChannelHandlerContext ctx, final ByteBuf payload) {
+        final String portal = readString(payload);
+        final String sql = statements.get(readString(payload));
+        if (sql == null) {
+            error(ctx, SQLSTATE_INVALID_STATEMENT, "prepared statement does not exist");
+            return;
+        }
+        portals.put(portal, sql);
+        message(ctx, '2');
+    }
+
+    private void describe(final ChannelHandlerContext ctx, final ByteBuf payload) {
+        final boolean statement = payload.readByte() == 'S';
+        final String sql = (statement ? statements : portals).get(readString(payload));
+        if (sql == null) {
+            error(ctx, SQLSTATE_INVALID_STATEMENT, "prepared statement or portal does not exist");
+            return;
+        }
+        if (statement) {
+            final ByteBuf buffer = buffer(ctx);
+            final int index = begin(buffer, 't');
+            buffer.writeShort(0);
+            end(buffer, index);
+        }
+        if (returnsRows(sql)) {
+            rowDescription(buffer(ctx));
+        } else {
+            message(ctx, 'n');
+        }
+    }
+
+    private void execute(final ChannelHandlerContext ctx, final String portal) {
+        final String sql = portals.get(portal);
+        if (sql == null) {
+            error(ctx, SQLSTATE_INVALID_STATEMENT, "portal does not exist");
+            return;
+        }
+        result(ctx, sql, false);
+    }
+
+    private void result(final ChannelHandlerContext ctx, final String sql, final boolean describe) {
+        server.queryExecuted();
+        final ByteBuf buffer = buffer(ctx);
+        final String keyword = keyword(sql);
+        final String tag;
+        switch (keyword) {
+            case "SELECT":
+                if (describe) {
+                    rowDescription(buffer);
+                }
+                final ByteBuf dataRow = server.getDataRow();
+                for (int i = 0; i < config.getRows(); i++) {
+                    buffer.writeBytes(dataRow, dataRow.readerIndex(), dataRow.readableBytes());
+                }
+                tag = "SELECT " + config.getRows();
+                break;
+            case "BEGIN":
+            case "START":
+                transactionStatus = IN_TRANSACTION;
+                tag = "BEGIN";
+                break;
+            case "COMMIT":
+            case "END":
+                transactionStatus = IDLE;
+                tag = "COMMIT";
+                break;
+            case "ROLLBACK":
+            case "ABORT":
+                transactionStatus = IDLE;
+                tag = "ROLLBACK";
+                break;
+            case "INSERT":
+                tag = "INSERT 0 1";
+                break;
+            case "SET":
+                settings.put(setting(sql), unquote(sql.split("\\s+(?i:TO)\\s+|=", 2)[1]));
+                tag = keyword;
+                break;
+            case "RESET":
+                final String name = setting(sql);
+                settings.remove(name);
+                Optional.ofNullable(startupSettings.get(name)).ifPresent(value -> settings.put(name, value));
+                tag = keyword;
+                break;
+            case "DISCARD":
+                settings.clear();
+                settings.putAll(startupSettings);
+                tag = "DISCARD ALL";
+                break;
+            case "SHOW":
+                if (describe) {
+                    rowDescription(buffer);
+                }
+                final String value = settings.getOrDefault(setting(sql), "");
+                final byte[] bytes = value.getBytes(UTF_8);
+                final int rowIndex = begin(buffer, 'D');
+                buffer.writeShort(1).writeInt(bytes.length).writeBytes(bytes);
+                end(buffer, rowIndex);
+                tag = keyword;
+                break;
+            case "UPDATE":
+            case "DELETE":
+                tag = keyword + " 1";
+                break;
+            default:
+                tag = keyword;
+                break;
+        }
+        final int index = begin(buffer, 'C');
+        writeString(buffer, tag);
+        end(buffer, index);
+    }
+
+    private void rowDescription(final ByteBuf buffer) {
+        final int index = begin(buffer, 'T');
+        buffer.writeShort(1);
+        writeString(buffer, "c");
+        buffer.writeInt(0).writeShort(0).writeInt(TEXT_OID).writeShort(-1).writeInt(-1).writeShort(0);
+        end(buffer, index);
+    }
+
+    private void readyForQuery(final ChannelHandlerContext ctx) {
+        final ByteBuf buffer = buffer(ctx);
+        final int index = begin(buffer, 'Z');
+        buffer.writeByte(transactionStatus);
+        end(buffer, index);
+    }
+
+    private void error(final ChannelHandlerContext ctx, final String sqlState, final String message) {
+        failed = state == State.READY;
+        final ByteBuf buffer = buffer(ctx);
+        final int index = begin(buffer, 'E');
+        buffer.writeByte('S');
+        writeString(buffer, state == State.READY ? "ERROR" : "FATAL");
+        buffer.writeByte('C');
+        writeString(buffer, sqlState);
+        buffer.writeByte('M');
+        writeString(buffer, message);
+        buffer.writeByte(0);
+        end(buffer, index);
+    }
+
+    private void message(final ChannelHandlerContext ctx, final char type) {
+        buffer(ctx).writeByte(type).writeInt(INT_SIZE);
+    }
+
+    private static void parameterStatus(final ByteBuf buffer, final String name, final String value) {
+        final int index = begin(buffer, 'S');
+        writeString(buffer, name);
+        writeString(buffer, value);
+        end(buffer, index);
+    }
+
+    private ByteBuf buffer(final ChannelHandlerContext ctx) {
+        if (pending == null) {
+            pending = ctx.alloc().buffer();
+        }
+        return pending;
+    }
+
+    @SuppressWarnings(value = "PMD.NullAssignment") // Nothing pending until the next response
+    private void flush(final ChannelHandlerContext ctx, final boolean delayed) {
+        if (pending == null) {
+            return;
+        }
+        final ByteBuf response = pending;
+        pending = null;
+        if (delayed && config.getDelayMillis() > 0) {
+            // Scheduled tasks with the same delay run in order, so responses can't overtake each other
+            ctx.executor().schedule(() -> ctx.writeAndFlush(response), config.getDelayMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            ctx.writeAndFlush(response);
+        }
+    }
+
+    @Override
+    protected void handlerRemoved0(final ChannelHandlerContext ctx) {
+        ReferenceCountUtil.release(pending);
+    }
+
+    private static int begin(final ByteBuf buffer, final char type) {
+        buffer.writeByte(type);
+        final int index = buffer.writerIndex();
+        buffer.writeInt(0);
+        return index;
+    }
+
+    private static void end(final ByteBuf buffer, final int index) {
+        buffer.setInt(index, buffer.writerIndex() - index);
+    }
+
+    private static void writeString(final ByteBuf buffer, final String string) {
+        buffer.writeCharSequence(string, UTF_8);
+        buffer.writeByte(0);
+    }
+
+    private static String readString(final ByteBuf buffer) {
+        final int length = buffer.bytesBefore((byte) 0);
+        final String string = buffer.readCharSequence(Math.max(length, 0), UTF_8).toString();
+        buffer.skipBytes(Math.min(1, buffer.readableBytes()));
+        return string;
+    }
+
+    private static String keyword(final String sql) {
+        final String trimmed = sql.trim();
+        int end = 0;
+        while (end < trimmed.length() && Character.isLetter(trimmed.charAt(end))) {
+            end++;
+        }
+        return trimmed.substring(0, end).toUpperCase(Locale.US);
+    }
+
+    private static String setting(final String sql) {
+        return unquote(sql.trim().split("\\s+")[1]).toLowerCase(Locale.US);
+    }
+
+    // Just enough of the SQL lexer for the quoted identifiers and literals the proxy sends
+    private static String unquote(final String token) {
+        final String trimmed = token.trim();
+        if (trimmed.startsWith("\"")) {
+            return trimmed.substring(1, trimmed.length() - 1).replace("\"\"", "\"");
+        }
+        if (trimmed.startsWith("E'")) {
+            return trimmed.substring(2, trimmed.length() - 1).replace("''", "'").replace("\\\\", "\\");
+        }
+        if (trimmed.startsWith("'")) {
+            return trimmed.substring(1, trimmed.length() - 1).replace("''", "'");
+        }
+        return trimmed;
+    }
+
+    private static boolean returnsRows(final String sql) {
+        final String keyword = keyword(sql);
+        return "SELECT".equals(keyword) || "SHOW".equals(keyword);
+    }
+
+    private static byte[] concat(final byte[] first, final byte[] second) {
+        final byte[] result = new byte[first.length + second.length];
+        System.arraycopy(first, 0, result, 0, first.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    private static String md5Hex(final byte[] data) {
+        try {
+            final StringBuilder hex = new StringBuilder();
+            for (final byte b : MessageDigest.getInstance("MD5").digest(data)) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 not available", e);
+        }
+    }
+}